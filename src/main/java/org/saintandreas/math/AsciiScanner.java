@@ -0,0 +1,301 @@
+package org.saintandreas.math;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <code>AsciiScanner</code> reads numbers and words from a range of an ASCII
+ * text buffer, for the mesh loaders. It allocates nothing for ordinary
+ * numbers: only a number it cannot parse exactly by itself, with more than
+ * 15 significant digits, a large exponent, or a spelling like
+ * <code>NaN</code>, is handed to <code>Double.parseDouble</code>.
+ *
+ * Malformed input raises an <code>IllegalArgumentException</code> giving the
+ * byte offset.
+ *
+ * @author Brad Davis
+ */
+final class AsciiScanner {
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final ByteBuffer buffer;
+  private int position;
+  private final int end;
+
+  AsciiScanner(ByteBuffer buffer, int position, int end) {
+    this.buffer = buffer;
+    this.position = position;
+    this.end = end;
+  }
+
+  int position() {
+    return position;
+  }
+
+  boolean hasMore() {
+    return position < end;
+  }
+
+  /**
+   * @return the start of the line following <code>position</code>, or
+   *         <code>end</code>, so a buffer can be split into chunks of whole
+   *         lines.
+   */
+  static int nextLine(ByteBuffer buffer, int position, int end) {
+    while (position < end && buffer.get(position++) != '\n') {
+    }
+    return position;
+  }
+
+  private static boolean isSpace(int b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  private static boolean isDigit(int b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private void skipSpaces() {
+    while (position < end && isSpace(buffer.get(position))) {
+      ++position;
+    }
+  }
+
+  /**
+   * Skips spaces, and reports whether the line has ended, taking a comment
+   * as the end of the line.
+   */
+  boolean atLineEnd() {
+    skipSpaces();
+    if (position >= end) {
+      return true;
+    }
+    byte b = buffer.get(position);
+    return b == '\n' || b == '#';
+  }
+
+  void skipLine() {
+    position = nextLine(buffer, position, end);
+  }
+
+  /**
+   * Skips spaces and then everything up to the next space or line end.
+   */
+  void skipToken() {
+    skipSpaces();
+    while (position < end) {
+      byte b = buffer.get(position);
+      if (isSpace(b) || b == '\n') {
+        break;
+      }
+      ++position;
+    }
+  }
+
+  /**
+   * @return the next character, or -1 at the end of the range.
+   */
+  int peek() {
+    return position < end ? buffer.get(position) : -1;
+  }
+
+  void skip() {
+    ++position;
+  }
+
+  /**
+   * Skips spaces, and matches the word at the start of the rest of the line,
+   * which must be followed by a space or the end of the line. The position
+   * moves past the word only if it matches.
+   */
+  boolean word(String word) {
+    skipSpaces();
+    int length = word.length();
+    if (position + length > end) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (buffer.get(position + i) != word.charAt(i)) {
+        return false;
+      }
+    }
+    if (position + length < end) {
+      byte b = buffer.get(position + length);
+      if (!isSpace(b) && b != '\n') {
+        return false;
+      }
+    }
+    position += length;
+    return true;
+  }
+
+  /**
+   * @return the rest of the line, trimmed, for headers.
+   */
+  String line() {
+    skipSpaces();
+    int start = position;
+    skipLine();
+    int stop = position;
+    while (stop > start && (buffer.get(stop - 1) == '\n' || isSpace(buffer.get(stop - 1)))) {
+      --stop;
+    }
+    byte[] bytes = new byte[stop - start];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = buffer.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  private IllegalArgumentException invalid(String what) {
+    return new IllegalArgumentException("Invalid " + what + " at byte " + position);
+  }
+
+  /**
+   * Parses a decimal integer, with an optional sign.
+   */
+  long parseLong() {
+    skipSpaces();
+    boolean negative = false;
+    if (position < end) {
+      byte b = buffer.get(position);
+      if (b == '-' || b == '+') {
+        negative = b == '-';
+        ++position;
+      }
+    }
+    int start = position;
+    long value = 0;
+    while (position < end && isDigit(buffer.get(position))) {
+      if (value > (Long.MAX_VALUE - 9) / 10) {
+        throw invalid("integer");
+      }
+      value = value * 10 + buffer.get(position++) - '0';
+    }
+    if (position == start) {
+      throw invalid("integer");
+    }
+    return negative ? -value : value;
+  }
+
+  int parseInt() {
+    long value = parseLong();
+    if (value != (int) value) {
+      throw invalid("integer");
+    }
+    return (int) value;
+  }
+
+  float parseFloat() {
+    return (float) parseDouble();
+  }
+
+  /**
+   * Parses a decimal number, with an optional sign, fraction and exponent.
+   */
+  double parseDouble() {
+    skipSpaces();
+    int start = position;
+    boolean negative = false;
+    if (position < end) {
+      byte b = buffer.get(position);
+      if (b == '-' || b == '+') {
+        negative = b == '-';
+        ++position;
+      }
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    boolean digits = false;
+    boolean exact = true;
+    byte b;
+    while (position < end && isDigit(b = buffer.get(position))) {
+      if (significant < 18) {
+        mantissa = mantissa * 10 + b - '0';
+        significant += mantissa != 0 ? 1 : 0;
+      } else {
+        ++exponent;
+        exact &= b == '0';
+      }
+      ++position;
+      digits = true;
+    }
+    if (position < end && buffer.get(position) == '.') {
+      ++position;
+      while (position < end && isDigit(b = buffer.get(position))) {
+        if (significant < 18) {
+          mantissa = mantissa * 10 + b - '0';
+          significant += mantissa != 0 ? 1 : 0;
+          --exponent;
+        } else {
+          exact &= b == '0';
+        }
+        ++position;
+        digits = true;
+      }
+    }
+    if (digits && position < end && ((b = buffer.get(position)) == 'e' || b == 'E')) {
+      ++position;
+      boolean negativeExponent = false;
+      if (position < end && ((b = buffer.get(position)) == '-' || b == '+')) {
+        negativeExponent = b == '-';
+        ++position;
+      }
+      int value = 0;
+      int exponentStart = position;
+      while (position < end && isDigit(b = buffer.get(position))) {
+        value = Math.min(value * 10 + b - '0', 100000);
+        ++position;
+      }
+      if (position == exponentStart) {
+        throw invalid("number");
+      }
+      exponent += negativeExponent ? -value : value;
+    }
+    if (!digits || (position < end && isLetter(buffer.get(position)))) {
+      return parseOther(start);
+    }
+    if (mantissa == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+    // exact when the mantissa and the power of ten are both exact doubles
+    if (exact && mantissa < 1L << 53 && exponent >= -22 && exponent <= 22) {
+      double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+    return parseOther(start);
+  }
+
+  private static boolean isLetter(int b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  // the slow path, for anything unusual
+  private double parseOther(int start) {
+    position = start;
+    while (position < end) {
+      byte b = buffer.get(position);
+      if (isSpace(b) || b == '\n' || b == '/') {
+        break;
+      }
+      ++position;
+    }
+    byte[] bytes = new byte[position - start];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = buffer.get(start + i);
+    }
+    try {
+      return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    } catch (NumberFormatException e) {
+      position = start;
+      throw invalid("number");
+    }
+  }
+}
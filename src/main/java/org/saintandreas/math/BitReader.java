@@ -0,0 +1,73 @@
+package org.saintandreas.math;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <code>BitReader</code> reads values written by a {@link BitWriter} from a
+ * <code>ByteBuffer</code>, starting at its position. Bytes are consumed from
+ * the buffer only as they are needed.
+ *
+ * @author Brad Davis
+ */
+public final class BitReader {
+  private final ByteBuffer buffer;
+  private long pending;
+  private int pendingBits;
+
+  public BitReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Reads an unsigned value of <code>bits</code> bits.
+   *
+   * @param bits
+   *          the number of bits, from 0 to 32. For 32 bits the value may be
+   *          negative.
+   */
+  public int read(int bits) {
+    if (bits < 0 || bits > 32) {
+      throw new IllegalArgumentException("Invalid bit count. " + bits);
+    }
+    if (bits == 0) {
+      return 0;
+    }
+    while (pendingBits < bits) {
+      pending |= (buffer.get() & 0xFFL) << pendingBits;
+      pendingBits += 8;
+    }
+    int result = (int) (pending & (-1L >>> (64 - bits)));
+    pending >>>= bits;
+    pendingBits -= bits;
+    return result;
+  }
+
+  /**
+   * Reads an unsigned value of <code>bits</code> bits.
+   *
+   * @param bits
+   *          the number of bits, from 0 to 64.
+   */
+  public long readLong(int bits) {
+    if (bits < 0 || bits > 64) {
+      throw new IllegalArgumentException("Invalid bit count. " + bits);
+    }
+    if (bits > 32) {
+      long low = read(32) & 0xFFFFFFFFL;
+      return low | ((long) read(bits - 32) & 0xFFFFFFFFL) << 32;
+    }
+    return read(bits) & 0xFFFFFFFFL;
+  }
+
+  public boolean readBoolean() {
+    return read(1) != 0;
+  }
+
+  /**
+   * Discards the rest of the current byte, matching {@link BitWriter#flush()}.
+   */
+  public void align() {
+    pending = 0;
+    pendingBits = 0;
+  }
+}
@@ -0,0 +1,90 @@
+package org.saintandreas.math;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <code>BitWriter</code> packs values of arbitrary bit widths into a
+ * <code>ByteBuffer</code>, least significant bit first, for compact network
+ * and file encodings. {@link BitReader} reads them back.
+ *
+ * Whole bytes are written to the buffer as they fill, starting at its
+ * position. {@link #flush()} pads the last partial byte with zeros and writes
+ * it, and must be called when done.
+ *
+ * @author Brad Davis
+ */
+public final class BitWriter {
+  private final ByteBuffer buffer;
+  private long pending;
+  private int pendingBits;
+  private long bitsWritten;
+
+  public BitWriter(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Writes the low <code>bits</code> bits of the value.
+   *
+   * @param bits
+   *          the number of bits, from 0 to 32.
+   */
+  public void write(int value, int bits) {
+    if (bits < 0 || bits > 32) {
+      throw new IllegalArgumentException("Invalid bit count. " + bits);
+    }
+    if (bits == 0) {
+      return;
+    }
+    pending |= (value & (-1L >>> (64 - bits))) << pendingBits;
+    pendingBits += bits;
+    bitsWritten += bits;
+    while (pendingBits >= 8) {
+      buffer.put((byte) pending);
+      pending >>>= 8;
+      pendingBits -= 8;
+    }
+  }
+
+  /**
+   * Writes the low <code>bits</code> bits of the value.
+   *
+   * @param bits
+   *          the number of bits, from 0 to 64.
+   */
+  public void write(long value, int bits) {
+    if (bits < 0 || bits > 64) {
+      throw new IllegalArgumentException("Invalid bit count. " + bits);
+    }
+    if (bits > 32) {
+      write((int) value, 32);
+      write((int) (value >>> 32), bits - 32);
+    } else {
+      write((int) value, bits);
+    }
+  }
+
+  public void writeBoolean(boolean value) {
+    write(value ? 1 : 0, 1);
+  }
+
+  /**
+   * Writes any partial byte, padded with zeros, so that the next write starts
+   * on a byte boundary.
+   */
+  public void flush() {
+    if (pendingBits > 0) {
+      buffer.put((byte) pending);
+      bitsWritten += 8 - pendingBits;
+      pending = 0;
+      pendingBits = 0;
+    }
+  }
+
+  /**
+   * @return the number of bits written so far, including any padding.
+   */
+  public long getBitsWritten() {
+    return bitsWritten;
+  }
+}
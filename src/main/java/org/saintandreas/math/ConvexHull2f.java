@@ -0,0 +1,121 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>ConvexHull2f</code> computes the convex hull of a set of 2D points
+ * with Andrew's monotone chain algorithm, in O(n log n) time.
+ *
+ * The hull is returned as the indices of its vertices in counter clockwise
+ * order, starting from the point with the smallest x (and then y)
+ * coordinate. Points lying along an edge of the hull are not included, and
+ * repeated points appear at most once.
+ *
+ * @author Brad Davis
+ */
+public final class ConvexHull2f {
+  private ConvexHull2f() {
+  }
+
+  /**
+   * @param points
+   *          the points, as x, y pairs.
+   * @return the indices of the hull vertices, counter clockwise.
+   */
+  public static int[] compute(float[] points) {
+    return compute(points, points.length / 2);
+  }
+
+  /**
+   * @return the indices of the hull vertices, counter clockwise.
+   */
+  public static int[] compute(Vector2f[] points) {
+    float[] xy = new float[points.length * 2];
+    for (int i = 0; i < points.length; ++i) {
+      xy[i * 2] = points[i].x;
+      xy[i * 2 + 1] = points[i].y;
+    }
+    return compute(xy, points.length);
+  }
+
+  /**
+   * @param points
+   *          the points, as x, y pairs.
+   * @param count
+   *          the number of points to use, from the start of the array.
+   * @return the indices of the hull vertices, counter clockwise.
+   */
+  public static int[] compute(float[] points, int count) {
+    if (count < 0 || count * 2 > points.length) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    int[] order = sort(points, count);
+    if (count < 2) {
+      return order;
+    }
+    int[] hull = new int[count + 1];
+    int size = 0;
+    // the lower hull, left to right
+    for (int i = 0; i < count; ++i) {
+      int p = order[i];
+      while (size >= 2 && cross(points, hull[size - 2], hull[size - 1], p) <= 0) {
+        --size;
+      }
+      hull[size++] = p;
+    }
+    // then the upper hull, right to left
+    for (int i = count - 2, lower = size + 1; i >= 0; --i) {
+      int p = order[i];
+      while (size >= lower && cross(points, hull[size - 2], hull[size - 1], p) <= 0) {
+        --size;
+      }
+      hull[size++] = p;
+    }
+    // the last point repeats the first
+    size = Math.max(0, size - 1);
+    if (size == 2 && points[hull[0] * 2] == points[hull[1] * 2]
+        && points[hull[0] * 2 + 1] == points[hull[1] * 2 + 1]) {
+      size = 1;
+    }
+    return Arrays.copyOf(hull, size);
+  }
+
+  private static double cross(float[] p, int o, int a, int b) {
+    double ox = p[o * 2], oy = p[o * 2 + 1];
+    return (p[a * 2] - ox) * (p[b * 2 + 1] - oy) - (p[a * 2 + 1] - oy) * (p[b * 2] - ox);
+  }
+
+  // sorts the point indices by x, then y, packing the sort keys into longs
+  // so that no comparator or boxing is needed
+  private static int[] sort(float[] points, int count) {
+    long[] keys = new long[count];
+    for (int i = 0; i < count; ++i) {
+      keys[i] = ((long) sortable(points[i * 2]) << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] order = new int[count];
+    for (int i = 0; i < count;) {
+      int j = i + 1;
+      while (j < count && (keys[j] >>> 32) == (keys[i] >>> 32)) {
+        ++j;
+      }
+      if (j - i > 1) {
+        for (int k = i; k < j; ++k) {
+          int index = (int) keys[k];
+          keys[k] = ((long) sortable(points[index * 2 + 1]) << 32) | index;
+        }
+        Arrays.sort(keys, i, j);
+      }
+      for (int k = i; k < j; ++k) {
+        order[k] = (int) keys[k];
+      }
+      i = j;
+    }
+    return order;
+  }
+
+  private static int sortable(float f) {
+    int bits = Float.floatToIntBits(f + 0.0f);
+    return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+  }
+}
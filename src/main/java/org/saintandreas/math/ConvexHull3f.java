@@ -0,0 +1,601 @@
+package org.saintandreas.math;
+
+import java.math.BigDecimal;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * <code>ConvexHull3f</code> is the convex hull of a set of 3D points, built
+ * with the quickhull algorithm of Barber, Dobkin and Huhdanpaa.
+ *
+ * The hull is made of triangular faces, wound counter clockwise when seen
+ * from outside. Each face has three half edges: half edge
+ * <code>3 * f + k</code> runs from vertex <code>k</code> of face
+ * <code>f</code> to vertex <code>(k + 1) % 3</code>, the next half edge
+ * around the face is <code>3 * f + (k + 1) % 3</code>, and
+ * {@link #getTwins()} gives the opposite half edge in the neighboring face.
+ * Each face also has a plane, with an outward unit normal.
+ *
+ * Which side of a face a point lies on is decided in double precision, and
+ * exactly when the result is too close to call, so the hull is always a
+ * closed convex polyhedron however degenerate the input. A point lying
+ * exactly on the plane of a face counts as inside. The planes are rounded to
+ * floats, so tests against them need a small tolerance, scaled to the extent
+ * of the input. The initial partition of the points against the starting
+ * tetrahedron, which is where most of them are discarded, is done in
+ * parallel for large inputs.
+ *
+ * @author Brad Davis
+ */
+public final class ConvexHull3f {
+  private static final int CHUNK_SIZE = 1 << 15;
+  // Shewchuk's bound on the rounding error of a 3D orientation determinant,
+  // relative to its permanent
+  private static final double ORIENTATION_ERROR = 7.771561172376103e-16;
+  // a generous bound on the rounding error of a plane distance, relative to
+  // the extent of the input and the condition of the face
+  private static final double DISTANCE_ERROR = 1e-14;
+
+  private final int[] faces;
+  private final int[] twins;
+  private final float[] planes;
+  private final int[] vertices;
+  private final float tolerance;
+
+  private ConvexHull3f(int[] faces, int[] twins, float[] planes, int[] vertices, float tolerance) {
+    this.faces = faces;
+    this.twins = twins;
+    this.planes = planes;
+    this.vertices = vertices;
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Builds the hull of the points from the buffer's position to its limit,
+   * as x, y, z triples. The buffer's position is not changed.
+   *
+   * @throws IllegalArgumentException
+   *           if the points are all coplanar.
+   */
+  public static ConvexHull3f build(FloatBuffer positions) {
+    float[] xyz = new float[positions.remaining()];
+    positions.duplicate().get(xyz);
+    return build(xyz, xyz.length / 3);
+  }
+
+  /**
+   * Builds the hull of an array of points.
+   *
+   * @throws IllegalArgumentException
+   *           if the points are all coplanar.
+   */
+  public static ConvexHull3f build(Vector3f[] points) {
+    float[] xyz = new float[points.length * 3];
+    for (int i = 0; i < points.length; ++i) {
+      xyz[i * 3] = points[i].x;
+      xyz[i * 3 + 1] = points[i].y;
+      xyz[i * 3 + 2] = points[i].z;
+    }
+    return build(xyz, points.length);
+  }
+
+  /**
+   * Builds the hull of the first <code>count</code> points of an array of x,
+   * y, z triples.
+   *
+   * @throws IllegalArgumentException
+   *           if the points are all coplanar.
+   */
+  public static ConvexHull3f build(float[] xyz, int count) {
+    if (count < 0 || count * 3 > xyz.length) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    return new Builder(xyz, count).build();
+  }
+
+  /**
+   * @return the number of triangular faces.
+   */
+  public int getFaceCount() {
+    return faces.length / 3;
+  }
+
+  /**
+   * @return three point indices per face, counter clockwise from outside.
+   */
+  public int[] getFaces() {
+    return faces.clone();
+  }
+
+  /**
+   * @return for each half edge, the index of its twin.
+   */
+  public int[] getTwins() {
+    return twins.clone();
+  }
+
+  /**
+   * @return the plane of each face as the outward unit normal x, y, z
+   *         followed by the distance of the plane from the origin along it.
+   */
+  public float[] getPlanes() {
+    return planes.clone();
+  }
+
+  /**
+   * @return the indices of the points that are vertices of the hull, in
+   *         increasing order.
+   */
+  public int[] getVertices() {
+    return vertices.clone();
+  }
+
+  /**
+   * @return the distance within which points were considered to lie on a
+   *         face.
+   */
+  public float getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * @return true if the point is inside the hull or within the tolerance of
+   *         its surface.
+   */
+  public boolean contains(float x, float y, float z) {
+    for (int f = 0; f < planes.length; f += 4) {
+      if (planes[f] * x + planes[f + 1] * y + planes[f + 2] * z - planes[f + 3] > tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Builder {
+    private final float[] p;
+    private final int n;
+    private double epsilon;
+    private double scale;
+
+    private int faceCount;
+    private int[] faceVertices = new int[48];
+    private double[] facePlanes = new double[64];
+    private double[] faceError = new double[16];
+    private int[] faceTwins = new int[48];
+    private boolean[] dead = new boolean[16];
+    // each face's outside set, as a list threaded through pointNext
+    private int[] outside = new int[16];
+    private final int[] pointNext;
+
+    // faces that may have outside points left
+    private int[] pending = new int[16];
+    private int pendingCount;
+
+    // work space for finding the horizon
+    private int[] frameFace = new int[16], frameEdge = new int[16], frameLeft = new int[16];
+    private int[] horizon = new int[16], visible = new int[16];
+    private int horizonCount, visibleCount;
+
+    Builder(float[] xyz, int count) {
+      p = xyz;
+      n = count;
+      pointNext = new int[count];
+    }
+
+    private double distance(int face, int point) {
+      int f = face * 4, i = point * 3;
+      return facePlanes[f] * p[i] + facePlanes[f + 1] * p[i + 1] + facePlanes[f + 2] * p[i + 2]
+          - facePlanes[f + 3];
+    }
+
+    private int addFace(int a, int b, int c) {
+      int f = faceCount++;
+      if (f == dead.length) {
+        int capacity = f * 2;
+        faceVertices = Arrays.copyOf(faceVertices, capacity * 3);
+        facePlanes = Arrays.copyOf(facePlanes, capacity * 4);
+        faceError = Arrays.copyOf(faceError, capacity);
+        faceTwins = Arrays.copyOf(faceTwins, capacity * 3);
+        dead = Arrays.copyOf(dead, capacity);
+        outside = Arrays.copyOf(outside, capacity);
+      }
+      faceVertices[f * 3] = a;
+      faceVertices[f * 3 + 1] = b;
+      faceVertices[f * 3 + 2] = c;
+      outside[f] = -1;
+      // the normal from the cross product of two edges, and the offset from
+      // the centroid, which is less sensitive to rounding than a corner
+      double ax = p[a * 3], ay = p[a * 3 + 1], az = p[a * 3 + 2];
+      double ux = p[b * 3] - ax, uy = p[b * 3 + 1] - ay, uz = p[b * 3 + 2] - az;
+      double vx = p[c * 3] - ax, vy = p[c * 3 + 1] - ay, vz = p[c * 3 + 2] - az;
+      double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+      double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length > 0) {
+        nx /= length;
+        ny /= length;
+        nz /= length;
+      }
+      // the direction of the normal of a thin face is sensitive to rounding
+      double condition = Math.sqrt((ux * ux + uy * uy + uz * uz) * (vx * vx + vy * vy + vz * vz)) / length;
+      faceError[f] = DISTANCE_ERROR * scale * (condition + 1);
+      facePlanes[f * 4] = nx;
+      facePlanes[f * 4 + 1] = ny;
+      facePlanes[f * 4 + 2] = nz;
+      facePlanes[f * 4 + 3] = (nx * (ax + p[b * 3] + p[c * 3]) + ny * (ay + p[b * 3 + 1] + p[c * 3 + 1])
+          + nz * (az + p[b * 3 + 2] + p[c * 3 + 2])) / 3;
+      return f;
+    }
+
+    // which side of a face a point is on, given its distance from the plane,
+    // deciding exactly when the distance is within its rounding error
+    private int side(int face, int point, double distance) {
+      if (distance > faceError[face]) {
+        return 1;
+      } else if (distance < -faceError[face]) {
+        return -1;
+      }
+      int f = face * 3;
+      return orientation(faceVertices[f], faceVertices[f + 1], faceVertices[f + 2], point);
+    }
+
+    // the sign of (b - a) x (c - a) . (d - a), which is positive when d is in
+    // front of the triangle a, b, c
+    private int orientation(int a, int b, int c, int d) {
+      double adx = p[a * 3] - p[d * 3], ady = p[a * 3 + 1] - p[d * 3 + 1], adz = p[a * 3 + 2] - p[d * 3 + 2];
+      double bdx = p[b * 3] - p[d * 3], bdy = p[b * 3 + 1] - p[d * 3 + 1], bdz = p[b * 3 + 2] - p[d * 3 + 2];
+      double cdx = p[c * 3] - p[d * 3], cdy = p[c * 3 + 1] - p[d * 3 + 1], cdz = p[c * 3 + 2] - p[d * 3 + 2];
+      double det = adx * (bdy * cdz - bdz * cdy) + bdx * (cdy * adz - cdz * ady)
+          + cdx * (ady * bdz - adz * bdy);
+      double permanent = Math.abs(adx) * (Math.abs(bdy * cdz) + Math.abs(bdz * cdy))
+          + Math.abs(bdx) * (Math.abs(cdy * adz) + Math.abs(cdz * ady))
+          + Math.abs(cdx) * (Math.abs(ady * bdz) + Math.abs(adz * bdy));
+      double bound = ORIENTATION_ERROR * permanent;
+      if (det > bound) {
+        return -1;
+      } else if (det < -bound) {
+        return 1;
+      }
+      // floats convert to BigDecimal exactly, so this is the true sign
+      BigDecimal[] v = new BigDecimal[9];
+      int[] corners = { a, b, c };
+      for (int k = 0; k < 9; ++k) {
+        v[k] = new BigDecimal(p[corners[k / 3] * 3 + k % 3]).subtract(new BigDecimal(p[d * 3 + k % 3]));
+      }
+      BigDecimal exact = v[0].multiply(v[4].multiply(v[8]).subtract(v[5].multiply(v[7])))
+          .add(v[3].multiply(v[7].multiply(v[2]).subtract(v[8].multiply(v[1]))))
+          .add(v[6].multiply(v[1].multiply(v[5]).subtract(v[2].multiply(v[4]))));
+      return -exact.signum();
+    }
+
+    private static int next(int edge) {
+      return edge % 3 == 2 ? edge - 2 : edge + 1;
+    }
+
+    private void link(int edge, int twin) {
+      faceTwins[edge] = twin;
+      faceTwins[twin] = edge;
+    }
+
+    private void addOutside(int face, int point) {
+      if (outside[face] < 0) {
+        if (pendingCount == pending.length) {
+          pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = face;
+      }
+      pointNext[point] = outside[face];
+      outside[face] = point;
+    }
+
+    ConvexHull3f build() {
+      int[] simplex = initialSimplex();
+      partition(simplex);
+      while (pendingCount > 0) {
+        int face = pending[--pendingCount];
+        if (!dead[face] && outside[face] >= 0) {
+          addPoint(face);
+        }
+      }
+      return result();
+    }
+
+    // Finds four points spanning a large tetrahedron: the most distant pair
+    // of axis extremes, the point farthest from the line through them, and
+    // the point farthest from the plane through all three.
+    private int[] initialSimplex() {
+      if (n < 4) {
+        throw new IllegalArgumentException("At least four points are needed");
+      }
+      final int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      final int[] extremes = new int[chunks * 6];
+      Parallel.forEach(chunks, 1, chunk -> {
+        int base = chunk * 6;
+        int start = chunk * CHUNK_SIZE, end = Math.min(n, start + CHUNK_SIZE);
+        for (int k = 0; k < 6; ++k) {
+          extremes[base + k] = start;
+        }
+        for (int i = start + 1; i < end; ++i) {
+          for (int axis = 0; axis < 3; ++axis) {
+            float value = p[i * 3 + axis];
+            if (value < p[extremes[base + axis] * 3 + axis]) {
+              extremes[base + axis] = i;
+            }
+            if (value > p[extremes[base + 3 + axis] * 3 + axis]) {
+              extremes[base + 3 + axis] = i;
+            }
+          }
+        }
+      });
+      int[] min = new int[3], max = new int[3];
+      for (int axis = 0; axis < 3; ++axis) {
+        min[axis] = extremes[axis];
+        max[axis] = extremes[3 + axis];
+        for (int c = 1; c < chunks; ++c) {
+          int lo = extremes[c * 6 + axis], hi = extremes[c * 6 + 3 + axis];
+          if (p[lo * 3 + axis] < p[min[axis] * 3 + axis]) {
+            min[axis] = lo;
+          }
+          if (p[hi * 3 + axis] > p[max[axis] * 3 + axis]) {
+            max[axis] = hi;
+          }
+        }
+      }
+      int v0 = 0, v1 = 0;
+      double widest = -1;
+      for (int axis = 0; axis < 3; ++axis) {
+        scale += Math.max(Math.abs(p[min[axis] * 3 + axis]), Math.abs(p[max[axis] * 3 + axis]));
+        double extent = p[max[axis] * 3 + axis] - (double) p[min[axis] * 3 + axis];
+        if (extent > widest) {
+          widest = extent;
+          v0 = min[axis];
+          v1 = max[axis];
+        }
+      }
+      // the planes are rounded to floats, and so are the tests against them
+      epsilon = 3 * FastMath.FLT_EPSILON * scale;
+      if (widest == 0) {
+        throw new IllegalArgumentException("The points are all coincident");
+      }
+
+      final double ox = p[v0 * 3], oy = p[v0 * 3 + 1], oz = p[v0 * 3 + 2];
+      final double dx = p[v1 * 3] - ox, dy = p[v1 * 3 + 1] - oy, dz = p[v1 * 3 + 2] - oz;
+      int v2 = farthest(chunks, i -> {
+        double px = p[i * 3] - ox, py = p[i * 3 + 1] - oy, pz = p[i * 3 + 2] - oz;
+        double cx = py * dz - pz * dy, cy = pz * dx - px * dz, cz = px * dy - py * dx;
+        return cx * cx + cy * cy + cz * cz;
+      });
+      int base = addFace(v0, v1, v2);
+      if (facePlanes[base * 4] == 0 && facePlanes[base * 4 + 1] == 0 && facePlanes[base * 4 + 2] == 0) {
+        throw new IllegalArgumentException("The points are all collinear");
+      }
+      int v3 = farthest(chunks, i -> Math.abs(distance(base, i)));
+      if (side(base, v3, distance(base, v3)) == 0) {
+        throw new IllegalArgumentException("The points are all coplanar");
+      }
+      faceCount = 0;
+
+      // wind each face so that the remaining vertex is behind it
+      int[] corners = { v0, v1, v2, v3 };
+      int[][] triangles = { { v0, v1, v2 }, { v0, v3, v1 }, { v1, v3, v2 }, { v2, v3, v0 } };
+      int[] opposite = { v3, v2, v0, v1 };
+      for (int f = 0; f < 4; ++f) {
+        int[] t = triangles[f];
+        addFace(t[0], t[1], t[2]);
+        if (distance(f, opposite[f]) > 0) {
+          faceCount = f;
+          addFace(t[0], t[2], t[1]);
+        }
+      }
+      for (int e = 0; e < 12; ++e) {
+        int from = faceVertices[e], to = faceVertices[next(e)];
+        for (int o = 0; o < 12; ++o) {
+          if (faceVertices[o] == to && faceVertices[next(o)] == from) {
+            faceTwins[e] = o;
+          }
+        }
+      }
+      return corners;
+    }
+
+    private interface PointMeasure {
+      double measure(int point);
+    }
+
+    private int farthest(int chunks, final PointMeasure measure) {
+      final int[] best = new int[chunks];
+      Parallel.forEach(chunks, 1, chunk -> {
+        int start = chunk * CHUNK_SIZE, end = Math.min(n, start + CHUNK_SIZE);
+        int b = start;
+        double bestValue = measure.measure(start);
+        for (int i = start + 1; i < end; ++i) {
+          double value = measure.measure(i);
+          if (value > bestValue) {
+            bestValue = value;
+            b = i;
+          }
+        }
+        best[chunk] = b;
+      });
+      int result = best[0];
+      for (int c = 1; c < chunks; ++c) {
+        if (measure.measure(best[c]) > measure.measure(result)) {
+          result = best[c];
+        }
+      }
+      return result;
+    }
+
+    // assigns every point to the face of the tetrahedron it is farthest
+    // outside of, in parallel, then threads the lists serially
+    private void partition(int[] simplex) {
+      final int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      final int[] assigned = new int[n];
+      Parallel.forEach(chunks, 1, chunk -> {
+        for (int i = chunk * CHUNK_SIZE, end = Math.min(n, i + CHUNK_SIZE); i < end; ++i) {
+          int face = -1;
+          double best = Double.NEGATIVE_INFINITY;
+          for (int f = 0; f < 4; ++f) {
+            double d = distance(f, i);
+            if (d > best && side(f, i, d) > 0) {
+              best = d;
+              face = f;
+            }
+          }
+          assigned[i] = face;
+        }
+      });
+      for (int corner : simplex) {
+        assigned[corner] = -1;
+      }
+      for (int i = n - 1; i >= 0; --i) {
+        if (assigned[i] >= 0) {
+          addOutside(assigned[i], i);
+        }
+      }
+    }
+
+    private void addPoint(int face) {
+      int eye = outside[face];
+      double farthest = distance(face, eye);
+      for (int i = pointNext[eye]; i >= 0; i = pointNext[i]) {
+        double d = distance(face, i);
+        if (d > farthest) {
+          farthest = d;
+          eye = i;
+        }
+      }
+      findHorizon(face, eye);
+
+      // a fan of new faces from the eye to the horizon, each sharing its
+      // horizon edge with the face beyond
+      int first = faceCount;
+      for (int h = 0; h < horizonCount; ++h) {
+        int edge = horizon[h];
+        int from = faceVertices[edge], to = faceVertices[next(edge)];
+        int twin = faceTwins[edge];
+        int f = addFace(from, to, eye);
+        link(f * 3, twin);
+      }
+      for (int h = 0; h < horizonCount; ++h) {
+        int f = first + h, following = first + (h + 1) % horizonCount;
+        link(f * 3 + 1, following * 3 + 2);
+      }
+
+      // hand the points of the faces that were replaced to the new faces
+      for (int v = 0; v < visibleCount; ++v) {
+        for (int i = outside[visible[v]], next; i >= 0; i = next) {
+          next = pointNext[i];
+          if (i == eye) {
+            continue;
+          }
+          int best = -1;
+          double bestDistance = Double.NEGATIVE_INFINITY;
+          for (int f = first; f < faceCount; ++f) {
+            double d = distance(f, i);
+            if (d > bestDistance && side(f, i, d) > 0) {
+              bestDistance = d;
+              best = f;
+            }
+          }
+          if (best >= 0) {
+            addOutside(best, i);
+          }
+        }
+        outside[visible[v]] = -1;
+      }
+    }
+
+    // A depth first walk over the faces the eye can see, starting from one,
+    // which collects the edges between visible and hidden faces in order
+    // around the horizon. The recursion is kept in explicit frames: each
+    // visits the edges of a face after the one it was entered by.
+    private void findHorizon(int face, int eye) {
+      horizonCount = 0;
+      visibleCount = 0;
+      int depth = 0;
+      depth = enter(depth, face, face * 3 + 2, 3);
+      while (depth > 0) {
+        int top = depth - 1;
+        if (frameLeft[top] == 0) {
+          --depth;
+          continue;
+        }
+        --frameLeft[top];
+        int f = frameFace[top];
+        int edge = f * 3 + (frameEdge[top] + 1) % 3;
+        frameEdge[top] = edge % 3;
+        int twin = faceTwins[edge];
+        int neighbor = twin / 3;
+        if (dead[neighbor]) {
+          continue;
+        }
+        // faces the eye lies in the plane of are replaced too, so the new
+        // faces never include a point on the line of a horizon edge
+        if (side(neighbor, eye, distance(neighbor, eye)) >= 0) {
+          depth = enter(depth, neighbor, twin, 2);
+        } else {
+          if (horizonCount == horizon.length) {
+            horizon = Arrays.copyOf(horizon, horizonCount * 2);
+          }
+          horizon[horizonCount++] = edge;
+        }
+      }
+    }
+
+    private int enter(int depth, int face, int entry, int edges) {
+      if (depth == frameFace.length) {
+        frameFace = Arrays.copyOf(frameFace, depth * 2);
+        frameEdge = Arrays.copyOf(frameEdge, depth * 2);
+        frameLeft = Arrays.copyOf(frameLeft, depth * 2);
+      }
+      if (visibleCount == visible.length) {
+        visible = Arrays.copyOf(visible, visibleCount * 2);
+      }
+      visible[visibleCount++] = face;
+      dead[face] = true;
+      frameFace[depth] = face;
+      frameEdge[depth] = entry % 3;
+      frameLeft[depth] = edges;
+      return depth + 1;
+    }
+
+    private ConvexHull3f result() {
+      int[] index = new int[faceCount];
+      int live = 0;
+      for (int f = 0; f < faceCount; ++f) {
+        index[f] = dead[f] ? -1 : live++;
+      }
+      int[] faces = new int[live * 3], twins = new int[live * 3];
+      float[] planes = new float[live * 4];
+      boolean[] used = new boolean[n];
+      for (int f = 0; f < faceCount; ++f) {
+        int g = index[f];
+        if (g < 0) {
+          continue;
+        }
+        for (int k = 0; k < 3; ++k) {
+          int twin = faceTwins[f * 3 + k];
+          faces[g * 3 + k] = faceVertices[f * 3 + k];
+          twins[g * 3 + k] = index[twin / 3] * 3 + twin % 3;
+          used[faceVertices[f * 3 + k]] = true;
+        }
+        for (int k = 0; k < 4; ++k) {
+          planes[g * 4 + k] = (float) facePlanes[f * 4 + k];
+        }
+      }
+      int vertexCount = 0;
+      for (boolean u : used) {
+        if (u) {
+          ++vertexCount;
+        }
+      }
+      int[] vertices = new int[vertexCount];
+      for (int i = 0, v = 0; i < n; ++i) {
+        if (used[i]) {
+          vertices[v++] = i;
+        }
+      }
+      return new ConvexHull3f(faces, twins, planes, vertices, (float) epsilon);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <code>Covariance3f</code> accumulates the mean and covariance of a stream
+ * of points, for principal component analysis. Points may be added one at a
+ * time or in bulk, and accumulators filled separately, for instance by
+ * parallel tasks, can be merged.
+ *
+ * Sums are kept in double precision relative to the mean, following Welford
+ * and, for merging, Chan et al, so points far from the origin lose no
+ * precision to cancellation. Bulk additions sum each batch relative to its
+ * first point and merge the batch in, which avoids a division per point.
+ *
+ * @author Brad Davis
+ */
+public final class Covariance3f {
+  private long count;
+  private double meanX, meanY, meanZ;
+  // sums of products of deviations from the mean
+  private double xx, xy, xz, yy, yz, zz;
+
+  public Covariance3f() {
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public void clear() {
+    count = 0;
+    meanX = meanY = meanZ = 0;
+    xx = xy = xz = yy = yz = zz = 0;
+  }
+
+  public void add(float x, float y, float z) {
+    ++count;
+    double dx = x - meanX, dy = y - meanY, dz = z - meanZ;
+    meanX += dx / count;
+    meanY += dy / count;
+    meanZ += dz / count;
+    double ex = x - meanX, ey = y - meanY, ez = z - meanZ;
+    xx += dx * ex;
+    xy += dx * ey;
+    xz += dx * ez;
+    yy += dy * ey;
+    yz += dy * ez;
+    zz += dz * ez;
+  }
+
+  public void add(Vector3f v) {
+    add(v.x, v.y, v.z);
+  }
+
+  /**
+   * Adds packed x, y, z points from an array.
+   */
+  public void add(float[] xyz, int offset, int count) {
+    if (count == 0) {
+      return;
+    }
+    double sx = xyz[offset], sy = xyz[offset + 1], sz = xyz[offset + 2];
+    double x = 0, y = 0, z = 0, xx = 0, xy = 0, xz = 0, yy = 0, yz = 0, zz = 0;
+    for (int i = offset, end = offset + count * 3; i < end; i += 3) {
+      double dx = xyz[i] - sx, dy = xyz[i + 1] - sy, dz = xyz[i + 2] - sz;
+      x += dx;
+      y += dy;
+      z += dz;
+      xx += dx * dx;
+      xy += dx * dy;
+      xz += dx * dz;
+      yy += dy * dy;
+      yz += dy * dz;
+      zz += dz * dz;
+    }
+    merge(count, sx, sy, sz, x, y, z, xx, xy, xz, yy, yz, zz);
+  }
+
+  /**
+   * Adds packed x, y, z points from a buffer, starting at its position, which
+   * is not changed.
+   */
+  public void add(FloatBuffer xyz, int count) {
+    if (count == 0) {
+      return;
+    }
+    int base = xyz.position();
+    double sx = xyz.get(base), sy = xyz.get(base + 1), sz = xyz.get(base + 2);
+    double x = 0, y = 0, z = 0, xx = 0, xy = 0, xz = 0, yy = 0, yz = 0, zz = 0;
+    for (int i = base, end = base + count * 3; i < end; i += 3) {
+      double dx = xyz.get(i) - sx, dy = xyz.get(i + 1) - sy, dz = xyz.get(i + 2) - sz;
+      x += dx;
+      y += dy;
+      z += dz;
+      xx += dx * dx;
+      xy += dx * dy;
+      xz += dx * dz;
+      yy += dy * dy;
+      yz += dy * dz;
+      zz += dz * dz;
+    }
+    merge(count, sx, sy, sz, x, y, z, xx, xy, xz, yy, yz, zz);
+  }
+
+  // merges a batch given as sums of deviations from a shift point
+  private void merge(long n, double sx, double sy, double sz, double x, double y, double z, double xx,
+      double xy, double xz, double yy, double yz, double zz) {
+    double mx = x / n, my = y / n, mz = z / n;
+    merge(n, sx + mx, sy + my, sz + mz, xx - x * mx, xy - x * my, xz - x * mz, yy - y * my, yz - y * mz,
+        zz - z * mz);
+  }
+
+  private void merge(long n, double mx, double my, double mz, double xx, double xy, double xz, double yy,
+      double yz, double zz) {
+    long total = count + n;
+    double dx = mx - meanX, dy = my - meanY, dz = mz - meanZ;
+    double f = (double) count * n / total;
+    double g = (double) n / total;
+    this.xx += xx + dx * dx * f;
+    this.xy += xy + dx * dy * f;
+    this.xz += xz + dx * dz * f;
+    this.yy += yy + dy * dy * f;
+    this.yz += yz + dy * dz * f;
+    this.zz += zz + dz * dz * f;
+    meanX += dx * g;
+    meanY += dy * g;
+    meanZ += dz * g;
+    count = total;
+  }
+
+  /**
+   * Adds the points accumulated by another accumulator to this one.
+   */
+  public void add(Covariance3f other) {
+    if (other.count > 0) {
+      merge(other.count, other.meanX, other.meanY, other.meanZ, other.xx, other.xy, other.xz, other.yy,
+          other.yz, other.zz);
+    }
+  }
+
+  /**
+   * @return the mean of the points, or zero if there are none.
+   */
+  public Vector3f getMean() {
+    return new Vector3f((float) meanX, (float) meanY, (float) meanZ);
+  }
+
+  /**
+   * @return the covariance matrix of the points, dividing by the number of
+   *         points, or zero if there are none.
+   */
+  public Matrix3f getCovariance() {
+    if (count == 0) {
+      return Matrix3f.ZERO;
+    }
+    float xy = (float) (this.xy / count), xz = (float) (this.xz / count), yz = (float) (this.yz / count);
+    return new Matrix3f((float) (xx / count), xy, xz, xy, (float) (yy / count), yz, xz, yz,
+        (float) (zz / count));
+  }
+}
@@ -0,0 +1,161 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Eigen3f</code> is the eigen decomposition of a symmetric 3x3 matrix,
+ * such as a covariance or inertia tensor: three real eigenvalues, in
+ * descending order, and an orthonormal, right handed set of eigenvectors.
+ *
+ * The decomposition uses cyclic Jacobi rotations in double precision, which
+ * for a 3x3 matrix converge to full precision in four or five sweeps, and
+ * which stay accurate for repeated eigenvalues, where the closed form cubic
+ * solution loses the eigenvectors.
+ *
+ * @author Brad Davis
+ */
+public final class Eigen3f {
+  private static final int MAX_SWEEPS = 32;
+
+  private final Vector3f values;
+  private final Matrix3f vectors;
+
+  private Eigen3f(Vector3f values, Matrix3f vectors) {
+    this.values = values;
+    this.vectors = vectors;
+  }
+
+  /**
+   * <code>decompose</code> finds the eigenvalues and eigenvectors of a
+   * symmetric matrix. Only the upper triangle is read.
+   */
+  public static Eigen3f decompose(Matrix3f m) {
+    float[] result = new float[12];
+    decompose(m.m00, m.m01, m.m02, m.m11, m.m12, m.m22, result);
+    return new Eigen3f(new Vector3f(result[0], result[1], result[2]), new Matrix3f(result[3], result[6],
+        result[9], result[4], result[7], result[10], result[5], result[8], result[11]));
+  }
+
+  /**
+   * @return the eigenvalues, largest first.
+   */
+  public Vector3f getValues() {
+    return values;
+  }
+
+  /**
+   * @return the eigenvectors, as the columns of a rotation matrix, in the
+   *         order of the eigenvalues.
+   */
+  public Matrix3f getVectors() {
+    return vectors;
+  }
+
+  public Vector3f getVector(int i) {
+    return vectors.getColumn(i);
+  }
+
+  /**
+   * <code>decompose</code> finds the eigenvalues and eigenvectors of the
+   * symmetric matrix with the given upper triangle, without creating any
+   * objects for the result.
+   *
+   * @param result
+   *          receives the three eigenvalues in descending order, followed by
+   *          the three matching unit eigenvectors, x, y, z each, which form a
+   *          right handed basis.
+   */
+  public static void decompose(float a00, float a01, float a02, float a11, float a12, float a22,
+      float[] result) {
+    double[] a = { a00, a01, a02, a01, a11, a12, a02, a12, a22 };
+    double[] v = new double[9];
+    jacobi(a, v);
+
+    // sort the eigenvalues, with their vectors, largest first
+    int i0 = 0, i1 = 1, i2 = 2, t;
+    if (a[i0 * 4] < a[i1 * 4]) {
+      t = i0;
+      i0 = i1;
+      i1 = t;
+    }
+    if (a[i1 * 4] < a[i2 * 4]) {
+      t = i1;
+      i1 = i2;
+      i2 = t;
+    }
+    if (a[i0 * 4] < a[i1 * 4]) {
+      t = i0;
+      i0 = i1;
+      i1 = t;
+    }
+    result[0] = (float) a[i0 * 4];
+    result[1] = (float) a[i1 * 4];
+    result[2] = (float) a[i2 * 4];
+    // the vectors are the columns of v
+    result[3] = (float) v[i0];
+    result[4] = (float) v[3 + i0];
+    result[5] = (float) v[6 + i0];
+    result[6] = (float) v[i1];
+    result[7] = (float) v[3 + i1];
+    result[8] = (float) v[6 + i1];
+    // the third is the cross product of the first two, which makes the basis
+    // right handed, and is the same vector up to sign
+    double x = v[3 + i0] * v[6 + i1] - v[6 + i0] * v[3 + i1];
+    double y = v[6 + i0] * v[i1] - v[i0] * v[6 + i1];
+    double z = v[i0] * v[3 + i1] - v[3 + i0] * v[i1];
+    result[9] = (float) x;
+    result[10] = (float) y;
+    result[11] = (float) z;
+  }
+
+  /**
+   * Diagonalizes a symmetric matrix in place with Jacobi rotations, storing
+   * the rotation, whose columns are the eigenvectors, in <code>v</code>. Both
+   * are row major. The eigenvalues are left on the diagonal, unsorted.
+   */
+  static void jacobi(double[] a, double[] v) {
+    v[0] = v[4] = v[8] = 1;
+    v[1] = v[2] = v[3] = v[5] = v[6] = v[7] = 0;
+    double scale = 0;
+    for (double d : a) {
+      scale += Math.abs(d);
+    }
+    for (int sweep = 0; sweep < MAX_SWEEPS; ++sweep) {
+      double off = Math.abs(a[1]) + Math.abs(a[2]) + Math.abs(a[5]);
+      if (!(off > scale * 1e-17)) {
+        break;
+      }
+      rotate(a, v, 0, 1);
+      rotate(a, v, 0, 2);
+      rotate(a, v, 1, 2);
+    }
+  }
+
+  // applies the Jacobi rotation zeroing a[p][q] to a, and accumulates it in v
+  private static void rotate(double[] a, double[] v, int p, int q) {
+    double apq = a[p * 3 + q];
+    if (apq == 0) {
+      return;
+    }
+    double theta = (a[q * 4] - a[p * 4]) / (2 * apq);
+    // the tangent of the rotation angle, the smaller root of t^2 + 2 t theta = 1
+    double root = Math.sqrt(theta * theta + 1);
+    double t = theta >= 0 ? 1 / (theta + root) : -1 / (root - theta);
+    double c = 1 / Math.sqrt(t * t + 1);
+    double s = t * c;
+    for (int k = 0; k < 3; ++k) {
+      double akp = a[k * 3 + p], akq = a[k * 3 + q];
+      a[k * 3 + p] = c * akp - s * akq;
+      a[k * 3 + q] = s * akp + c * akq;
+    }
+    for (int k = 0; k < 3; ++k) {
+      double apk = a[p * 3 + k], aqk = a[q * 3 + k];
+      a[p * 3 + k] = c * apk - s * aqk;
+      a[q * 3 + k] = s * apk + c * aqk;
+    }
+    a[p * 3 + q] = a[q * 3 + p] = 0;
+    for (int k = 0; k < 3; ++k) {
+      double vkp = v[k * 3 + p], vkq = v[k * 3 + q];
+      v[k * 3 + p] = c * vkp - s * vkq;
+      v[k * 3 + q] = s * vkp + c * vkq;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Hilbert</code> encodes integer grid coordinates as distances along a
+ * Hilbert curve. Unlike a {@link Morton} code, consecutive distances are
+ * always neighboring cells, so runs of a sorted array cover more compact
+ * regions, at the cost of a few more operations per code.
+ *
+ * The coordinates are turned into the transposed form of the distance with
+ * Skilling's method (J. Skilling, "Programming the Hilbert curve", 2004),
+ * and the bits of the transposed form are then interleaved with the same
+ * shifts and masks as a Morton code. A curve of order <code>n</code> covers
+ * coordinates in [0, 2^n), of which only the low <code>n</code> bits are
+ * used, with orders up to 31 in two dimensions and 21 in three.
+ *
+ * @author Brad Davis
+ */
+public final class Hilbert {
+  private Hilbert() {
+  }
+
+  private static void checkOrder(int order, int max) {
+    if (order < 1 || order > max) {
+      throw new IllegalArgumentException("Invalid order. " + order);
+    }
+  }
+
+  public static long encode(int x, int y, int order) {
+    checkOrder(order, 31);
+    int mask = (1 << order) - 1;
+    int x0 = x & mask, x1 = y & mask;
+    int m = 1 << (order - 1);
+    // undo the rotations and reflections of each level
+    for (int q = m; q > 1; q >>>= 1) {
+      int p = q - 1;
+      if ((x0 & q) != 0) {
+        x0 ^= p;
+      }
+      if ((x1 & q) != 0) {
+        x0 ^= p;
+      } else {
+        int t = (x0 ^ x1) & p;
+        x0 ^= t;
+        x1 ^= t;
+      }
+    }
+    // gray encode
+    x1 ^= x0;
+    int t = 0;
+    for (int q = m; q > 1; q >>>= 1) {
+      if ((x1 & q) != 0) {
+        t ^= q - 1;
+      }
+    }
+    x0 ^= t;
+    x1 ^= t;
+    return Morton.spread2(x1) | Morton.spread2(x0) << 1;
+  }
+
+  public static Vector2i decode(long distance, int order) {
+    checkOrder(order, 31);
+    int x0 = Morton.compact2(distance >>> 1);
+    int x1 = Morton.compact2(distance);
+    int n = 1 << order;
+    // gray decode
+    int t = x1 >>> 1;
+    x1 ^= x0;
+    x0 ^= t;
+    // redo the rotations and reflections of each level
+    for (int q = 2; q != n; q <<= 1) {
+      int p = q - 1;
+      if ((x1 & q) != 0) {
+        x0 ^= p;
+      } else {
+        t = (x0 ^ x1) & p;
+        x0 ^= t;
+        x1 ^= t;
+      }
+      if ((x0 & q) != 0) {
+        x0 ^= p;
+      }
+    }
+    return new Vector2i(x0, x1);
+  }
+
+  public static long encode(int x, int y, int z, int order) {
+    checkOrder(order, Morton.BITS_3D);
+    int mask = (1 << order) - 1;
+    int x0 = x & mask, x1 = y & mask, x2 = z & mask;
+    int m = 1 << (order - 1);
+    for (int q = m; q > 1; q >>>= 1) {
+      int p = q - 1;
+      if ((x0 & q) != 0) {
+        x0 ^= p;
+      }
+      if ((x1 & q) != 0) {
+        x0 ^= p;
+      } else {
+        int t = (x0 ^ x1) & p;
+        x0 ^= t;
+        x1 ^= t;
+      }
+      if ((x2 & q) != 0) {
+        x0 ^= p;
+      } else {
+        int t = (x0 ^ x2) & p;
+        x0 ^= t;
+        x2 ^= t;
+      }
+    }
+    x1 ^= x0;
+    x2 ^= x1;
+    int t = 0;
+    for (int q = m; q > 1; q >>>= 1) {
+      if ((x2 & q) != 0) {
+        t ^= q - 1;
+      }
+    }
+    x0 ^= t;
+    x1 ^= t;
+    x2 ^= t;
+    return Morton.spread3(x2) | Morton.spread3(x1) << 1 | Morton.spread3(x0) << 2;
+  }
+
+  public static Vector3i decode3(long distance, int order) {
+    checkOrder(order, Morton.BITS_3D);
+    int x0 = Morton.compact3(distance >>> 2);
+    int x1 = Morton.compact3(distance >>> 1);
+    int x2 = Morton.compact3(distance);
+    int n = 1 << order;
+    int t = x2 >>> 1;
+    x2 ^= x1;
+    x1 ^= x0;
+    x0 ^= t;
+    for (int q = 2; q != n; q <<= 1) {
+      int p = q - 1;
+      if ((x2 & q) != 0) {
+        x0 ^= p;
+      } else {
+        t = (x0 ^ x2) & p;
+        x0 ^= t;
+        x2 ^= t;
+      }
+      if ((x1 & q) != 0) {
+        x0 ^= p;
+      } else {
+        t = (x0 ^ x1) & p;
+        x0 ^= t;
+        x1 ^= t;
+      }
+      if ((x0 & q) != 0) {
+        x0 ^= p;
+      }
+    }
+    return new Vector3i(x0, x1, x2);
+  }
+}
@@ -0,0 +1,603 @@
+package org.saintandreas.math;
+
+/**
+ * <code>IkChain</code> is a chain of bones, such as an arm, leg or spine,
+ * posed by inverse kinematics. Three solvers are provided: an analytic two
+ * bone solver, cyclic coordinate descent (CCD) and FABRIK.
+ *
+ * Each bone has a joint with a rotation relative to its parent, and an offset
+ * from its joint to the next, in the joint's frame, which is the bone when
+ * the rotation is identity. The first joint is at the root, which has a
+ * position and rotation of its own, and the end of the last bone is the end
+ * effector. A joint's rotation can be limited by a {@link SwingTwistLimit},
+ * such as a swing cone about the bone and a range of twist around it.
+ *
+ * Offsets, rotations and the joint positions and world rotations derived
+ * from them are kept in flat arrays, with scratch space allocated up front,
+ * so the solvers allocate nothing as they iterate. They stop as soon as the
+ * end effector is within a tolerance of the target or stops getting closer.
+ * The batch forms solve many chains, such as one per character, in parallel.
+ *
+ * @author Brad Davis
+ */
+public final class IkChain {
+  private static final int CHUNK_SIZE = 16;
+  private static final float EPSILON = 1e-6f;
+  // the least improvement in distance an iteration must make, relative to
+  // the tolerance
+  private static final float STALL = 1e-2f;
+
+  private final int bones;
+  // per bone: the offset to the next joint, and its direction and length
+  final float[] offsets;
+  final float[] axes;
+  final float[] lengths;
+  // per bone: the joint limits, or null
+  final SwingTwistLimit[] limits;
+  // per bone: the joint rotation relative to its parent, x, y, z, w
+  final float[] rotations;
+  // derived by forward kinematics: the world rotation of each bone and the
+  // position of each joint, the last being the end effector
+  final float[] world;
+  final float[] positions;
+  private final float[] root = { 0, 0, 0, 1 };
+  // scratch space for the solvers
+  private final float[] targets;
+  private final float[] delta = new float[4];
+
+  /**
+   * Creates a chain in its rest pose, with unlimited joints and the root at
+   * the origin.
+   *
+   * @param offsets
+   *          the offset of each bone, x, y, z, from <code>offset</code>.
+   * @param bones
+   *          the number of bones.
+   */
+  public IkChain(float[] offsets, int offset, int bones) {
+    if (bones < 1) {
+      throw new IllegalArgumentException("Invalid bone count. " + bones);
+    }
+    this.bones = bones;
+    this.offsets = new float[bones * 3];
+    axes = new float[bones * 3];
+    lengths = new float[bones];
+    limits = new SwingTwistLimit[bones];
+    rotations = new float[bones * 4];
+    world = new float[bones * 4];
+    positions = new float[(bones + 1) * 3];
+    targets = new float[(bones + 1) * 3];
+    for (int i = 0; i < bones; ++i) {
+      setBone(i, offsets[offset + i * 3], offsets[offset + i * 3 + 1], offsets[offset + i * 3 + 2]);
+      rotations[i * 4 + 3] = 1;
+    }
+    update();
+  }
+
+  public IkChain(Vector3f... offsets) {
+    this(flatten(offsets), 0, offsets.length);
+  }
+
+  private static float[] flatten(Vector3f[] vectors) {
+    float[] result = new float[vectors.length * 3];
+    for (int i = 0; i < vectors.length; ++i) {
+      result[i * 3] = vectors[i].x;
+      result[i * 3 + 1] = vectors[i].y;
+      result[i * 3 + 2] = vectors[i].z;
+    }
+    return result;
+  }
+
+  public int getBoneCount() {
+    return bones;
+  }
+
+  /**
+   * Sets the offset of a bone's end from its joint, in the joint's frame.
+   */
+  public void setBone(int bone, float x, float y, float z) {
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    if (!(length > EPSILON)) {
+      throw new IllegalArgumentException("Invalid bone offset. " + new Vector3f(x, y, z));
+    }
+    int i = bone * 3;
+    offsets[i] = x;
+    offsets[i + 1] = y;
+    offsets[i + 2] = z;
+    axes[i] = x / length;
+    axes[i + 1] = y / length;
+    axes[i + 2] = z / length;
+    lengths[bone] = length;
+  }
+
+  public float getLength(int bone) {
+    return lengths[bone];
+  }
+
+  /**
+   * Limits the rotation of a bone's joint, relative to the rest pose, to a
+   * swing cone about the bone's current offset and a range of twist around
+   * it.
+   *
+   * @param swing
+   *          the greatest angle between the bone and its rest direction, from
+   *          0 to PI.
+   * @param minTwist
+   *          the least angle of twist about the bone, from -PI.
+   * @param maxTwist
+   *          the greatest angle of twist about the bone, up to PI.
+   */
+  public void setLimits(int bone, float swing, float minTwist, float maxTwist) {
+    int i = bone * 3;
+    setLimits(bone, SwingTwistLimit.cone(new Vector3f(axes[i], axes[i + 1], axes[i + 2]), swing, minTwist,
+        maxTwist));
+  }
+
+  /**
+   * Limits the rotation of a bone's joint, relative to the rest pose, or
+   * removes the limits if <code>limit</code> is null. The twist axis should
+   * normally be the bone's offset.
+   */
+  public void setLimits(int bone, SwingTwistLimit limit) {
+    limits[bone] = limit;
+  }
+
+  public SwingTwistLimit getLimits(int bone) {
+    return limits[bone];
+  }
+
+  public void clearLimits(int bone) {
+    limits[bone] = null;
+  }
+
+  /**
+   * Sets the position and rotation of the root, which the first joint is
+   * relative to.
+   */
+  public void setRoot(Vector3f position, Quaternion rotation) {
+    positions[0] = position.x;
+    positions[1] = position.y;
+    positions[2] = position.z;
+    root[0] = rotation.x;
+    root[1] = rotation.y;
+    root[2] = rotation.z;
+    root[3] = rotation.w;
+    update();
+  }
+
+  /**
+   * Sets the rotation of a bone's joint, relative to its parent. The
+   * rotation is not limited.
+   */
+  public void setRotation(int bone, Quaternion rotation) {
+    int i = bone * 4;
+    rotations[i] = rotation.x;
+    rotations[i + 1] = rotation.y;
+    rotations[i + 2] = rotation.z;
+    rotations[i + 3] = rotation.w;
+    update(bone, bones);
+  }
+
+  /**
+   * @return the rotation of a bone's joint, relative to its parent.
+   */
+  public Quaternion getRotation(int bone) {
+    int i = bone * 4;
+    return new Quaternion(rotations[i], rotations[i + 1], rotations[i + 2], rotations[i + 3]);
+  }
+
+  public Quaternion getWorldRotation(int bone) {
+    int i = bone * 4;
+    return new Quaternion(world[i], world[i + 1], world[i + 2], world[i + 3]);
+  }
+
+  /**
+   * @return the position of a joint, from 0 at the root to the bone count at
+   *         the end effector.
+   */
+  public Vector3f getPosition(int joint) {
+    int i = joint * 3;
+    return new Vector3f(positions[i], positions[i + 1], positions[i + 2]);
+  }
+
+  public Vector3f getEffector() {
+    return getPosition(bones);
+  }
+
+  /**
+   * <code>update</code> recomputes the world rotations and joint positions
+   * from the joint rotations.
+   */
+  public void update() {
+    update(0, bones);
+  }
+
+  // forward kinematics for the bones from first up to, not including, last
+  private void update(int first, int last) {
+    for (int i = first; i < last; ++i) {
+      if (i == 0) {
+        mult(root, 0, rotations, 0, world, 0);
+      } else {
+        mult(world, i * 4 - 4, rotations, i * 4, world, i * 4);
+      }
+      rotate(world, i * 4, offsets[i * 3], offsets[i * 3 + 1], offsets[i * 3 + 2], positions, i * 3 + 3);
+      positions[i * 3 + 3] += positions[i * 3];
+      positions[i * 3 + 4] += positions[i * 3 + 1];
+      positions[i * 3 + 5] += positions[i * 3 + 2];
+    }
+  }
+
+  private float distance(float x, float y, float z) {
+    int e = bones * 3;
+    float dx = x - positions[e], dy = y - positions[e + 1], dz = z - positions[e + 2];
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * <code>solveTwoBone</code> poses the first two bones analytically, so that
+   * the end of the second reaches the target or, if it is out of reach,
+   * points at it. The bones bend in the plane of the target and the pole.
+   * Joint limits are not applied, and any further bones follow rigidly.
+   *
+   * @return the remaining distance from the end of the second bone to the
+   *         target.
+   */
+  public float solveTwoBone(float tx, float ty, float tz, float px, float py, float pz) {
+    checkTwoBone();
+    update(0, 2);
+    float ax = positions[0], ay = positions[1], az = positions[2];
+    float l0 = lengths[0], l1 = lengths[1];
+    float dx = tx - ax, dy = ty - ay, dz = tz - az;
+    float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (distance < EPSILON) {
+      // keep the current direction to the end of the second bone
+      dx = positions[6] - ax;
+      dy = positions[7] - ay;
+      dz = positions[8] - az;
+      float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+      if (length < EPSILON) {
+        dx = axes[0];
+        dy = axes[1];
+        dz = axes[2];
+        length = 1;
+      }
+      dx /= length;
+      dy /= length;
+      dz /= length;
+    } else {
+      dx /= distance;
+      dy /= distance;
+      dz /= distance;
+    }
+    float reach = Math.max(Math.min(Math.max(distance, Math.abs(l0 - l1)), l0 + l1), EPSILON);
+
+    // the bend direction, perpendicular to the target direction, towards the
+    // pole, or else towards the middle joint, or else anywhere
+    float nx = px - ax, ny = py - ay, nz = pz - az;
+    float length = perpendicular(dx, dy, dz, nx, ny, nz);
+    if (length < EPSILON) {
+      nx = positions[3] - ax;
+      ny = positions[4] - ay;
+      nz = positions[5] - az;
+      length = perpendicular(dx, dy, dz, nx, ny, nz);
+    }
+    if (length < EPSILON) {
+      if (Math.abs(dx) < 0.9f) {
+        nx = 1;
+        ny = nz = 0;
+      } else {
+        ny = 1;
+        nx = nz = 0;
+      }
+      length = perpendicular(dx, dy, dz, nx, ny, nz);
+    }
+    float s = (nx * dx + ny * dy + nz * dz);
+    nx = (nx - dx * s) / length;
+    ny = (ny - dy * s) / length;
+    nz = (nz - dz * s) / length;
+
+    // the angle at the root, by the law of cosines
+    float cos = FastMath.clamp((l0 * l0 + reach * reach - l1 * l1) / (2 * l0 * reach), -1, 1);
+    float sin = (float) Math.sqrt(1 - cos * cos);
+    aim(0, ax + l0 * (cos * dx + sin * nx), ay + l0 * (cos * dy + sin * ny), az + l0 * (cos * dz + sin * nz),
+        false);
+    update(1, 2);
+    aim(1, ax + dx * reach, ay + dy * reach, az + dz * reach, false);
+    update(2, bones);
+    dx = tx - positions[6];
+    dy = ty - positions[7];
+    dz = tz - positions[8];
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * <code>solveTwoBone</code> poses the first two bones analytically.
+   *
+   * @param pole
+   *          a point the middle joint should bend towards, or null to keep
+   *          the current bend.
+   * @see #solveTwoBone(float, float, float, float, float, float)
+   */
+  public float solveTwoBone(Vector3f target, Vector3f pole) {
+    if (pole == null) {
+      checkTwoBone();
+      update(0, 2);
+      return solveTwoBone(target.x, target.y, target.z, positions[3], positions[4], positions[5]);
+    }
+    return solveTwoBone(target.x, target.y, target.z, pole.x, pole.y, pole.z);
+  }
+
+  private void checkTwoBone() {
+    if (bones < 2) {
+      throw new IllegalStateException("Invalid bone count for two bone IK. " + bones);
+    }
+  }
+
+  // the length of v less its projection on the unit vector d
+  private static float perpendicular(float dx, float dy, float dz, float vx, float vy, float vz) {
+    float s = dx * vx + dy * vy + dz * vz;
+    vx -= dx * s;
+    vy -= dy * s;
+    vz -= dz * s;
+    return (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+  }
+
+  /**
+   * <code>solveCcd</code> poses the chain by cyclic coordinate descent,
+   * rotating each joint in turn, from the end effector back to the root, to
+   * point the end effector at the target, within its limits.
+   *
+   * @return the remaining distance from the end effector to the target.
+   */
+  public float solveCcd(float tx, float ty, float tz, int maxIterations, float tolerance) {
+    update();
+    float distance = distance(tx, ty, tz);
+    int e = bones * 3;
+    for (int iteration = 0; iteration < maxIterations && distance > tolerance; ++iteration) {
+      for (int i = bones - 1; i >= 0; --i) {
+        int p = i * 3;
+        float x = positions[p], y = positions[p + 1], z = positions[p + 2];
+        rotate(i, positions[e] - x, positions[e + 1] - y, positions[e + 2] - z, tx - x, ty - y, tz - z, true);
+        update(i + 1, bones);
+      }
+      float last = distance;
+      distance = distance(tx, ty, tz);
+      if (last - distance < tolerance * STALL) {
+        break;
+      }
+    }
+    return distance;
+  }
+
+  public float solveCcd(Vector3f target, int maxIterations, float tolerance) {
+    return solveCcd(target.x, target.y, target.z, maxIterations, tolerance);
+  }
+
+  /**
+   * <code>solveFabrik</code> poses the chain by forward and backward reaching
+   * inverse kinematics. Each iteration places the joints along the line from
+   * the target back to the root, then from the root out, aims each bone at
+   * its placed joint within its limits, which also restores the root and the
+   * bone lengths.
+   *
+   * @return the remaining distance from the end effector to the target.
+   */
+  public float solveFabrik(float tx, float ty, float tz, int maxIterations, float tolerance) {
+    update();
+    float distance = distance(tx, ty, tz);
+    int e = bones * 3;
+    for (int iteration = 0; iteration < maxIterations && distance > tolerance; ++iteration) {
+      targets[e] = tx;
+      targets[e + 1] = ty;
+      targets[e + 2] = tz;
+      for (int i = bones - 1; i > 0; --i) {
+        int p = i * 3;
+        float dx = positions[p] - targets[p + 3], dy = positions[p + 1] - targets[p + 4],
+            dz = positions[p + 2] - targets[p + 5];
+        float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < EPSILON) {
+          // the joint is on its placed child, so keep the bone's direction
+          dx = positions[p] - positions[p + 3];
+          dy = positions[p + 1] - positions[p + 4];
+          dz = positions[p + 2] - positions[p + 5];
+          length = lengths[i];
+        }
+        dx /= length;
+        dy /= length;
+        dz /= length;
+        if (i + 1 < bones && limits[i + 1] != null && limits[i + 1].getMaxSwing() < FastMath.PI) {
+          // keep the bend at the placed child within its swing limit, loosened
+          // by the angle between the bones at rest, so the forward pass
+          // doesn't leave all the bend to the last joints
+          int c = p + 3;
+          float cx = (targets[c + 3] - targets[c]) / lengths[i + 1];
+          float cy = (targets[c + 4] - targets[c + 1]) / lengths[i + 1];
+          float cz = (targets[c + 5] - targets[c + 2]) / lengths[i + 1];
+          float rest = axes[p] * axes[p + 3] + axes[p + 1] * axes[p + 4] + axes[p + 2] * axes[p + 5];
+          float max = limits[i + 1].getMaxSwing() + FastMath.acos(FastMath.clamp(rest, -1, 1));
+          // the bone points away from the joint, opposite to d
+          float cos = -(dx * cx + dy * cy + dz * cz);
+          if (max < FastMath.PI && cos < FastMath.cos(max)) {
+            float ox = -dx - cx * cos, oy = -dy - cy * cos, oz = -dz - cz * cos;
+            float o = (float) Math.sqrt(ox * ox + oy * oy + oz * oz);
+            if (o > EPSILON) {
+              float sin = FastMath.sin(max) / o;
+              cos = FastMath.cos(max);
+              dx = -(cx * cos + ox * sin);
+              dy = -(cy * cos + oy * sin);
+              dz = -(cz * cos + oz * sin);
+            }
+          }
+        }
+        targets[p] = targets[p + 3] + dx * lengths[i];
+        targets[p + 1] = targets[p + 4] + dy * lengths[i];
+        targets[p + 2] = targets[p + 5] + dz * lengths[i];
+      }
+      for (int i = 0; i < bones; ++i) {
+        update(i, i + 1);
+        aim(i, targets[i * 3 + 3], targets[i * 3 + 4], targets[i * 3 + 5], true);
+      }
+      float last = distance;
+      distance = distance(tx, ty, tz);
+      if (last - distance < tolerance * STALL) {
+        break;
+      }
+    }
+    return distance;
+  }
+
+  public float solveFabrik(Vector3f target, int maxIterations, float tolerance) {
+    return solveFabrik(target.x, target.y, target.z, maxIterations, tolerance);
+  }
+
+  // rotates a bone so that its end points at the given point
+  private void aim(int bone, float x, float y, float z, boolean limit) {
+    int p = bone * 3;
+    float bx = positions[p], by = positions[p + 1], bz = positions[p + 2];
+    rotate(bone, positions[p + 3] - bx, positions[p + 4] - by, positions[p + 5] - bz, x - bx, y - by, z - bz,
+        limit);
+  }
+
+  // rotates a bone's joint by the world rotation taking u to v, optionally
+  // limits it, and updates the bone
+  private void rotate(int bone, float ux, float uy, float uz, float vx, float vy, float vz, boolean limit) {
+    if (!arc(ux, uy, uz, vx, vy, vz, delta)) {
+      return;
+    }
+    int q = bone * 4;
+    mult(delta, 0, world, q, delta, 0);
+    // the joint rotation is the new world rotation relative to the parent's
+    if (bone == 0) {
+      multConjugate(root, 0, delta, 0, rotations, q);
+    } else {
+      multConjugate(world, q - 4, delta, 0, rotations, q);
+    }
+    normalize(rotations, q);
+    if (limit && limits[bone] != null) {
+      limits[bone].clamp(rotations, q);
+    }
+    update(bone, bone + 1);
+  }
+
+  // the shortest rotation taking the direction of u to that of v
+  private static boolean arc(float ux, float uy, float uz, float vx, float vy, float vz, float[] result) {
+    float l = (float) Math.sqrt((ux * ux + uy * uy + uz * uz) * (vx * vx + vy * vy + vz * vz));
+    if (!(l > EPSILON * EPSILON)) {
+      return false;
+    }
+    float w = l + ux * vx + uy * vy + uz * vz;
+    float x, y, z;
+    if (w < EPSILON * l) {
+      // opposite directions, so turn half way around any perpendicular axis
+      if (Math.abs(ux) < Math.abs(uz)) {
+        x = 0;
+        y = -uz;
+        z = uy;
+      } else {
+        x = -uy;
+        y = ux;
+        z = 0;
+      }
+      w = 0;
+    } else {
+      x = uy * vz - uz * vy;
+      y = uz * vx - ux * vz;
+      z = ux * vy - uy * vx;
+    }
+    float n = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    result[0] = x / n;
+    result[1] = y / n;
+    result[2] = z / n;
+    result[3] = w / n;
+    return true;
+  }
+
+  // renormalizes the quaternion at i, against drift from repeated products
+  private static void normalize(float[] q, int i) {
+    float n = 1
+        / (float) Math.sqrt(q[i] * q[i] + q[i + 1] * q[i + 1] + q[i + 2] * q[i + 2] + q[i + 3] * q[i + 3]);
+    q[i] *= n;
+    q[i + 1] *= n;
+    q[i + 2] *= n;
+    q[i + 3] *= n;
+  }
+
+  // r = a b, where r may be either
+  private static void mult(float[] a, int ai, float[] b, int bi, float[] r, int ri) {
+    float ax = a[ai], ay = a[ai + 1], az = a[ai + 2], aw = a[ai + 3];
+    float bx = b[bi], by = b[bi + 1], bz = b[bi + 2], bw = b[bi + 3];
+    r[ri] = aw * bx + ax * bw + ay * bz - az * by;
+    r[ri + 1] = aw * by + ay * bw + az * bx - ax * bz;
+    r[ri + 2] = aw * bz + az * bw + ax * by - ay * bx;
+    r[ri + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  // r = a* b, for a unit quaternion a, where r may be b
+  private static void multConjugate(float[] a, int ai, float[] b, int bi, float[] r, int ri) {
+    float ax = -a[ai], ay = -a[ai + 1], az = -a[ai + 2], aw = a[ai + 3];
+    float bx = b[bi], by = b[bi + 1], bz = b[bi + 2], bw = b[bi + 3];
+    r[ri] = aw * bx + ax * bw + ay * bz - az * by;
+    r[ri + 1] = aw * by + ay * bw + az * bx - ax * bz;
+    r[ri + 2] = aw * bz + az * bw + ax * by - ay * bx;
+    r[ri + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  // r = q v q*, for a unit quaternion q
+  private static void rotate(float[] q, int qi, float vx, float vy, float vz, float[] r, int ri) {
+    float x = q[qi], y = q[qi + 1], z = q[qi + 2], w = q[qi + 3];
+    float tx = 2 * (y * vz - z * vy), ty = 2 * (z * vx - x * vz), tz = 2 * (x * vy - y * vx);
+    r[ri] = vx + w * tx + y * tz - z * ty;
+    r[ri + 1] = vy + w * ty + z * tx - x * tz;
+    r[ri + 2] = vz + w * tz + x * ty - y * tx;
+  }
+
+  /**
+   * <code>solveTwoBone</code> solves many chains analytically, in parallel.
+   *
+   * @param targets
+   *          the target of each chain, x, y, z.
+   * @param poles
+   *          the pole of each chain, x, y, z, or null to keep the current
+   *          bends.
+   */
+  public static void solveTwoBone(final IkChain[] chains, final float[] targets, final float[] poles,
+      int count) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> {
+      IkChain chain = chains[i];
+      if (poles == null) {
+        chain.update(0, 2);
+        chain.solveTwoBone(targets[i * 3], targets[i * 3 + 1], targets[i * 3 + 2], chain.positions[3],
+            chain.positions[4], chain.positions[5]);
+      } else {
+        chain.solveTwoBone(targets[i * 3], targets[i * 3 + 1], targets[i * 3 + 2], poles[i * 3],
+            poles[i * 3 + 1], poles[i * 3 + 2]);
+      }
+    });
+  }
+
+  /**
+   * <code>solveCcd</code> solves many chains by cyclic coordinate descent, in
+   * parallel. The chains must be distinct objects.
+   *
+   * @param targets
+   *          the target of each chain, x, y, z.
+   */
+  public static void solveCcd(final IkChain[] chains, final float[] targets, int count,
+      final int maxIterations, final float tolerance) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> chains[i].solveCcd(targets[i * 3], targets[i * 3 + 1],
+        targets[i * 3 + 2], maxIterations, tolerance));
+  }
+
+  /**
+   * <code>solveFabrik</code> solves many chains by FABRIK, in parallel. The
+   * chains must be distinct objects.
+   *
+   * @param targets
+   *          the target of each chain, x, y, z.
+   */
+  public static void solveFabrik(final IkChain[] chains, final float[] targets, int count,
+      final int maxIterations, final float tolerance) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> chains[i].solveFabrik(targets[i * 3], targets[i * 3 + 1],
+        targets[i * 3 + 2], maxIterations, tolerance));
+  }
+}
@@ -0,0 +1,502 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>KdTree3f</code> is a static, balanced k-d tree over a set of points
+ * for nearest neighbor, radius and bounding box queries.
+ *
+ * The tree is stored implicitly. The points are reordered so that the node
+ * for the range [lo, hi) is the median element (lo + hi) / 2, with its left
+ * subtree in [lo, median) and its right subtree in (median, hi). No node
+ * objects or child pointers are stored, only the reordered coordinates, the
+ * original index of each point and the split axis of each node. Each range is
+ * split on the axis with the largest extent, and large ranges are split in
+ * parallel. Small ranges are not split at all but scanned as a leaf bucket,
+ * which keeps the last levels of a query within a few cache lines.
+ *
+ * Queries write their results into caller supplied arrays and never allocate,
+ * and since the tree is immutable once built they may be run from any number
+ * of threads at once.
+ *
+ * @author Brad Davis
+ */
+public final class KdTree3f {
+  // ranges smaller than this are split on the calling thread
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+  // ranges this small are left unsorted and scanned linearly
+  private static final int LEAF_SIZE = 8;
+
+  private final float[] points;
+  private final int[] indices;
+  private final byte[] axes;
+
+  private KdTree3f(float[] points) {
+    int count = points.length / 3;
+    this.points = points;
+    this.indices = new int[count];
+    this.axes = new byte[count];
+    for (int i = 0; i < count; ++i) {
+      indices[i] = i;
+    }
+    if (count < PARALLEL_THRESHOLD) {
+      new Build(0, count).compute();
+    } else {
+      ForkJoinPool.commonPool().invoke(new Build(0, count));
+    }
+  }
+
+  /**
+   * Builds a tree over the given points. The array is copied.
+   *
+   * @param xyz
+   *          packed x, y, z triples.
+   */
+  public static KdTree3f build(float[] xyz) {
+    if (xyz.length % 3 != 0) {
+      throw new IllegalArgumentException("Array length must be a multiple of 3");
+    }
+    return new KdTree3f(xyz.clone());
+  }
+
+  /**
+   * Builds a tree over the remaining points in the buffer. The buffer position
+   * is not changed.
+   *
+   * @param xyz
+   *          packed x, y, z triples.
+   */
+  public static KdTree3f build(FloatBuffer xyz) {
+    if (xyz.remaining() % 3 != 0) {
+      throw new IllegalArgumentException("Buffer remaining must be a multiple of 3");
+    }
+    float[] copy = new float[xyz.remaining()];
+    xyz.duplicate().get(copy);
+    return new KdTree3f(copy);
+  }
+
+  /**
+   * Builds a tree over the given points.
+   */
+  public static KdTree3f build(Vector3f[] points) {
+    float[] copy = new float[points.length * 3];
+    for (int i = 0; i < points.length; ++i) {
+      copy[i * 3] = points[i].x;
+      copy[i * 3 + 1] = points[i].y;
+      copy[i * 3 + 2] = points[i].z;
+    }
+    return new KdTree3f(copy);
+  }
+
+  /**
+   * @return the number of points in the tree.
+   */
+  public int size() {
+    return indices.length;
+  }
+
+  /**
+   * <code>nearest</code> finds the closest point to the query position.
+   *
+   * @return the index of the closest point, or -1 if the tree is empty.
+   */
+  public int nearest(float x, float y, float z) {
+    if (indices.length == 0) {
+      return -1;
+    }
+    int best = nearest(0, indices.length, x, y, z, 0,
+        distanceSquared(0, x, y, z));
+    return indices[best];
+  }
+
+  public int nearest(Vector3f v) {
+    return nearest(v.x, v.y, v.z);
+  }
+
+  /**
+   * <code>nearest</code> finds the <code>k</code> closest points to the query
+   * position, where <code>k</code> is the length of <code>result</code>.
+   *
+   * @param result
+   *          receives the indices of the closest points, nearest first.
+   * @param distancesSquared
+   *          receives the squared distances of the closest points. Must be at
+   *          least as long as <code>result</code>.
+   * @return the number of points found, which is less than k only if the tree
+   *         holds fewer than k points.
+   */
+  public int nearest(float x, float y, float z, int[] result,
+      float[] distancesSquared) {
+    int k = result.length;
+    if (distancesSquared.length < k) {
+      throw new IllegalArgumentException("Distance array is too small");
+    }
+    if (k == 0) {
+      return 0;
+    }
+    // gather the k best into a max-heap on the distances, then sort it
+    int count = nearest(0, indices.length, x, y, z, k, 0, result,
+        distancesSquared);
+    for (int end = count - 1; end > 0; --end) {
+      swap(result, distancesSquared, 0, end);
+      siftDown(result, distancesSquared, 0, end);
+    }
+    for (int i = 0; i < count; ++i) {
+      result[i] = indices[result[i]];
+    }
+    return count;
+  }
+
+  public int nearest(Vector3f v, int[] result, float[] distancesSquared) {
+    return nearest(v.x, v.y, v.z, result, distancesSquared);
+  }
+
+  /**
+   * <code>withinRadius</code> finds every point no further than
+   * <code>radius</code> from the query position, in no particular order.
+   *
+   * @param result
+   *          receives the indices of the points found. If there are more
+   *          points than the array can hold the excess is counted but not
+   *          stored.
+   * @return the number of points found.
+   */
+  public int withinRadius(float x, float y, float z, float radius, int[] result) {
+    return withinRadius(0, indices.length, x, y, z, radius * radius, result, 0);
+  }
+
+  public int withinRadius(Vector3f v, float radius, int[] result) {
+    return withinRadius(v.x, v.y, v.z, radius, result);
+  }
+
+  /**
+   * <code>withinBox</code> finds every point inside the given axis aligned
+   * box, bounds inclusive, in no particular order.
+   *
+   * @param result
+   *          receives the indices of the points found. If there are more
+   *          points than the array can hold the excess is counted but not
+   *          stored.
+   * @return the number of points found.
+   */
+  public int withinBox(float minX, float minY, float minZ, float maxX,
+      float maxY, float maxZ, int[] result) {
+    return withinBox(0, indices.length, minX, minY, minZ, maxX, maxY, maxZ,
+        result, 0);
+  }
+
+  public int withinBox(Vector3f min, Vector3f max, int[] result) {
+    return withinBox(min.x, min.y, min.z, max.x, max.y, max.z, result);
+  }
+
+  private float distanceSquared(int slot, float x, float y, float z) {
+    float dx = points[slot * 3] - x;
+    float dy = points[slot * 3 + 1] - y;
+    float dz = points[slot * 3 + 2] - z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private float axisDelta(int slot, float x, float y, float z) {
+    int axis = axes[slot];
+    float q = axis == 0 ? x : axis == 1 ? y : z;
+    return q - points[slot * 3 + axis];
+  }
+
+  private int nearest(int lo, int hi, float x, float y, float z, int best,
+      float bestDistance) {
+    if (hi - lo <= LEAF_SIZE) {
+      for (int i = lo; i < hi; ++i) {
+        float d = distanceSquared(i, x, y, z);
+        if (d < bestDistance) {
+          best = i;
+          bestDistance = d;
+        }
+      }
+      return best;
+    }
+    int mid = (lo + hi) >>> 1;
+    float d = distanceSquared(mid, x, y, z);
+    if (d < bestDistance) {
+      best = mid;
+      bestDistance = d;
+    }
+    float delta = axisDelta(mid, x, y, z);
+    if (delta < 0) {
+      best = nearest(lo, mid, x, y, z, best, bestDistance);
+      bestDistance = distanceSquared(best, x, y, z);
+      if (delta * delta < bestDistance) {
+        best = nearest(mid + 1, hi, x, y, z, best, bestDistance);
+      }
+    } else {
+      best = nearest(mid + 1, hi, x, y, z, best, bestDistance);
+      bestDistance = distanceSquared(best, x, y, z);
+      if (delta * delta < bestDistance) {
+        best = nearest(lo, mid, x, y, z, best, bestDistance);
+      }
+    }
+    return best;
+  }
+
+  private int nearest(int lo, int hi, float x, float y, float z, int k,
+      int count, int[] heap, float[] heapDistances) {
+    if (hi - lo <= LEAF_SIZE) {
+      for (int i = lo; i < hi; ++i) {
+        count = offer(i, distanceSquared(i, x, y, z), k, count, heap,
+            heapDistances);
+      }
+      return count;
+    }
+    int mid = (lo + hi) >>> 1;
+    count = offer(mid, distanceSquared(mid, x, y, z), k, count, heap,
+        heapDistances);
+    float delta = axisDelta(mid, x, y, z);
+    if (delta < 0) {
+      count = nearest(lo, mid, x, y, z, k, count, heap, heapDistances);
+      if (count < k || delta * delta < heapDistances[0]) {
+        count = nearest(mid + 1, hi, x, y, z, k, count, heap, heapDistances);
+      }
+    } else {
+      count = nearest(mid + 1, hi, x, y, z, k, count, heap, heapDistances);
+      if (count < k || delta * delta < heapDistances[0]) {
+        count = nearest(lo, mid, x, y, z, k, count, heap, heapDistances);
+      }
+    }
+    return count;
+  }
+
+  private static int offer(int slot, float d, int k, int count, int[] heap,
+      float[] heapDistances) {
+    if (count < k) {
+      // sift up
+      int i = count++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (heapDistances[parent] >= d) {
+          break;
+        }
+        heap[i] = heap[parent];
+        heapDistances[i] = heapDistances[parent];
+        i = parent;
+      }
+      heap[i] = slot;
+      heapDistances[i] = d;
+    } else if (d < heapDistances[0]) {
+      heap[0] = slot;
+      heapDistances[0] = d;
+      siftDown(heap, heapDistances, 0, count);
+    }
+    return count;
+  }
+
+  private static void siftDown(int[] heap, float[] distances, int i, int size) {
+    int item = heap[i];
+    float d = distances[i];
+    while (true) {
+      int child = i * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && distances[child + 1] > distances[child]) {
+        ++child;
+      }
+      if (distances[child] <= d) {
+        break;
+      }
+      heap[i] = heap[child];
+      distances[i] = distances[child];
+      i = child;
+    }
+    heap[i] = item;
+    distances[i] = d;
+  }
+
+  private static void swap(int[] a, float[] b, int i, int j) {
+    int ti = a[i];
+    a[i] = a[j];
+    a[j] = ti;
+    float tf = b[i];
+    b[i] = b[j];
+    b[j] = tf;
+  }
+
+  private int withinRadius(int lo, int hi, float x, float y, float z,
+      float radiusSquared, int[] result, int count) {
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      if (distanceSquared(mid, x, y, z) <= radiusSquared) {
+        if (count < result.length) {
+          result[count] = indices[mid];
+        }
+        ++count;
+      }
+      float delta = axisDelta(mid, x, y, z);
+      if (delta * delta <= radiusSquared) {
+        count = withinRadius(lo, mid, x, y, z, radiusSquared, result, count);
+        lo = mid + 1;
+      } else if (delta < 0) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    for (int i = lo; i < hi; ++i) {
+      if (distanceSquared(i, x, y, z) <= radiusSquared) {
+        if (count < result.length) {
+          result[count] = indices[i];
+        }
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private int withinBox(int lo, int hi, float minX, float minY, float minZ,
+      float maxX, float maxY, float maxZ, int[] result, int count) {
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      if (inBox(mid, minX, minY, minZ, maxX, maxY, maxZ)) {
+        if (count < result.length) {
+          result[count] = indices[mid];
+        }
+        ++count;
+      }
+      int axis = axes[mid];
+      float p = points[mid * 3 + axis];
+      boolean left = (axis == 0 ? minX : axis == 1 ? minY : minZ) <= p;
+      boolean right = (axis == 0 ? maxX : axis == 1 ? maxY : maxZ) >= p;
+      if (left && right) {
+        count = withinBox(lo, mid, minX, minY, minZ, maxX, maxY, maxZ, result,
+            count);
+        lo = mid + 1;
+      } else if (left) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    for (int i = lo; i < hi; ++i) {
+      if (inBox(i, minX, minY, minZ, maxX, maxY, maxZ)) {
+        if (count < result.length) {
+          result[count] = indices[i];
+        }
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private boolean inBox(int slot, float minX, float minY, float minZ,
+      float maxX, float maxY, float maxZ) {
+    float px = points[slot * 3], py = points[slot * 3 + 1], pz = points[slot * 3 + 2];
+    return px >= minX && px <= maxX && py >= minY && py <= maxY && pz >= minZ
+        && pz <= maxZ;
+  }
+
+  /**
+   * Splits a range about its median on its widest axis, then recurses into
+   * both halves, forking them when they are large enough.
+   */
+  @SuppressWarnings("serial")
+  private final class Build extends RecursiveAction {
+    private final int lo, hi;
+
+    Build(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= LEAF_SIZE) {
+        return;
+      }
+      int axis = widestAxis(lo, hi);
+      int mid = (lo + hi) >>> 1;
+      select(lo, hi - 1, mid, axis);
+      axes[mid] = (byte) axis;
+      if (hi - lo >= PARALLEL_THRESHOLD) {
+        invokeAll(new Build(lo, mid), new Build(mid + 1, hi));
+      } else {
+        new Build(lo, mid).compute();
+        new Build(mid + 1, hi).compute();
+      }
+    }
+  }
+
+  private int widestAxis(int lo, int hi) {
+    float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+    for (int i = lo * 3, end = hi * 3; i < end; i += 3) {
+      float x = points[i], y = points[i + 1], z = points[i + 2];
+      minX = Math.min(minX, x);
+      maxX = Math.max(maxX, x);
+      minY = Math.min(minY, y);
+      maxY = Math.max(maxY, y);
+      minZ = Math.min(minZ, z);
+      maxZ = Math.max(maxZ, z);
+    }
+    float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+    if (dx >= dy) {
+      return dx >= dz ? 0 : 2;
+    }
+    return dy >= dz ? 1 : 2;
+  }
+
+  /**
+   * Quickselect (Hoare partitioning, median of three pivot) placing the k'th
+   * smallest point along the axis at slot k, with smaller or equal points
+   * before it and larger or equal points after it.
+   */
+  private void select(int left, int right, int k, int axis) {
+    while (right > left) {
+      int mid = (left + right) >>> 1;
+      if (value(mid, axis) < value(left, axis)) {
+        swap(mid, left);
+      }
+      if (value(right, axis) < value(left, axis)) {
+        swap(right, left);
+      }
+      if (value(right, axis) < value(mid, axis)) {
+        swap(right, mid);
+      }
+      float pivot = value(mid, axis);
+      int i = left, j = right;
+      while (i <= j) {
+        while (value(i, axis) < pivot) {
+          ++i;
+        }
+        while (value(j, axis) > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          swap(i++, j--);
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private float value(int slot, int axis) {
+    return points[slot * 3 + axis];
+  }
+
+  private void swap(int a, int b) {
+    int ai = a * 3, bi = b * 3;
+    for (int c = 0; c < 3; ++c) {
+      float t = points[ai + c];
+      points[ai + c] = points[bi + c];
+      points[bi + c] = t;
+    }
+    int t = indices[a];
+    indices[a] = indices[b];
+    indices[b] = t;
+  }
+}
@@ -0,0 +1,206 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>LongPairSet</code> is a set of unordered pairs of non-negative ints,
+ * stored as longs in an open addressing hash table with linear probing. No
+ * objects are created per entry, and removal shifts later entries back rather
+ * than leaving tombstones, so the table never degrades under churn.
+ *
+ * @author Brad Davis
+ */
+public final class LongPairSet {
+  private static final long EMPTY = -1L;
+
+  /**
+   * Receives the pairs of a {@link LongPairSet}.
+   */
+  public interface PairVisitor {
+    void visit(int a, int b);
+  }
+
+  private long[] table;
+  private int mask;
+  private int size;
+
+  public LongPairSet() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize
+   *          the number of pairs the set should hold without resizing.
+   */
+  public LongPairSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    table = new long[capacity];
+    Arrays.fill(table, EMPTY);
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return the key for the unordered pair (a, b), with the smaller value in
+   *         the high 32 bits.
+   */
+  public static long key(int a, int b) {
+    if (a < 0 || b < 0) {
+      throw new IllegalArgumentException("Pair values must be non-negative");
+    }
+    return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+  }
+
+  /**
+   * @return the smaller value of the pair.
+   */
+  public static int first(long key) {
+    return (int) (key >>> 32);
+  }
+
+  /**
+   * @return the larger value of the pair.
+   */
+  public static int second(long key) {
+    return (int) key;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(int a, int b) {
+    return containsKey(key(a, b));
+  }
+
+  public boolean containsKey(long key) {
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      long k = table[i];
+      if (k == key) {
+        return true;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * @return true if the pair was not already present.
+   */
+  public boolean add(int a, int b) {
+    return addKey(key(a, b));
+  }
+
+  public boolean addKey(long key) {
+    int i = slot(key);
+    for (;; i = (i + 1) & mask) {
+      long k = table[i];
+      if (k == key) {
+        return false;
+      }
+      if (k == EMPTY) {
+        break;
+      }
+    }
+    table[i] = key;
+    if (++size * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the pair was present.
+   */
+  public boolean remove(int a, int b) {
+    return removeKey(key(a, b));
+  }
+
+  public boolean removeKey(long key) {
+    int i = slot(key);
+    for (;; i = (i + 1) & mask) {
+      long k = table[i];
+      if (k == key) {
+        break;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+    }
+    // shift back any following entries that would no longer be reachable
+    for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+      long k = table[j];
+      if (k == EMPTY) {
+        break;
+      }
+      int home = slot(k);
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        table[i] = k;
+        i = j;
+      }
+    }
+    table[i] = EMPTY;
+    --size;
+    return true;
+  }
+
+  public void clear() {
+    if (size != 0) {
+      Arrays.fill(table, EMPTY);
+      size = 0;
+    }
+  }
+
+  /**
+   * Calls the visitor for every pair, smaller value first. The set must not
+   * be modified while doing so.
+   */
+  public void forEach(PairVisitor visitor) {
+    for (long k : table) {
+      if (k != EMPTY) {
+        visitor.visit(first(k), second(k));
+      }
+    }
+  }
+
+  /**
+   * Copies the pair keys into the given array.
+   *
+   * @return the number of keys copied, which is the smaller of the size of
+   *         the set and the length of the array.
+   */
+  public int toArray(long[] result) {
+    int count = 0;
+    for (int i = 0; i < table.length && count < result.length; ++i) {
+      if (table[i] != EMPTY) {
+        result[count++] = table[i];
+      }
+    }
+    return count;
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void rehash(int capacity) {
+    long[] old = table;
+    table = new long[capacity];
+    Arrays.fill(table, EMPTY);
+    mask = capacity - 1;
+    for (long k : old) {
+      if (k != EMPTY) {
+        int i = slot(k);
+        while (table[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        table[i] = k;
+      }
+    }
+  }
+}
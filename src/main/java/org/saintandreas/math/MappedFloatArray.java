@@ -0,0 +1,164 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <code>MappedFloatArray</code> is a view of an array in a
+ * {@link MathArchive}, read in place from the mapped file. Nothing is copied
+ * until an element is read, and the accessors create only the returned
+ * object.
+ *
+ * Elements are <code>components</code> floats each. Since a single mapping is
+ * limited to 2 GB, the array is mapped in chunks of
+ * {@link #getChunkSize()} elements, a power of two, and bulk access through
+ * {@link #getFloats(long, int)} must stay within one chunk.
+ *
+ * @author Brad Davis
+ */
+public final class MappedFloatArray {
+  private final String name;
+  private final int components;
+  private final long size;
+  private final FloatBuffer[] chunks;
+  private final int shift;
+  private final long mask;
+
+  MappedFloatArray(String name, int components, long size, FloatBuffer[] chunks, int shift) {
+    this.name = name;
+    this.components = components;
+    this.size = size;
+    this.chunks = chunks;
+    this.shift = shift;
+    this.mask = (1L << shift) - 1;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of floats in each element.
+   */
+  public int getComponents() {
+    return components;
+  }
+
+  /**
+   * @return the number of elements.
+   */
+  public long size() {
+    return size;
+  }
+
+  public int getChunkSize() {
+    return 1 << shift;
+  }
+
+  // the index in its chunk of the element's first float
+  private int offset(long index, int expectedComponents) {
+    if (expectedComponents != components) {
+      throw new IllegalStateException("Invalid element size. " + components);
+    }
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Invalid index. " + index);
+    }
+    return (int) (index & mask) * components;
+  }
+
+  private FloatBuffer chunk(long index) {
+    return chunks[(int) (index >>> shift)];
+  }
+
+  /**
+   * @return float <code>component</code> of element <code>index</code>.
+   */
+  public float getFloat(long index, int component) {
+    if (component < 0 || component >= components) {
+      throw new IndexOutOfBoundsException("Invalid component. " + component);
+    }
+    return chunk(index).get(offset(index, components) + component);
+  }
+
+  public Vector2f getVector2f(long index) {
+    int i = offset(index, 2);
+    FloatBuffer chunk = chunk(index);
+    return new Vector2f(chunk.get(i), chunk.get(i + 1));
+  }
+
+  public Vector3f getVector3f(long index) {
+    int i = offset(index, 3);
+    FloatBuffer chunk = chunk(index);
+    return new Vector3f(chunk.get(i), chunk.get(i + 1), chunk.get(i + 2));
+  }
+
+  public Vector4f getVector4f(long index) {
+    int i = offset(index, 4);
+    FloatBuffer chunk = chunk(index);
+    return new Vector4f(chunk.get(i), chunk.get(i + 1), chunk.get(i + 2), chunk.get(i + 3));
+  }
+
+  public Quaternion getQuaternion(long index) {
+    int i = offset(index, 4);
+    FloatBuffer chunk = chunk(index);
+    return new Quaternion(chunk.get(i), chunk.get(i + 1), chunk.get(i + 2), chunk.get(i + 3));
+  }
+
+  public Matrix3f getMatrix3f(long index) {
+    int i = offset(index, 9);
+    FloatBuffer c = chunk(index);
+    return new Matrix3f(c.get(i), c.get(i + 1), c.get(i + 2), c.get(i + 3), c.get(i + 4), c.get(i + 5),
+        c.get(i + 6), c.get(i + 7), c.get(i + 8));
+  }
+
+  public Matrix4f getMatrix4f(long index) {
+    int i = offset(index, 16);
+    FloatBuffer c = chunk(index);
+    return new Matrix4f(c.get(i), c.get(i + 1), c.get(i + 2), c.get(i + 3), c.get(i + 4), c.get(i + 5),
+        c.get(i + 6), c.get(i + 7), c.get(i + 8), c.get(i + 9), c.get(i + 10), c.get(i + 11),
+        c.get(i + 12), c.get(i + 13), c.get(i + 14), c.get(i + 15));
+  }
+
+  /**
+   * Copies elements into an array, across chunks if need be.
+   *
+   * @param count
+   *          the number of elements to copy.
+   */
+  public void get(long first, float[] dst, int offset, int count) {
+    if (first < 0 || count < 0 || first + count > size) {
+      throw new IndexOutOfBoundsException("Invalid range. " + first + " " + count);
+    }
+    while (count > 0) {
+      int local = (int) (first & mask);
+      int n = Math.min(count, (1 << shift) - local);
+      FloatBuffer chunk = chunk(first).duplicate();
+      chunk.position(local * components);
+      chunk.get(dst, offset, n * components);
+      first += n;
+      offset += n * components;
+      count -= n;
+    }
+  }
+
+  /**
+   * @return a read only buffer over the floats of <code>count</code>
+   *         elements, which must lie in one chunk.
+   */
+  public FloatBuffer getFloats(long first, int count) {
+    if (first < 0 || count < 0 || first + count > size) {
+      throw new IndexOutOfBoundsException("Invalid range. " + first + " " + count);
+    }
+    if (count == 0) {
+      // there may be no chunk at first, at the end or in an empty array
+      return FloatBuffer.allocate(0).asReadOnlyBuffer();
+    }
+    int local = (int) (first & mask);
+    if (count > (1 << shift) - local) {
+      throw new IllegalArgumentException("Range crosses a chunk. " + first + " " + count);
+    }
+    FloatBuffer chunk = chunk(first).duplicate();
+    chunk.position(local * components);
+    chunk.limit((local + count) * components);
+    return chunk.slice();
+  }
+}
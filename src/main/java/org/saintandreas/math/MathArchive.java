@@ -0,0 +1,138 @@
+package org.saintandreas.math;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <code>MathArchive</code> maps a file written by {@link MathArchiveWriter}
+ * into memory and exposes its arrays as {@link MappedFloatArray} views. Only
+ * the directory is read when the archive is opened. The arrays are mapped
+ * read only, so the operating system pages them in as they are touched and
+ * they take no space on the Java heap, and files and arrays larger than 2 GB
+ * are mapped in chunks.
+ *
+ * The mappings stay valid after {@link #close()}, which only closes the file
+ * channel. As with any <code>MappedByteBuffer</code>, they are released when
+ * the views are garbage collected.
+ *
+ * @author Brad Davis
+ */
+public final class MathArchive implements Closeable {
+  private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+  private final FileChannel channel;
+  private final Map<String, MappedFloatArray> arrays = new LinkedHashMap<>();
+
+  public MathArchive(Path path) throws IOException {
+    this(path, MAX_CHUNK_BYTES);
+  }
+
+  // smaller chunks let the tests cover chunked mappings with small files
+  MathArchive(Path path, int maxChunkBytes) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long fileSize = channel.size();
+      ByteBuffer header = read(0, MathArchiveWriter.HEADER_BYTES);
+      if (header.getInt() != MathArchiveWriter.MAGIC) {
+        throw new IOException("Invalid archive. " + path);
+      }
+      int version = header.getInt();
+      if (version != MathArchiveWriter.VERSION) {
+        throw new IOException("Unsupported archive version. " + version);
+      }
+      long directory = header.getLong();
+      if (directory < MathArchiveWriter.HEADER_BYTES || directory > fileSize) {
+        throw new IOException("Invalid archive. " + path);
+      }
+      ByteBuffer entries = read(directory, fileSize - directory);
+      try {
+        int count = entries.getInt();
+        for (int i = 0; i < count; ++i) {
+          int nameLength = entries.getInt();
+          if (nameLength < 0 || nameLength > MathArchiveWriter.MAX_NAME_BYTES) {
+            throw new IOException("Invalid archive. " + path);
+          }
+          byte[] name = new byte[nameLength];
+          entries.get(name);
+          int components = entries.getInt();
+          long size = entries.getLong();
+          long offset = entries.getLong();
+          if (components < 1 || size < 0 || offset < MathArchiveWriter.HEADER_BYTES
+              || size > (directory - offset) / 4 / components) {
+            throw new IOException("Invalid archive. " + path);
+          }
+          String key = new String(name, StandardCharsets.UTF_8);
+          arrays.put(key, map(key, components, size, offset, maxChunkBytes));
+        }
+      } catch (BufferUnderflowException e) {
+        throw new IOException("Invalid archive. " + path);
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private ByteBuffer read(long position, long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Invalid archive directory. " + length);
+    }
+    ByteBuffer result = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+    while (result.hasRemaining()) {
+      if (channel.read(result, position + result.position()) < 0) {
+        throw new IOException("Truncated archive");
+      }
+    }
+    result.flip();
+    return result;
+  }
+
+  private MappedFloatArray map(String name, int components, long size, long offset, int maxChunkBytes)
+      throws IOException {
+    long elementBytes = components * 4L;
+    if (elementBytes > maxChunkBytes) {
+      throw new IOException("Invalid element size. " + components);
+    }
+    int shift = 31 - Integer.numberOfLeadingZeros((int) (maxChunkBytes / elementBytes));
+    long chunkSize = 1L << shift;
+    FloatBuffer[] chunks = new FloatBuffer[(int) ((size + chunkSize - 1) >>> shift)];
+    for (int c = 0; c < chunks.length; ++c) {
+      long first = (long) c << shift;
+      long bytes = Math.min(chunkSize, size - first) * elementBytes;
+      chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * elementBytes, bytes)
+          .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+    return new MappedFloatArray(name, components, size, chunks, shift);
+  }
+
+  /**
+   * @return the names of the arrays, in the order they were written.
+   */
+  public Set<String> getNames() {
+    return Collections.unmodifiableSet(arrays.keySet());
+  }
+
+  /**
+   * @return the named array, or null if there is none.
+   */
+  public MappedFloatArray get(String name) {
+    return arrays.get(name);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
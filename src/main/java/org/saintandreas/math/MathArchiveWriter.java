@@ -0,0 +1,170 @@
+package org.saintandreas.math;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <code>MathArchiveWriter</code> writes named arrays of floats, vectors,
+ * quaternions and matrices to a file that {@link MathArchive} can map into
+ * memory and read in place.
+ *
+ * The file starts with a 16 byte header: the magic number, the format
+ * version, and the offset of the directory. The arrays follow, each starting
+ * on a 64 byte boundary, as raw floats in the layout of {@link MathCodec}.
+ * The directory comes last, so arrays of any size are streamed to the file as
+ * they are added. It holds the entry count and, for each entry, the length
+ * and UTF-8 bytes of its name, the floats per element, the element count and
+ * the offset of the data. Everything is little endian.
+ *
+ * @author Brad Davis
+ */
+public final class MathArchiveWriter implements Closeable {
+  static final int MAGIC = 0x4854414D; // "MATH"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 16;
+  static final int ALIGNMENT = 64;
+  static final int MAX_NAME_BYTES = 1 << 12;
+
+  private final FileChannel channel;
+  private final ByteBuffer staging = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+  private final List<String> names = new ArrayList<>();
+  private final Set<String> nameSet = new HashSet<>();
+  private final List<long[]> entries = new ArrayList<>();
+  private long position = HEADER_BYTES;
+  private boolean closed;
+
+  public MathArchiveWriter(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Adds the remaining floats of the buffer, without changing its position.
+   *
+   * @param components
+   *          the floats per element, such as 3 for positions or 16 for
+   *          matrices.
+   */
+  public void add(String name, int components, FloatBuffer data) throws IOException {
+    if (components < 1) {
+      throw new IllegalArgumentException("Invalid component count. " + components);
+    }
+    if (data.remaining() % components != 0) {
+      throw new IllegalArgumentException("Invalid data length. " + data.remaining());
+    }
+    if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+      throw new IllegalArgumentException("Invalid name. " + name);
+    }
+    if (!nameSet.add(name)) {
+      throw new IllegalArgumentException("Duplicate name. " + name);
+    }
+    pad();
+    names.add(name);
+    entries.add(new long[] { components, data.remaining() / components, position });
+    FloatBuffer source = data.duplicate();
+    while (source.hasRemaining()) {
+      int floats = Math.min(source.remaining(), staging.remaining() / 4);
+      FloatBuffer chunk = source.slice();
+      chunk.limit(floats);
+      staging.asFloatBuffer().put(chunk);
+      staging.position(staging.position() + floats * 4);
+      source.position(source.position() + floats);
+      if (!staging.hasRemaining()) {
+        drain();
+      }
+    }
+    drain();
+  }
+
+  public void add(String name, int components, float[] data) throws IOException {
+    add(name, components, FloatBuffer.wrap(data));
+  }
+
+  public void add(String name, Vector3f[] array) throws IOException {
+    float[] data = new float[array.length * 3];
+    for (int i = 0; i < array.length; ++i) {
+      data[i * 3] = array[i].x;
+      data[i * 3 + 1] = array[i].y;
+      data[i * 3 + 2] = array[i].z;
+    }
+    add(name, 3, data);
+  }
+
+  public void add(String name, Quaternion[] array) throws IOException {
+    float[] data = new float[array.length * 4];
+    for (int i = 0; i < array.length; ++i) {
+      data[i * 4] = array[i].x;
+      data[i * 4 + 1] = array[i].y;
+      data[i * 4 + 2] = array[i].z;
+      data[i * 4 + 3] = array[i].w;
+    }
+    add(name, 4, data);
+  }
+
+  public void add(String name, Matrix4f[] array) throws IOException {
+    float[] data = new float[array.length * 16];
+    for (int i = 0; i < array.length; ++i) {
+      Matrix4f m = array[i];
+      float[] row = { m.m00, m.m01, m.m02, m.m03, m.m10, m.m11, m.m12, m.m13, m.m20, m.m21, m.m22, m.m23,
+          m.m30, m.m31, m.m32, m.m33 };
+      System.arraycopy(row, 0, data, i * 16, 16);
+    }
+    add(name, 16, data);
+  }
+
+  // zero fill to the next aligned offset
+  private void pad() throws IOException {
+    staging.put(new byte[(int) (-position & (ALIGNMENT - 1))]);
+    drain();
+  }
+
+  private void drain() throws IOException {
+    staging.flip();
+    while (staging.hasRemaining()) {
+      position += channel.write(staging, position);
+    }
+    staging.clear();
+  }
+
+  /**
+   * Writes the directory and header and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long directory = position;
+      staging.putInt(names.size());
+      drain();
+      for (int i = 0; i < names.size(); ++i) {
+        byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+        long[] entry = entries.get(i);
+        staging.putInt(name.length).put(name);
+        staging.putInt((int) entry[0]).putLong(entry[1]).putLong(entry[2]);
+        drain();
+      }
+      staging.putInt(MAGIC).putInt(VERSION).putLong(directory);
+      staging.flip();
+      for (long at = 0; staging.hasRemaining();) {
+        at += channel.write(staging, at);
+      }
+      staging.clear();
+    } finally {
+      channel.close();
+    }
+  }
+}
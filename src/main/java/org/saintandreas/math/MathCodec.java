@@ -0,0 +1,340 @@
+package org.saintandreas.math;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * <code>MathCodec</code> reads and writes the math types as raw floats in a
+ * fixed little endian layout, as a compact alternative to Java serialization
+ * for networking and file formats.
+ *
+ * Vectors are written as their components in order, quaternions as x, y, z,
+ * w and matrices in row major order, so a <code>Vector3f</code> takes 12
+ * bytes and a <code>Matrix4f</code> 64. Arrays are written as an int count
+ * followed by the elements. Nothing else is written: there is no type tag or
+ * version, the reader must know what to expect.
+ *
+ * The layout is little endian whatever the order of the buffer, and the
+ * buffer's order is never changed. Reads and writes start at the buffer's
+ * position and advance it, as the relative methods of <code>ByteBuffer</code>
+ * do. Single values go through the buffer directly and allocate nothing but
+ * the decoded object. Arrays go through a little endian float view of the
+ * buffer, which the buffer implementation can copy in bulk when the byte
+ * orders match.
+ *
+ * @author Brad Davis
+ */
+public final class MathCodec {
+  public static final int VECTOR2F_BYTES = 8;
+  public static final int VECTOR3F_BYTES = 12;
+  public static final int VECTOR4F_BYTES = 16;
+  public static final int QUATERNION_BYTES = 16;
+  public static final int MATRIX3F_BYTES = 36;
+  public static final int MATRIX4F_BYTES = 64;
+
+  private MathCodec() {
+  }
+
+  private static void putFloat(ByteBuffer buffer, float f) {
+    if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+      buffer.putFloat(f);
+    } else {
+      buffer.putInt(Integer.reverseBytes(Float.floatToRawIntBits(f)));
+    }
+  }
+
+  private static float getFloat(ByteBuffer buffer) {
+    if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+      return buffer.getFloat();
+    }
+    return Float.intBitsToFloat(Integer.reverseBytes(buffer.getInt()));
+  }
+
+  private static void putInt(ByteBuffer buffer, int i) {
+    buffer.putInt(buffer.order() == ByteOrder.LITTLE_ENDIAN ? i : Integer.reverseBytes(i));
+  }
+
+  private static int getInt(ByteBuffer buffer) {
+    int i = buffer.getInt();
+    return buffer.order() == ByteOrder.LITTLE_ENDIAN ? i : Integer.reverseBytes(i);
+  }
+
+  // a little endian float view starting at the buffer's position
+  private static FloatBuffer floats(ByteBuffer buffer) {
+    return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+  }
+
+  private static void skip(ByteBuffer buffer, int floats) {
+    buffer.position(buffer.position() + floats * 4);
+  }
+
+  // checks that a value will fit before any of it is written, so that a
+  // failed write leaves nothing behind
+  private static void ensure(ByteBuffer buffer, long bytes) {
+    if (bytes > buffer.remaining()) {
+      throw new BufferOverflowException();
+    }
+  }
+
+  // writes an array length, first checking that the whole array will fit
+  private static void putLength(ByteBuffer buffer, int length, int elementBytes) {
+    ensure(buffer, 4 + (long) length * elementBytes);
+    putInt(buffer, length);
+  }
+
+  // reads an array length, checking it against the bytes left
+  private static int getLength(ByteBuffer buffer, int elementBytes) {
+    int length = getInt(buffer);
+    if (length < 0) {
+      throw new IllegalArgumentException("Invalid array length. " + length);
+    }
+    if ((long) length * elementBytes > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    return length;
+  }
+
+  public static void put(ByteBuffer buffer, Vector2f v) {
+    ensure(buffer, VECTOR2F_BYTES);
+    putFloat(buffer, v.x);
+    putFloat(buffer, v.y);
+  }
+
+  public static Vector2f getVector2f(ByteBuffer buffer) {
+    return new Vector2f(getFloat(buffer), getFloat(buffer));
+  }
+
+  public static void put(ByteBuffer buffer, Vector3f v) {
+    ensure(buffer, VECTOR3F_BYTES);
+    putFloat(buffer, v.x);
+    putFloat(buffer, v.y);
+    putFloat(buffer, v.z);
+  }
+
+  public static Vector3f getVector3f(ByteBuffer buffer) {
+    return new Vector3f(getFloat(buffer), getFloat(buffer), getFloat(buffer));
+  }
+
+  public static void put(ByteBuffer buffer, Vector4f v) {
+    ensure(buffer, VECTOR4F_BYTES);
+    putFloat(buffer, v.x);
+    putFloat(buffer, v.y);
+    putFloat(buffer, v.z);
+    putFloat(buffer, v.w);
+  }
+
+  public static Vector4f getVector4f(ByteBuffer buffer) {
+    return new Vector4f(getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer));
+  }
+
+  public static void put(ByteBuffer buffer, Quaternion q) {
+    ensure(buffer, QUATERNION_BYTES);
+    putFloat(buffer, q.x);
+    putFloat(buffer, q.y);
+    putFloat(buffer, q.z);
+    putFloat(buffer, q.w);
+  }
+
+  public static Quaternion getQuaternion(ByteBuffer buffer) {
+    return new Quaternion(getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer));
+  }
+
+  public static void put(ByteBuffer buffer, Matrix3f m) {
+    ensure(buffer, MATRIX3F_BYTES);
+    putFloat(buffer, m.m00);
+    putFloat(buffer, m.m01);
+    putFloat(buffer, m.m02);
+    putFloat(buffer, m.m10);
+    putFloat(buffer, m.m11);
+    putFloat(buffer, m.m12);
+    putFloat(buffer, m.m20);
+    putFloat(buffer, m.m21);
+    putFloat(buffer, m.m22);
+  }
+
+  public static Matrix3f getMatrix3f(ByteBuffer buffer) {
+    return new Matrix3f(getFloat(buffer), getFloat(buffer), getFloat(buffer),
+        getFloat(buffer), getFloat(buffer), getFloat(buffer),
+        getFloat(buffer), getFloat(buffer), getFloat(buffer));
+  }
+
+  public static void put(ByteBuffer buffer, Matrix4f m) {
+    ensure(buffer, MATRIX4F_BYTES);
+    putFloat(buffer, m.m00);
+    putFloat(buffer, m.m01);
+    putFloat(buffer, m.m02);
+    putFloat(buffer, m.m03);
+    putFloat(buffer, m.m10);
+    putFloat(buffer, m.m11);
+    putFloat(buffer, m.m12);
+    putFloat(buffer, m.m13);
+    putFloat(buffer, m.m20);
+    putFloat(buffer, m.m21);
+    putFloat(buffer, m.m22);
+    putFloat(buffer, m.m23);
+    putFloat(buffer, m.m30);
+    putFloat(buffer, m.m31);
+    putFloat(buffer, m.m32);
+    putFloat(buffer, m.m33);
+  }
+
+  public static Matrix4f getMatrix4f(ByteBuffer buffer) {
+    return new Matrix4f(getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer),
+        getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer),
+        getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer),
+        getFloat(buffer), getFloat(buffer), getFloat(buffer), getFloat(buffer));
+  }
+
+  private static Matrix3f getMatrix3f(FloatBuffer view) {
+    return new Matrix3f(view.get(), view.get(), view.get(), view.get(), view.get(),
+        view.get(), view.get(), view.get(), view.get());
+  }
+
+  private static void put(FloatBuffer view, Matrix4f m) {
+    view.put(m.m00).put(m.m01).put(m.m02).put(m.m03);
+    view.put(m.m10).put(m.m11).put(m.m12).put(m.m13);
+    view.put(m.m20).put(m.m21).put(m.m22).put(m.m23);
+    view.put(m.m30).put(m.m31).put(m.m32).put(m.m33);
+  }
+
+  private static Matrix4f getMatrix4f(FloatBuffer view) {
+    return new Matrix4f(view.get(), view.get(), view.get(), view.get(), view.get(),
+        view.get(), view.get(), view.get(), view.get(), view.get(), view.get(),
+        view.get(), view.get(), view.get(), view.get(), view.get());
+  }
+
+  /**
+   * Writes <code>count</code> floats from the array, with no length prefix.
+   */
+  public static void putFloats(ByteBuffer buffer, float[] src, int offset, int count) {
+    floats(buffer).put(src, offset, count);
+    skip(buffer, count);
+  }
+
+  /**
+   * Reads <code>count</code> floats into the array.
+   */
+  public static void getFloats(ByteBuffer buffer, float[] dst, int offset, int count) {
+    floats(buffer).get(dst, offset, count);
+    skip(buffer, count);
+  }
+
+  public static void put(ByteBuffer buffer, Vector2f[] array) {
+    putLength(buffer, array.length, VECTOR2F_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Vector2f v : array) {
+      view.put(v.x).put(v.y);
+    }
+    skip(buffer, array.length * 2);
+  }
+
+  public static Vector2f[] getVector2fArray(ByteBuffer buffer) {
+    Vector2f[] result = new Vector2f[getLength(buffer, VECTOR2F_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = new Vector2f(view.get(), view.get());
+    }
+    skip(buffer, result.length * 2);
+    return result;
+  }
+
+  public static void put(ByteBuffer buffer, Vector3f[] array) {
+    putLength(buffer, array.length, VECTOR3F_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Vector3f v : array) {
+      view.put(v.x).put(v.y).put(v.z);
+    }
+    skip(buffer, array.length * 3);
+  }
+
+  public static Vector3f[] getVector3fArray(ByteBuffer buffer) {
+    Vector3f[] result = new Vector3f[getLength(buffer, VECTOR3F_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = new Vector3f(view.get(), view.get(), view.get());
+    }
+    skip(buffer, result.length * 3);
+    return result;
+  }
+
+  public static void put(ByteBuffer buffer, Vector4f[] array) {
+    putLength(buffer, array.length, VECTOR4F_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Vector4f v : array) {
+      view.put(v.x).put(v.y).put(v.z).put(v.w);
+    }
+    skip(buffer, array.length * 4);
+  }
+
+  public static Vector4f[] getVector4fArray(ByteBuffer buffer) {
+    Vector4f[] result = new Vector4f[getLength(buffer, VECTOR4F_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = new Vector4f(view.get(), view.get(), view.get(), view.get());
+    }
+    skip(buffer, result.length * 4);
+    return result;
+  }
+
+  public static void put(ByteBuffer buffer, Quaternion[] array) {
+    putLength(buffer, array.length, QUATERNION_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Quaternion q : array) {
+      view.put(q.x).put(q.y).put(q.z).put(q.w);
+    }
+    skip(buffer, array.length * 4);
+  }
+
+  public static Quaternion[] getQuaternionArray(ByteBuffer buffer) {
+    Quaternion[] result = new Quaternion[getLength(buffer, QUATERNION_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = new Quaternion(view.get(), view.get(), view.get(), view.get());
+    }
+    skip(buffer, result.length * 4);
+    return result;
+  }
+
+  public static void put(ByteBuffer buffer, Matrix3f[] array) {
+    putLength(buffer, array.length, MATRIX3F_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Matrix3f m : array) {
+      view.put(m.m00).put(m.m01).put(m.m02);
+      view.put(m.m10).put(m.m11).put(m.m12);
+      view.put(m.m20).put(m.m21).put(m.m22);
+    }
+    skip(buffer, array.length * 9);
+  }
+
+  public static Matrix3f[] getMatrix3fArray(ByteBuffer buffer) {
+    Matrix3f[] result = new Matrix3f[getLength(buffer, MATRIX3F_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = getMatrix3f(view);
+    }
+    skip(buffer, result.length * 9);
+    return result;
+  }
+
+  public static void put(ByteBuffer buffer, Matrix4f[] array) {
+    putLength(buffer, array.length, MATRIX4F_BYTES);
+    FloatBuffer view = floats(buffer);
+    for (Matrix4f m : array) {
+      put(view, m);
+    }
+    skip(buffer, array.length * 16);
+  }
+
+  public static Matrix4f[] getMatrix4fArray(ByteBuffer buffer) {
+    Matrix4f[] result = new Matrix4f[getLength(buffer, MATRIX4F_BYTES)];
+    FloatBuffer view = floats(buffer);
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = getMatrix4f(view);
+    }
+    skip(buffer, result.length * 16);
+    return result;
+  }
+}
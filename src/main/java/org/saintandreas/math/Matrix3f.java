@@ -511,6 +511,37 @@ public final class Matrix3f implements java.io.Serializable {
     return fDet;
   }
 
+  /**
+   * <code>eigenSymmetric</code> finds the eigenvalues and eigenvectors of this
+   * matrix, which must be symmetric, such as a covariance matrix.
+   * 
+   * @return the decomposition.
+   */
+  public Eigen3f eigenSymmetric() {
+    return Eigen3f.decompose(this);
+  }
+
+  /**
+   * <code>svd</code> computes the singular value decomposition of this
+   * matrix.
+   * 
+   * @return the decomposition.
+   */
+  public Svd3f svd() {
+    return Svd3f.decompose(this);
+  }
+
+  /**
+   * <code>polarDecomposition</code> splits this matrix into a rotation and a
+   * symmetric stretch. The rotation is the closest one to this matrix, even
+   * when it has shear or non-uniform scale.
+   * 
+   * @return the decomposition.
+   */
+  public Polar3f polarDecomposition() {
+    return Polar3f.decompose(this);
+  }
+
   /**
    * <code>transpose</code> transposes this Matrix. This is inconsistent with
    * general value vs local semantics, but is preserved for backwards
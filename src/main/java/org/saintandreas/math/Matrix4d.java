@@ -0,0 +1,426 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <code>Matrix4d</code> is the double precision counterpart of
+ * {@link Matrix4f}, with the same row and column conventions: the
+ * translation is in <code>m03</code>, <code>m13</code> and <code>m23</code>,
+ * and <code>a.mult(b)</code> applies <code>b</code> first.
+ *
+ * Transforms of objects far from the origin are composed in double and
+ * converted to float against an origin near the camera, so the float
+ * matrices only ever hold small translations:
+ * {@link #toMatrix4f(Vector3d)} for model matrices,
+ * {@link #toViewMatrix4f(Vector3d)} for the view matrix, and {@link #rebase}
+ * for a whole buffer of model matrices. The view matrix built for an origin at
+ * the eye has no translation at all.
+ *
+ * Each method works on the fields directly, and allocates nothing but its
+ * result.
+ *
+ * @author Brad Davis
+ */
+public final class Matrix4d implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  public final double m00, m01, m02, m03;
+  public final double m10, m11, m12, m13;
+  public final double m20, m21, m22, m23;
+  public final double m30, m31, m32, m33;
+
+  public static final Matrix4d ZERO = new Matrix4d(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+  public static final Matrix4d IDENTITY = new Matrix4d();
+
+  /**
+   * Constructor instantiates a new <code>Matrix4d</code> that is set to the
+   * identity matrix.
+   */
+  public Matrix4d() {
+    this(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+  }
+
+  /**
+   * constructs a matrix with the given values.
+   */
+  public Matrix4d( //
+      double m00, double m01, double m02, double m03, //
+      double m10, double m11, double m12, double m13, //
+      double m20, double m21, double m22, double m23, //
+      double m30, double m31, double m32, double m33) {
+    this.m00 = m00;
+    this.m01 = m01;
+    this.m02 = m02;
+    this.m03 = m03;
+    this.m10 = m10;
+    this.m11 = m11;
+    this.m12 = m12;
+    this.m13 = m13;
+    this.m20 = m20;
+    this.m21 = m21;
+    this.m22 = m22;
+    this.m23 = m23;
+    this.m30 = m30;
+    this.m31 = m31;
+    this.m32 = m32;
+    this.m33 = m33;
+  }
+
+  public Matrix4d(Matrix4f m) {
+    this(m.m00, m.m01, m.m02, m.m03, m.m10, m.m11, m.m12, m.m13, m.m20, m.m21, m.m22, m.m23, m.m30, m.m31,
+        m.m32, m.m33);
+  }
+
+  /**
+   * Creates a matrix from 16 values in row major order, starting at
+   * <code>offset</code>.
+   */
+  public Matrix4d(double[] matrix, int offset) {
+    this(matrix[offset], matrix[offset + 1], matrix[offset + 2], matrix[offset + 3], //
+        matrix[offset + 4], matrix[offset + 5], matrix[offset + 6], matrix[offset + 7], //
+        matrix[offset + 8], matrix[offset + 9], matrix[offset + 10], matrix[offset + 11], //
+        matrix[offset + 12], matrix[offset + 13], matrix[offset + 14], matrix[offset + 15]);
+  }
+
+  /**
+   * Copies the 16 values in row major order into an array, starting at
+   * <code>offset</code>.
+   */
+  public void get(double[] matrix, int offset) {
+    matrix[offset] = m00;
+    matrix[offset + 1] = m01;
+    matrix[offset + 2] = m02;
+    matrix[offset + 3] = m03;
+    matrix[offset + 4] = m10;
+    matrix[offset + 5] = m11;
+    matrix[offset + 6] = m12;
+    matrix[offset + 7] = m13;
+    matrix[offset + 8] = m20;
+    matrix[offset + 9] = m21;
+    matrix[offset + 10] = m22;
+    matrix[offset + 11] = m23;
+    matrix[offset + 12] = m30;
+    matrix[offset + 13] = m31;
+    matrix[offset + 14] = m32;
+    matrix[offset + 15] = m33;
+  }
+
+  public Matrix4d transpose() {
+    return new Matrix4d(m00, m10, m20, m30, m01, m11, m21, m31, m02, m12, m22, m32, m03, m13, m23, m33);
+  }
+
+  public Matrix4d mult(double scalar) {
+    return new Matrix4d(m00 * scalar, m01 * scalar, m02 * scalar, m03 * scalar, //
+        m10 * scalar, m11 * scalar, m12 * scalar, m13 * scalar, //
+        m20 * scalar, m21 * scalar, m22 * scalar, m23 * scalar, //
+        m30 * scalar, m31 * scalar, m32 * scalar, m33 * scalar);
+  }
+
+  /**
+   * <code>mult</code> multiplies this matrix with another matrix. This matrix
+   * will be on the left hand side, while the parameter matrix will be on the
+   * right.
+   *
+   * @param in2
+   *          the matrix to multiply this matrix by.
+   * @return the resultant matrix
+   */
+  public Matrix4d mult(Matrix4d in2) {
+    return new Matrix4d( //
+        m00 * in2.m00 + m01 * in2.m10 + m02 * in2.m20 + m03 * in2.m30, //
+        m00 * in2.m01 + m01 * in2.m11 + m02 * in2.m21 + m03 * in2.m31, //
+        m00 * in2.m02 + m01 * in2.m12 + m02 * in2.m22 + m03 * in2.m32, //
+        m00 * in2.m03 + m01 * in2.m13 + m02 * in2.m23 + m03 * in2.m33, //
+        m10 * in2.m00 + m11 * in2.m10 + m12 * in2.m20 + m13 * in2.m30, //
+        m10 * in2.m01 + m11 * in2.m11 + m12 * in2.m21 + m13 * in2.m31, //
+        m10 * in2.m02 + m11 * in2.m12 + m12 * in2.m22 + m13 * in2.m32, //
+        m10 * in2.m03 + m11 * in2.m13 + m12 * in2.m23 + m13 * in2.m33, //
+        m20 * in2.m00 + m21 * in2.m10 + m22 * in2.m20 + m23 * in2.m30, //
+        m20 * in2.m01 + m21 * in2.m11 + m22 * in2.m21 + m23 * in2.m31, //
+        m20 * in2.m02 + m21 * in2.m12 + m22 * in2.m22 + m23 * in2.m32, //
+        m20 * in2.m03 + m21 * in2.m13 + m22 * in2.m23 + m23 * in2.m33, //
+        m30 * in2.m00 + m31 * in2.m10 + m32 * in2.m20 + m33 * in2.m30, //
+        m30 * in2.m01 + m31 * in2.m11 + m32 * in2.m21 + m33 * in2.m31, //
+        m30 * in2.m02 + m31 * in2.m12 + m32 * in2.m22 + m33 * in2.m32, //
+        m30 * in2.m03 + m31 * in2.m13 + m32 * in2.m23 + m33 * in2.m33);
+  }
+
+  /**
+   * <code>mult</code> transforms a point by this matrix, including the
+   * translation, and divides by w unless the bottom row is 0, 0, 0, 1.
+   */
+  public Vector3d mult(Vector3d v) {
+    double x = m00 * v.x + m01 * v.y + m02 * v.z + m03;
+    double y = m10 * v.x + m11 * v.y + m12 * v.z + m13;
+    double z = m20 * v.x + m21 * v.y + m22 * v.z + m23;
+    if (m30 == 0 && m31 == 0 && m32 == 0 && m33 == 1) {
+      return new Vector3d(x, y, z);
+    }
+    double invW = 1 / (m30 * v.x + m31 * v.y + m32 * v.z + m33);
+    return new Vector3d(x * invW, y * invW, z * invW);
+  }
+
+  /**
+   * <code>multNormal</code> multiplies a vector about a rotation matrix, but
+   * does not add translation.
+   */
+  public Vector3d multNormal(Vector3d v) {
+    return new Vector3d(m00 * v.x + m01 * v.y + m02 * v.z, m10 * v.x + m11 * v.y + m12 * v.z,
+        m20 * v.x + m21 * v.y + m22 * v.z);
+  }
+
+  /**
+   * <code>determinant</code> generates the determinate of this matrix.
+   */
+  public double determinant() {
+    double fA0 = m00 * m11 - m01 * m10;
+    double fA1 = m00 * m12 - m02 * m10;
+    double fA2 = m00 * m13 - m03 * m10;
+    double fA3 = m01 * m12 - m02 * m11;
+    double fA4 = m01 * m13 - m03 * m11;
+    double fA5 = m02 * m13 - m03 * m12;
+    double fB0 = m20 * m31 - m21 * m30;
+    double fB1 = m20 * m32 - m22 * m30;
+    double fB2 = m20 * m33 - m23 * m30;
+    double fB3 = m21 * m32 - m22 * m31;
+    double fB4 = m21 * m33 - m23 * m31;
+    double fB5 = m22 * m33 - m23 * m32;
+    return fA0 * fB5 - fA1 * fB4 + fA2 * fB3 + fA3 * fB2 - fA4 * fB1 + fA5 * fB0;
+  }
+
+  /**
+   * Inverts this matrix as a new Matrix4d.
+   *
+   * @return The new inverse matrix
+   * @throws ArithmeticException
+   *           if the matrix is singular
+   */
+  public Matrix4d invert() {
+    double fA0 = m00 * m11 - m01 * m10;
+    double fA1 = m00 * m12 - m02 * m10;
+    double fA2 = m00 * m13 - m03 * m10;
+    double fA3 = m01 * m12 - m02 * m11;
+    double fA4 = m01 * m13 - m03 * m11;
+    double fA5 = m02 * m13 - m03 * m12;
+    double fB0 = m20 * m31 - m21 * m30;
+    double fB1 = m20 * m32 - m22 * m30;
+    double fB2 = m20 * m33 - m23 * m30;
+    double fB3 = m21 * m32 - m22 * m31;
+    double fB4 = m21 * m33 - m23 * m31;
+    double fB5 = m22 * m33 - m23 * m32;
+    double fDet = fA0 * fB5 - fA1 * fB4 + fA2 * fB3 + fA3 * fB2 - fA4 * fB1 + fA5 * fB0;
+    if (Math.abs(fDet) <= 0) {
+      throw new ArithmeticException("This matrix cannot be inverted");
+    }
+    double s = 1 / fDet;
+    return new Matrix4d( //
+        (+m11 * fB5 - m12 * fB4 + m13 * fB3) * s, //
+        (-m01 * fB5 + m02 * fB4 - m03 * fB3) * s, //
+        (+m31 * fA5 - m32 * fA4 + m33 * fA3) * s, //
+        (-m21 * fA5 + m22 * fA4 - m23 * fA3) * s, //
+        (-m10 * fB5 + m12 * fB2 - m13 * fB1) * s, //
+        (+m00 * fB5 - m02 * fB2 + m03 * fB1) * s, //
+        (-m30 * fA5 + m32 * fA2 - m33 * fA1) * s, //
+        (+m20 * fA5 - m22 * fA2 + m23 * fA1) * s, //
+        (+m10 * fB4 - m11 * fB2 + m13 * fB0) * s, //
+        (-m00 * fB4 + m01 * fB2 - m03 * fB0) * s, //
+        (+m30 * fA4 - m31 * fA2 + m33 * fA0) * s, //
+        (-m20 * fA4 + m21 * fA2 - m23 * fA0) * s, //
+        (-m10 * fB3 + m11 * fB1 - m12 * fB0) * s, //
+        (+m00 * fB3 - m01 * fB1 + m02 * fB0) * s, //
+        (-m30 * fA3 + m31 * fA1 - m32 * fA0) * s, //
+        (+m20 * fA3 - m21 * fA1 + m22 * fA0) * s);
+  }
+
+  public Vector3d toTranslationVector() {
+    return new Vector3d(m03, m13, m23);
+  }
+
+  public Quaterniond toRotationQuat() {
+    return Quaterniond.fromRotationMatrix(m00, m01, m02, m10, m11, m12, m20, m21, m22);
+  }
+
+  /**
+   * @return this matrix rounded to single precision. Use
+   *         {@link #toMatrix4f(Vector3d)} for transforms far from the origin.
+   */
+  public Matrix4f toMatrix4f() {
+    return new Matrix4f((float) m00, (float) m01, (float) m02, (float) m03, //
+        (float) m10, (float) m11, (float) m12, (float) m13, //
+        (float) m20, (float) m21, (float) m22, (float) m23, //
+        (float) m30, (float) m31, (float) m32, (float) m33);
+  }
+
+  /**
+   * <code>toMatrix4f</code> converts a model matrix, which maps into world
+   * space, to one mapping into the space of an origin near the camera. The
+   * result is <code>translation(origin.negate()).mult(this)</code>, computed
+   * in double and then rounded to float.
+   *
+   * @param origin
+   *          the origin of the float coordinate space
+   */
+  public Matrix4f toMatrix4f(Vector3d origin) {
+    double ox = origin.x, oy = origin.y, oz = origin.z;
+    return new Matrix4f( //
+        (float) (m00 - ox * m30), (float) (m01 - ox * m31), (float) (m02 - ox * m32), //
+        (float) (m03 - ox * m33), //
+        (float) (m10 - oy * m30), (float) (m11 - oy * m31), (float) (m12 - oy * m32), //
+        (float) (m13 - oy * m33), //
+        (float) (m20 - oz * m30), (float) (m21 - oz * m31), (float) (m22 - oz * m32), //
+        (float) (m23 - oz * m33), //
+        (float) m30, (float) m31, (float) m32, (float) m33);
+  }
+
+  /**
+   * <code>toViewMatrix4f</code> converts a view matrix, which maps from world
+   * space, to one mapping from the space of an origin near the camera, to go
+   * with model matrices from {@link #toMatrix4f(Vector3d)}. The result is
+   * <code>this.mult(translation(origin))</code>, computed in double and then
+   * rounded to float.
+   *
+   * @param origin
+   *          the origin of the float coordinate space
+   */
+  public Matrix4f toViewMatrix4f(Vector3d origin) {
+    double ox = origin.x, oy = origin.y, oz = origin.z;
+    return new Matrix4f( //
+        (float) m00, (float) m01, (float) m02, (float) (m00 * ox + m01 * oy + m02 * oz + m03), //
+        (float) m10, (float) m11, (float) m12, (float) (m10 * ox + m11 * oy + m12 * oz + m13), //
+        (float) m20, (float) m21, (float) m22, (float) (m20 * ox + m21 * oy + m22 * oz + m23), //
+        (float) m30, (float) m31, (float) m32, (float) (m30 * ox + m31 * oy + m32 * oz + m33));
+  }
+
+  /**
+   * <code>rebase</code> converts model matrices, 16 doubles each in row major
+   * order, to float matrices relative to an origin, the bulk form of
+   * {@link #toMatrix4f(Vector3d)}. The result is written from the buffer's
+   * position, which is not changed, in the layout
+   * {@link Matrix4f#fillFloatBuffer(FloatBuffer, boolean)} uses.
+   *
+   * @param matrices
+   *          the matrices, from <code>offset</code>
+   * @param origin
+   *          the origin of the float coordinate space
+   * @param result
+   *          receives 16 floats per matrix
+   * @param count
+   *          the number of matrices
+   * @param columnMajor
+   *          whether to write the result column major, as OpenGL expects
+   */
+  public static void rebase(double[] matrices, int offset, Vector3d origin, FloatBuffer result, int count,
+      boolean columnMajor) {
+    if (result.remaining() < count * 16) {
+      throw new IllegalArgumentException("Buffer too small for " + count + " matrices");
+    }
+    double[] o = { origin.x, origin.y, origin.z, 0 };
+    int r = result.position();
+    for (int i = 0; i < count; ++i, offset += 16, r += 16) {
+      for (int row = 0; row < 4; ++row) {
+        for (int col = 0; col < 4; ++col) {
+          double value = matrices[offset + row * 4 + col] - o[row] * matrices[offset + 12 + col];
+          result.put(columnMajor ? r + col * 4 + row : r + row * 4 + col, (float) value);
+        }
+      }
+    }
+  }
+
+  public static Matrix4d translation(Vector3d v) {
+    return new Matrix4d(1, 0, 0, v.x, 0, 1, 0, v.y, 0, 0, 1, v.z, 0, 0, 0, 1);
+  }
+
+  public static Matrix4d rotation(Quaterniond q) {
+    return q.toRotationMatrix4d();
+  }
+
+  public static Matrix4d rotation(double angle, Vector3d axis) {
+    return rotation(Quaterniond.fromAngleAxis(angle, axis));
+  }
+
+  public static Matrix4d scaled(double f) {
+    return scaled(new Vector3d(f, f, f));
+  }
+
+  public static Matrix4d scaled(Vector3d v) {
+    return new Matrix4d(v.x, 0, 0, 0, 0, v.y, 0, 0, 0, 0, v.z, 0, 0, 0, 0, 1);
+  }
+
+  public Matrix4d translate(Vector3d v) {
+    // this.mult(translation(v)), without the zero terms
+    return new Matrix4d( //
+        m00, m01, m02, m00 * v.x + m01 * v.y + m02 * v.z + m03, //
+        m10, m11, m12, m10 * v.x + m11 * v.y + m12 * v.z + m13, //
+        m20, m21, m22, m20 * v.x + m21 * v.y + m22 * v.z + m23, //
+        m30, m31, m32, m30 * v.x + m31 * v.y + m32 * v.z + m33);
+  }
+
+  public Matrix4d rotate(Quaterniond q) {
+    return mult(rotation(q));
+  }
+
+  public Matrix4d rotate(double angle, Vector3d axis) {
+    return mult(rotation(angle, axis));
+  }
+
+  public Matrix4d scale(double f) {
+    return scale(new Vector3d(f, f, f));
+  }
+
+  public Matrix4d scale(Vector3d v) {
+    return new Matrix4d( //
+        m00 * v.x, m01 * v.y, m02 * v.z, m03, //
+        m10 * v.x, m11 * v.y, m12 * v.z, m13, //
+        m20 * v.x, m21 * v.y, m22 * v.z, m23, //
+        m30 * v.x, m31 * v.y, m32 * v.z, m33);
+  }
+
+  public static Matrix4d lookat(Vector3d eye, Vector3d center, Vector3d up) {
+    Vector3d f = center.subtract(eye).normalize();
+    Vector3d s = f.cross(up).normalize();
+    Vector3d u = s.cross(f);
+    return new Matrix4d( //
+        s.x, s.y, s.z, -s.dot(eye), //
+        u.x, u.y, u.z, -u.dot(eye), //
+        -f.x, -f.y, -f.z, f.dot(eye), //
+        0, 0, 0, 1);
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 37;
+    double[] values = { m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33 };
+    for (double value : values) {
+      hash = 37 * hash + Double.doubleToLongBits(value);
+    }
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Matrix4d)) {
+      return false;
+    }
+    if (this == o) {
+      return true;
+    }
+    Matrix4d comp = (Matrix4d) o;
+    return Double.compare(m00, comp.m00) == 0 && Double.compare(m01, comp.m01) == 0
+        && Double.compare(m02, comp.m02) == 0 && Double.compare(m03, comp.m03) == 0
+        && Double.compare(m10, comp.m10) == 0 && Double.compare(m11, comp.m11) == 0
+        && Double.compare(m12, comp.m12) == 0 && Double.compare(m13, comp.m13) == 0
+        && Double.compare(m20, comp.m20) == 0 && Double.compare(m21, comp.m21) == 0
+        && Double.compare(m22, comp.m22) == 0 && Double.compare(m23, comp.m23) == 0
+        && Double.compare(m30, comp.m30) == 0 && Double.compare(m31, comp.m31) == 0
+        && Double.compare(m32, comp.m32) == 0 && Double.compare(m33, comp.m33) == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Matrix4d\n[\n" //
+        + " " + m00 + "  " + m01 + "  " + m02 + "  " + m03 + " \n" //
+        + " " + m10 + "  " + m11 + "  " + m12 + "  " + m13 + " \n" //
+        + " " + m20 + "  " + m21 + "  " + m22 + "  " + m23 + " \n" //
+        + " " + m30 + "  " + m31 + "  " + m32 + "  " + m33 + " \n]";
+  }
+}
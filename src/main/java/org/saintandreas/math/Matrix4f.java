@@ -1082,6 +1082,24 @@ public final class Matrix4f implements java.io.Serializable {
     return new Matrix3f(m00, m01, m02, m10, m11, m12, m20, m21, m22);
   }
 
+  /**
+   * <code>svd</code> computes the singular value decomposition of the upper
+   * 3x3 portion of this matrix.
+   */
+  public Svd3f svd() {
+    return Svd3f.decompose(toRotationMatrix());
+  }
+
+  /**
+   * <code>polarDecomposition</code> splits the upper 3x3 portion of this
+   * matrix into a rotation and a symmetric stretch. Unlike
+   * {@link #toRotationQuat()}, the rotation is correct when the matrix has
+   * shear or non-uniform scale.
+   */
+  public Polar3f polarDecomposition() {
+    return Polar3f.decompose(toRotationMatrix());
+  }
+
   /**
    * 
    * <code>hashCode</code> returns the hash code value as an integer and is
@@ -0,0 +1,72 @@
+package org.saintandreas.math;
+
+/**
+ * <code>MeshData</code> holds a mesh or point cloud as flat arrays, as loaded
+ * by {@link ObjLoader} and {@link PlyLoader}: packed x, y, z positions, and
+ * optionally normals and u, v texture coordinates for the same vertices,
+ * with three indices per triangle. A point cloud has no indices.
+ *
+ * The arrays are the loader's own and are not copied.
+ *
+ * @author Brad Davis
+ */
+public final class MeshData {
+  private final float[] positions;
+  private final float[] normals;
+  private final float[] texCoords;
+  private final int[] indices;
+  private final Vector3f min;
+  private final Vector3f max;
+
+  MeshData(float[] positions, float[] normals, float[] texCoords, int[] indices, Vector3f min, Vector3f max) {
+    this.positions = positions;
+    this.normals = normals;
+    this.texCoords = texCoords;
+    this.indices = indices;
+    this.min = min;
+    this.max = max;
+  }
+
+  public int getVertexCount() {
+    return positions.length / 3;
+  }
+
+  public int getTriangleCount() {
+    return indices.length / 3;
+  }
+
+  public float[] getPositions() {
+    return positions;
+  }
+
+  /**
+   * @return the vertex normals, or null if the file had none and none were
+   *         computed.
+   */
+  public float[] getNormals() {
+    return normals;
+  }
+
+  /**
+   * @return the texture coordinates, or null if the file had none.
+   */
+  public float[] getTexCoords() {
+    return texCoords;
+  }
+
+  public int[] getIndices() {
+    return indices;
+  }
+
+  /**
+   * @return the minimum corner of the bounding box of the positions, which is
+   *         positive infinity if there are none.
+   */
+  public Vector3f getMin() {
+    return min;
+  }
+
+  public Vector3f getMax() {
+    return max;
+  }
+}
@@ -0,0 +1,317 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * <code>MeshNormals</code> generates smooth vertex normals and tangents for
+ * indexed triangle meshes, held in buffers of packed floats and a buffer of
+ * three vertex indices per triangle.
+ *
+ * The work is done in two parallel passes. The first computes what each
+ * triangle contributes to its corners, the second has each vertex gather the
+ * contributions of its corners from a vertex to corner table. The corners of
+ * a vertex are always summed in the same order, so the results do not depend
+ * on the number of threads or on scheduling.
+ *
+ * Buffers are read and written from their positions without changing them.
+ *
+ * @author Brad Davis
+ */
+public final class MeshNormals {
+  private static final int CHUNK_SIZE = 1 << 13;
+
+  private MeshNormals() {
+  }
+
+  /**
+   * <code>computeNormals</code> computes a unit normal for each vertex from
+   * the triangles that share it. Triangles are wound counter clockwise when
+   * seen from the front. Vertices used by no triangle, or only by degenerate
+   * ones, get a zero normal.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param indices
+   *          three vertex indices per triangle.
+   * @param normals
+   *          receives packed x, y, z normals, one per vertex.
+   * @param angleWeighted
+   *          if true, each triangle contributes in proportion to its angle at
+   *          the vertex, which does not depend on how the surface around the
+   *          vertex is tessellated. Otherwise each contributes in proportion
+   *          to its area.
+   */
+  public static void computeNormals(final FloatBuffer positions,
+      final IntBuffer indices, final FloatBuffer normals,
+      final boolean angleWeighted) {
+    final int vertexCount = positions.remaining() / 3;
+    final int triangleCount = indices.remaining() / 3;
+    final int[] index = readIndices(indices, vertexCount);
+    final float[] faces = new float[triangleCount * 3];
+    final float[] weights = angleWeighted ? new float[triangleCount * 3] : null;
+    final int pBase = positions.position();
+    Parallel.forEachRange(triangleCount, CHUNK_SIZE, (start, end) -> {
+      float[] edges = new float[9];
+      for (int t = start; t < end; ++t) {
+        edges(positions, pBase, index, t, edges);
+        float nx = edges[1] * edges[5] - edges[2] * edges[4];
+        float ny = edges[2] * edges[3] - edges[0] * edges[5];
+        float nz = edges[0] * edges[4] - edges[1] * edges[3];
+        if (angleWeighted) {
+          float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+          if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+          }
+          angles(edges, weights, t * 3);
+        }
+        // the cross product is twice the area, which only scales the sum
+        faces[t * 3] = nx;
+        faces[t * 3 + 1] = ny;
+        faces[t * 3 + 2] = nz;
+      }
+    });
+
+    final int[] cornerStarts = new int[vertexCount + 1];
+    final int[] corners = vertexCorners(index, vertexCount, cornerStarts);
+    final int nBase = normals.position();
+    Parallel.forEachRange(vertexCount, CHUNK_SIZE, (start, end) -> {
+      for (int v = start; v < end; ++v) {
+        float x = 0, y = 0, z = 0;
+        for (int i = cornerStarts[v]; i < cornerStarts[v + 1]; ++i) {
+          int c = corners[i], t = c / 3;
+          float w = angleWeighted ? weights[c] : 1;
+          x += faces[t * 3] * w;
+          y += faces[t * 3 + 1] * w;
+          z += faces[t * 3 + 2] * w;
+        }
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length > 0) {
+          x /= length;
+          y /= length;
+          z /= length;
+        }
+        normals.put(nBase + v * 3, x);
+        normals.put(nBase + v * 3 + 1, y);
+        normals.put(nBase + v * 3 + 2, z);
+      }
+    });
+  }
+
+  /**
+   * Computes angle weighted normals into a new array.
+   *
+   * @see #computeNormals(FloatBuffer, IntBuffer, FloatBuffer, boolean)
+   */
+  public static float[] computeNormals(float[] positions, int[] indices) {
+    float[] normals = new float[positions.length / 3 * 3];
+    computeNormals(FloatBuffer.wrap(positions), IntBuffer.wrap(indices),
+        FloatBuffer.wrap(normals), true);
+    return normals;
+  }
+
+  /**
+   * <code>computeTangents</code> computes a tangent frame for each vertex,
+   * following the conventions of MikkTSpace: each corner takes the direction
+   * of increasing u over its triangle, projected into the plane of the vertex
+   * normal, and these are averaged with weights equal to the corner angles.
+   * The w component of each tangent is the handedness of the frame, 1 or -1,
+   * so that the bitangent is <code>w * cross(normal, tangent)</code>.
+   *
+   * Unlike MikkTSpace, vertices are never split: a vertex shared by
+   * triangles whose texture mappings disagree, such as across a mirror seam,
+   * gets their average. Vertices whose triangles all have degenerate texture
+   * coordinates get an arbitrary tangent perpendicular to the normal.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param normals
+   *          unit vertex normals as packed x, y, z triples.
+   * @param texCoords
+   *          vertex texture coordinates as packed u, v pairs.
+   * @param indices
+   *          three vertex indices per triangle.
+   * @param tangents
+   *          receives packed x, y, z, w tangents, one per vertex.
+   */
+  public static void computeTangents(final FloatBuffer positions,
+      final FloatBuffer normals, final FloatBuffer texCoords,
+      final IntBuffer indices, final FloatBuffer tangents) {
+    final int vertexCount = positions.remaining() / 3;
+    final int triangleCount = indices.remaining() / 3;
+    final int[] index = readIndices(indices, vertexCount);
+    // the unit direction of increasing u over each triangle, and the angle of
+    // each corner, negated where the texture mapping is mirrored
+    final float[] faces = new float[triangleCount * 3];
+    final float[] weights = new float[triangleCount * 3];
+    final int pBase = positions.position(), tBase = texCoords.position();
+    Parallel.forEachRange(triangleCount, CHUNK_SIZE, (start, end) -> {
+      float[] edges = new float[9];
+      for (int t = start; t < end; ++t) {
+        edges(positions, pBase, index, t, edges);
+        int a = tBase + index[t * 3] * 2;
+        int b = tBase + index[t * 3 + 1] * 2;
+        int c = tBase + index[t * 3 + 2] * 2;
+        float u0 = texCoords.get(a), v0 = texCoords.get(a + 1);
+        float du1 = texCoords.get(b) - u0, dv1 = texCoords.get(b + 1) - v0;
+        float du2 = texCoords.get(c) - u0, dv2 = texCoords.get(c + 1) - v0;
+        float area = du1 * dv2 - dv1 * du2;
+        // dP/du scaled by the signed texture area, so the sign is corrected
+        // below along with the length
+        float x = dv2 * edges[0] - dv1 * edges[3];
+        float y = dv2 * edges[1] - dv1 * edges[4];
+        float z = dv2 * edges[2] - dv1 * edges[5];
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        angles(edges, weights, t * 3);
+        if (area == 0 || length == 0) {
+          weights[t * 3] = weights[t * 3 + 1] = weights[t * 3 + 2] = 0;
+          length = 1;
+        } else if (area < 0) {
+          length = -length;
+          weights[t * 3] = -weights[t * 3];
+          weights[t * 3 + 1] = -weights[t * 3 + 1];
+          weights[t * 3 + 2] = -weights[t * 3 + 2];
+        }
+        faces[t * 3] = x / length;
+        faces[t * 3 + 1] = y / length;
+        faces[t * 3 + 2] = z / length;
+      }
+    });
+
+    final int[] cornerStarts = new int[vertexCount + 1];
+    final int[] corners = vertexCorners(index, vertexCount, cornerStarts);
+    final int nBase = normals.position(), outBase = tangents.position();
+    Parallel.forEachRange(vertexCount, CHUNK_SIZE, (start, end) -> {
+      for (int v = start; v < end; ++v) {
+        float nx = normals.get(nBase + v * 3);
+        float ny = normals.get(nBase + v * 3 + 1);
+        float nz = normals.get(nBase + v * 3 + 2);
+        float x = 0, y = 0, z = 0, handedness = 0;
+        for (int i = cornerStarts[v]; i < cornerStarts[v + 1]; ++i) {
+          int c = corners[i], t = c / 3;
+          float w = weights[c];
+          if (w == 0) {
+            continue;
+          }
+          float tx = faces[t * 3], ty = faces[t * 3 + 1], tz = faces[t * 3 + 2];
+          float d = nx * tx + ny * ty + nz * tz;
+          tx -= nx * d;
+          ty -= ny * d;
+          tz -= nz * d;
+          float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+          if (length > 0) {
+            float scale = Math.abs(w) / length;
+            x += tx * scale;
+            y += ty * scale;
+            z += tz * scale;
+            handedness += w;
+          }
+        }
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length > 0) {
+          x /= length;
+          y /= length;
+          z /= length;
+        } else {
+          // any direction in the tangent plane will do
+          if (Math.abs(nx) < 0.9f) {
+            x = 0;
+            y = nz;
+            z = -ny;
+          } else {
+            x = -nz;
+            y = 0;
+            z = nx;
+          }
+          length = (float) Math.sqrt(x * x + y * y + z * z);
+          if (length > 0) {
+            x /= length;
+            y /= length;
+            z /= length;
+          }
+        }
+        tangents.put(outBase + v * 4, x);
+        tangents.put(outBase + v * 4 + 1, y);
+        tangents.put(outBase + v * 4 + 2, z);
+        tangents.put(outBase + v * 4 + 3, handedness < 0 ? -1 : 1);
+      }
+    });
+  }
+
+  /**
+   * Computes tangents into a new array.
+   *
+   * @see #computeTangents(FloatBuffer, FloatBuffer, FloatBuffer, IntBuffer,
+   *      FloatBuffer)
+   */
+  public static float[] computeTangents(float[] positions, float[] normals,
+      float[] texCoords, int[] indices) {
+    float[] tangents = new float[positions.length / 3 * 4];
+    computeTangents(FloatBuffer.wrap(positions), FloatBuffer.wrap(normals),
+        FloatBuffer.wrap(texCoords), IntBuffer.wrap(indices),
+        FloatBuffer.wrap(tangents));
+    return tangents;
+  }
+
+  private static int[] readIndices(IntBuffer indices, int vertexCount) {
+    int[] result = new int[indices.remaining() / 3 * 3];
+    indices.duplicate().get(result);
+    for (int v : result) {
+      if (v < 0 || v >= vertexCount) {
+        throw new IllegalArgumentException("Invalid index. " + v);
+      }
+    }
+    return result;
+  }
+
+  // the edges from the first vertex of a triangle to the other two, and from
+  // the second to the third
+  private static void edges(FloatBuffer positions, int base, int[] index,
+      int t, float[] edges) {
+    int a = base + index[t * 3] * 3;
+    int b = base + index[t * 3 + 1] * 3;
+    int c = base + index[t * 3 + 2] * 3;
+    for (int k = 0; k < 3; ++k) {
+      float p0 = positions.get(a + k), p1 = positions.get(b + k), p2 = positions.get(c + k);
+      edges[k] = p1 - p0;
+      edges[3 + k] = p2 - p0;
+      edges[6 + k] = p2 - p1;
+    }
+  }
+
+  // the interior angle at each corner of a triangle
+  private static void angles(float[] e, float[] result, int offset) {
+    result[offset] = angle(e[0], e[1], e[2], e[3], e[4], e[5]);
+    result[offset + 1] = angle(-e[0], -e[1], -e[2], e[6], e[7], e[8]);
+    result[offset + 2] = FastMath.PI - result[offset] - result[offset + 1];
+    if (result[offset + 2] < 0) {
+      result[offset + 2] = 0;
+    }
+  }
+
+  private static float angle(float ax, float ay, float az, float bx, float by,
+      float bz) {
+    float cx = ay * bz - az * by, cy = az * bx - ax * bz, cz = ax * by - ay * bx;
+    return (float) Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz),
+        ax * bx + ay * by + az * bz);
+  }
+
+  // a table of the corners, 3 * triangle + k, using each vertex, in the
+  // order they appear in the index buffer
+  private static int[] vertexCorners(int[] index, int vertexCount, int[] starts) {
+    for (int v : index) {
+      ++starts[v + 1];
+    }
+    for (int v = 0; v < vertexCount; ++v) {
+      starts[v + 1] += starts[v];
+    }
+    int[] fill = starts.clone();
+    int[] corners = new int[index.length];
+    for (int c = 0; c < index.length; ++c) {
+      corners[fill[index[c]]++] = c;
+    }
+    return corners;
+  }
+}
@@ -0,0 +1,184 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>Morton</code> encodes integer grid coordinates as Morton (Z-order)
+ * codes, interleaving their bits so that cells close in space are mostly close
+ * in the order of their codes. Sorting voxels, tiles or points by code keeps
+ * neighbors together in memory.
+ *
+ * Two dimensional codes hold 32 bits per axis and three dimensional codes 21
+ * bits per axis, with x in the lowest bit. Coordinates are signed, and are
+ * biased by half the range so that the order is continuous across zero: 2D
+ * coordinates may be any <code>int</code>, and 3D coordinates must lie in
+ * [-2^20, 2^20), outside which only their low 21 bits are kept.
+ *
+ * @author Brad Davis
+ */
+public final class Morton {
+  /** The number of bits per axis of a three dimensional code. */
+  public static final int BITS_3D = 21;
+  /** The smallest coordinate a three dimensional code can hold. */
+  public static final int MIN_3D = -(1 << (BITS_3D - 1));
+  /** The largest coordinate a three dimensional code can hold. */
+  public static final int MAX_3D = (1 << (BITS_3D - 1)) - 1;
+
+  private static final int BIAS_2D = Integer.MIN_VALUE;
+  private static final int BIAS_3D = 1 << (BITS_3D - 1);
+  private static final long MASK_3D = (1L << BITS_3D) - 1;
+
+  private Morton() {
+  }
+
+  /**
+   * Spreads the low 32 bits of a value into the even bits of a long.
+   */
+  static long spread2(long v) {
+    v &= 0xFFFFFFFFL;
+    v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+    v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+    v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+    v = (v | v << 2) & 0x3333333333333333L;
+    return (v | v << 1) & 0x5555555555555555L;
+  }
+
+  /**
+   * Gathers the even bits of a long, the inverse of {@link #spread2(long)}.
+   */
+  static int compact2(long v) {
+    v &= 0x5555555555555555L;
+    v = (v | v >>> 1) & 0x3333333333333333L;
+    v = (v | v >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+    v = (v | v >>> 4) & 0x00FF00FF00FF00FFL;
+    v = (v | v >>> 8) & 0x0000FFFF0000FFFFL;
+    return (int) (v | v >>> 16);
+  }
+
+  /**
+   * Spreads the low 21 bits of a value into every third bit of a long.
+   */
+  static long spread3(long v) {
+    v &= MASK_3D;
+    v = (v | v << 32) & 0x001F00000000FFFFL;
+    v = (v | v << 16) & 0x001F0000FF0000FFL;
+    v = (v | v << 8) & 0x100F00F00F00F00FL;
+    v = (v | v << 4) & 0x10C30C30C30C30C3L;
+    return (v | v << 2) & 0x1249249249249249L;
+  }
+
+  /**
+   * Gathers every third bit of a long, the inverse of {@link #spread3(long)}.
+   */
+  static int compact3(long v) {
+    v &= 0x1249249249249249L;
+    v = (v | v >>> 2) & 0x10C30C30C30C30C3L;
+    v = (v | v >>> 4) & 0x100F00F00F00F00FL;
+    v = (v | v >>> 8) & 0x001F0000FF0000FFL;
+    v = (v | v >>> 16) & 0x001F00000000FFFFL;
+    return (int) ((v | v >>> 32) & MASK_3D);
+  }
+
+  public static long encode(int x, int y) {
+    return spread2(x ^ BIAS_2D) | spread2(y ^ BIAS_2D) << 1;
+  }
+
+  public static int decodeX(long code) {
+    return compact2(code) ^ BIAS_2D;
+  }
+
+  public static int decodeY(long code) {
+    return compact2(code >>> 1) ^ BIAS_2D;
+  }
+
+  public static long encode(int x, int y, int z) {
+    return spread3(x + BIAS_3D) | spread3(y + BIAS_3D) << 1 | spread3(z + BIAS_3D) << 2;
+  }
+
+  public static int decodeX3(long code) {
+    return compact3(code) - BIAS_3D;
+  }
+
+  public static int decodeY3(long code) {
+    return compact3(code >>> 1) - BIAS_3D;
+  }
+
+  public static int decodeZ3(long code) {
+    return compact3(code >>> 2) - BIAS_3D;
+  }
+
+  private static int cell(float v, float origin, float inverseCellSize) {
+    float f = (float) Math.floor((v - origin) * inverseCellSize);
+    // clamping here also maps NaN to the origin cell
+    return f >= MIN_3D ? (f <= MAX_3D ? (int) f : MAX_3D) : (f < MIN_3D ? MIN_3D : 0);
+  }
+
+  /**
+   * <code>encode</code> computes the three dimensional code of the grid cell
+   * holding each of a set of points, for sorting them. Points beyond the
+   * range of the code are clamped to its edge.
+   *
+   * @param xyz
+   *          packed x, y, z triples.
+   * @param count
+   *          the number of points.
+   * @param origin
+   *          the corner of cell (0, 0, 0).
+   * @param cellSize
+   *          the edge length of a cell.
+   * @param codes
+   *          receives one code per point.
+   */
+  public static void encode(float[] xyz, int count, Vector3f origin, float cellSize, long[] codes) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Invalid cell size. " + cellSize);
+    }
+    float inverse = 1 / cellSize;
+    float ox = origin.x, oy = origin.y, oz = origin.z;
+    for (int i = 0; i < count; ++i) {
+      codes[i] = encode(cell(xyz[i * 3], ox, inverse), cell(xyz[i * 3 + 1], oy, inverse),
+          cell(xyz[i * 3 + 2], oz, inverse));
+    }
+  }
+
+  /**
+   * <code>sort</code> computes the order of a set of codes, with a least
+   * significant digit radix sort, which is stable and takes time linear in
+   * the count. The codes themselves are left alone; the caller permutes its
+   * data with the result.
+   *
+   * @param codes
+   *          the codes, treated as unsigned.
+   * @param count
+   *          the number of codes.
+   * @param order
+   *          receives the indices of the codes in ascending order.
+   */
+  public static void sort(long[] codes, int count, int[] order) {
+    final int digitBits = 11;
+    final int radix = 1 << digitBits;
+    long all = 0;
+    for (int i = 0; i < count; ++i) {
+      all |= codes[i];
+      order[i] = i;
+    }
+    int[] scratch = new int[count];
+    int[] offsets = new int[radix];
+    for (int shift = 0; shift < 64 && (all >>> shift) != 0; shift += digitBits) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; ++i) {
+        ++offsets[(int) (codes[i] >>> shift) & (radix - 1)];
+      }
+      for (int d = 0, sum = 0; d < radix; ++d) {
+        int n = offsets[d];
+        offsets[d] = sum;
+        sum += n;
+      }
+      for (int i = 0; i < count; ++i) {
+        int index = order[i];
+        scratch[offsets[(int) (codes[index] >>> shift) & (radix - 1)]++] = index;
+      }
+      System.arraycopy(scratch, 0, order, 0, count);
+    }
+  }
+}
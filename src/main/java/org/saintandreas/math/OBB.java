@@ -0,0 +1,345 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <code>OBB</code> is an oriented bounding box: a center, three orthonormal
+ * axes, and a half extent along each.
+ *
+ * {@link #fit(FloatBuffer, int)} fits a box to a set of points by principal
+ * component analysis, taking the axes from the eigenvectors of the points'
+ * covariance and the extents from the points' projections on them. The fit is
+ * tight for elongated parts, but depends on how the points are spread, so a
+ * box fitted to the vertices of an unevenly tessellated mesh can be larger
+ * than the best one. {@link #fit(float[], int[], int)} fits the parts of a
+ * whole mesh in parallel.
+ *
+ * {@link #intersects(OBB)} is the separating axis test of Gottschalk et al,
+ * "OBBTree: A Hierarchical Structure for Rapid Interference Detection", and
+ * {@link #intersects(Matrix4f)} tests the box against each plane of a view
+ * frustum. The frustum test is conservative: a box near a corner of the
+ * frustum can be reported as intersecting when it is just outside.
+ *
+ * @author Brad Davis
+ */
+public final class OBB {
+  // keeps the separating axis test robust when edges are nearly parallel
+  private static final float EPSILON = 1e-6f;
+  private static final int CHUNK_SIZE = 64;
+
+  private final float cx, cy, cz;
+  private final float ux, uy, uz;
+  private final float vx, vy, vz;
+  private final float wx, wy, wz;
+  private final float ex, ey, ez;
+
+  /**
+   * @param center
+   *          the center of the box.
+   * @param axes
+   *          a rotation matrix whose columns are the box's axes.
+   * @param extents
+   *          the half size of the box along each axis.
+   */
+  public OBB(Vector3f center, Matrix3f axes, Vector3f extents) {
+    this(center.x, center.y, center.z, axes.m00, axes.m10, axes.m20, axes.m01, axes.m11, axes.m21, axes.m02,
+        axes.m12, axes.m22, extents.x, extents.y, extents.z);
+  }
+
+  private OBB(float cx, float cy, float cz, float ux, float uy, float uz, float vx, float vy, float vz,
+      float wx, float wy, float wz, float ex, float ey, float ez) {
+    this.cx = cx;
+    this.cy = cy;
+    this.cz = cz;
+    this.ux = ux;
+    this.uy = uy;
+    this.uz = uz;
+    this.vx = vx;
+    this.vy = vy;
+    this.vz = vz;
+    this.wx = wx;
+    this.wy = wy;
+    this.wz = wz;
+    this.ex = ex;
+    this.ey = ey;
+    this.ez = ez;
+  }
+
+  public Vector3f getCenter() {
+    return new Vector3f(cx, cy, cz);
+  }
+
+  /**
+   * @return the axes, as the columns of a rotation matrix.
+   */
+  public Matrix3f getAxes() {
+    return new Matrix3f(ux, vx, wx, uy, vy, wy, uz, vz, wz);
+  }
+
+  public Vector3f getAxis(int i) {
+    switch (i) {
+    case 0:
+      return new Vector3f(ux, uy, uz);
+    case 1:
+      return new Vector3f(vx, vy, vz);
+    case 2:
+      return new Vector3f(wx, wy, wz);
+    }
+    throw new IllegalArgumentException("Invalid axis index. " + i);
+  }
+
+  public Vector3f getExtents() {
+    return new Vector3f(ex, ey, ez);
+  }
+
+  public float getVolume() {
+    return 8 * ex * ey * ez;
+  }
+
+  public boolean contains(Vector3f p) {
+    float dx = p.x - cx, dy = p.y - cy, dz = p.z - cz;
+    return Math.abs(dx * ux + dy * uy + dz * uz) <= ex && Math.abs(dx * vx + dy * vy + dz * vz) <= ey
+        && Math.abs(dx * wx + dy * wy + dz * wz) <= ez;
+  }
+
+  /**
+   * <code>fit</code> fits a box to a set of points by principal component
+   * analysis.
+   *
+   * @param xyz
+   *          packed x, y, z points, from the buffer's position, which is not
+   *          changed.
+   * @param count
+   *          the number of points, at least one.
+   */
+  public static OBB fit(FloatBuffer xyz, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    Covariance3f covariance = new Covariance3f();
+    covariance.add(xyz, count);
+    float[] eigen = eigen(covariance);
+    float[] range = range(eigen);
+    int base = xyz.position();
+    for (int i = base, end = base + count * 3; i < end; i += 3) {
+      extend(range, eigen, xyz.get(i), xyz.get(i + 1), xyz.get(i + 2));
+    }
+    return fromRange(eigen, range);
+  }
+
+  /**
+   * <code>fit</code> fits a box to packed x, y, z points in an array.
+   */
+  public static OBB fit(float[] xyz, int offset, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    Covariance3f covariance = new Covariance3f();
+    covariance.add(xyz, offset, count);
+    float[] eigen = eigen(covariance);
+    float[] range = range(eigen);
+    for (int i = offset, end = offset + count * 3; i < end; i += 3) {
+      extend(range, eigen, xyz[i], xyz[i + 1], xyz[i + 2]);
+    }
+    return fromRange(eigen, range);
+  }
+
+  /**
+   * <code>fit</code> fits a box to each part of a mesh, in parallel.
+   *
+   * @param xyz
+   *          packed x, y, z points.
+   * @param partStarts
+   *          the index of the first point of each part, in increasing order,
+   *          followed by the total number of points, so part <code>i</code>
+   *          runs from <code>partStarts[i]</code> to
+   *          <code>partStarts[i + 1]</code>. No part may be empty.
+   * @param parts
+   *          the number of parts.
+   * @return a box per part.
+   */
+  public static OBB[] fit(final float[] xyz, final int[] partStarts, int parts) {
+    final OBB[] result = new OBB[parts];
+    Parallel.forEach(parts, CHUNK_SIZE,
+        i -> result[i] = fit(xyz, partStarts[i] * 3, partStarts[i + 1] - partStarts[i]));
+    return result;
+  }
+
+  private static float[] eigen(Covariance3f covariance) {
+    Matrix3f c = covariance.getCovariance();
+    float[] eigen = new float[12];
+    Eigen3f.decompose(c.m00, c.m01, c.m02, c.m11, c.m12, c.m22, eigen);
+    return eigen;
+  }
+
+  private static float[] range(float[] eigen) {
+    float inf = Float.POSITIVE_INFINITY;
+    return new float[] { inf, inf, inf, -inf, -inf, -inf };
+  }
+
+  private static void extend(float[] range, float[] eigen, float x, float y, float z) {
+    for (int a = 0; a < 3; ++a) {
+      float d = x * eigen[3 + a * 3] + y * eigen[4 + a * 3] + z * eigen[5 + a * 3];
+      range[a] = Math.min(range[a], d);
+      range[a + 3] = Math.max(range[a + 3], d);
+    }
+  }
+
+  private static OBB fromRange(float[] eigen, float[] range) {
+    float[] c = new float[3];
+    for (int a = 0; a < 3; ++a) {
+      float mid = (range[a] + range[a + 3]) * 0.5f;
+      c[0] += mid * eigen[3 + a * 3];
+      c[1] += mid * eigen[4 + a * 3];
+      c[2] += mid * eigen[5 + a * 3];
+    }
+    return new OBB(c[0], c[1], c[2], eigen[3], eigen[4], eigen[5], eigen[6], eigen[7], eigen[8], eigen[9],
+        eigen[10], eigen[11], (range[3] - range[0]) * 0.5f, (range[4] - range[1]) * 0.5f,
+        (range[5] - range[2]) * 0.5f);
+  }
+
+  /**
+   * <code>intersects</code> tests whether two boxes overlap, including
+   * touching, by looking for a separating axis among the 15 candidates: the
+   * face normals of each box and the cross products of their edges.
+   */
+  public boolean intersects(OBB b) {
+    // the rotation taking b into this box's frame
+    float r00 = ux * b.ux + uy * b.uy + uz * b.uz;
+    float r01 = ux * b.vx + uy * b.vy + uz * b.vz;
+    float r02 = ux * b.wx + uy * b.wy + uz * b.wz;
+    float r10 = vx * b.ux + vy * b.uy + vz * b.uz;
+    float r11 = vx * b.vx + vy * b.vy + vz * b.vz;
+    float r12 = vx * b.wx + vy * b.wy + vz * b.wz;
+    float r20 = wx * b.ux + wy * b.uy + wz * b.uz;
+    float r21 = wx * b.vx + wy * b.vy + wz * b.vz;
+    float r22 = wx * b.wx + wy * b.wy + wz * b.wz;
+    // the translation, in this box's frame
+    float dx = b.cx - cx, dy = b.cy - cy, dz = b.cz - cz;
+    float t0 = dx * ux + dy * uy + dz * uz;
+    float t1 = dx * vx + dy * vy + dz * vz;
+    float t2 = dx * wx + dy * wy + dz * wz;
+    float a00 = Math.abs(r00) + EPSILON, a01 = Math.abs(r01) + EPSILON, a02 = Math.abs(r02) + EPSILON;
+    float a10 = Math.abs(r10) + EPSILON, a11 = Math.abs(r11) + EPSILON, a12 = Math.abs(r12) + EPSILON;
+    float a20 = Math.abs(r20) + EPSILON, a21 = Math.abs(r21) + EPSILON, a22 = Math.abs(r22) + EPSILON;
+
+    // this box's axes
+    if (Math.abs(t0) > ex + b.ex * a00 + b.ey * a01 + b.ez * a02) {
+      return false;
+    }
+    if (Math.abs(t1) > ey + b.ex * a10 + b.ey * a11 + b.ez * a12) {
+      return false;
+    }
+    if (Math.abs(t2) > ez + b.ex * a20 + b.ey * a21 + b.ez * a22) {
+      return false;
+    }
+    // the other box's axes
+    if (Math.abs(t0 * r00 + t1 * r10 + t2 * r20) > ex * a00 + ey * a10 + ez * a20 + b.ex) {
+      return false;
+    }
+    if (Math.abs(t0 * r01 + t1 * r11 + t2 * r21) > ex * a01 + ey * a11 + ez * a21 + b.ey) {
+      return false;
+    }
+    if (Math.abs(t0 * r02 + t1 * r12 + t2 * r22) > ex * a02 + ey * a12 + ez * a22 + b.ez) {
+      return false;
+    }
+    // the cross products of the edges
+    if (Math.abs(t2 * r10 - t1 * r20) > ey * a20 + ez * a10 + b.ey * a02 + b.ez * a01) {
+      return false;
+    }
+    if (Math.abs(t2 * r11 - t1 * r21) > ey * a21 + ez * a11 + b.ex * a02 + b.ez * a00) {
+      return false;
+    }
+    if (Math.abs(t2 * r12 - t1 * r22) > ey * a22 + ez * a12 + b.ex * a01 + b.ey * a00) {
+      return false;
+    }
+    if (Math.abs(t0 * r20 - t2 * r00) > ex * a20 + ez * a00 + b.ey * a12 + b.ez * a11) {
+      return false;
+    }
+    if (Math.abs(t0 * r21 - t2 * r01) > ex * a21 + ez * a01 + b.ex * a12 + b.ez * a10) {
+      return false;
+    }
+    if (Math.abs(t0 * r22 - t2 * r02) > ex * a22 + ez * a02 + b.ex * a11 + b.ey * a10) {
+      return false;
+    }
+    if (Math.abs(t1 * r00 - t0 * r10) > ex * a10 + ey * a00 + b.ey * a22 + b.ez * a21) {
+      return false;
+    }
+    if (Math.abs(t1 * r01 - t0 * r11) > ex * a11 + ey * a01 + b.ex * a22 + b.ez * a20) {
+      return false;
+    }
+    if (Math.abs(t1 * r02 - t0 * r12) > ex * a12 + ey * a02 + b.ex * a21 + b.ey * a20) {
+      return false;
+    }
+    return true;
+  }
+
+  // the six planes of the frustum of a matrix, in OpenGL clip space, as in
+  // Octree.queryFrustum
+  private static float[] frustumPlanes(Matrix4f m) {
+    return new float[] { //
+        m.m30 + m.m00, m.m31 + m.m01, m.m32 + m.m02, m.m33 + m.m03, // left
+        m.m30 - m.m00, m.m31 - m.m01, m.m32 - m.m02, m.m33 - m.m03, // right
+        m.m30 + m.m10, m.m31 + m.m11, m.m32 + m.m12, m.m33 + m.m13, // bottom
+        m.m30 - m.m10, m.m31 - m.m11, m.m32 - m.m12, m.m33 - m.m13, // top
+        m.m30 + m.m20, m.m31 + m.m21, m.m32 + m.m22, m.m33 + m.m23, // near
+        m.m30 - m.m20, m.m31 - m.m21, m.m32 - m.m22, m.m33 - m.m23, // far
+    };
+  }
+
+  private boolean intersects(float[] planes) {
+    for (int p = 0; p < 24; p += 4) {
+      float nx = planes[p], ny = planes[p + 1], nz = planes[p + 2];
+      // the box's extent along the plane normal
+      float r = ex * Math.abs(nx * ux + ny * uy + nz * uz) + ey * Math.abs(nx * vx + ny * vy + nz * vz)
+          + ez * Math.abs(nx * wx + ny * wy + nz * wz);
+      if (nx * cx + ny * cy + nz * cz + planes[p + 3] < -r) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * <code>intersects</code> tests whether the box is at least partially
+   * inside the frustum of the given matrix, assuming OpenGL clip space
+   * conventions (-w &lt;= x, y, z &lt;= w).
+   *
+   * @param viewProjection
+   *          the combined projection and view matrix.
+   */
+  public boolean intersects(Matrix4f viewProjection) {
+    return intersects(frustumPlanes(viewProjection));
+  }
+
+  /**
+   * <code>cull</code> finds the boxes at least partially inside the frustum
+   * of the given matrix, extracting its planes only once.
+   *
+   * @param boxes
+   *          the boxes to test.
+   * @param count
+   *          the number of boxes.
+   * @param viewProjection
+   *          the combined projection and view matrix.
+   * @param result
+   *          receives the indices of the visible boxes, in order.
+   * @return the number of visible boxes.
+   */
+  public static int cull(OBB[] boxes, int count, Matrix4f viewProjection, int[] result) {
+    float[] planes = frustumPlanes(viewProjection);
+    int visible = 0;
+    for (int i = 0; i < count; ++i) {
+      if (boxes[i].intersects(planes)) {
+        result[visible++] = i;
+      }
+    }
+    return visible;
+  }
+
+  @Override
+  public String toString() {
+    return "OBB [center=" + getCenter() + ", axes=" + getAxis(0) + getAxis(1) + getAxis(2) + ", extents="
+        + getExtents() + "]";
+  }
+}
@@ -0,0 +1,312 @@
+package org.saintandreas.math;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <code>ObjLoader</code> loads the geometry of Wavefront OBJ files: vertex
+ * positions, texture coordinates and normals, and polygonal faces, which are
+ * triangulated as fans. Everything else, such as groups, materials, lines
+ * and free form geometry, is skipped.
+ *
+ * OBJ faces index positions, texture coordinates and normals separately.
+ * When faces use texture coordinates or normals, each distinct combination
+ * becomes a vertex of the result. Otherwise the vertices are the positions
+ * of the file, in order, and a file with no faces loads as a point cloud,
+ * taking normals and texture coordinates by position index if there is one
+ * for each position.
+ *
+ * The text is parsed in parallel chunks of whole lines. A first pass counts
+ * the elements in each chunk, so the second can parse each chunk straight
+ * into its place in arrays of exactly the right size, with no objects
+ * created per element. The bounding box is accumulated as the positions are
+ * parsed.
+ *
+ * @author Brad Davis
+ */
+public final class ObjLoader {
+  private static final int CHUNK_BYTES = 1 << 20;
+
+  private ObjLoader() {
+  }
+
+  /**
+   * Maps and loads a file, which must be smaller than 2 GB.
+   *
+   * @see #load(ByteBuffer, boolean)
+   */
+  public static MeshData load(Path path, boolean computeNormals) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large. " + path);
+      }
+      return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), computeNormals);
+    }
+  }
+
+  /**
+   * Loads OBJ text from the buffer's position to its limit, without changing
+   * its position.
+   *
+   * @param computeNormals
+   *          if true, and the file gives no normals for its vertices, angle
+   *          weighted normals are computed from the triangles.
+   */
+  public static MeshData load(ByteBuffer buffer, boolean computeNormals) throws IOException {
+    try {
+      return new Parse(buffer).run(computeNormals);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static final class Parse {
+    final ByteBuffer buffer;
+    final int chunks;
+    final int[] starts;
+    // per chunk counts, then offsets: positions, texture coordinates,
+    // normals, face corners and triangles
+    final int[][] counts;
+    float[] positions, texCoords, normals;
+    int[] cornerPositions, cornerTexCoords, cornerNormals, triangles;
+    final float[] bounds;
+
+    Parse(ByteBuffer buffer) {
+      this.buffer = buffer;
+      int base = buffer.position(), end = buffer.limit();
+      chunks = Math.max(1, (int) (((long) end - base + CHUNK_BYTES - 1) / CHUNK_BYTES));
+      starts = new int[chunks + 1];
+      starts[0] = base;
+      for (int c = 1; c < chunks; ++c) {
+        starts[c] = AsciiScanner.nextLine(buffer, Math.max(starts[c - 1], base + c * CHUNK_BYTES - 1), end);
+      }
+      starts[chunks] = end;
+      counts = new int[chunks][5];
+      bounds = new float[chunks * 6];
+    }
+
+    MeshData run(boolean computeNormals) throws IOException {
+      Parallel.forEach(chunks, 1, this::count);
+      int[] totals = new int[5];
+      for (int[] chunk : counts) {
+        for (int k = 0; k < 5; ++k) {
+          int count = chunk[k];
+          chunk[k] = totals[k];
+          totals[k] += count;
+          if (totals[k] < 0) {
+            throw new IOException("File too large");
+          }
+        }
+      }
+      if (totals[0] > Integer.MAX_VALUE / 3 || totals[2] > Integer.MAX_VALUE / 3
+          || totals[4] > Integer.MAX_VALUE / 3) {
+        throw new IOException("File too large");
+      }
+      positions = new float[totals[0] * 3];
+      texCoords = new float[totals[1] * 2];
+      normals = new float[totals[2] * 3];
+      cornerPositions = new int[totals[3]];
+      cornerTexCoords = new int[totals[3]];
+      cornerNormals = new int[totals[3]];
+      triangles = new int[totals[4] * 3];
+      Parallel.forEach(chunks, 1, this::parse);
+
+      float[] min = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+      float[] max = { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+      for (int c = 0; c < chunks; ++c) {
+        for (int k = 0; k < 3; ++k) {
+          min[k] = Math.min(min[k], bounds[c * 6 + k]);
+          max[k] = Math.max(max[k], bounds[c * 6 + 3 + k]);
+        }
+      }
+
+      int positionCount = totals[0], texCoordCount = totals[1], normalCount = totals[2];
+      boolean useTexCoords = false, useNormals = false;
+      for (int i = 0; i < cornerPositions.length; ++i) {
+        check(cornerPositions[i], positionCount);
+        if (cornerTexCoords[i] != -1) {
+          check(cornerTexCoords[i], texCoordCount);
+          useTexCoords = true;
+        }
+        if (cornerNormals[i] != -1) {
+          check(cornerNormals[i], normalCount);
+          useNormals = true;
+        }
+      }
+
+      float[] outPositions = positions, outTexCoords = null, outNormals = null;
+      int[] indices;
+      if (useTexCoords || useNormals) {
+        int[] cornerVertices = new int[cornerPositions.length];
+        int vertexCount = unify(cornerVertices);
+        outPositions = new float[vertexCount * 3];
+        outTexCoords = useTexCoords ? new float[vertexCount * 2] : null;
+        outNormals = useNormals ? new float[vertexCount * 3] : null;
+        for (int i = 0; i < cornerVertices.length; ++i) {
+          int v = cornerVertices[i];
+          System.arraycopy(positions, cornerPositions[i] * 3, outPositions, v * 3, 3);
+          // corners missing what others have get zeros
+          if (useTexCoords && cornerTexCoords[i] != -1) {
+            System.arraycopy(texCoords, cornerTexCoords[i] * 2, outTexCoords, v * 2, 2);
+          }
+          if (useNormals && cornerNormals[i] != -1) {
+            System.arraycopy(normals, cornerNormals[i] * 3, outNormals, v * 3, 3);
+          }
+        }
+        indices = new int[triangles.length];
+        for (int i = 0; i < indices.length; ++i) {
+          indices[i] = cornerVertices[triangles[i]];
+        }
+      } else {
+        indices = new int[triangles.length];
+        for (int i = 0; i < indices.length; ++i) {
+          indices[i] = cornerPositions[triangles[i]];
+        }
+        if (triangles.length == 0) {
+          outTexCoords = texCoordCount == positionCount && positionCount > 0 ? texCoords : null;
+          outNormals = normalCount == positionCount && positionCount > 0 ? normals : null;
+        }
+      }
+      if (computeNormals && outNormals == null && indices.length > 0) {
+        outNormals = MeshNormals.computeNormals(outPositions, indices);
+      }
+      return new MeshData(outPositions, outNormals, outTexCoords, indices, new Vector3f(min[0], min[1], min[2]),
+          new Vector3f(max[0], max[1], max[2]));
+    }
+
+    private static void check(int index, int count) throws IOException {
+      if (index < 0 || index >= count) {
+        throw new IOException("Invalid face index. " + index);
+      }
+    }
+
+    // assigns a vertex to each distinct combination of corner indices
+    private int unify(int[] cornerVertices) {
+      int capacity = Integer.highestOneBit(Math.max(4, cornerVertices.length * 2 - 1)) << 1;
+      int mask = capacity - 1;
+      int[] table = new int[capacity];
+      Arrays.fill(table, -1);
+      int vertexCount = 0;
+      for (int i = 0; i < cornerVertices.length; ++i) {
+        int p = cornerPositions[i], t = cornerTexCoords[i], n = cornerNormals[i];
+        long h = (p * 0x9E3779B97F4A7C15L) ^ (t * 0xC2B2AE3D27D4EB4FL) ^ (n * 0x165667B19E3779F9L);
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        for (;; slot = (slot + 1) & mask) {
+          int corner = table[slot];
+          if (corner == -1) {
+            table[slot] = i;
+            cornerVertices[i] = vertexCount++;
+            break;
+          }
+          if (cornerPositions[corner] == p && cornerTexCoords[corner] == t && cornerNormals[corner] == n) {
+            cornerVertices[i] = cornerVertices[corner];
+            break;
+          }
+        }
+      }
+      return vertexCount;
+    }
+
+    private void count(int c) {
+      AsciiScanner scanner = new AsciiScanner(buffer, starts[c], starts[c + 1]);
+      int[] count = counts[c];
+      while (scanner.hasMore()) {
+        if (scanner.word("v")) {
+          ++count[0];
+        } else if (scanner.word("vt")) {
+          ++count[1];
+        } else if (scanner.word("vn")) {
+          ++count[2];
+        } else if (scanner.word("f")) {
+          int corners = 0;
+          while (!scanner.atLineEnd()) {
+            scanner.skipToken();
+            ++corners;
+          }
+          count[3] += corners;
+          count[4] += Math.max(0, corners - 2);
+        }
+        scanner.skipLine();
+      }
+    }
+
+    private void parse(int c) {
+      AsciiScanner scanner = new AsciiScanner(buffer, starts[c], starts[c + 1]);
+      int[] offsets = counts[c];
+      int p = offsets[0], t = offsets[1], n = offsets[2], corner = offsets[3], triangle = offsets[4];
+      float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+      float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+      while (scanner.hasMore()) {
+        if (scanner.word("v")) {
+          float x = scanner.parseFloat(), y = scanner.parseFloat(), z = scanner.parseFloat();
+          positions[p * 3] = x;
+          positions[p * 3 + 1] = y;
+          positions[p * 3 + 2] = z;
+          ++p;
+          minX = Math.min(minX, x);
+          minY = Math.min(minY, y);
+          minZ = Math.min(minZ, z);
+          maxX = Math.max(maxX, x);
+          maxY = Math.max(maxY, y);
+          maxZ = Math.max(maxZ, z);
+        } else if (scanner.word("vt")) {
+          texCoords[t * 2] = scanner.parseFloat();
+          texCoords[t * 2 + 1] = scanner.atLineEnd() ? 0 : scanner.parseFloat();
+          ++t;
+        } else if (scanner.word("vn")) {
+          normals[n * 3] = scanner.parseFloat();
+          normals[n * 3 + 1] = scanner.parseFloat();
+          normals[n * 3 + 2] = scanner.parseFloat();
+          ++n;
+        } else if (scanner.word("f")) {
+          int first = corner;
+          while (!scanner.atLineEnd()) {
+            cornerPositions[corner] = resolve(scanner.parseInt(), p);
+            cornerTexCoords[corner] = -1;
+            cornerNormals[corner] = -1;
+            if (scanner.peek() == '/') {
+              scanner.skip();
+              if (scanner.peek() != '/') {
+                cornerTexCoords[corner] = resolve(scanner.parseInt(), t);
+              }
+              if (scanner.peek() == '/') {
+                scanner.skip();
+                cornerNormals[corner] = resolve(scanner.parseInt(), n);
+              }
+            }
+            if (corner - first >= 2) {
+              triangles[triangle * 3] = first;
+              triangles[triangle * 3 + 1] = corner - 1;
+              triangles[triangle * 3 + 2] = corner;
+              ++triangle;
+            }
+            ++corner;
+          }
+        }
+        scanner.skipLine();
+      }
+      bounds[c * 6] = minX;
+      bounds[c * 6 + 1] = minY;
+      bounds[c * 6 + 2] = minZ;
+      bounds[c * 6 + 3] = maxX;
+      bounds[c * 6 + 4] = maxY;
+      bounds[c * 6 + 5] = maxZ;
+    }
+
+    // OBJ indices count from one, or back from the latest element if negative
+    private static int resolve(int index, int count) {
+      if (index == 0) {
+        throw new IllegalArgumentException("Invalid face index. 0");
+      }
+      int resolved = index > 0 ? index - 1 : count + index;
+      if (resolved < 0) {
+        throw new IllegalArgumentException("Invalid face index. " + index);
+      }
+      return resolved;
+    }
+  }
+}
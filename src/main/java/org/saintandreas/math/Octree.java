@@ -0,0 +1,541 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <code>Octree</code> is a dynamic loose octree over objects identified by
+ * non-negative integer ids and bounded by axis aligned boxes, given as a
+ * center and half extents.
+ *
+ * Each cell's bounds are loosened to twice its size, so an object can be
+ * placed directly, without descending the tree, in the cell containing its
+ * center at the deepest level whose cells are at least as large as the
+ * object. When an object moves but stays in the same cell an update only
+ * rewrites its bounds.
+ *
+ * Nodes and objects live in flat arrays. Node slots are recycled through a
+ * free list as cells empty out, and objects are kept in an intrusive doubly
+ * linked list per node, so steady state updates do not allocate.
+ *
+ * Queries may be run from any number of threads while a single thread
+ * updates the tree. Queries share a read lock, updates take the write lock.
+ *
+ * @author Brad Davis
+ */
+public final class Octree {
+  private static final int NONE = -1;
+  private static final int BOX = 0, SPHERE = 1, FRUSTUM = 2, RAY = 3;
+  // the parameters of a query, reused by each querying thread so that queries
+  // do not allocate
+  private static final ThreadLocal<float[]> PARAMETERS = ThreadLocal.withInitial(() -> new float[24]);
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final float rootX, rootY, rootZ, rootHalfSize;
+  private final int maxDepth;
+
+  // node storage
+  private float[] nodeX = new float[64], nodeY = new float[64], nodeZ = new float[64];
+  private byte[] nodeDepth = new byte[64];
+  private int[] nodeParent = new int[64];
+  private int[] nodeChildren = new int[64 * 8];
+  private int[] nodeFirst = new int[64];
+  private int nodeCount;
+  private int freeNode = NONE;
+
+  // object storage, indexed by id
+  private float[] objects = new float[0];
+  private int[] objectNode = new int[0];
+  private int[] objectNext = new int[0];
+  private int[] objectPrev = new int[0];
+  private int size;
+
+  /**
+   * Creates an empty octree.
+   *
+   * @param center
+   *          the center of the root cell.
+   * @param halfSize
+   *          half the edge length of the root cell.
+   * @param maxDepth
+   *          the deepest level at which cells are created. The root is level
+   *          0.
+   */
+  public Octree(Vector3f center, float halfSize, int maxDepth) {
+    if (maxDepth < 0 || maxDepth > 20) {
+      throw new IllegalArgumentException("maxDepth must be between 0 and 20");
+    }
+    this.rootX = center.x;
+    this.rootY = center.y;
+    this.rootZ = center.z;
+    this.rootHalfSize = halfSize;
+    this.maxDepth = maxDepth;
+    allocateNode(NONE, 0, rootX, rootY, rootZ);
+  }
+
+  /**
+   * @return the number of objects in the tree.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public boolean contains(int id) {
+    lock.readLock().lock();
+    try {
+      return id >= 0 && id < objectNode.length && objectNode[id] != NONE;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * <code>update</code> inserts the object with the given id, or moves it if
+   * it is already present. Objects whose center lies outside the root cell are
+   * kept in the root.
+   *
+   * @param id
+   *          a non-negative id. Storage is sized by the largest id in use, so
+   *          ids should be dense.
+   * @param center
+   *          the center of the object's bounds.
+   * @param extents
+   *          the half extents of the object's bounds.
+   */
+  public void update(int id, Vector3f center, Vector3f extents) {
+    update(id, center.x, center.y, center.z, extents.x, extents.y, extents.z);
+  }
+
+  public void update(int id, float cx, float cy, float cz, float ex, float ey,
+      float ez) {
+    if (id < 0) {
+      throw new IllegalArgumentException("Invalid id. " + id);
+    }
+    lock.writeLock().lock();
+    try {
+      ensureObjectCapacity(id + 1);
+      int o = id * 6;
+      objects[o] = cx;
+      objects[o + 1] = cy;
+      objects[o + 2] = cz;
+      objects[o + 3] = ex;
+      objects[o + 4] = ey;
+      objects[o + 5] = ez;
+
+      int current = objectNode[id];
+      int depth = targetDepth(Math.max(ex, Math.max(ey, ez)));
+      if (current != NONE && nodeDepth[current] == depth
+          && inCell(current, cx, cy, cz)) {
+        return;
+      }
+      if (current != NONE) {
+        unlink(id);
+      } else {
+        ++size;
+      }
+      link(id, findOrCreate(cx, cy, cz, depth));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * <code>remove</code> removes the object with the given id.
+   *
+   * @return true if the object was present.
+   */
+  public boolean remove(int id) {
+    lock.writeLock().lock();
+    try {
+      if (id < 0 || id >= objectNode.length || objectNode[id] == NONE) {
+        return false;
+      }
+      unlink(id);
+      --size;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes every object.
+   */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      Arrays.fill(objectNode, NONE);
+      size = 0;
+      nodeCount = 0;
+      freeNode = NONE;
+      allocateNode(NONE, 0, rootX, rootY, rootZ);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * <code>queryBox</code> finds the objects whose bounds overlap the given
+   * box.
+   *
+   * @param result
+   *          receives the ids found. If there are more objects than the array
+   *          can hold the excess is counted but not stored.
+   * @return the number of objects found.
+   */
+  public int queryBox(Vector3f min, Vector3f max, int[] result) {
+    float[] q = PARAMETERS.get();
+    q[0] = min.x;
+    q[1] = min.y;
+    q[2] = min.z;
+    q[3] = max.x;
+    q[4] = max.y;
+    q[5] = max.z;
+    return query(BOX, q, result);
+  }
+
+  /**
+   * <code>querySphere</code> finds the objects whose bounds overlap the given
+   * sphere.
+   *
+   * @param result
+   *          receives the ids found. If there are more objects than the array
+   *          can hold the excess is counted but not stored.
+   * @return the number of objects found.
+   */
+  public int querySphere(Vector3f center, float radius, int[] result) {
+    float[] q = PARAMETERS.get();
+    q[0] = center.x;
+    q[1] = center.y;
+    q[2] = center.z;
+    q[3] = radius * radius;
+    return query(SPHERE, q, result);
+  }
+
+  /**
+   * <code>queryFrustum</code> finds the objects whose bounds are at least
+   * partially inside the frustum of the given matrix, assuming OpenGL clip
+   * space conventions (-w &lt;= x, y, z &lt;= w).
+   *
+   * @param viewProjection
+   *          the combined projection and view matrix.
+   * @param result
+   *          receives the ids found. If there are more objects than the array
+   *          can hold the excess is counted but not stored.
+   * @return the number of objects found.
+   */
+  public int queryFrustum(Matrix4f viewProjection, int[] result) {
+    Matrix4f m = viewProjection;
+    float[] q = PARAMETERS.get();
+    plane(q, 0, m.m30 + m.m00, m.m31 + m.m01, m.m32 + m.m02, m.m33 + m.m03); // left
+    plane(q, 4, m.m30 - m.m00, m.m31 - m.m01, m.m32 - m.m02, m.m33 - m.m03); // right
+    plane(q, 8, m.m30 + m.m10, m.m31 + m.m11, m.m32 + m.m12, m.m33 + m.m13); // bottom
+    plane(q, 12, m.m30 - m.m10, m.m31 - m.m11, m.m32 - m.m12, m.m33 - m.m13); // top
+    plane(q, 16, m.m30 + m.m20, m.m31 + m.m21, m.m32 + m.m22, m.m33 + m.m23); // near
+    plane(q, 20, m.m30 - m.m20, m.m31 - m.m21, m.m32 - m.m22, m.m33 - m.m23); // far
+    return query(FRUSTUM, q, result);
+  }
+
+  /**
+   * <code>queryRay</code> finds the objects whose bounds are hit by the ray
+   * within the given distance, in no particular order.
+   *
+   * @param result
+   *          receives the ids found. If there are more objects than the array
+   *          can hold the excess is counted but not stored.
+   * @return the number of objects found.
+   */
+  public int queryRay(Ray ray, float maxDistance, int[] result) {
+    Vector3f o = ray.origin, d = ray.direction;
+    float[] q = PARAMETERS.get();
+    q[0] = o.x;
+    q[1] = o.y;
+    q[2] = o.z;
+    q[3] = 1f / d.x;
+    q[4] = 1f / d.y;
+    q[5] = 1f / d.z;
+    q[6] = maxDistance;
+    return query(RAY, q, result);
+  }
+
+  private static void plane(float[] q, int offset, float a, float b, float c, float d) {
+    q[offset] = a;
+    q[offset + 1] = b;
+    q[offset + 2] = c;
+    q[offset + 3] = d;
+  }
+
+  /**
+   * @return the center of the object's bounds, or null if it is not present.
+   */
+  public Vector3f getCenter(int id) {
+    lock.readLock().lock();
+    try {
+      if (id < 0 || id >= objectNode.length || objectNode[id] == NONE) {
+        return null;
+      }
+      return new Vector3f(objects[id * 6], objects[id * 6 + 1],
+          objects[id * 6 + 2]);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the half extents of the object's bounds, or null if it is not
+   *         present.
+   */
+  public Vector3f getExtents(int id) {
+    lock.readLock().lock();
+    try {
+      if (id < 0 || id >= objectNode.length || objectNode[id] == NONE) {
+        return null;
+      }
+      return new Vector3f(objects[id * 6 + 3], objects[id * 6 + 4],
+          objects[id * 6 + 5]);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int query(int mode, float[] q, int[] result) {
+    lock.readLock().lock();
+    try {
+      return query(0, mode, q, result, 0);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int query(int node, int mode, float[] q, int[] result, int count) {
+    // the root holds objects outside its bounds, so it is never culled
+    if (node != 0) {
+      float loose = cellHalfSize(nodeDepth[node]) * 2;
+      if (!overlaps(mode, q, nodeX[node], nodeY[node], nodeZ[node], loose,
+          loose, loose)) {
+        return count;
+      }
+    }
+    for (int id = nodeFirst[node]; id != NONE; id = objectNext[id]) {
+      int o = id * 6;
+      if (overlaps(mode, q, objects[o], objects[o + 1], objects[o + 2],
+          objects[o + 3], objects[o + 4], objects[o + 5])) {
+        if (count < result.length) {
+          result[count] = id;
+        }
+        ++count;
+      }
+    }
+    for (int i = node * 8, end = i + 8; i < end; ++i) {
+      int child = nodeChildren[i];
+      if (child != NONE) {
+        count = query(child, mode, q, result, count);
+      }
+    }
+    return count;
+  }
+
+  private static boolean overlaps(int mode, float[] q, float cx, float cy,
+      float cz, float ex, float ey, float ez) {
+    switch (mode) {
+    case BOX:
+      return cx - ex <= q[3] && cx + ex >= q[0] && cy - ey <= q[4]
+          && cy + ey >= q[1] && cz - ez <= q[5] && cz + ez >= q[2];
+    case SPHERE: {
+      float dx = Math.max(Math.abs(q[0] - cx) - ex, 0);
+      float dy = Math.max(Math.abs(q[1] - cy) - ey, 0);
+      float dz = Math.max(Math.abs(q[2] - cz) - ez, 0);
+      return dx * dx + dy * dy + dz * dz <= q[3];
+    }
+    case FRUSTUM:
+      for (int p = 0; p < 24; p += 4) {
+        float a = q[p], b = q[p + 1], c = q[p + 2];
+        float r = Math.abs(a) * ex + Math.abs(b) * ey + Math.abs(c) * ez;
+        if (a * cx + b * cy + c * cz + q[p + 3] + r < 0) {
+          return false;
+        }
+      }
+      return true;
+    case RAY: {
+      // an axis the ray does not move along has an infinite inverse, and is
+      // tested directly, since a slab plane through the origin would give
+      // 0 * infinity
+      float tMin = 0, tMax = q[6];
+      if (Float.isInfinite(q[3])) {
+        if (q[0] < cx - ex || q[0] > cx + ex) {
+          return false;
+        }
+      } else {
+        float t1 = (cx - ex - q[0]) * q[3], t2 = (cx + ex - q[0]) * q[3];
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+      }
+      if (Float.isInfinite(q[4])) {
+        if (q[1] < cy - ey || q[1] > cy + ey) {
+          return false;
+        }
+      } else {
+        float t1 = (cy - ey - q[1]) * q[4], t2 = (cy + ey - q[1]) * q[4];
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+      }
+      if (Float.isInfinite(q[5])) {
+        if (q[2] < cz - ez || q[2] > cz + ez) {
+          return false;
+        }
+      } else {
+        float t1 = (cz - ez - q[2]) * q[5], t2 = (cz + ez - q[2]) * q[5];
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+      }
+      return tMin <= tMax;
+    }
+    }
+    throw new IllegalArgumentException("Invalid query mode. " + mode);
+  }
+
+  private float cellHalfSize(int depth) {
+    return rootHalfSize / (1 << depth);
+  }
+
+  /**
+   * The deepest level whose cells are at least as large as the given half
+   * extent, which thanks to the loose bounds is enough to contain the object.
+   */
+  private int targetDepth(float extent) {
+    int depth = 0;
+    float half = rootHalfSize * 0.5f;
+    while (depth < maxDepth && extent <= half) {
+      ++depth;
+      half *= 0.5f;
+    }
+    return depth;
+  }
+
+  private boolean inCell(int node, float x, float y, float z) {
+    if (node == 0) {
+      return true;
+    }
+    float h = cellHalfSize(nodeDepth[node]);
+    float nx = nodeX[node], ny = nodeY[node], nz = nodeZ[node];
+    return x >= nx - h && x < nx + h && y >= ny - h && y < ny + h
+        && z >= nz - h && z < nz + h;
+  }
+
+  private int findOrCreate(float x, float y, float z, int depth) {
+    float h = rootHalfSize;
+    if (x < rootX - h || x >= rootX + h || y < rootY - h || y >= rootY + h
+        || z < rootZ - h || z >= rootZ + h) {
+      return 0;
+    }
+    int node = 0;
+    for (int d = 0; d < depth; ++d) {
+      float cx = nodeX[node], cy = nodeY[node], cz = nodeZ[node];
+      int octant = (x >= cx ? 1 : 0) | (y >= cy ? 2 : 0) | (z >= cz ? 4 : 0);
+      int child = nodeChildren[node * 8 + octant];
+      if (child == NONE) {
+        float q = cellHalfSize(d + 1);
+        child = allocateNode(node, d + 1, x >= cx ? cx + q : cx - q,
+            y >= cy ? cy + q : cy - q, z >= cz ? cz + q : cz - q);
+        nodeChildren[node * 8 + octant] = child;
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  private int allocateNode(int parent, int depth, float x, float y, float z) {
+    int node;
+    if (freeNode != NONE) {
+      node = freeNode;
+      freeNode = nodeParent[node];
+    } else {
+      node = nodeCount++;
+      if (node == nodeX.length) {
+        int capacity = node * 2;
+        nodeX = Arrays.copyOf(nodeX, capacity);
+        nodeY = Arrays.copyOf(nodeY, capacity);
+        nodeZ = Arrays.copyOf(nodeZ, capacity);
+        nodeDepth = Arrays.copyOf(nodeDepth, capacity);
+        nodeParent = Arrays.copyOf(nodeParent, capacity);
+        nodeFirst = Arrays.copyOf(nodeFirst, capacity);
+        nodeChildren = Arrays.copyOf(nodeChildren, capacity * 8);
+      }
+    }
+    nodeX[node] = x;
+    nodeY[node] = y;
+    nodeZ[node] = z;
+    nodeDepth[node] = (byte) depth;
+    nodeParent[node] = parent;
+    nodeFirst[node] = NONE;
+    Arrays.fill(nodeChildren, node * 8, node * 8 + 8, NONE);
+    return node;
+  }
+
+  /**
+   * Returns empty leaf nodes to the free list, walking up towards the root.
+   */
+  private void prune(int node) {
+    while (node != 0 && nodeFirst[node] == NONE) {
+      for (int i = node * 8, end = i + 8; i < end; ++i) {
+        if (nodeChildren[i] != NONE) {
+          return;
+        }
+      }
+      int parent = nodeParent[node];
+      for (int i = parent * 8, end = i + 8; i < end; ++i) {
+        if (nodeChildren[i] == node) {
+          nodeChildren[i] = NONE;
+        }
+      }
+      nodeParent[node] = freeNode;
+      freeNode = node;
+      node = parent;
+    }
+  }
+
+  private void link(int id, int node) {
+    int first = nodeFirst[node];
+    objectNode[id] = node;
+    objectPrev[id] = NONE;
+    objectNext[id] = first;
+    if (first != NONE) {
+      objectPrev[first] = id;
+    }
+    nodeFirst[node] = id;
+  }
+
+  private void unlink(int id) {
+    int node = objectNode[id];
+    int prev = objectPrev[id], next = objectNext[id];
+    if (prev != NONE) {
+      objectNext[prev] = next;
+    } else {
+      nodeFirst[node] = next;
+    }
+    if (next != NONE) {
+      objectPrev[next] = prev;
+    }
+    objectNode[id] = NONE;
+    prune(node);
+  }
+
+  private void ensureObjectCapacity(int capacity) {
+    int old = objectNode.length;
+    if (capacity <= old) {
+      return;
+    }
+    capacity = Math.max(capacity, Math.max(16, old * 2));
+    objects = Arrays.copyOf(objects, capacity * 6);
+    objectNode = Arrays.copyOf(objectNode, capacity);
+    objectNext = Arrays.copyOf(objectNext, capacity);
+    objectPrev = Arrays.copyOf(objectPrev, capacity);
+    Arrays.fill(objectNode, old, capacity, NONE);
+  }
+}
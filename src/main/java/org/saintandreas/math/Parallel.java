@@ -0,0 +1,59 @@
+package org.saintandreas.math;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * <code>Parallel</code> runs the loops behind the batch operations of this
+ * package, splitting them across the common fork/join pool when there is
+ * enough work to be worth it and running them on the calling thread
+ * otherwise.
+ *
+ * @author Brad Davis
+ */
+final class Parallel {
+  private Parallel() {
+  }
+
+  /**
+   * Receives a range of indices from
+   * {@link Parallel#forEachRange(int, int, RangeConsumer)}.
+   */
+  interface RangeConsumer {
+    void accept(int start, int end);
+  }
+
+  /**
+   * <code>forEach</code> runs the body once for each index from 0 to
+   * <code>count</code>, in no particular order.
+   *
+   * @param threshold
+   *          the largest count run on the calling thread. Loops over chunks
+   *          of work pass 1, loops over single items the number of items too
+   *          few to be worth splitting.
+   */
+  static void forEach(int count, int threshold, IntConsumer body) {
+    if (count <= threshold) {
+      for (int i = 0; i < count; ++i) {
+        body.accept(i);
+      }
+    } else {
+      IntStream.range(0, count).parallel().forEach(body);
+    }
+  }
+
+  /**
+   * <code>forEachRange</code> splits the indices from 0 to <code>count</code>
+   * into ranges of <code>chunkSize</code> and runs the body once for each,
+   * on the calling thread if there is only one.
+   */
+  static void forEachRange(final int count, final int chunkSize, final RangeConsumer body) {
+    int chunks = (count + chunkSize - 1) / chunkSize;
+    if (chunks <= 1) {
+      body.accept(0, count);
+    } else {
+      IntStream.range(0, chunks).parallel().forEach(
+          c -> body.accept(c * chunkSize, Math.min(count, (c + 1) * chunkSize)));
+    }
+  }
+}
@@ -0,0 +1,577 @@
+package org.saintandreas.math;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>PlyLoader</code> loads Stanford PLY files, in ASCII or in either
+ * binary byte order. Vertices take their position from the x, y and z
+ * properties, their normal from nx, ny and nz, and their texture coordinates
+ * from u and v, s and t, or texture_u and texture_v, of any numeric type.
+ * Faces take the list property vertex_indices, or vertex_index, and are
+ * triangulated as fans. Other elements and properties are skipped. A file
+ * with no faces loads as a point cloud.
+ *
+ * Binary vertices are decoded in parallel, straight into the result arrays.
+ * ASCII vertices and faces are parsed in parallel chunks of whole lines,
+ * counted first so that each chunk can be parsed straight into its place.
+ * The bounding box is accumulated as the positions are read.
+ *
+ * @author Brad Davis
+ */
+public final class PlyLoader {
+  private static final int CHUNK_BYTES = 1 << 20;
+  private static final int BINARY_CHUNK = 1 << 16;
+
+  private static final String[] TYPE_NAMES = { "char", "uchar", "short", "ushort", "int", "uint", "float",
+      "double", "int8", "uint8", "int16", "uint16", "int32", "uint32", "float32", "float64" };
+  private static final int[] TYPE_SIZES = { 1, 1, 2, 2, 4, 4, 4, 8 };
+
+  private PlyLoader() {
+  }
+
+  private static final class Property {
+    final String name;
+    final int type;
+    // the type of the count, for list properties, or -1
+    final int countType;
+
+    Property(String name, int type, int countType) {
+      this.name = name;
+      this.type = type;
+      this.countType = countType;
+    }
+  }
+
+  private static final class Element {
+    final String name;
+    final int count;
+    final List<Property> properties = new ArrayList<>();
+
+    Element(String name, int count) {
+      this.name = name;
+      this.count = count;
+    }
+
+    int find(String... names) {
+      for (String name : names) {
+        for (int i = 0; i < properties.size(); ++i) {
+          if (properties.get(i).name.equals(name) && properties.get(i).countType < 0) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    }
+
+    int findList(String... names) {
+      for (String name : names) {
+        for (int i = 0; i < properties.size(); ++i) {
+          if (properties.get(i).name.equals(name) && properties.get(i).countType >= 0) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    }
+
+    // the size of each item, or -1 if there are lists
+    int stride() {
+      int stride = 0;
+      for (Property property : properties) {
+        if (property.countType >= 0) {
+          return -1;
+        }
+        stride += TYPE_SIZES[property.type];
+      }
+      return stride;
+    }
+  }
+
+  /**
+   * Maps and loads a file, which must be smaller than 2 GB.
+   *
+   * @see #load(ByteBuffer, boolean)
+   */
+  public static MeshData load(Path path, boolean computeNormals) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large. " + path);
+      }
+      return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), computeNormals);
+    }
+  }
+
+  /**
+   * Loads a PLY file from the buffer's position to its limit, without
+   * changing its position.
+   *
+   * @param computeNormals
+   *          if true, and the file gives no normals, angle weighted normals
+   *          are computed from the triangles.
+   */
+  public static MeshData load(ByteBuffer buffer, boolean computeNormals) throws IOException {
+    try {
+      return new Parse(buffer).run(computeNormals);
+    } catch (IllegalArgumentException | BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Invalid PLY file. " + e.getMessage(), e);
+    }
+  }
+
+  private static int type(String name) throws IOException {
+    for (int i = 0; i < TYPE_NAMES.length; ++i) {
+      if (TYPE_NAMES[i].equals(name)) {
+        return i % 8;
+      }
+    }
+    throw new IOException("Invalid PLY type. " + name);
+  }
+
+  private static double read(ByteBuffer buffer, int position, int type) {
+    switch (type) {
+    case 0:
+      return buffer.get(position);
+    case 1:
+      return buffer.get(position) & 0xFF;
+    case 2:
+      return buffer.getShort(position);
+    case 3:
+      return buffer.getShort(position) & 0xFFFF;
+    case 4:
+      return buffer.getInt(position);
+    case 5:
+      return buffer.getInt(position) & 0xFFFFFFFFL;
+    case 6:
+      return buffer.getFloat(position);
+    default:
+      return buffer.getDouble(position);
+    }
+  }
+
+  private static final class Parse {
+    final ByteBuffer buffer;
+    final int end;
+    final List<Element> elements = new ArrayList<>();
+    boolean ascii;
+    int position;
+
+    Element vertices;
+    int[] vertexProperties;
+    float[] positions, normals, texCoords;
+    int[] indices = new int[0];
+    int triangleCount;
+    float[] bounds;
+
+    Parse(ByteBuffer buffer) {
+      this.buffer = buffer.duplicate();
+      this.position = buffer.position();
+      this.end = buffer.limit();
+    }
+
+    MeshData run(boolean computeNormals) throws IOException {
+      readHeader();
+      for (Element element : elements) {
+        if (element == vertices) {
+          readVertices();
+        } else if (element.name.equals("face") && element.findList("vertex_indices", "vertex_index") >= 0) {
+          readFaces(element);
+        } else {
+          skip(element);
+        }
+      }
+      if (vertices == null) {
+        throw new IOException("Invalid PLY file. No vertices");
+      }
+      for (int i = 0; i < triangleCount * 3; ++i) {
+        if (indices[i] < 0 || indices[i] >= vertices.count) {
+          throw new IOException("Invalid face index. " + indices[i]);
+        }
+      }
+      int[] triangles = Arrays.copyOf(indices, triangleCount * 3);
+      if (computeNormals && normals == null && triangles.length > 0) {
+        normals = MeshNormals.computeNormals(positions, triangles);
+      }
+      float[] min = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+      float[] max = { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+      for (int c = 0; c < bounds.length; c += 6) {
+        for (int k = 0; k < 3; ++k) {
+          min[k] = Math.min(min[k], bounds[c + k]);
+          max[k] = Math.max(max[k], bounds[c + 3 + k]);
+        }
+      }
+      return new MeshData(positions, normals, texCoords, triangles, new Vector3f(min[0], min[1], min[2]),
+          new Vector3f(max[0], max[1], max[2]));
+    }
+
+    private void readHeader() throws IOException {
+      AsciiScanner scanner = new AsciiScanner(buffer, position, end);
+      if (!scanner.word("ply")) {
+        throw new IOException("Invalid PLY file. No header");
+      }
+      scanner.skipLine();
+      Element element = null;
+      while (true) {
+        if (!scanner.hasMore()) {
+          throw new IOException("Invalid PLY file. No end_header");
+        }
+        if (scanner.word("format")) {
+          String[] format = scanner.line().split("\\s+");
+          if (format[0].equals("ascii")) {
+            ascii = true;
+          } else if (format[0].equals("binary_little_endian")) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+          } else if (format[0].equals("binary_big_endian")) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+          } else {
+            throw new IOException("Invalid PLY format. " + format[0]);
+          }
+        } else if (scanner.word("element")) {
+          String[] words = scanner.line().split("\\s+");
+          long count = words.length == 2 ? Long.parseLong(words[1]) : -1;
+          if (count < 0 || count > Integer.MAX_VALUE / 3) {
+            throw new IOException("Invalid PLY element. " + Arrays.toString(words));
+          }
+          element = new Element(words[0], (int) count);
+          elements.add(element);
+          if (element.name.equals("vertex") && vertices == null) {
+            vertices = element;
+          }
+        } else if (scanner.word("property")) {
+          String[] words = scanner.line().split("\\s+");
+          if (element == null) {
+            throw new IOException("Invalid PLY property. " + Arrays.toString(words));
+          }
+          if (words[0].equals("list") && words.length == 4) {
+            element.properties.add(new Property(words[3], type(words[2]), type(words[1])));
+          } else if (words.length == 2) {
+            element.properties.add(new Property(words[1], type(words[0]), -1));
+          } else {
+            throw new IOException("Invalid PLY property. " + Arrays.toString(words));
+          }
+        } else if (scanner.word("end_header")) {
+          scanner.skipLine();
+          break;
+        } else {
+          // comment, obj_info and anything else we do not know
+          scanner.skipLine();
+        }
+      }
+      position = scanner.position();
+    }
+
+    private void readVertices() throws IOException {
+      Element element = vertices;
+      int x = element.find("x"), y = element.find("y"), z = element.find("z");
+      if (x < 0 || y < 0 || z < 0) {
+        throw new IOException("Invalid PLY file. No vertex positions");
+      }
+      int nx = element.find("nx"), ny = element.find("ny"), nz = element.find("nz");
+      int u = element.find("u", "s", "texture_u", "texture_s");
+      int v = element.find("v", "t", "texture_v", "texture_t");
+      boolean hasNormals = nx >= 0 && ny >= 0 && nz >= 0, hasTexCoords = u >= 0 && v >= 0;
+      // the destination of each property: 0 to 2 for the position, 3 to 5 for
+      // the normal, 6 and 7 for texture coordinates, and -1 for none
+      vertexProperties = new int[element.properties.size()];
+      Arrays.fill(vertexProperties, -1);
+      vertexProperties[x] = 0;
+      vertexProperties[y] = 1;
+      vertexProperties[z] = 2;
+      if (hasNormals) {
+        vertexProperties[nx] = 3;
+        vertexProperties[ny] = 4;
+        vertexProperties[nz] = 5;
+      }
+      if (hasTexCoords) {
+        vertexProperties[u] = 6;
+        vertexProperties[v] = 7;
+      }
+      int count = element.count;
+      positions = new float[count * 3];
+      normals = hasNormals ? new float[count * 3] : null;
+      texCoords = hasTexCoords ? new float[count * 2] : null;
+
+      int stride = element.stride();
+      if (ascii) {
+        int[] starts = lineChunks(count);
+        int chunks = starts.length - 1;
+        int[] firsts = countLines(starts);
+        newBounds(chunks);
+        Parallel.forEach(chunks, 1, c -> {
+          AsciiScanner scanner = new AsciiScanner(buffer, starts[c], starts[c + 1]);
+          float[] values = new float[8];
+          for (int i = firsts[c]; scanner.hasMore(); ++i) {
+            for (int p = 0; p < vertexProperties.length; ++p) {
+              Property property = element.properties.get(p);
+              if (property.countType >= 0) {
+                for (int n = scanner.parseInt(); n > 0; --n) {
+                  scanner.skipToken();
+                }
+              } else if (vertexProperties[p] >= 0) {
+                values[vertexProperties[p]] = scanner.parseFloat();
+              } else {
+                scanner.skipToken();
+              }
+            }
+            store(i, values, c);
+            scanner.skipLine();
+          }
+        });
+      } else if (stride >= 0) {
+        int[] offsets = new int[vertexProperties.length];
+        for (int p = 1; p < offsets.length; ++p) {
+          offsets[p] = offsets[p - 1] + TYPE_SIZES[element.properties.get(p - 1).type];
+        }
+        if ((long) count * stride > end - position) {
+          throw new IOException("Invalid PLY file. Truncated vertices");
+        }
+        int base = position;
+        int chunks = Math.max(1, (count + BINARY_CHUNK - 1) / BINARY_CHUNK);
+        newBounds(chunks);
+        Parallel.forEach(chunks, 1, c -> {
+          float[] values = new float[8];
+          for (int i = c * BINARY_CHUNK, last = Math.min(count, i + BINARY_CHUNK); i < last; ++i) {
+            int at = base + i * stride;
+            for (int p = 0; p < vertexProperties.length; ++p) {
+              if (vertexProperties[p] >= 0) {
+                values[vertexProperties[p]] = (float) read(buffer, at + offsets[p],
+                    element.properties.get(p).type);
+              }
+            }
+            store(i, values, c);
+          }
+        });
+        position += count * stride;
+      } else {
+        newBounds(1);
+        float[] values = new float[8];
+        for (int i = 0; i < count; ++i) {
+          for (int p = 0; p < vertexProperties.length; ++p) {
+            Property property = element.properties.get(p);
+            if (property.countType >= 0) {
+              position += listSize(property) * TYPE_SIZES[property.type];
+            } else {
+              if (vertexProperties[p] >= 0) {
+                values[vertexProperties[p]] = (float) read(buffer, position, property.type);
+              }
+              position += TYPE_SIZES[property.type];
+            }
+          }
+          store(i, values, 0);
+        }
+      }
+    }
+
+    // an empty box for each chunk
+    private void newBounds(int chunks) {
+      bounds = new float[chunks * 6];
+      for (int c = 0; c < chunks; ++c) {
+        Arrays.fill(bounds, c * 6, c * 6 + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(bounds, c * 6 + 3, c * 6 + 6, Float.NEGATIVE_INFINITY);
+      }
+    }
+
+    // reads the size of a binary list and moves past it
+    private int listSize(Property property) {
+      int n = (int) read(buffer, position, property.countType);
+      if (n < 0) {
+        throw new IllegalArgumentException("Invalid list size. " + n);
+      }
+      position += TYPE_SIZES[property.countType];
+      return n;
+    }
+
+    // writes vertex i, and grows the bounds of chunk c
+    private void store(int i, float[] values, int c) {
+      int b = c * 6;
+      for (int k = 0; k < 3; ++k) {
+        positions[i * 3 + k] = values[k];
+        bounds[b + k] = Math.min(bounds[b + k], values[k]);
+        bounds[b + 3 + k] = Math.max(bounds[b + 3 + k], values[k]);
+      }
+      if (normals != null) {
+        normals[i * 3] = values[3];
+        normals[i * 3 + 1] = values[4];
+        normals[i * 3 + 2] = values[5];
+      }
+      if (texCoords != null) {
+        texCoords[i * 2] = values[6];
+        texCoords[i * 2 + 1] = values[7];
+      }
+    }
+
+    private void readFaces(Element element) throws IOException {
+      int list = element.findList("vertex_indices", "vertex_index");
+      if (ascii) {
+        int[] starts = lineChunks(element.count);
+        int chunks = starts.length - 1;
+        // triangles per chunk, then the first triangle of each chunk
+        int[] firsts = new int[chunks + 1];
+        Parallel.forEach(chunks, 1,
+            c -> firsts[c + 1] = asciiFaces(element, list, starts[c], starts[c + 1], null, 0));
+        for (int c = 0; c < chunks; ++c) {
+          firsts[c + 1] += firsts[c];
+          if (firsts[c + 1] < 0 || firsts[c + 1] > Integer.MAX_VALUE / 3) {
+            throw new IOException("File too large");
+          }
+        }
+        int offset = triangleCount;
+        ensure(triangleCount + firsts[chunks]);
+        Parallel.forEach(chunks, 1,
+            c -> asciiFaces(element, list, starts[c], starts[c + 1], indices, offset + firsts[c]));
+        triangleCount += firsts[chunks];
+      } else {
+        ensure(triangleCount + element.count);
+        for (int f = 0; f < element.count; ++f) {
+          for (int p = 0; p < element.properties.size(); ++p) {
+            Property property = element.properties.get(p);
+            if (property.countType < 0) {
+              position += TYPE_SIZES[property.type];
+              continue;
+            }
+            int n = listSize(property);
+            int size = TYPE_SIZES[property.type];
+            if ((long) n * size > end - position) {
+              throw new IOException("Invalid PLY file. Truncated faces");
+            }
+            if (p == list && n >= 3) {
+              ensure(triangleCount + n - 2);
+              int first = (int) read(buffer, position, property.type);
+              int previous = (int) read(buffer, position + size, property.type);
+              for (int k = 2; k < n; ++k) {
+                int next = (int) read(buffer, position + k * size, property.type);
+                indices[triangleCount * 3] = first;
+                indices[triangleCount * 3 + 1] = previous;
+                indices[triangleCount * 3 + 2] = next;
+                ++triangleCount;
+                previous = next;
+              }
+            }
+            position += n * size;
+          }
+        }
+      }
+    }
+
+    // counts the triangles of a chunk of ASCII faces, and writes them too if
+    // there is somewhere to write them
+    private int asciiFaces(Element element, int list, int start, int stop, int[] out, int first) {
+      AsciiScanner scanner = new AsciiScanner(buffer, start, stop);
+      int triangle = first;
+      while (scanner.hasMore()) {
+        for (int p = 0; p < element.properties.size(); ++p) {
+          if (element.properties.get(p).countType < 0) {
+            scanner.skipToken();
+            continue;
+          }
+          int n = scanner.parseInt();
+          if (p != list || n < 3) {
+            for (; n > 0; --n) {
+              scanner.skipToken();
+            }
+            continue;
+          }
+          if (out == null) {
+            triangle += n - 2;
+            for (; n > 0; --n) {
+              scanner.skipToken();
+            }
+            continue;
+          }
+          int a = scanner.parseInt(), b = scanner.parseInt();
+          for (int k = 2; k < n; ++k) {
+            int c = scanner.parseInt();
+            out[triangle * 3] = a;
+            out[triangle * 3 + 1] = b;
+            out[triangle * 3 + 2] = c;
+            ++triangle;
+            b = c;
+          }
+        }
+        scanner.skipLine();
+      }
+      return triangle - first;
+    }
+
+    private void ensure(int triangles) throws IOException {
+      if (triangles < 0 || triangles > Integer.MAX_VALUE / 3) {
+        throw new IOException("File too large");
+      }
+      if (triangles * 3 > indices.length) {
+        indices = Arrays.copyOf(indices, (int) Math.min(Integer.MAX_VALUE / 3 * 3,
+            Math.max(triangles * 3L, indices.length * 2L)));
+      }
+    }
+
+    private void skip(Element element) throws IOException {
+      if (ascii) {
+        // moves past the lines, the chunks themselves are not needed
+        lineChunks(element.count);
+        return;
+      }
+      int stride = element.stride();
+      if (stride >= 0) {
+        if ((long) element.count * stride > end - position) {
+          throw new IOException("Invalid PLY file. Truncated " + element.name);
+        }
+        position += element.count * stride;
+        return;
+      }
+      for (int i = 0; i < element.count; ++i) {
+        for (Property property : element.properties) {
+          if (property.countType >= 0) {
+            position += listSize(property) * TYPE_SIZES[property.type];
+          } else {
+            position += TYPE_SIZES[property.type];
+          }
+        }
+      }
+    }
+
+    // splits the next count lines into chunks of whole lines, and moves past
+    // them
+    private int[] lineChunks(int count) throws IOException {
+      int start = position, stop = start;
+      for (int i = 0; i < count; ++i) {
+        if (stop >= end) {
+          throw new IOException("Invalid PLY file. Truncated data");
+        }
+        stop = AsciiScanner.nextLine(buffer, stop, end);
+      }
+      position = stop;
+      int chunks = Math.max(1, (stop - start + CHUNK_BYTES - 1) / CHUNK_BYTES);
+      int[] starts = new int[chunks + 1];
+      starts[0] = start;
+      for (int c = 1; c < chunks; ++c) {
+        starts[c] = AsciiScanner.nextLine(buffer, Math.max(starts[c - 1], start + c * CHUNK_BYTES - 1), stop);
+      }
+      starts[chunks] = stop;
+      return starts;
+    }
+
+    // the index of the first line of each chunk
+    private int[] countLines(int[] starts) {
+      int chunks = starts.length - 1;
+      int[] firsts = new int[chunks];
+      int[] counts = new int[chunks];
+      Parallel.forEach(chunks, 1, c -> {
+        int lines = 0;
+        for (int i = starts[c]; i < starts[c + 1]; i = AsciiScanner.nextLine(buffer, i, starts[c + 1])) {
+          ++lines;
+        }
+        counts[c] = lines;
+      });
+      for (int c = 1; c < chunks; ++c) {
+        firsts[c] = firsts[c - 1] + counts[c - 1];
+      }
+      return firsts;
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.saintandreas.math;
+
+/**
+ * <code>PointInPolygon</code> classifies many 2D points at once against a
+ * triangle or a polygon, reading the points from a flat array of x, y pairs
+ * and writing one bit per point.
+ *
+ * Results are written as bitsets in the layout used by
+ * {@link java.util.BitSet#valueOf(long[])}: point <code>i</code> is bit
+ * <code>i % 64</code> of word <code>i / 64</code>. Each word is written by a
+ * single thread, so large batches are split across cores without any
+ * synchronization.
+ *
+ * Polygons are flat arrays of x, y pairs, optionally divided into several
+ * closed rings by an array holding the end vertex (exclusive) of each ring.
+ * Points are inside when their winding number is non-zero, so holes should
+ * wind opposite to their outer ring. For repeated queries against the same
+ * polygon see {@link PolygonIndex}.
+ *
+ * @author Brad Davis
+ */
+public final class PointInPolygon {
+  static final int CHUNK_SIZE = 1 << 14;
+
+  private PointInPolygon() {
+  }
+
+  /**
+   * <code>insideTriangle</code> tests a single point against a triangle of
+   * either winding, using edge functions rather than
+   * {@link FastMath#pointInsideTriangle}. Points on the boundary are inside.
+   */
+  public static boolean insideTriangle(float x0, float y0, float x1, float y1,
+      float x2, float y2, float x, float y) {
+    if ((x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0) < 0) {
+      float t = x1;
+      x1 = x2;
+      x2 = t;
+      t = y1;
+      y1 = y2;
+      y2 = t;
+    }
+    return edges(x0, y0, x1, y1, x2, y2, x, y) == 1;
+  }
+
+  /**
+   * <code>insideTriangle</code> tests a batch of points against a triangle
+   * of either winding. Points on the boundary are inside.
+   *
+   * @param points
+   *          the points, as x, y pairs.
+   * @param count
+   *          the number of points to test.
+   * @param result
+   *          receives one bit per point. Every word covering the points is
+   *          overwritten.
+   * @return the number of points inside the triangle.
+   */
+  public static int insideTriangle(float x0, float y0, float x1, float y1,
+      float x2, float y2, final float[] points, final int count, final long[] result) {
+    checkBatch(points, count, result);
+    // put the triangle in counter clockwise order once, so that a point is
+    // inside exactly when no edge function is negative
+    final float ax = x0, ay = y0;
+    final float bx, by, cx, cy;
+    if ((x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0) < 0) {
+      bx = x2; by = y2; cx = x1; cy = y1;
+    } else {
+      bx = x1; by = y1; cx = x2; cy = y2;
+    }
+    final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final int[] inside = new int[chunks];
+    Parallel.forEach(chunks, 1, chunk -> {
+      int n = 0;
+      for (int w = chunk * CHUNK_SIZE / 64, end = wordCount(Math.min(count, (chunk + 1) * CHUNK_SIZE)); w < end; ++w) {
+        long word = 0;
+        for (int i = w * 64, e = Math.min(count, i + 64); i < e; ++i) {
+          word |= (long) edges(ax, ay, bx, by, cx, cy, points[i * 2], points[i * 2 + 1]) << i;
+        }
+        result[w] = word;
+        n += Long.bitCount(word);
+      }
+      inside[chunk] = n;
+    });
+    return sum(inside);
+  }
+
+  // Returns 1 if the point is on the inner side of every edge of the counter
+  // clockwise triangle, without branching. Adding zero turns any -0 from a
+  // point on an edge into 0, so that only strictly negative values set the
+  // sign bit.
+  private static int edges(float x0, float y0, float x1, float y1, float x2,
+      float y2, float x, float y) {
+    float e0 = (x1 - x0) * (y - y0) - (y1 - y0) * (x - x0) + 0.0f;
+    float e1 = (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1) + 0.0f;
+    float e2 = (x0 - x2) * (y - y2) - (y0 - y2) * (x - x2) + 0.0f;
+    int signs = Float.floatToRawIntBits(e0) | Float.floatToRawIntBits(e1)
+        | Float.floatToRawIntBits(e2);
+    return (signs >>> 31) ^ 1;
+  }
+
+  /**
+   * <code>windingNumber</code> computes the winding number of a polygon,
+   * given as a single ring, around a point.
+   */
+  public static int windingNumber(float[] polygon, float x, float y) {
+    return windingNumber(polygon, 0, polygon.length / 2, x, y);
+  }
+
+  /**
+   * <code>windingNumber</code> computes the winding number of a polygon made
+   * of one or more rings around a point.
+   *
+   * @param ringEnds
+   *          the end vertex, exclusive, of each ring.
+   */
+  public static int windingNumber(float[] polygon, int[] ringEnds, float x, float y) {
+    int wn = 0;
+    for (int r = 0, start = 0; r < ringEnds.length; start = ringEnds[r++]) {
+      wn += windingNumber(polygon, start, ringEnds[r], x, y);
+    }
+    return wn;
+  }
+
+  // Sunday's crossing rule: upward edges include their start and exclude their
+  // end, downward edges the reverse, so vertices on the ray count once.
+  static int windingNumber(float[] polygon, int start, int end, float x, float y) {
+    if (end - start < 3) {
+      return 0;
+    }
+    int wn = 0;
+    float x0 = polygon[end * 2 - 2], y0 = polygon[end * 2 - 1];
+    for (int i = start; i < end; ++i) {
+      float x1 = polygon[i * 2], y1 = polygon[i * 2 + 1];
+      if (y0 <= y) {
+        if (y1 > y && (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) > 0) {
+          ++wn;
+        }
+      } else if (y1 <= y && (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) < 0) {
+        --wn;
+      }
+      x0 = x1;
+      y0 = y1;
+    }
+    return wn;
+  }
+
+  /**
+   * <code>inside</code> tests a batch of points against a polygon given as a
+   * single ring.
+   *
+   * @return the number of points inside the polygon.
+   */
+  public static int inside(float[] polygon, float[] points, int count, long[] result) {
+    return inside(polygon, new int[] { polygon.length / 2 }, points, count, result);
+  }
+
+  /**
+   * <code>inside</code> tests a batch of points against a polygon, using the
+   * non-zero winding rule. Every edge is visited for every point; for large
+   * polygons a {@link PolygonIndex} is much faster.
+   *
+   * @param ringEnds
+   *          the end vertex, exclusive, of each ring.
+   * @param points
+   *          the points, as x, y pairs.
+   * @param count
+   *          the number of points to test.
+   * @param result
+   *          receives one bit per point. Every word covering the points is
+   *          overwritten.
+   * @return the number of points inside the polygon.
+   */
+  public static int inside(final float[] polygon, final int[] ringEnds,
+      final float[] points, final int count, final long[] result) {
+    checkBatch(points, count, result);
+    final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final int[] inside = new int[chunks];
+    Parallel.forEach(chunks, 1, chunk -> {
+      int n = 0;
+      for (int w = chunk * CHUNK_SIZE / 64, end = wordCount(Math.min(count, (chunk + 1) * CHUNK_SIZE)); w < end; ++w) {
+        long word = 0;
+        for (int i = w * 64, e = Math.min(count, i + 64); i < e; ++i) {
+          if (windingNumber(polygon, ringEnds, points[i * 2], points[i * 2 + 1]) != 0) {
+            word |= 1L << i;
+          }
+        }
+        result[w] = word;
+        n += Long.bitCount(word);
+      }
+      inside[chunk] = n;
+    });
+    return sum(inside);
+  }
+
+  static int wordCount(int count) {
+    return (count + 63) >>> 6;
+  }
+
+  static void checkBatch(float[] points, int count, long[] result) {
+    if (count < 0 || count * 2 > points.length) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    if (result.length < wordCount(count)) {
+      throw new IllegalArgumentException("Result needs at least " + wordCount(count) + " words");
+    }
+  }
+
+  static int sum(int[] values) {
+    int total = 0;
+    for (int v : values) {
+      total += v;
+    }
+    return total;
+  }
+}
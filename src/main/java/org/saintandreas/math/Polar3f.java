@@ -0,0 +1,111 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Polar3f</code> is the polar decomposition of a 3x3 matrix,
+ * <code>A = R P</code>, into a rotation <code>R</code> and a symmetric
+ * stretch <code>P</code>. <code>R</code> is the rotation closest to
+ * <code>A</code>, which is what corotational finite elements and shape
+ * matching need, and what extracting a rotation from a matrix with shear or
+ * non-uniform scale should return. Orthonormalizing or converting such a
+ * matrix directly to a quaternion gives a rotation that depends on the shear.
+ *
+ * Both parts come from the singular value decomposition, with
+ * <code>R = U V^T</code> and <code>P = V S V^T</code>. <code>R</code> is
+ * always a rotation, never a reflection, so for a matrix with a negative
+ * determinant, such as an inverted element, <code>P</code> has a negative
+ * eigenvalue along its least stretched axis.
+ *
+ * @author Brad Davis
+ */
+public final class Polar3f {
+  private static final int CHUNK_SIZE = 1024;
+
+  private final Matrix3f rotation;
+  private final Matrix3f stretch;
+
+  private Polar3f(float[] r, float[] p) {
+    rotation = new Matrix3f(r[0], r[1], r[2], r[3], r[4], r[5], r[6], r[7], r[8]);
+    stretch = new Matrix3f(p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], p[8]);
+  }
+
+  public static Polar3f decompose(Matrix3f m) {
+    float[] a = new float[9];
+    m.get(a, true);
+    float[] r = new float[9];
+    float[] p = new float[9];
+    decompose(a, 0, r, 0, p, 0);
+    return new Polar3f(r, p);
+  }
+
+  public Matrix3f getRotation() {
+    return rotation;
+  }
+
+  public Quaternion getRotationQuat() {
+    return Quaternion.fromMatrix3f(rotation);
+  }
+
+  public Matrix3f getStretch() {
+    return stretch;
+  }
+
+  /**
+   * <code>decompose</code> computes the polar decomposition of a matrix,
+   * without creating any objects for the result. All matrices are 9 floats in
+   * row major order.
+   *
+   * @param rotation
+   *          receives the rotation, from <code>rotationOffset</code>.
+   * @param stretch
+   *          receives the stretch, from <code>stretchOffset</code>, or may be
+   *          null if only the rotation is wanted.
+   */
+  public static void decompose(float[] a, int offset, float[] rotation, int rotationOffset, float[] stretch,
+      int stretchOffset) {
+    double[] m = new double[9];
+    for (int i = 0; i < 9; ++i) {
+      m[i] = a[offset + i];
+    }
+    double[] u = new double[9];
+    double[] v = new double[9];
+    Svd3f.decompose(m, u, v);
+    for (int r = 0; r < 3; ++r) {
+      for (int c = 0; c < 3; ++c) {
+        rotation[rotationOffset + r * 3 + c] = (float) (u[r * 3] * v[c * 3] + u[r * 3 + 1] * v[c * 3 + 1]
+            + u[r * 3 + 2] * v[c * 3 + 2]);
+      }
+    }
+    if (stretch != null) {
+      for (int r = 0; r < 3; ++r) {
+        for (int c = 0; c < 3; ++c) {
+          stretch[stretchOffset + r * 3 + c] = (float) (v[r * 3] * m[0] * v[c * 3]
+              + v[r * 3 + 1] * m[4] * v[c * 3 + 1] + v[r * 3 + 2] * m[8] * v[c * 3 + 2]);
+        }
+      }
+    }
+  }
+
+  /**
+   * <code>rotations</code> extracts the rotations of many matrices, in
+   * parallel, as for the elements of a corotational finite element mesh.
+   *
+   * @param matrices
+   *          9 floats per matrix, in row major order.
+   * @param rotations
+   *          receives 9 floats per matrix, in row major order. May be the same
+   *          array as <code>matrices</code>.
+   */
+  public static void rotations(final float[] matrices, int count, final float[] rotations) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> decompose(matrices, i * 9, rotations, i * 9, null, 0));
+  }
+
+  /**
+   * <code>decompose</code> computes the polar decompositions of many
+   * matrices, in parallel, writing 9 floats per matrix, in row major order,
+   * to each of <code>rotations</code> and <code>stretches</code>.
+   */
+  public static void decompose(final float[] matrices, int count, final float[] rotations,
+      final float[] stretches) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> decompose(matrices, i * 9, rotations, i * 9, stretches, i * 9));
+  }
+}
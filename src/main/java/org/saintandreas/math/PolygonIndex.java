@@ -0,0 +1,365 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>PolygonIndex</code> accelerates repeated point in polygon queries
+ * against the same, possibly very large, polygon.
+ *
+ * The bounding box of the polygon is divided into a grid of roughly as many
+ * cells as there are edges, each listing the edges that pass through it and
+ * the winding number at its center. A query looks up the cell containing the
+ * point and corrects the winding number of the center by the edges crossed on
+ * the way from the center to the point, so only the edges of one cell are
+ * examined, in the manner of the grid method described by Haines in
+ * <i>Point in Polygon Strategies</i>.
+ *
+ * The polygon uses the same layout and non-zero rule as
+ * {@link PointInPolygon}, and resolves points on an edge, and centers or
+ * paths which touch an edge or a vertex, by the same half open rule, so the
+ * two agree wherever their arithmetic is exact, as for integer coordinates.
+ * The index is immutable and may be queried from any number of threads.
+ *
+ * @author Brad Davis
+ */
+public final class PolygonIndex {
+  private static final int MAX_DIVISIONS = 4096;
+
+  private final int edgeCount;
+  // x0, y0, x1, y1 for each edge
+  private final float[] edges;
+  private final float minX, minY, maxX, maxY;
+  private final int columns, rows;
+  private final float columnScale, rowScale;
+  private final float[] centerX, centerY;
+  private final int[] cellStart;
+  private final int[] cellEdges;
+  private final int[] cellWinding;
+
+  /**
+   * Builds an index over a polygon given as a single ring.
+   */
+  public PolygonIndex(float[] polygon) {
+    this(polygon, new int[] { polygon.length / 2 });
+  }
+
+  /**
+   * Builds an index over a polygon made of one or more rings.
+   *
+   * @param polygon
+   *          the vertices, as x, y pairs.
+   * @param ringEnds
+   *          the end vertex, exclusive, of each ring.
+   */
+  public PolygonIndex(float[] polygon, int[] ringEnds) {
+    int count = 0;
+    for (int r = 0, start = 0; r < ringEnds.length; start = ringEnds[r++]) {
+      if (ringEnds[r] < start || ringEnds[r] * 2 > polygon.length) {
+        throw new IllegalArgumentException("Invalid ring end. " + ringEnds[r]);
+      }
+      if (ringEnds[r] - start >= 3) {
+        count += ringEnds[r] - start;
+      }
+    }
+    edgeCount = count;
+    edges = new float[count * 4];
+    float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+    float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+    int e = 0;
+    for (int r = 0, start = 0; r < ringEnds.length; start = ringEnds[r++]) {
+      int end = ringEnds[r];
+      if (end - start < 3) {
+        continue;
+      }
+      for (int i = start, prev = end - 1; i < end; prev = i++, e += 4) {
+        edges[e] = polygon[prev * 2];
+        edges[e + 1] = polygon[prev * 2 + 1];
+        edges[e + 2] = polygon[i * 2];
+        edges[e + 3] = polygon[i * 2 + 1];
+        x0 = Math.min(x0, polygon[i * 2]);
+        y0 = Math.min(y0, polygon[i * 2 + 1]);
+        x1 = Math.max(x1, polygon[i * 2]);
+        y1 = Math.max(y1, polygon[i * 2 + 1]);
+      }
+    }
+    minX = x0;
+    minY = y0;
+    maxX = x1;
+    maxY = y1;
+
+    float width = maxX - minX, height = maxY - minY;
+    if (count == 0 || !(width > 0) || !(height > 0)) {
+      columns = rows = 1;
+    } else {
+      columns = (int) Math.min(MAX_DIVISIONS,
+          Math.max(1, Math.ceil(Math.sqrt(count * (double) width / height))));
+      rows = (int) Math.min(MAX_DIVISIONS, Math.max(1, Math.ceil(count / (double) columns)));
+    }
+    columnScale = width > 0 ? columns / width : 0;
+    rowScale = height > 0 ? rows / height : 0;
+    centerX = new float[columns];
+    centerY = new float[rows];
+    for (int c = 0; c < columns; ++c) {
+      centerX[c] = minX + (c + 0.5f) * (width / columns);
+    }
+    for (int r = 0; r < rows; ++r) {
+      centerY[r] = minY + (r + 0.5f) * (height / rows);
+    }
+
+    // count, then fill, the cells touched by each edge
+    int cells = columns * rows;
+    cellStart = new int[cells + 1];
+    for (int i = 0; i < count; ++i) {
+      register(i, null);
+    }
+    int offset = 0;
+    for (int c = 0; c < cells; ++c) {
+      int n = cellStart[c];
+      cellStart[c] = offset;
+      offset += n;
+    }
+    cellStart[cells] = offset;
+    cellEdges = new int[offset];
+    int[] fill = Arrays.copyOf(cellStart, cells);
+    for (int i = 0; i < count; ++i) {
+      register(i, fill);
+    }
+
+    cellWinding = new int[cells];
+    computeCellWinding();
+  }
+
+  // Visits the cells crossed by an edge, row by row, either counting them in
+  // cellStart or recording the edge through the fill offsets. The span of the
+  // edge within each row is computed in double precision and padded, so the
+  // cells found always include every cell the edge really touches.
+  private void register(int edge, int[] fill) {
+    double x0 = edges[edge * 4], y0 = edges[edge * 4 + 1];
+    double x1 = edges[edge * 4 + 2], y1 = edges[edge * 4 + 3];
+    double padX = columnScale > 0 ? 1e-6 / columnScale : 0;
+    double padY = rowScale > 0 ? 1e-6 / rowScale : 0;
+    int r0 = row(Math.min(y0, y1) - padY), r1 = row(Math.max(y0, y1) + padY);
+    double cellHeight = rowScale > 0 ? 1.0 / rowScale : 0;
+    for (int r = r0; r <= r1; ++r) {
+      double xa = x0, xb = x1;
+      if (y0 != y1 && r0 != r1) {
+        double bandMin = Math.max(Math.min(y0, y1), minY + r * cellHeight - padY);
+        double bandMax = Math.min(Math.max(y0, y1), minY + (r + 1) * cellHeight + padY);
+        double slope = (x1 - x0) / (y1 - y0);
+        xa = x0 + (bandMin - y0) * slope;
+        xb = x0 + (bandMax - y0) * slope;
+      }
+      int c0 = column(Math.min(xa, xb) - padX), c1 = column(Math.max(xa, xb) + padX);
+      for (int c = c0, cell = r * columns + c0; c <= c1; ++c, ++cell) {
+        if (fill == null) {
+          ++cellStart[cell];
+        } else {
+          cellEdges[fill[cell]++] = edge;
+        }
+      }
+    }
+  }
+
+  private int column(double x) {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) * columnScale)));
+  }
+
+  private int row(double y) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) * rowScale)));
+  }
+
+  // Each center's winding number comes from a ray to the right along the
+  // center line of its row. The edges crossing that line are summed per
+  // column from the cell lists, where the crossing lies, and then the edges
+  // of the center's own cell are counted exactly with the same rule the
+  // queries use.
+  private void computeCellWinding() {
+    int[] columnSum = new int[columns + 1];
+    for (int r = 0; r < rows; ++r) {
+      float cy = centerY[r];
+      Arrays.fill(columnSum, 0);
+      for (int c = 0; c < columns; ++c) {
+        int cell = r * columns + c;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+          int e = cellEdges[k] * 4;
+          int sign = crossingSign(edges[e + 1], edges[e + 3], cy);
+          if (sign != 0 && crossingColumn(e, cy) == c) {
+            columnSum[c] += sign;
+          }
+        }
+      }
+      for (int c = columns - 1; c >= 0; --c) {
+        columnSum[c] += columnSum[c + 1];
+      }
+      for (int c = 0; c < columns; ++c) {
+        int cell = r * columns + c;
+        float cx = centerX[c];
+        int wn = columnSum[c + 1];
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+          int e = cellEdges[k] * 4;
+          int sign = crossingSign(edges[e + 1], edges[e + 3], cy);
+          if (sign != 0 && crossingColumn(e, cy) > c) {
+            // already counted in the column it crosses, recount it exactly
+            wn -= sign;
+          }
+          wn += sunday(e, cx, cy);
+        }
+        cellWinding[cell] = wn;
+      }
+    }
+  }
+
+  // +1 for an upward edge that crosses the horizontal line through y, -1 for
+  // a downward one, using the half open rule of PointInPolygon.windingNumber
+  private static int crossingSign(float y0, float y1, float y) {
+    if (y0 <= y) {
+      return y1 > y ? 1 : 0;
+    }
+    return y1 <= y ? -1 : 0;
+  }
+
+  private int crossingColumn(int e, float y) {
+    float x0 = edges[e], y0 = edges[e + 1], x1 = edges[e + 2], y1 = edges[e + 3];
+    return column(x0 + (y - y0) * (double) (x1 - x0) / (y1 - y0));
+  }
+
+  private int sunday(int e, float x, float y) {
+    float x0 = edges[e], y0 = edges[e + 1], x1 = edges[e + 2], y1 = edges[e + 3];
+    switch (crossingSign(y0, y1, y)) {
+    case 1:
+      return (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) > 0 ? 1 : 0;
+    case -1:
+      return (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) < 0 ? -1 : 0;
+    }
+    return 0;
+  }
+
+  /**
+   * @return the number of edges in the polygon.
+   */
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * <code>windingNumber</code> computes the winding number of the polygon
+   * around a point.
+   */
+  public int windingNumber(float x, float y) {
+    if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+      return 0;
+    }
+    int c = column(x), r = row(y);
+    int cell = r * columns + c;
+    float cx = centerX[c], cy = centerY[r];
+    int wn = cellWinding[cell];
+    for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; ++k) {
+      int e = cellEdges[k] * 4;
+      float x0 = edges[e], y0 = edges[e + 1], x1 = edges[e + 2], y1 = edges[e + 3];
+      // which side of the edge are the center and the point on
+      boolean centerLeft = left(x0, y0, x1, y1, cx, cy);
+      boolean pointLeft = left(x0, y0, x1, y1, x, y);
+      if (centerLeft == pointLeft) {
+        continue;
+      }
+      // and which side of the path from the center to the point are the ends
+      if (pathLeft(cx, cy, x, y, x0, y0) != pathLeft(cx, cy, x, y, x1, y1)) {
+        // crossing from the right of an edge to its left winds once more
+        wn += pointLeft ? 1 : -1;
+      }
+    }
+    return wn;
+  }
+
+  // The half open rule of PointInPolygon.windingNumber gives the winding
+  // number around the point moved right by e and up by e * e, for an
+  // infinitesimal e. The side tests below break ties the same way, moving
+  // both the center and the point, so the path between them never passes
+  // exactly through an edge or a vertex and the correction agrees with the
+  // rule the center's winding number was computed by.
+
+  // whether (x, y) is left of the edge from (x0, y0) to (x1, y1)
+  private static boolean left(float x0, float y0, float x1, float y1, float x, float y) {
+    float d = (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0);
+    if (d != 0) {
+      return d > 0;
+    }
+    return y1 != y0 ? y1 < y0 : x1 > x0;
+  }
+
+  // whether (vx, vy) is left of the path from (cx, cy) to (x, y)
+  private static boolean pathLeft(float cx, float cy, float x, float y, float vx, float vy) {
+    float d = (x - cx) * (vy - cy) - (y - cy) * (vx - cx);
+    if (d != 0) {
+      return d > 0;
+    }
+    return y != cy ? y > cy : x < cx;
+  }
+
+  /**
+   * @return true if the polygon contains the point, by the non-zero rule.
+   */
+  public boolean contains(float x, float y) {
+    return windingNumber(x, y) != 0;
+  }
+
+  /**
+   * <code>contains</code> tests a batch of points, in parallel for large
+   * batches.
+   *
+   * @param points
+   *          the points, as x, y pairs.
+   * @param count
+   *          the number of points to test.
+   * @param result
+   *          receives one bit per point, laid out as described in
+   *          {@link PointInPolygon}. Every word covering the points is
+   *          overwritten.
+   * @return the number of points inside the polygon.
+   */
+  public int contains(final float[] points, final int count, final long[] result) {
+    PointInPolygon.checkBatch(points, count, result);
+    final int chunkSize = PointInPolygon.CHUNK_SIZE;
+    final int chunks = (count + chunkSize - 1) / chunkSize;
+    final int[] inside = new int[chunks];
+    Parallel.forEach(chunks, 1, chunk -> {
+      int n = 0;
+      int end = PointInPolygon.wordCount(Math.min(count, (chunk + 1) * chunkSize));
+      for (int w = chunk * chunkSize / 64; w < end; ++w) {
+        long word = 0;
+        for (int i = w * 64, e = Math.min(count, i + 64); i < e; ++i) {
+          if (windingNumber(points[i * 2], points[i * 2 + 1]) != 0) {
+            word |= 1L << i;
+          }
+        }
+        result[w] = word;
+        n += Long.bitCount(word);
+      }
+      inside[chunk] = n;
+    });
+    return PointInPolygon.sum(inside);
+  }
+
+  /**
+   * <code>windingNumbers</code> computes the winding number around each of a
+   * batch of points, in parallel for large batches.
+   *
+   * @param points
+   *          the points, as x, y pairs.
+   * @param count
+   *          the number of points.
+   * @param result
+   *          receives the winding number of each point.
+   */
+  public void windingNumbers(final float[] points, final int count, final int[] result) {
+    if (count < 0 || count * 2 > points.length || count > result.length) {
+      throw new IllegalArgumentException("Invalid point count. " + count);
+    }
+    final int chunkSize = PointInPolygon.CHUNK_SIZE;
+    Parallel.forEach((count + chunkSize - 1) / chunkSize, 1, chunk -> {
+      for (int i = chunk * chunkSize, end = Math.min(count, i + chunkSize); i < end; ++i) {
+        result[i] = windingNumber(points[i * 2], points[i * 2 + 1]);
+      }
+    });
+  }
+}
@@ -48,6 +48,11 @@ public final class Quaternion extends Vector4<Quaternion> implements java.io.Ser
 
   static final long serialVersionUID = 1;
 
+  private static final int CHUNK_SIZE = 1024;
+  // the squared half angle below which the series for exp is exact to float
+  // precision
+  private static final float SMALL_ANGLE = 0.03f;
+
   private static final Logger logger = Logger.getLogger(Quaternion.class
       .getName());
   /**
@@ -501,6 +506,200 @@ public final class Quaternion extends Vector4<Quaternion> implements java.io.Ser
     return new Quaternion(q).normalize();
   }
 
+  /**
+   * <code>squad</code> interpolates between q1 and q2 by spherical quadrangle
+   * interpolation, with the intermediate control quaternions a1 and a2, as
+   * computed by {@link QuaternionSpline}. Unlike <code>slerp</code>, a curve
+   * through a series of keys interpolated this way has a continuous angular
+   * velocity.
+   * 
+   * @param t
+   *          the amount to interpolate, from 0 at q1 to 1 at q2.
+   */
+  public static Quaternion squad(Quaternion q1, Quaternion q2, Quaternion a1, Quaternion a2, float t) {
+    float[] result = new float[4];
+    QuaternionSpline.squad(q1.x, q1.y, q1.z, q1.w, q2.x, q2.y, q2.z, q2.w, a1.x, a1.y, a1.z, a1.w, a2.x,
+        a2.y, a2.z, a2.w, t, result, 0);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * <code>log</code> returns the logarithm of this unit quaternion, which is
+   * the pure quaternion, with w zero, of its axis times half its angle.
+   */
+  public Quaternion log() {
+    float[] result = new float[3];
+    log(x, y, z, w, result, 0);
+    return new Quaternion(result[0], result[1], result[2], 0);
+  }
+
+  /**
+   * <code>exp</code> returns the exponential of the vector part of this
+   * quaternion, taken as an axis times half an angle, which is the unit
+   * quaternion rotating by that angle about that axis. It is the inverse of
+   * {@link #log()}.
+   */
+  public Quaternion exp() {
+    float[] result = new float[4];
+    exp(x, y, z, result, 0);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * <code>log</code> writes the logarithm of a unit quaternion, x, y, z, to
+   * the result from <code>offset</code>.
+   * 
+   * @see #log()
+   */
+  public static void log(float x, float y, float z, float w, float[] result, int offset) {
+    float length = FastMath.sqrt(x * x + y * y + z * z);
+    float scale = length > 0 ? FastMath.atan2(length, w) / length : 0;
+    result[offset] = x * scale;
+    result[offset + 1] = y * scale;
+    result[offset + 2] = z * scale;
+  }
+
+  /**
+   * <code>exp</code> writes the exponential of the vector x, y, z, as a unit
+   * quaternion, to the result from <code>offset</code>.
+   * 
+   * @see #exp()
+   */
+  public static void exp(float x, float y, float z, float[] result, int offset) {
+    float angle = FastMath.sqrt(x * x + y * y + z * z);
+    // sin(angle) / angle, by its series for small angles
+    float scale = angle < 1e-2f ? 1 - angle * angle / 6 : FastMath.sin(angle) / angle;
+    result[offset] = x * scale;
+    result[offset + 1] = y * scale;
+    result[offset + 2] = z * scale;
+    result[offset + 3] = FastMath.cos(angle);
+  }
+
+  /**
+   * <code>integrate</code> returns this rotation after turning at an angular
+   * velocity for a time step, exp(omega dt / 2) * q, with omega in the world
+   * frame, as for a rigid body. For the small angles of a physics step the
+   * exponential is taken from its series, with no square root, sine or
+   * cosine, and the result is brought back to unit length with a single
+   * Newton step, so repeated steps do not drift and need no normalize.
+   *
+   * @param omega
+   *          the angular velocity, as an axis times radians per unit time.
+   */
+  public Quaternion integrate(Vector3f omega, float dt) {
+    float[] result = new float[4];
+    integrate(x, y, z, w, omega.x, omega.y, omega.z, dt, result, 0);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * <code>angularVelocity</code> returns the constant world frame angular
+   * velocity which turns q0 to q1 in a time step, 2 log(q1 * q0^-1) / dt,
+   * taking the shorter way round. It is the inverse of
+   * {@link #integrate(Vector3f, float)}.
+   */
+  public static Vector3f angularVelocity(Quaternion q0, Quaternion q1, float dt) {
+    float[] result = new float[3];
+    angularVelocity(q0.x, q0.y, q0.z, q0.w, q1.x, q1.y, q1.z, q1.w, dt, result, 0);
+    return new Vector3f(result[0], result[1], result[2]);
+  }
+
+  /**
+   * <code>integrate</code> steps the rotations of many rigid bodies, held as
+   * separate x, y, z, w arrays, in place, by their angular velocities, held
+   * the same way, in parallel, allocating nothing per body.
+   *
+   * @see #integrate(Vector3f, float)
+   */
+  public static void integrate(final float[] x, final float[] y, final float[] z, final float[] w,
+      final float[] wx, final float[] wy, final float[] wz, int count, final float dt) {
+    Parallel.forEachRange(count, CHUNK_SIZE, (start, end) -> {
+      float[] q = new float[4];
+      for (int i = start; i < end; ++i) {
+        integrate(x[i], y[i], z[i], w[i], wx[i], wy[i], wz[i], dt, q, 0);
+        x[i] = q[0];
+        y[i] = q[1];
+        z[i] = q[2];
+        w[i] = q[3];
+      }
+    });
+  }
+
+  /**
+   * <code>angularVelocity</code> finds the angular velocities which turn many
+   * rigid bodies from one set of rotations to another in a time step, in
+   * parallel, with the rotations and velocities held as separate component
+   * arrays.
+   *
+   * @see #angularVelocity(Quaternion, Quaternion, float)
+   */
+  public static void angularVelocity(final float[] x0, final float[] y0, final float[] z0,
+      final float[] w0, final float[] x1, final float[] y1, final float[] z1, final float[] w1, int count,
+      final float dt, final float[] wx, final float[] wy, final float[] wz) {
+    Parallel.forEachRange(count, CHUNK_SIZE, (start, end) -> {
+      float[] omega = new float[3];
+      for (int i = start; i < end; ++i) {
+        angularVelocity(x0[i], y0[i], z0[i], w0[i], x1[i], y1[i], z1[i], w1[i], dt, omega, 0);
+        wx[i] = omega[0];
+        wy[i] = omega[1];
+        wz[i] = omega[2];
+      }
+    });
+  }
+
+  // writes q stepped by omega to the result, x, y, z, w, from offset
+  private static void integrate(float qx, float qy, float qz, float qw, float wx, float wy, float wz,
+      float dt, float[] result, int offset) {
+    float half = 0.5f * dt;
+    float hx = wx * half, hy = wy * half, hz = wz * half;
+    float h2 = hx * hx + hy * hy + hz * hz;
+    // exp(h) = (h sin|h| / |h|, cos|h|)
+    float s, c;
+    if (h2 < SMALL_ANGLE) {
+      s = 1 - h2 / 6 * (1 - h2 / 20);
+      c = 1 - h2 / 2 * (1 - h2 / 12);
+    } else {
+      float angle = FastMath.sqrt(h2);
+      s = FastMath.sin(angle) / angle;
+      c = FastMath.cos(angle);
+    }
+    hx *= s;
+    hy *= s;
+    hz *= s;
+    float rx = c * qx + hx * qw + hy * qz - hz * qy;
+    float ry = c * qy + hy * qw + hz * qx - hx * qz;
+    float rz = c * qz + hz * qw + hx * qy - hy * qx;
+    float rw = c * qw - hx * qx - hy * qy - hz * qz;
+    // 1 / sqrt(n) by one Newton step from 1, as n is close to 1
+    float scale = 0.5f * (3 - (rx * rx + ry * ry + rz * rz + rw * rw));
+    result[offset] = rx * scale;
+    result[offset + 1] = ry * scale;
+    result[offset + 2] = rz * scale;
+    result[offset + 3] = rw * scale;
+  }
+
+  // writes the angular velocity turning q0 to q1 to the result, x, y, z,
+  // from offset
+  private static void angularVelocity(float x0, float y0, float z0, float w0, float x1, float y1, float z1,
+      float w1, float dt, float[] result, int offset) {
+    // q1 * q0^-1, on the same side as the identity
+    float dx = x1 * w0 - w1 * x0 - y1 * z0 + z1 * y0;
+    float dy = y1 * w0 - w1 * y0 - z1 * x0 + x1 * z0;
+    float dz = z1 * w0 - w1 * z0 - x1 * y0 + y1 * x0;
+    float dw = w1 * w0 + x1 * x0 + y1 * y0 + z1 * z0;
+    if (dw < 0) {
+      dx = -dx;
+      dy = -dy;
+      dz = -dz;
+      dw = -dw;
+    }
+    float length = FastMath.sqrt(dx * dx + dy * dy + dz * dz);
+    float scale = 2 / dt * (length > 0 ? FastMath.atan2(length, dw) / length : 1);
+    result[offset] = dx * scale;
+    result[offset + 1] = dy * scale;
+    result[offset + 2] = dz * scale;
+  }
+
   /**
    * <code>mult</code> multiplies this quaternion by a parameter quaternion. The
    * result is returned as a new quaternion. It should be noted that quaternion
@@ -602,6 +801,106 @@ public final class Quaternion extends Vector4<Quaternion> implements java.io.Ser
     return new Vector3f(tempX, tempY, tempZ);
   }
 
+  /**
+   * <code>swingTwist</code> splits this rotation into a twist about an axis,
+   * followed by a swing, which turns the axis without twisting about it, so
+   * that this rotation is the swing times the twist. This avoids the
+   * singularities and the inverse trigonometry of going through Euler
+   * angles, and allocates nothing.
+   * 
+   * @param axis
+   *          the twist axis, which must be unit length.
+   * @param result
+   *          receives the swing, x, y, z, w, then the twist. Both have a non
+   *          negative w. If the swing turns the axis half way around, the
+   *          twist is undefined, and is given as the identity.
+   */
+  public void swingTwist(Vector3f axis, float[] result) {
+    swingTwist(x, y, z, w, axis.x, axis.y, axis.z, result, 0);
+  }
+
+  /**
+   * <code>swingTwist</code> splits a unit quaternion into a swing and a twist
+   * about a unit axis, writing the swing, x, y, z, w, then the twist to the
+   * result from <code>offset</code>.
+   * 
+   * @see #swingTwist(Vector3f, float[])
+   */
+  public static void swingTwist(float x, float y, float z, float w, float ax, float ay, float az,
+      float[] result, int offset) {
+    if (w < 0) {
+      x = -x;
+      y = -y;
+      z = -z;
+      w = -w;
+    }
+    // the twist is the projection of the rotation onto the axis
+    float p = x * ax + y * ay + z * az;
+    float n = FastMath.sqrt(p * p + w * w);
+    float tx = 0, ty = 0, tz = 0, tw = 1;
+    if (n > FastMath.ZERO_TOLERANCE) {
+      tx = ax * p / n;
+      ty = ay * p / n;
+      tz = az * p / n;
+      tw = w / n;
+    }
+    // the swing is the rotation times the inverse of the twist
+    result[offset] = x * tw - w * tx - y * tz + z * ty;
+    result[offset + 1] = y * tw - w * ty - z * tx + x * tz;
+    result[offset + 2] = z * tw - w * tz - x * ty + y * tx;
+    result[offset + 3] = w * tw + x * tx + y * ty + z * tz;
+    result[offset + 4] = tx;
+    result[offset + 5] = ty;
+    result[offset + 6] = tz;
+    result[offset + 7] = tw;
+  }
+
+  /**
+   * <code>swingTwist</code> splits many rotations into swings and twists
+   * about the same axis, in parallel.
+   * 
+   * @param rotations
+   *          the rotations, x, y, z, w each.
+   * @param result
+   *          receives 8 floats per rotation, laid out as by
+   *          {@link #swingTwist(Vector3f, float[])}.
+   */
+  public static void swingTwist(final float[] rotations, int count, Vector3f axis, final float[] result) {
+    final float ax = axis.x, ay = axis.y, az = axis.z;
+    Parallel.forEach(count, CHUNK_SIZE, i -> swingTwist(rotations[i * 4], rotations[i * 4 + 1],
+        rotations[i * 4 + 2], rotations[i * 4 + 3], ax, ay, az, result, i * 8));
+  }
+
+  /**
+   * @return the part of this rotation which turns the axis, without
+   *         twisting about it.
+   * @see #swingTwist(Vector3f, float[])
+   */
+  public Quaternion getSwing(Vector3f axis) {
+    float[] result = new float[8];
+    swingTwist(axis, result);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * @return the part of this rotation which twists about the axis.
+   * @see #swingTwist(Vector3f, float[])
+   */
+  public Quaternion getTwist(Vector3f axis) {
+    float[] result = new float[8];
+    swingTwist(axis, result);
+    return new Quaternion(result[4], result[5], result[6], result[7]);
+  }
+
+  /**
+   * <code>getTwistAngle</code> returns the angle this rotation twists about
+   * a unit axis, from -PI to PI, with a single <code>atan2</code>.
+   */
+  public float getTwistAngle(Vector3f axis) {
+    float p = x * axis.x + y * axis.y + z * axis.z;
+    return w < 0 ? 2 * FastMath.atan2(-p, -w) : 2 * FastMath.atan2(p, w);
+  }
+
   /**
    * <code>norm</code> returns the norm of this quaternion. This is the dot
    * product of this quaternion with itself.
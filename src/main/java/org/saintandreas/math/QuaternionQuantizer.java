@@ -0,0 +1,185 @@
+package org.saintandreas.math;
+
+/**
+ * <code>QuaternionQuantizer</code> compresses unit quaternions with the
+ * smallest three encoding. Since q and -q are the same rotation, the
+ * quaternion is negated if needed to make its largest component positive,
+ * and that component is left out and recovered from the unit length. The
+ * other three must lie within plus or minus one over root two, and are
+ * quantized over that range.
+ *
+ * A quaternion takes two bits for the index of the dropped component plus
+ * three quantized components, so 29 bits with 9 bits per component up to 47
+ * bits with 15. With 10 bits per component the largest error in angle is
+ * about a tenth of a degree.
+ *
+ * @author Brad Davis
+ */
+public final class QuaternionQuantizer {
+  private static final float RANGE = FastMath.sqrt(0.5f);
+
+  private final int componentBits;
+  private final int maximum;
+  private final float encodeScale;
+  private final float decodeScale;
+
+  /**
+   * @param componentBits
+   *          the bits per quantized component, from 2 to 20.
+   */
+  public QuaternionQuantizer(int componentBits) {
+    if (componentBits < 2 || componentBits > 20) {
+      throw new IllegalArgumentException("Invalid bit count. " + componentBits);
+    }
+    this.componentBits = componentBits;
+    this.maximum = (1 << componentBits) - 1;
+    this.encodeScale = maximum / (2 * RANGE);
+    this.decodeScale = 2 * RANGE / maximum;
+  }
+
+  /**
+   * @return the bits used by each encoded quaternion.
+   */
+  public int getBits() {
+    return 2 + componentBits * 3;
+  }
+
+  /**
+   * Packs a quaternion, which need not be exactly unit length, into the low
+   * {@link #getBits()} bits of a long.
+   */
+  public long pack(float x, float y, float z, float w) {
+    float ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z), aw = Math.abs(w);
+    int largest = 0;
+    float a = x, b = y, c = z, max = ax;
+    if (ay > max) {
+      largest = 1;
+      max = ay;
+    }
+    if (az > max) {
+      largest = 2;
+      max = az;
+    }
+    if (aw > max) {
+      largest = 3;
+      max = aw;
+    }
+    // the three kept components in order, and the sign of the dropped one
+    float dropped;
+    switch (largest) {
+    case 0:
+      dropped = x;
+      a = y;
+      b = z;
+      c = w;
+      break;
+    case 1:
+      dropped = y;
+      b = z;
+      c = w;
+      break;
+    case 2:
+      dropped = z;
+      c = w;
+      break;
+    default:
+      dropped = w;
+      break;
+    }
+    float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    float scale = (dropped < 0 ? -encodeScale : encodeScale) / (length > 0 ? length : 1);
+    long packed = largest;
+    packed |= (long) quantize(a * scale) << 2;
+    packed |= (long) quantize(b * scale) << (2 + componentBits);
+    packed |= (long) quantize(c * scale) << (2 + componentBits * 2);
+    return packed;
+  }
+
+  public long pack(Quaternion q) {
+    return pack(q.x, q.y, q.z, q.w);
+  }
+
+  private int quantize(float scaled) {
+    int q = Math.round(scaled + maximum * 0.5f);
+    return q < 0 ? 0 : q > maximum ? maximum : q;
+  }
+
+  /**
+   * Unpacks a quaternion into x, y, z, w at the offset in the array.
+   */
+  public void unpack(long packed, float[] xyzw, int offset) {
+    int largest = (int) packed & 3;
+    float a = component(packed >>> 2);
+    float b = component(packed >>> (2 + componentBits));
+    float c = component(packed >>> (2 + componentBits * 2));
+    float d = (float) Math.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+    // renormalize, since rounding may push the kept components past unit
+    // length
+    float inverse = 1 / (float) Math.sqrt(a * a + b * b + c * c + d * d);
+    a *= inverse;
+    b *= inverse;
+    c *= inverse;
+    d *= inverse;
+    switch (largest) {
+    case 0:
+      set(xyzw, offset, d, a, b, c);
+      break;
+    case 1:
+      set(xyzw, offset, a, d, b, c);
+      break;
+    case 2:
+      set(xyzw, offset, a, b, d, c);
+      break;
+    default:
+      set(xyzw, offset, a, b, c, d);
+      break;
+    }
+  }
+
+  public Quaternion unpack(long packed) {
+    float[] xyzw = new float[4];
+    unpack(packed, xyzw, 0);
+    return new Quaternion(xyzw[0], xyzw[1], xyzw[2], xyzw[3]);
+  }
+
+  private float component(long bits) {
+    return ((int) bits & maximum) * decodeScale - RANGE;
+  }
+
+  private static void set(float[] xyzw, int offset, float x, float y, float z, float w) {
+    xyzw[offset] = x;
+    xyzw[offset + 1] = y;
+    xyzw[offset + 2] = z;
+    xyzw[offset + 3] = w;
+  }
+
+  public void write(BitWriter writer, Quaternion q) {
+    writer.write(pack(q), getBits());
+  }
+
+  public Quaternion read(BitReader reader) {
+    return unpack(reader.readLong(getBits()));
+  }
+
+  /**
+   * Writes <code>count</code> quaternions, packed as x, y, z, w from the
+   * offset in the array.
+   */
+  public void write(BitWriter writer, float[] xyzw, int offset, int count) {
+    int bits = getBits();
+    for (int i = offset, end = offset + count * 4; i < end; i += 4) {
+      writer.write(pack(xyzw[i], xyzw[i + 1], xyzw[i + 2], xyzw[i + 3]), bits);
+    }
+  }
+
+  /**
+   * Reads <code>count</code> quaternions into the array as x, y, z, w from
+   * the offset.
+   */
+  public void read(BitReader reader, float[] xyzw, int offset, int count) {
+    int bits = getBits();
+    for (int i = offset, end = offset + count * 4; i < end; i += 4) {
+      unpack(reader.readLong(bits), xyzw, i);
+    }
+  }
+}
@@ -0,0 +1,341 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>QuaternionSpline</code> is a rotation track, interpolating a series of
+ * timed key rotations with a continuous angular velocity, so that animation
+ * and camera rails don't jerk at the keys as they do with <code>slerp</code>
+ * or <code>nlerp</code>, and need fewer keys to look smooth.
+ *
+ * Two kinds of spline are provided. {@link #squad(float[], Quaternion[])}
+ * uses Shoemake's spherical quadrangle interpolation, which is smooth for
+ * evenly spaced keys. {@link #hermite(float[], Quaternion[])} is a cubic
+ * Hermite spline, with tangents scaled by the key spacing so it stays smooth
+ * when keys are unevenly spaced, evaluated in the cumulative form of Kim, Kim
+ * and Shin, "A General Construction Scheme for Unit Quaternion Curves with
+ * Simple High Order Derivatives", as the first key of a segment times three
+ * exponentials.
+ *
+ * The keys are stored as a structure of arrays, made consistent in sign so
+ * each is in the same hemisphere as the one before, and everything that
+ * depends only on the keys, the squad control rotations or the Hermite
+ * logarithms, is computed once when the track is created. Evaluation
+ * allocates nothing, and the batch forms evaluate a track at many times, or
+ * many tracks, such as the bones of a skeleton, at one time, in parallel.
+ *
+ * @author Brad Davis
+ */
+public final class QuaternionSpline {
+  private static final int CHUNK_SIZE = 1024;
+
+  private final float[] times;
+  final float[] x, y, z, w;
+  private final boolean hermite;
+  // squad: the control rotation for each key, x, y, z, w. hermite: the three
+  // logarithms for each segment, x, y, z each
+  private final float[] controls;
+
+  private QuaternionSpline(float[] times, float[] x, float[] y, float[] z, float[] w, int count,
+      boolean hermite) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Invalid key count. " + count);
+    }
+    for (int i = 1; i < count; ++i) {
+      if (!(times[i] > times[i - 1])) {
+        throw new IllegalArgumentException("Invalid key time. " + times[i]);
+      }
+    }
+    this.times = Arrays.copyOf(times, count);
+    this.x = new float[count];
+    this.y = new float[count];
+    this.z = new float[count];
+    this.w = new float[count];
+    this.hermite = hermite;
+    for (int i = 0; i < count; ++i) {
+      float n = FastMath.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i] + w[i] * w[i]);
+      if (i > 0
+          && x[i] * this.x[i - 1] + y[i] * this.y[i - 1] + z[i] * this.z[i - 1] + w[i] * this.w[i - 1] < 0) {
+        n = -n;
+      }
+      this.x[i] = x[i] / n;
+      this.y[i] = y[i] / n;
+      this.z[i] = z[i] / n;
+      this.w[i] = w[i] / n;
+    }
+    controls = hermite ? hermiteControls(count) : squadControls(count);
+  }
+
+  /**
+   * <code>squad</code> creates a track interpolating the keys by spherical
+   * quadrangle interpolation, which has a continuous angular velocity where
+   * the keys are evenly spaced in time.
+   *
+   * @param times
+   *          the key times, in increasing order.
+   * @param x
+   *          the x component of each key rotation, and so on.
+   */
+  public static QuaternionSpline squad(float[] times, float[] x, float[] y, float[] z, float[] w, int count) {
+    return new QuaternionSpline(times, x, y, z, w, count, false);
+  }
+
+  public static QuaternionSpline squad(float[] times, Quaternion[] keys) {
+    return create(times, keys, false);
+  }
+
+  /**
+   * <code>hermite</code> creates a track interpolating the keys by a cubic
+   * Hermite spline, with the angular velocity at each key taken from its
+   * neighbors, which has a continuous angular velocity however the keys are
+   * spaced in time.
+   *
+   * @param times
+   *          the key times, in increasing order.
+   * @param x
+   *          the x component of each key rotation, and so on.
+   */
+  public static QuaternionSpline hermite(float[] times, float[] x, float[] y, float[] z, float[] w,
+      int count) {
+    return new QuaternionSpline(times, x, y, z, w, count, true);
+  }
+
+  public static QuaternionSpline hermite(float[] times, Quaternion[] keys) {
+    return create(times, keys, true);
+  }
+
+  private static QuaternionSpline create(float[] times, Quaternion[] keys, boolean hermite) {
+    int count = keys.length;
+    float[] x = new float[count], y = new float[count], z = new float[count], w = new float[count];
+    for (int i = 0; i < count; ++i) {
+      x[i] = keys[i].x;
+      y[i] = keys[i].y;
+      z[i] = keys[i].z;
+      w[i] = keys[i].w;
+    }
+    return new QuaternionSpline(times, x, y, z, w, count, hermite);
+  }
+
+  public int getKeyCount() {
+    return times.length;
+  }
+
+  public float getStartTime() {
+    return times[0];
+  }
+
+  public float getEndTime() {
+    return times[times.length - 1];
+  }
+
+  // the logarithm of a* b, for keys a and b, x, y, z, to the result
+  private void logDifference(int a, int b, float[] result, int offset) {
+    float ax = -x[a], ay = -y[a], az = -z[a], aw = w[a];
+    float bx = x[b], by = y[b], bz = z[b], bw = w[b];
+    Quaternion.log(aw * bx + ax * bw + ay * bz - az * by, aw * by + ay * bw + az * bx - ax * bz,
+        aw * bz + az * bw + ax * by - ay * bx, aw * bw - ax * bx - ay * by - az * bz, result, offset);
+  }
+
+  // the squad control rotation for each key, q exp(-(log(q* next) +
+  // log(q* previous)) / 4), or the key itself at the ends
+  private float[] squadControls(int count) {
+    float[] result = new float[count * 4];
+    float[] next = new float[3], previous = new float[3], e = new float[4];
+    for (int i = 0; i < count; ++i) {
+      int c = i * 4;
+      if (i == 0 || i == count - 1) {
+        result[c] = x[i];
+        result[c + 1] = y[i];
+        result[c + 2] = z[i];
+        result[c + 3] = w[i];
+        continue;
+      }
+      logDifference(i, i + 1, next, 0);
+      logDifference(i, i - 1, previous, 0);
+      Quaternion.exp(-0.25f * (next[0] + previous[0]), -0.25f * (next[1] + previous[1]),
+          -0.25f * (next[2] + previous[2]), e, 0);
+      result[c] = w[i] * e[0] + x[i] * e[3] + y[i] * e[2] - z[i] * e[1];
+      result[c + 1] = w[i] * e[1] + y[i] * e[3] + z[i] * e[0] - x[i] * e[2];
+      result[c + 2] = w[i] * e[2] + z[i] * e[3] + x[i] * e[1] - y[i] * e[0];
+      result[c + 3] = w[i] * e[3] - x[i] * e[0] - y[i] * e[1] - z[i] * e[2];
+    }
+    return result;
+  }
+
+  // for each segment, the logarithms of the steps from the first key to its
+  // outgoing control rotation a, to the incoming control rotation b of the
+  // second key, and to the second key, where a = q0 exp(v0 dt / 3) and b = q1
+  // exp(-v1 dt / 3) for the key velocities v, the logarithm rates
+  private float[] hermiteControls(int count) {
+    float[] result = new float[Math.max(count - 1, 0) * 9];
+    // the velocity at each key, averaging the segments either side
+    float[] velocities = new float[count * 3];
+    float[] d = new float[3];
+    for (int i = 0; i + 1 < count; ++i) {
+      logDifference(i, i + 1, d, 0);
+      float dt = times[i + 1] - times[i];
+      for (int k = 0; k < 3; ++k) {
+        float v = d[k] / dt;
+        velocities[i * 3 + k] += i == 0 ? v : 0.5f * v;
+        velocities[i * 3 + 3 + k] += i + 2 == count ? v : 0.5f * v;
+      }
+    }
+    float[] a = new float[4], b = new float[4], e = new float[4];
+    for (int i = 0; i + 1 < count; ++i) {
+      float dt = (times[i + 1] - times[i]) / 3;
+      int v0 = i * 3, v1 = i * 3 + 3, c = i * 9;
+      // the first step is exp(v0 dt / 3), so its logarithm is that
+      result[c] = velocities[v0] * dt;
+      result[c + 1] = velocities[v0 + 1] * dt;
+      result[c + 2] = velocities[v0 + 2] * dt;
+      Quaternion.exp(result[c], result[c + 1], result[c + 2], e, 0);
+      multiply(x[i], y[i], z[i], w[i], e, a);
+      Quaternion.exp(-velocities[v1] * dt, -velocities[v1 + 1] * dt, -velocities[v1 + 2] * dt, e, 0);
+      multiply(x[i + 1], y[i + 1], z[i + 1], w[i + 1], e, b);
+      // the middle step, from a to b
+      a[0] = -a[0];
+      a[1] = -a[1];
+      a[2] = -a[2];
+      multiply(a[0], a[1], a[2], a[3], b, e);
+      Quaternion.log(e[0], e[1], e[2], e[3], result, c + 3);
+      result[c + 6] = velocities[v1] * dt;
+      result[c + 7] = velocities[v1 + 1] * dt;
+      result[c + 8] = velocities[v1 + 2] * dt;
+    }
+    return result;
+  }
+
+  // r = q e
+  private static void multiply(float qx, float qy, float qz, float qw, float[] e, float[] r) {
+    r[0] = qw * e[0] + qx * e[3] + qy * e[2] - qz * e[1];
+    r[1] = qw * e[1] + qy * e[3] + qz * e[0] - qx * e[2];
+    r[2] = qw * e[2] + qz * e[3] + qx * e[1] - qy * e[0];
+    r[3] = qw * e[3] - qx * e[0] - qy * e[1] - qz * e[2];
+  }
+
+  public Quaternion evaluate(float time) {
+    float[] result = new float[4];
+    evaluate(time, result, 0);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * <code>evaluate</code> writes the rotation at a time, x, y, z, w, to the
+   * result from <code>offset</code>. Before the first key or after the last,
+   * the rotation is that key's.
+   */
+  public void evaluate(float time, float[] result, int offset) {
+    int last = times.length - 1;
+    int i;
+    if (!(time > times[0])) {
+      i = 0;
+      time = times[0];
+    } else if (time >= times[last]) {
+      i = last;
+    } else {
+      i = Arrays.binarySearch(times, time);
+      if (i < 0) {
+        i = -i - 2;
+      }
+    }
+    if (i == last) {
+      result[offset] = x[i];
+      result[offset + 1] = y[i];
+      result[offset + 2] = z[i];
+      result[offset + 3] = w[i];
+      return;
+    }
+    float t = (time - times[i]) / (times[i + 1] - times[i]);
+    if (hermite) {
+      hermite(i, t, result, offset);
+    } else {
+      float[] c = controls;
+      int j = i * 4;
+      squad(x[i], y[i], z[i], w[i], x[i + 1], y[i + 1], z[i + 1], w[i + 1], c[j], c[j + 1], c[j + 2],
+          c[j + 3], c[j + 4], c[j + 5], c[j + 6], c[j + 7], t, result, offset);
+    }
+  }
+
+  // q0 exp(b1 l1) exp(b2 l2) exp(b3 l3), with the cumulative cubic Bernstein
+  // weights b
+  private void hermite(int i, float t, float[] result, int offset) {
+    float s = 1 - t;
+    float b1 = 1 - s * s * s, b2 = t * t * (3 - 2 * t), b3 = t * t * t;
+    float rx = x[i], ry = y[i], rz = z[i], rw = w[i];
+    int c = i * 9;
+    for (int k = 0; k < 3; ++k, c += 3) {
+      float b = k == 0 ? b1 : k == 1 ? b2 : b3;
+      float vx = controls[c] * b, vy = controls[c + 1] * b, vz = controls[c + 2] * b;
+      float angle = FastMath.sqrt(vx * vx + vy * vy + vz * vz);
+      float scale = angle < 1e-2f ? 1 - angle * angle / 6 : FastMath.sin(angle) / angle;
+      float ex = vx * scale, ey = vy * scale, ez = vz * scale, ew = FastMath.cos(angle);
+      float nx = rw * ex + rx * ew + ry * ez - rz * ey;
+      float ny = rw * ey + ry * ew + rz * ex - rx * ez;
+      float nz = rw * ez + rz * ew + rx * ey - ry * ex;
+      rw = rw * ew - rx * ex - ry * ey - rz * ez;
+      rx = nx;
+      ry = ny;
+      rz = nz;
+    }
+    result[offset] = rx;
+    result[offset + 1] = ry;
+    result[offset + 2] = rz;
+    result[offset + 3] = rw;
+  }
+
+  /**
+   * <code>squad</code> writes slerp(slerp(q1, q2, t), slerp(a1, a2, t), 2 t (1
+   * - t)) to the result from <code>offset</code>. The slerps take the given
+   * signs as they are, rather than the shortest path, as squad requires.
+   */
+  static void squad(float q1x, float q1y, float q1z, float q1w, float q2x, float q2y, float q2z, float q2w,
+      float a1x, float a1y, float a1z, float a1w, float a2x, float a2y, float a2z, float a2w, float t,
+      float[] result, int offset) {
+    float cos = q1x * q2x + q1y * q2y + q1z * q2z + q1w * q2w;
+    float k1 = slerpWeight(cos, 1 - t), k2 = slerpWeight(cos, t);
+    float px = q1x * k1 + q2x * k2, py = q1y * k1 + q2y * k2;
+    float pz = q1z * k1 + q2z * k2, pw = q1w * k1 + q2w * k2;
+    cos = a1x * a2x + a1y * a2y + a1z * a2z + a1w * a2w;
+    k1 = slerpWeight(cos, 1 - t);
+    k2 = slerpWeight(cos, t);
+    float ax = a1x * k1 + a2x * k2, ay = a1y * k1 + a2y * k2;
+    float az = a1z * k1 + a2z * k2, aw = a1w * k1 + a2w * k2;
+    float h = 2 * t * (1 - t);
+    cos = px * ax + py * ay + pz * az + pw * aw;
+    k1 = slerpWeight(cos, 1 - h);
+    k2 = slerpWeight(cos, h);
+    result[offset] = px * k1 + ax * k2;
+    result[offset + 1] = py * k1 + ay * k2;
+    result[offset + 2] = pz * k1 + az * k2;
+    result[offset + 3] = pw * k1 + aw * k2;
+  }
+
+  // sin(t theta) / sin(theta) for the angle theta with the given cosine,
+  // which is t where the angle is too small to divide by its sine
+  private static float slerpWeight(float cos, float t) {
+    cos = FastMath.clamp(cos, -1, 1);
+    if (cos > 0.9999f) {
+      return t;
+    }
+    float theta = FastMath.acos(cos);
+    return FastMath.sin(t * theta) / FastMath.sin(theta);
+  }
+
+  /**
+   * <code>evaluate</code> evaluates this track at many times, in parallel,
+   * writing 4 floats, x, y, z, w, per time to the result.
+   */
+  public void evaluate(final float[] times, int count, final float[] result) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> evaluate(times[i], result, i * 4));
+  }
+
+  /**
+   * <code>evaluate</code> evaluates many tracks, such as the bones of a
+   * skeleton, at the same time, in parallel, writing 4 floats, x, y, z, w, per
+   * track to the result.
+   */
+  public static void evaluate(final QuaternionSpline[] tracks, int count, final float time,
+      final float[] result) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> tracks[i].evaluate(time, result, i * 4));
+  }
+}
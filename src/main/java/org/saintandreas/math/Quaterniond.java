@@ -0,0 +1,263 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Quaterniond</code> is the double precision counterpart of
+ * {@link Quaternion}, for orientations composed over many steps, or applied to
+ * {@link Vector3d} positions far from the origin, where float rounding would
+ * show. {@link #toQuaternion()} rounds it for rendering.
+ *
+ * Each method works on the fields directly, and allocates nothing but its
+ * result.
+ *
+ * @author Brad Davis
+ */
+public final class Quaterniond implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  public static final Quaterniond IDENTITY = new Quaterniond();
+
+  public final double x;
+  public final double y;
+  public final double z;
+  public final double w;
+
+  public Quaterniond() {
+    this(0, 0, 0, 1);
+  }
+
+  public Quaterniond(double x, double y, double z, double w) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.w = w;
+  }
+
+  public Quaterniond(Quaternion q) {
+    this(q.x, q.y, q.z, q.w);
+  }
+
+  /**
+   * <code>fromAngleAxis</code> creates a quaternion rotating by an angle about
+   * an axis, which need not be normalized.
+   *
+   * @param angle
+   *          the angle to rotate (in radians).
+   * @param axis
+   *          the axis of rotation.
+   */
+  public static Quaterniond fromAngleAxis(double angle, Vector3d axis) {
+    return fromAngleNormalAxis(angle, axis.normalize());
+  }
+
+  /**
+   * <code>fromAngleNormalAxis</code> creates a quaternion rotating by an angle
+   * about a normalized axis.
+   *
+   * @param angle
+   *          the angle to rotate (in radians).
+   * @param axis
+   *          the axis of rotation (already normalized).
+   */
+  public static Quaterniond fromAngleNormalAxis(double angle, Vector3d axis) {
+    if (axis.x == 0 && axis.y == 0 && axis.z == 0) {
+      return IDENTITY;
+    }
+    double halfAngle = 0.5 * angle;
+    double sin = Math.sin(halfAngle);
+    return new Quaterniond(sin * axis.x, sin * axis.y, sin * axis.z, Math.cos(halfAngle));
+  }
+
+  /**
+   * <code>fromRotationMatrix</code> creates a quaternion from the rotation in
+   * the upper left 3x3 of a matrix, which is assumed to be a pure rotation.
+   */
+  public static Quaterniond fromRotationMatrix(double m00, double m01, double m02, double m10, double m11,
+      double m12, double m20, double m21, double m22) {
+    // the same Graphics Gems method as Quaternion.fromMatrix3f
+    double t = m00 + m11 + m22;
+    double x, y, z, w;
+    if (t >= 0) {
+      double s = Math.sqrt(t + 1);
+      w = 0.5 * s;
+      s = 0.5 / s;
+      x = (m21 - m12) * s;
+      y = (m02 - m20) * s;
+      z = (m10 - m01) * s;
+    } else if ((m00 > m11) && (m00 > m22)) {
+      double s = Math.sqrt(1.0 + m00 - m11 - m22);
+      x = s * 0.5;
+      s = 0.5 / s;
+      y = (m10 + m01) * s;
+      z = (m02 + m20) * s;
+      w = (m21 - m12) * s;
+    } else if (m11 > m22) {
+      double s = Math.sqrt(1.0 + m11 - m00 - m22);
+      y = s * 0.5;
+      s = 0.5 / s;
+      x = (m10 + m01) * s;
+      z = (m21 + m12) * s;
+      w = (m02 - m20) * s;
+    } else {
+      double s = Math.sqrt(1.0 + m22 - m00 - m11);
+      z = s * 0.5;
+      s = 0.5 / s;
+      x = (m02 + m20) * s;
+      y = (m21 + m12) * s;
+      w = (m10 - m01) * s;
+    }
+    return new Quaterniond(x, y, z, w);
+  }
+
+  public double dot(Quaterniond q) {
+    return x * q.x + y * q.y + z * q.z + w * q.w;
+  }
+
+  /**
+   * <code>norm</code> returns the dot product of this quaternion with itself.
+   */
+  public double norm() {
+    return dot(this);
+  }
+
+  public Quaterniond normalize() {
+    double norm = norm();
+    if (norm != 1.0 && norm != 0.0) {
+      double s = 1.0 / Math.sqrt(norm);
+      return new Quaterniond(x * s, y * s, z * s, w * s);
+    }
+    return this;
+  }
+
+  public Quaterniond negate() {
+    return new Quaterniond(-x, -y, -z, -w);
+  }
+
+  /**
+   * <code>inverse</code> returns the inverse of this quaternion, or null if
+   * its norm is zero.
+   */
+  public Quaterniond inverse() {
+    double norm = norm();
+    if (norm > 0.0) {
+      double invNorm = 1.0 / norm;
+      return new Quaterniond(-x * invNorm, -y * invNorm, -z * invNorm, w * invNorm);
+    }
+    return null;
+  }
+
+  /**
+   * <code>mult</code> multiplies this quaternion by another, this one on the
+   * left, so the result applies <code>q</code> first.
+   */
+  public Quaterniond mult(Quaterniond q) {
+    return new Quaterniond( //
+        x * q.w + y * q.z - z * q.y + w * q.x, //
+        -x * q.z + y * q.w + z * q.x + w * q.y, //
+        x * q.y - y * q.x + z * q.w + w * q.z, //
+        -x * q.x - y * q.y - z * q.z + w * q.w);
+  }
+
+  /**
+   * <code>mult</code> rotates a vector by this quaternion, which is assumed to
+   * be normalized.
+   */
+  public Vector3d mult(Vector3d v) {
+    // v + 2w(u x v) + 2u x (u x v), with u the vector part
+    double cx = y * v.z - z * v.y;
+    double cy = z * v.x - x * v.z;
+    double cz = x * v.y - y * v.x;
+    double ccx = y * cz - z * cy;
+    double ccy = z * cx - x * cz;
+    double ccz = x * cy - y * cx;
+    return new Vector3d(v.x + 2 * (w * cx + ccx), v.y + 2 * (w * cy + ccy), v.z + 2 * (w * cz + ccz));
+  }
+
+  /**
+   * <code>slerp</code> interpolates along the shorter arc from this
+   * quaternion to <code>q2</code>.
+   */
+  public Quaterniond slerp(Quaterniond q2, double changeAmount) {
+    double cos = dot(q2);
+    double sign = 1;
+    if (cos < 0) {
+      cos = -cos;
+      sign = -1;
+    }
+    double scale0 = 1 - changeAmount;
+    double scale1 = changeAmount;
+    // below this the arc is so short that a linear blend is exact to double
+    // precision, and the sine would lose it
+    if (1 - cos > 1e-6) {
+      double theta = Math.acos(cos);
+      double invSinTheta = 1 / Math.sin(theta);
+      scale0 = Math.sin((1 - changeAmount) * theta) * invSinTheta;
+      scale1 = Math.sin(changeAmount * theta) * invSinTheta;
+    }
+    scale1 *= sign;
+    return new Quaterniond(scale0 * x + scale1 * q2.x, scale0 * y + scale1 * q2.y, scale0 * z + scale1 * q2.z,
+        scale0 * w + scale1 * q2.w);
+  }
+
+  /**
+   * <code>nlerp</code> blends linearly along the shorter arc from this
+   * quaternion to <code>q2</code>, and normalizes the result.
+   */
+  public Quaterniond nlerp(Quaterniond q2, double blend) {
+    double blendI = 1.0 - blend;
+    if (dot(q2) < 0.0) {
+      blend = -blend;
+    }
+    return new Quaterniond(blendI * x + blend * q2.x, blendI * y + blend * q2.y, blendI * z + blend * q2.z,
+        blendI * w + blend * q2.w).normalize();
+  }
+
+  /**
+   * <code>toRotationMatrix4d</code> converts this quaternion to a rotation
+   * matrix. The result is created from a normalized version of this quaternion.
+   */
+  public Matrix4d toRotationMatrix4d() {
+    double norm = norm();
+    double s = (norm == 1.0) ? 2.0 : (norm > 0.0) ? 2.0 / norm : 0;
+    double xs = x * s, ys = y * s, zs = z * s;
+    double xx = x * xs, xy = x * ys, xz = x * zs, xw = w * xs;
+    double yy = y * ys, yz = y * zs, yw = w * ys;
+    double zz = z * zs, zw = w * zs;
+    return new Matrix4d( //
+        1 - (yy + zz), (xy - zw), (xz + yw), 0, //
+        (xy + zw), 1 - (xx + zz), (yz - xw), 0, //
+        (xz - yw), (yz + xw), 1 - (xx + yy), 0, //
+        0, 0, 0, 1);
+  }
+
+  public Quaternion toQuaternion() {
+    return new Quaternion((float) x, (float) y, (float) z, (float) w);
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 37;
+    hash += 37 * hash + Double.doubleToLongBits(x);
+    hash += 37 * hash + Double.doubleToLongBits(y);
+    hash += 37 * hash + Double.doubleToLongBits(z);
+    hash += 37 * hash + Double.doubleToLongBits(w);
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Quaterniond)) {
+      return false;
+    }
+    if (this == o) {
+      return true;
+    }
+    Quaterniond comp = (Quaterniond) o;
+    return Double.compare(x, comp.x) == 0 && Double.compare(y, comp.y) == 0 && Double.compare(z, comp.z) == 0
+        && Double.compare(w, comp.w) == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+  }
+}
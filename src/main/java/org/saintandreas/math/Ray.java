@@ -0,0 +1,145 @@
+package org.saintandreas.math;
+
+import javax.annotation.Nonnull;
+
+/**
+ * <code>Ray</code> defines a half line starting at an origin and extending
+ * infinitely along a direction. The direction is not required to be of unit
+ * length, in which case distances returned by the intersection methods are in
+ * multiples of the direction's length.
+ *
+ * @author Brad Davis
+ */
+public final class Ray implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  /**
+   * the origin of the ray.
+   */
+  public final Vector3f origin;
+
+  /**
+   * the direction of the ray.
+   */
+  public final Vector3f direction;
+
+  /**
+   * Constructor instantiates a new <code>Ray</code> starting at the origin and
+   * pointing down the negative Z axis.
+   */
+  public Ray() {
+    this(Vector3f.ZERO, Vector3f.UNIT_Z.negate());
+  }
+
+  /**
+   * Constructor instantiates a new <code>Ray</code> with the given origin and
+   * direction.
+   *
+   * @param origin
+   *          the origin of the ray.
+   * @param direction
+   *          the direction the ray travels in.
+   */
+  public Ray(@Nonnull Vector3f origin, @Nonnull Vector3f direction) {
+    this.origin = origin;
+    this.direction = direction;
+  }
+
+  public Vector3f getOrigin() {
+    return origin;
+  }
+
+  public Vector3f getDirection() {
+    return direction;
+  }
+
+  /**
+   * <code>getPoint</code> returns the point found by travelling
+   * <code>t</code> units along the ray.
+   *
+   * @param t
+   *          the distance along the ray.
+   * @return origin + direction * t
+   */
+  public Vector3f getPoint(float t) {
+    return new Vector3f(origin.x + direction.x * t, origin.y + direction.y * t,
+        origin.z + direction.z * t);
+  }
+
+  /**
+   * <code>intersect</code> tests this ray against the triangle defined by the
+   * three given vertices using the Moller-Trumbore test. No temporary vectors
+   * are created.
+   *
+   * @param v0
+   *          first vertex of the triangle.
+   * @param v1
+   *          second vertex of the triangle.
+   * @param v2
+   *          third vertex of the triangle.
+   * @return the distance along the ray to the intersection, or
+   *         <code>Float.POSITIVE_INFINITY</code> if there is none.
+   */
+  public float intersect(Vector3f v0, Vector3f v1, Vector3f v2) {
+    return intersect(v0, v1, v2, 0);
+  }
+
+  /**
+   * <code>intersect</code> tests this ray against the triangle defined by the
+   * three given vertices.
+   *
+   * @param v0
+   *          first vertex of the triangle.
+   * @param v1
+   *          second vertex of the triangle.
+   * @param v2
+   *          third vertex of the triangle.
+   * @param flags
+   *          a combination of {@link RayTriangle#CULL_BACKFACE} and
+   *          {@link RayTriangle#WATERTIGHT}.
+   * @return the distance along the ray to the intersection, or
+   *         <code>Float.POSITIVE_INFINITY</code> if there is none.
+   */
+  public float intersect(Vector3f v0, Vector3f v1, Vector3f v2, int flags) {
+    return RayTriangle.intersect(origin.x, origin.y, origin.z, direction.x,
+        direction.y, direction.z, v0.x, v0.y, v0.z, v1.x, v1.y, v1.z, v2.x,
+        v2.y, v2.z, Float.POSITIVE_INFINITY, flags, null);
+  }
+
+  /**
+   * <code>toString</code> returns the string representation of this ray.
+   *
+   * @return the string representation of this ray.
+   */
+  @Override
+  public String toString() {
+    return "[" + origin + " -> " + direction + "]";
+  }
+
+  @Override
+  public int hashCode() {
+    return 37 * origin.hashCode() + direction.hashCode();
+  }
+
+  /**
+   * are these two rays the same? they are if they have the same origin and
+   * direction.
+   *
+   * @param o
+   *          the object to compare for equality
+   * @return true if they are equal
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Ray)) {
+      return false;
+    }
+
+    if (this == o) {
+      return true;
+    }
+
+    Ray comp = (Ray) o;
+    return origin.equals(comp.origin) && direction.equals(comp.direction);
+  }
+}
@@ -0,0 +1,91 @@
+package org.saintandreas.math;
+
+/**
+ * <code>RayPacket</code> stores a set of rays in structure-of-arrays form for
+ * use with the batch kernels in {@link RayTriangle}.
+ *
+ * @author Brad Davis
+ */
+public final class RayPacket {
+  final float[] ox, oy, oz;
+  final float[] dx, dy, dz;
+  private int size;
+
+  /**
+   * Creates an empty packet able to hold <code>capacity</code> rays.
+   */
+  public RayPacket(int capacity) {
+    ox = new float[capacity];
+    oy = new float[capacity];
+    oz = new float[capacity];
+    dx = new float[capacity];
+    dy = new float[capacity];
+    dz = new float[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return ox.length;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends a ray to the packet.
+   *
+   * @return the index of the new ray.
+   */
+  public int add(Ray ray) {
+    return add(ray.origin.x, ray.origin.y, ray.origin.z, ray.direction.x,
+        ray.direction.y, ray.direction.z);
+  }
+
+  /**
+   * Appends a ray to the packet.
+   *
+   * @return the index of the new ray.
+   */
+  public int add(float originX, float originY, float originZ,
+      float directionX, float directionY, float directionZ) {
+    if (size == ox.length) {
+      throw new IllegalStateException("Packet is full");
+    }
+    int i = size++;
+    ox[i] = originX;
+    oy[i] = originY;
+    oz[i] = originZ;
+    dx[i] = directionX;
+    dy[i] = directionY;
+    dz[i] = directionZ;
+    return i;
+  }
+
+  /**
+   * Replaces the ray at the given index.
+   */
+  public void set(int i, float originX, float originY, float originZ,
+      float directionX, float directionY, float directionZ) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Invalid ray index. " + i);
+    }
+    ox[i] = originX;
+    oy[i] = originY;
+    oz[i] = originZ;
+    dx[i] = directionX;
+    dy[i] = directionY;
+    dz[i] = directionZ;
+  }
+
+  public Ray get(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Invalid ray index. " + i);
+    }
+    return new Ray(new Vector3f(ox[i], oy[i], oz[i]), new Vector3f(dx[i],
+        dy[i], dz[i]));
+  }
+}
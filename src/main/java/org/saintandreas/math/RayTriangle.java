@@ -0,0 +1,363 @@
+package org.saintandreas.math;
+
+/**
+ * <code>RayTriangle</code> contains allocation free ray / triangle intersection
+ * kernels. Besides the scalar test there are batch forms that test a single
+ * ray against a {@link TriangleBatch} and a {@link RayPacket} against a single
+ * triangle. Per-ray (or per-triangle) setup is hoisted out of the inner loop
+ * and all data is read from structure-of-arrays storage.
+ *
+ * Two algorithms are available. The default is the Moller-Trumbore test. When
+ * the {@link #WATERTIGHT} flag is given the test of Woop, Benthin and Wald
+ * ("Watertight Ray/Triangle Intersection", JCGT 2013) is used instead, which
+ * never lets a ray slip through the shared edge or vertex of two adjacent
+ * triangles.
+ *
+ * A triangle is front facing when its vertices appear counter-clockwise as
+ * seen from the ray origin, which is the convention used by
+ * {@link FastMath#computeNormal(Vector3f, Vector3f, Vector3f)}.
+ *
+ * @author Brad Davis
+ */
+public final class RayTriangle {
+  private RayTriangle() {
+  }
+
+  /**
+   * Reject triangles that face away from the ray.
+   */
+  public static final int CULL_BACKFACE = 1;
+
+  /**
+   * Use the watertight intersection test rather than Moller-Trumbore.
+   */
+  public static final int WATERTIGHT = 2;
+
+  private static final float EPSILON = FastMath.FLT_EPSILON;
+
+  /**
+   * <code>intersect</code> tests a single ray against a single triangle.
+   *
+   * @param uv
+   *          if not null, receives the barycentric weights of v1 and v2 at the
+   *          intersection point in elements 0 and 1.
+   * @return the distance along the ray to the intersection, or
+   *         <code>Float.POSITIVE_INFINITY</code> if there is no intersection
+   *         in the range [0, tMax].
+   */
+  public static float intersect(float ox, float oy, float oz, float dx,
+      float dy, float dz, float x0, float y0, float z0, float x1, float y1,
+      float z1, float x2, float y2, float z2, float tMax, int flags, float[] uv) {
+    if ((flags & WATERTIGHT) != 0) {
+      int kz = maxDimension(dx, dy, dz);
+      int kx = kz == 2 ? 0 : kz + 1;
+      int ky = kx == 2 ? 0 : kx + 1;
+      float dkz = component(kz, dx, dy, dz);
+      if (dkz < 0) {
+        int swap = kx;
+        kx = ky;
+        ky = swap;
+      }
+      float sz = 1f / dkz;
+      float sx = component(kx, dx, dy, dz) * sz;
+      float sy = component(ky, dx, dy, dz) * sz;
+      return watertight(ox, oy, oz, kx, ky, kz, sx, sy, sz, x0, y0, z0, x1,
+          y1, z1, x2, y2, z2, tMax, (flags & CULL_BACKFACE) != 0, uv, 0);
+    }
+    return mollerTrumbore(ox, oy, oz, dx, dy, dz, x0, y0, z0, x1 - x0, y1 - y0,
+        z1 - z0, x2 - x0, y2 - y0, z2 - z0, tMax, (flags & CULL_BACKFACE) != 0,
+        uv, 0);
+  }
+
+  /**
+   * <code>intersect</code> tests one ray against every triangle in the range
+   * [start, end) of the batch.
+   *
+   * @param t
+   *          receives, at the triangle's index, the distance to each
+   *          intersection or <code>Float.POSITIVE_INFINITY</code> for a miss.
+   * @return the number of triangles hit.
+   */
+  public static int intersect(Ray ray, TriangleBatch tris, int start, int end,
+      float tMax, int flags, float[] t) {
+    return intersect(ray, tris, start, end, tMax, flags, t, null);
+  }
+
+  /**
+   * <code>intersect</code> tests one ray against every triangle in the range
+   * [start, end) of the batch.
+   *
+   * @param t
+   *          receives, at the triangle's index, the distance to each
+   *          intersection or <code>Float.POSITIVE_INFINITY</code> for a miss.
+   * @param uv
+   *          if not null, receives the barycentric weights of v1 and v2 at the
+   *          triangle's index * 2.
+   * @return the number of triangles hit.
+   */
+  public static int intersect(Ray ray, TriangleBatch tris, int start, int end,
+      float tMax, int flags, float[] t, float[] uv) {
+    checkRange(start, end, tris.size());
+    final float ox = ray.origin.x, oy = ray.origin.y, oz = ray.origin.z;
+    final float dx = ray.direction.x, dy = ray.direction.y, dz = ray.direction.z;
+    final boolean cull = (flags & CULL_BACKFACE) != 0;
+    final float[] x0 = tris.x0, y0 = tris.y0, z0 = tris.z0;
+    final float[] x1 = tris.x1, y1 = tris.y1, z1 = tris.z1;
+    final float[] x2 = tris.x2, y2 = tris.y2, z2 = tris.z2;
+    int hits = 0;
+    if ((flags & WATERTIGHT) != 0) {
+      int kz = maxDimension(dx, dy, dz);
+      int kx = kz == 2 ? 0 : kz + 1;
+      int ky = kx == 2 ? 0 : kx + 1;
+      float dkz = component(kz, dx, dy, dz);
+      if (dkz < 0) {
+        int swap = kx;
+        kx = ky;
+        ky = swap;
+      }
+      float sz = 1f / dkz;
+      float sx = component(kx, dx, dy, dz) * sz;
+      float sy = component(ky, dx, dy, dz) * sz;
+      for (int i = start; i < end; ++i) {
+        float d = watertight(ox, oy, oz, kx, ky, kz, sx, sy, sz, x0[i], y0[i],
+            z0[i], x1[i], y1[i], z1[i], x2[i], y2[i], z2[i], tMax, cull, uv,
+            i * 2);
+        t[i] = d;
+        if (d != Float.POSITIVE_INFINITY) {
+          ++hits;
+        }
+      }
+    } else {
+      for (int i = start; i < end; ++i) {
+        float ax = x0[i], ay = y0[i], az = z0[i];
+        float d = mollerTrumbore(ox, oy, oz, dx, dy, dz, ax, ay, az, x1[i] - ax,
+            y1[i] - ay, z1[i] - az, x2[i] - ax, y2[i] - ay, z2[i] - az, tMax,
+            cull, uv, i * 2);
+        t[i] = d;
+        if (d != Float.POSITIVE_INFINITY) {
+          ++hits;
+        }
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * <code>closest</code> finds the nearest triangle in the range [start, end)
+   * of the batch hit by the ray. The search range shrinks with every hit, so
+   * this is cheaper than testing every triangle and taking the minimum.
+   *
+   * @param hit
+   *          if not null, receives the distance and the barycentric weights
+   *          of v1 and v2 of the closest intersection in elements 0, 1 and 2.
+   * @return the index of the closest triangle, or -1 if none was hit.
+   */
+  public static int closest(Ray ray, TriangleBatch tris, int start, int end,
+      float tMax, int flags, float[] hit) {
+    checkRange(start, end, tris.size());
+    final float ox = ray.origin.x, oy = ray.origin.y, oz = ray.origin.z;
+    final float dx = ray.direction.x, dy = ray.direction.y, dz = ray.direction.z;
+    final boolean cull = (flags & CULL_BACKFACE) != 0;
+    final float[] x0 = tris.x0, y0 = tris.y0, z0 = tris.z0;
+    final float[] x1 = tris.x1, y1 = tris.y1, z1 = tris.z1;
+    final float[] x2 = tris.x2, y2 = tris.y2, z2 = tris.z2;
+    int result = -1;
+    if ((flags & WATERTIGHT) != 0) {
+      int kz = maxDimension(dx, dy, dz);
+      int kx = kz == 2 ? 0 : kz + 1;
+      int ky = kx == 2 ? 0 : kx + 1;
+      float dkz = component(kz, dx, dy, dz);
+      if (dkz < 0) {
+        int swap = kx;
+        kx = ky;
+        ky = swap;
+      }
+      float sz = 1f / dkz;
+      float sx = component(kx, dx, dy, dz) * sz;
+      float sy = component(ky, dx, dy, dz) * sz;
+      for (int i = start; i < end; ++i) {
+        float d = watertight(ox, oy, oz, kx, ky, kz, sx, sy, sz, x0[i], y0[i],
+            z0[i], x1[i], y1[i], z1[i], x2[i], y2[i], z2[i], tMax, cull, hit, 1);
+        if (d != Float.POSITIVE_INFINITY) {
+          tMax = d;
+          result = i;
+        }
+      }
+    } else {
+      for (int i = start; i < end; ++i) {
+        float ax = x0[i], ay = y0[i], az = z0[i];
+        float d = mollerTrumbore(ox, oy, oz, dx, dy, dz, ax, ay, az, x1[i] - ax,
+            y1[i] - ay, z1[i] - az, x2[i] - ax, y2[i] - ay, z2[i] - az, tMax,
+            cull, hit, 1);
+        if (d != Float.POSITIVE_INFINITY) {
+          tMax = d;
+          result = i;
+        }
+      }
+    }
+    if (hit != null && result >= 0) {
+      hit[0] = tMax;
+    }
+    return result;
+  }
+
+  /**
+   * <code>intersect</code> tests every ray in the range [start, end) of the
+   * packet against a single triangle.
+   *
+   * @param t
+   *          receives, at the ray's index, the distance to the intersection
+   *          or <code>Float.POSITIVE_INFINITY</code> for a miss.
+   * @return the number of rays that hit the triangle.
+   */
+  public static int intersect(RayPacket rays, int start, int end, Vector3f v0,
+      Vector3f v1, Vector3f v2, float tMax, int flags, float[] t) {
+    checkRange(start, end, rays.size());
+    final boolean cull = (flags & CULL_BACKFACE) != 0;
+    final float[] ox = rays.ox, oy = rays.oy, oz = rays.oz;
+    final float[] dx = rays.dx, dy = rays.dy, dz = rays.dz;
+    int hits = 0;
+    if ((flags & WATERTIGHT) != 0) {
+      for (int i = start; i < end; ++i) {
+        float d = intersect(ox[i], oy[i], oz[i], dx[i], dy[i], dz[i], v0.x,
+            v0.y, v0.z, v1.x, v1.y, v1.z, v2.x, v2.y, v2.z, tMax, flags, null);
+        t[i] = d;
+        if (d != Float.POSITIVE_INFINITY) {
+          ++hits;
+        }
+      }
+    } else {
+      // the edges are shared by every ray
+      final float ax = v0.x, ay = v0.y, az = v0.z;
+      final float e1x = v1.x - ax, e1y = v1.y - ay, e1z = v1.z - az;
+      final float e2x = v2.x - ax, e2y = v2.y - ay, e2z = v2.z - az;
+      for (int i = start; i < end; ++i) {
+        float d = mollerTrumbore(ox[i], oy[i], oz[i], dx[i], dy[i], dz[i], ax,
+            ay, az, e1x, e1y, e1z, e2x, e2y, e2z, tMax, cull, null, 0);
+        t[i] = d;
+        if (d != Float.POSITIVE_INFINITY) {
+          ++hits;
+        }
+      }
+    }
+    return hits;
+  }
+
+  private static float mollerTrumbore(float ox, float oy, float oz, float dx,
+      float dy, float dz, float x0, float y0, float z0, float e1x, float e1y,
+      float e1z, float e2x, float e2y, float e2z, float tMax, boolean cull,
+      float[] uv, int uvOffset) {
+    // p = d x e2
+    float px = dy * e2z - dz * e2y;
+    float py = dz * e2x - dx * e2z;
+    float pz = dx * e2y - dy * e2x;
+    float det = e1x * px + e1y * py + e1z * pz;
+    // det scales with |e1| |e2| |d|, so it is compared relative to them, in
+    // double so that the squares neither overflow nor underflow
+    double det2 = (double) det * det;
+    double bound = EPSILON * EPSILON * ((double) e1x * e1x + (double) e1y * e1y + (double) e1z * e1z)
+        * ((double) e2x * e2x + (double) e2y * e2y + (double) e2z * e2z)
+        * ((double) dx * dx + (double) dy * dy + (double) dz * dz);
+    if ((cull && det < 0) || det2 <= bound) {
+      return Float.POSITIVE_INFINITY;
+    }
+    float invDet = 1f / det;
+    float sx = ox - x0, sy = oy - y0, sz = oz - z0;
+    float u = (sx * px + sy * py + sz * pz) * invDet;
+    if (u < 0 || u > 1) {
+      return Float.POSITIVE_INFINITY;
+    }
+    // q = s x e1
+    float qx = sy * e1z - sz * e1y;
+    float qy = sz * e1x - sx * e1z;
+    float qz = sx * e1y - sy * e1x;
+    float v = (dx * qx + dy * qy + dz * qz) * invDet;
+    if (v < 0 || u + v > 1) {
+      return Float.POSITIVE_INFINITY;
+    }
+    float t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+    if (t < 0 || t > tMax) {
+      return Float.POSITIVE_INFINITY;
+    }
+    if (uv != null) {
+      uv[uvOffset] = u;
+      uv[uvOffset + 1] = v;
+    }
+    return t;
+  }
+
+  private static float watertight(float ox, float oy, float oz, int kx, int ky,
+      int kz, float sx, float sy, float sz, float x0, float y0, float z0,
+      float x1, float y1, float z1, float x2, float y2, float z2, float tMax,
+      boolean cull, float[] uv, int uvOffset) {
+    // vertices relative to the ray origin
+    float ax = x0 - ox, ay = y0 - oy, az = z0 - oz;
+    float bx = x1 - ox, by = y1 - oy, bz = z1 - oz;
+    float cx = x2 - ox, cy = y2 - oy, cz = z2 - oz;
+    float akx = component(kx, ax, ay, az), aky = component(ky, ax, ay, az), akz = component(kz, ax, ay, az);
+    float bkx = component(kx, bx, by, bz), bky = component(ky, bx, by, bz), bkz = component(kz, bx, by, bz);
+    float ckx = component(kx, cx, cy, cz), cky = component(ky, cx, cy, cz), ckz = component(kz, cx, cy, cz);
+
+    // shear and scale the vertices into ray space
+    float axs = akx - sx * akz, ays = aky - sy * akz;
+    float bxs = bkx - sx * bkz, bys = bky - sy * bkz;
+    float cxs = ckx - sx * ckz, cys = cky - sy * ckz;
+
+    // scaled barycentric coordinates, retried in double precision on an edge
+    float u = cxs * bys - cys * bxs;
+    float v = axs * cys - ays * cxs;
+    float w = bxs * ays - bys * axs;
+    if (u == 0 || v == 0 || w == 0) {
+      u = (float) ((double) cxs * bys - (double) cys * bxs);
+      v = (float) ((double) axs * cys - (double) ays * cxs);
+      w = (float) ((double) bxs * ays - (double) bys * axs);
+    }
+
+    if (cull) {
+      if (u < 0 || v < 0 || w < 0) {
+        return Float.POSITIVE_INFINITY;
+      }
+    } else if ((u < 0 || v < 0 || w < 0) && (u > 0 || v > 0 || w > 0)) {
+      return Float.POSITIVE_INFINITY;
+    }
+
+    float det = u + v + w;
+    if (det == 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+
+    float t = sz * (u * akz + v * bkz + w * ckz);
+    // compare the unnormalized distance against the range without dividing
+    if (det < 0 ? (t > 0 || t < tMax * det) : (t < 0 || t > tMax * det)) {
+      return Float.POSITIVE_INFINITY;
+    }
+
+    float invDet = 1f / det;
+    if (uv != null) {
+      uv[uvOffset] = v * invDet;
+      uv[uvOffset + 1] = w * invDet;
+    }
+    return t * invDet;
+  }
+
+  private static int maxDimension(float x, float y, float z) {
+    x = Math.abs(x);
+    y = Math.abs(y);
+    z = Math.abs(z);
+    if (x > y) {
+      return x > z ? 0 : 2;
+    }
+    return y > z ? 1 : 2;
+  }
+
+  private static float component(int i, float x, float y, float z) {
+    return i == 0 ? x : i == 1 ? y : z;
+  }
+
+  private static void checkRange(int start, int end, int size) {
+    if (start < 0 || end > size || start > end) {
+      throw new IndexOutOfBoundsException("Invalid range [" + start + ", "
+          + end + ") for size " + size);
+    }
+  }
+}
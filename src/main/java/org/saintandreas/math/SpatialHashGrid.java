@@ -0,0 +1,379 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>SpatialHashGrid</code> buckets a set of points into a uniform grid of
+ * cubic cells, hashing the integer cell coordinates into a fixed size table,
+ * for fixed radius neighbor searches such as those needed by particle fluids
+ * and flocking.
+ *
+ * Building the grid sorts the points by bucket with a parallel counting sort,
+ * in the manner of the CUDA particles sample, producing a table of bucket
+ * offsets and copies of the positions and original indices in bucket order.
+ * Neighbor searches then read contiguous runs of the sorted arrays rather than
+ * jumping around the caller's data. Rebuilding with the same number of points
+ * reuses every array, and if no point changed cell the sort is skipped and
+ * only the sorted positions are refreshed.
+ *
+ * Search radii may not exceed the cell size, so that only the 27 cells around
+ * a point need to be examined.
+ *
+ * @author Brad Davis
+ */
+public final class SpatialHashGrid {
+  private static final int CHUNK_SIZE = 1 << 14;
+  private static final int MAX_CHUNKS = 8;
+  private static final int COORDINATE_BITS = 21;
+  private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+  private static final int COORDINATE_BIAS = 1 << (COORDINATE_BITS - 1);
+
+  /**
+   * Receives pairs of points found by
+   * {@link SpatialHashGrid#forEachPair(float, PairVisitor)}.
+   */
+  public interface PairVisitor {
+    /**
+     * @param i
+     *          the original index of the first point.
+     * @param j
+     *          the original index of the second point.
+     * @param distanceSquared
+     *          the squared distance between them.
+     */
+    void visit(int i, int j, float distanceSquared);
+  }
+
+  private final float cellSize;
+  private final float inverseCellSize;
+
+  private int size;
+  private int mask;
+  private float[] input = new float[0];
+  private long[] keys = new long[0];
+  // a one bucket table, so that an unbuilt grid searches as empty
+  private int[] cellStart = new int[2];
+  private int[] histograms = new int[0];
+  private int[] sortedIndices = new int[0];
+  private long[] sortedKeys = new long[0];
+  private float[] sortedPositions = new float[0];
+
+  /**
+   * @param cellSize
+   *          the edge length of a grid cell, which is also the largest radius
+   *          that can be searched.
+   */
+  public SpatialHashGrid(float cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Cell size must be positive");
+    }
+    this.cellSize = cellSize;
+    this.inverseCellSize = 1f / cellSize;
+  }
+
+  public float getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * @return the number of points in the grid.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * <code>build</code> rebuilds the grid over the given points.
+   */
+  public void build(Vector3f[] positions) {
+    int count = positions.length;
+    if (input.length < count * 3) {
+      input = new float[count * 3];
+    }
+    for (int i = 0; i < count; ++i) {
+      input[i * 3] = positions[i].x;
+      input[i * 3 + 1] = positions[i].y;
+      input[i * 3 + 2] = positions[i].z;
+    }
+    build(input, count);
+  }
+
+  /**
+   * <code>build</code> rebuilds the grid over the given points. The array is
+   * only read during the call.
+   *
+   * @param xyz
+   *          packed x, y, z triples.
+   * @param count
+   *          the number of points.
+   */
+  public void build(final float[] xyz, final int count) {
+    if (xyz.length < count * 3) {
+      throw new IllegalArgumentException("Array holds fewer than " + count
+          + " points");
+    }
+    final int chunks = Math.max(1, Math.min(MAX_CHUNKS, count / CHUNK_SIZE));
+    final int chunkSize = (count + chunks - 1) / Math.max(1, chunks);
+    // with no points there is nothing to notice a change, so always rebuild
+    boolean resized = count != size || count == 0;
+    if (resized) {
+      size = count;
+      if (keys.length < count) {
+        keys = new long[count];
+        sortedIndices = new int[count];
+        sortedKeys = new long[count];
+        sortedPositions = new float[count * 3];
+      }
+      int tableSize = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+      mask = tableSize - 1;
+      if (cellStart.length != tableSize + 1) {
+        cellStart = new int[tableSize + 1];
+      }
+      if (histograms.length < tableSize * chunks) {
+        histograms = new int[tableSize * chunks];
+      }
+    }
+
+    // compute every point's cell, noting whether any has moved
+    final boolean[] moved = new boolean[chunks];
+    final boolean full = resized;
+    Parallel.forEach(chunks, 1, chunk -> {
+      boolean changed = false;
+      for (int i = chunk * chunkSize, end = Math.min(count, i + chunkSize); i < end; ++i) {
+        long key = key(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]);
+        changed |= full || key != keys[i];
+        keys[i] = key;
+      }
+      moved[chunk] = changed;
+    });
+
+    boolean sort = full;
+    for (boolean m : moved) {
+      sort |= m;
+    }
+    if (sort) {
+      sort(xyz, count, chunks, chunkSize);
+    } else {
+      Parallel.forEach(chunks, 1, chunk -> {
+        for (int s = chunk * chunkSize, end = Math.min(count, s + chunkSize); s < end; ++s) {
+          int i = sortedIndices[s];
+          sortedPositions[s * 3] = xyz[i * 3];
+          sortedPositions[s * 3 + 1] = xyz[i * 3 + 1];
+          sortedPositions[s * 3 + 2] = xyz[i * 3 + 2];
+        }
+      });
+    }
+  }
+
+  private void sort(final float[] xyz, final int count, final int chunks,
+      final int chunkSize) {
+    final int tableSize = mask + 1;
+    // per chunk histograms, laid out chunk major to avoid false sharing
+    Parallel.forEach(chunks, 1, chunk -> {
+      int base = chunk * tableSize;
+      Arrays.fill(histograms, base, base + tableSize, 0);
+      for (int i = chunk * chunkSize, end = Math.min(count, i + chunkSize); i < end; ++i) {
+        ++histograms[base + bucket(keys[i])];
+      }
+    });
+
+    // exclusive scan in bucket major, chunk minor order, so the sort is
+    // stable and each chunk scatters into its own sub-range of each bucket
+    int offset = 0;
+    for (int b = 0; b < tableSize; ++b) {
+      cellStart[b] = offset;
+      for (int c = 0, h = b; c < chunks; ++c, h += tableSize) {
+        int n = histograms[h];
+        histograms[h] = offset;
+        offset += n;
+      }
+    }
+    cellStart[tableSize] = offset;
+
+    Parallel.forEach(chunks, 1, chunk -> {
+      int base = chunk * tableSize;
+      for (int i = chunk * chunkSize, end = Math.min(count, i + chunkSize); i < end; ++i) {
+        long key = keys[i];
+        int s = histograms[base + bucket(key)]++;
+        sortedIndices[s] = i;
+        sortedKeys[s] = key;
+        sortedPositions[s * 3] = xyz[i * 3];
+        sortedPositions[s * 3 + 1] = xyz[i * 3 + 1];
+        sortedPositions[s * 3 + 2] = xyz[i * 3 + 2];
+      }
+    });
+  }
+
+  /**
+   * <code>neighbors</code> finds every point within <code>radius</code> of
+   * the given position, in no particular order.
+   *
+   * @param radius
+   *          the search radius, which may not exceed the cell size.
+   * @param result
+   *          receives the original indices of the points found. If there are
+   *          more points than the array can hold the excess is counted but not
+   *          stored.
+   * @return the number of points found.
+   */
+  public int neighbors(float x, float y, float z, float radius, int[] result) {
+    checkRadius(radius);
+    float radiusSquared = radius * radius;
+    int cx = cell(x), cy = cell(y), cz = cell(z);
+    int count = 0;
+    for (int dz = -1; dz <= 1; ++dz) {
+      for (int dy = -1; dy <= 1; ++dy) {
+        for (int dx = -1; dx <= 1; ++dx) {
+          long key = pack(cx + dx, cy + dy, cz + dz);
+          int b = bucket(key);
+          for (int s = cellStart[b], end = cellStart[b + 1]; s < end; ++s) {
+            // buckets may hold other cells which hash to the same slot
+            if (sortedKeys[s] != key) {
+              continue;
+            }
+            float ex = sortedPositions[s * 3] - x;
+            float ey = sortedPositions[s * 3 + 1] - y;
+            float ez = sortedPositions[s * 3 + 2] - z;
+            if (ex * ex + ey * ey + ez * ez <= radiusSquared) {
+              if (count < result.length) {
+                result[count] = sortedIndices[s];
+              }
+              ++count;
+            }
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  public int neighbors(Vector3f v, float radius, int[] result) {
+    return neighbors(v.x, v.y, v.z, radius, result);
+  }
+
+  /**
+   * <code>forEachPair</code> reports every unordered pair of distinct points
+   * within <code>radius</code> of each other exactly once.
+   *
+   * @param radius
+   *          the search radius, which may not exceed the cell size.
+   */
+  public void forEachPair(float radius, PairVisitor visitor) {
+    checkRadius(radius);
+    forEachPair(0, size, radius * radius, visitor);
+  }
+
+  /**
+   * <code>forEachPairParallel</code> reports every unordered pair of distinct
+   * points within <code>radius</code> of each other exactly once, splitting
+   * the work across the common fork/join pool. The visitor must be thread
+   * safe.
+   *
+   * @param radius
+   *          the search radius, which may not exceed the cell size.
+   */
+  public void forEachPairParallel(float radius, final PairVisitor visitor) {
+    checkRadius(radius);
+    final float radiusSquared = radius * radius;
+    final int chunks = Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    Parallel.forEach(chunks, 1, chunk -> {
+      int start = chunk * CHUNK_SIZE;
+      forEachPair(start, Math.min(size, start + CHUNK_SIZE), radiusSquared,
+          visitor);
+    });
+  }
+
+  private void forEachPair(int start, int end, float radiusSquared,
+      PairVisitor visitor) {
+    for (int s = start; s < end; ++s) {
+      long key = sortedKeys[s];
+      float x = sortedPositions[s * 3];
+      float y = sortedPositions[s * 3 + 1];
+      float z = sortedPositions[s * 3 + 2];
+      int i = sortedIndices[s];
+      // points later in the same cell
+      int b = bucket(key);
+      for (int t = s + 1, cellEnd = cellStart[b + 1]; t < cellEnd; ++t) {
+        if (sortedKeys[t] == key) {
+          visit(i, x, y, z, t, radiusSquared, visitor);
+        }
+      }
+      // the 13 neighboring cells with a lexicographically greater offset, so
+      // that each pair of cells is examined from one side only
+      int cx = unpack(key, 0), cy = unpack(key, 1), cz = unpack(key, 2);
+      for (int dz = 0; dz <= 1; ++dz) {
+        for (int dy = dz == 0 ? 0 : -1; dy <= 1; ++dy) {
+          for (int dx = (dz == 0 && dy == 0) ? 1 : -1; dx <= 1; ++dx) {
+            long other = pack(cx + dx, cy + dy, cz + dz);
+            int ob = bucket(other);
+            for (int t = cellStart[ob], cellEnd = cellStart[ob + 1]; t < cellEnd; ++t) {
+              if (sortedKeys[t] == other) {
+                visit(i, x, y, z, t, radiusSquared, visitor);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void visit(int i, float x, float y, float z, int t,
+      float radiusSquared, PairVisitor visitor) {
+    float dx = sortedPositions[t * 3] - x;
+    float dy = sortedPositions[t * 3 + 1] - y;
+    float dz = sortedPositions[t * 3 + 2] - z;
+    float d = dx * dx + dy * dy + dz * dz;
+    if (d <= radiusSquared) {
+      visitor.visit(i, sortedIndices[t], d);
+    }
+  }
+
+  /**
+   * <code>getSortedIndices</code> copies the original indices of the points
+   * in cell order. Processing points in this order, or permuting per point
+   * data into it, keeps spatial neighbors close together in memory.
+   *
+   * @return the number of indices copied.
+   */
+  public int getSortedIndices(int[] result) {
+    int count = Math.min(size, result.length);
+    System.arraycopy(sortedIndices, 0, result, 0, count);
+    return count;
+  }
+
+  private void checkRadius(float radius) {
+    if (radius > cellSize) {
+      throw new IllegalArgumentException("Radius " + radius
+          + " exceeds the cell size " + cellSize);
+    }
+  }
+
+  private int cell(float v) {
+    return (int) Math.floor(v * inverseCellSize);
+  }
+
+  private long key(float x, float y, float z) {
+    return pack(cell(x), cell(y), cell(z));
+  }
+
+  private static long pack(int x, int y, int z) {
+    return ((x + COORDINATE_BIAS) & COORDINATE_MASK)
+        | (((y + COORDINATE_BIAS) & COORDINATE_MASK) << COORDINATE_BITS)
+        | (((z + COORDINATE_BIAS) & COORDINATE_MASK) << (COORDINATE_BITS * 2));
+  }
+
+  private static int unpack(long key, int axis) {
+    return (int) ((key >>> (COORDINATE_BITS * axis)) & COORDINATE_MASK)
+        - COORDINATE_BIAS;
+  }
+
+  private int bucket(long key) {
+    int x = (int) (key & COORDINATE_MASK);
+    int y = (int) ((key >>> COORDINATE_BITS) & COORDINATE_MASK);
+    int z = (int) (key >>> (COORDINATE_BITS * 2));
+    // a linear rather than a scrambling hash, so that the cells of a row land
+    // in consecutive buckets and neighbor searches from consecutive points
+    // stream through memory instead of missing the cache on every cell
+    return (x + y * 1031 + z * 1031 * 1031) & mask;
+  }
+}
@@ -0,0 +1,200 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Svd3f</code> is the singular value decomposition of a 3x3 matrix,
+ * <code>A = U S V^T</code>, with <code>U</code> and <code>V</code> rotations
+ * and <code>S</code> diagonal, following the structure of McAdams et al,
+ * "Computing the Singular Value Decomposition of 3x3 matrices with minimal
+ * branching and elementary floating point operations": Jacobi rotations
+ * diagonalize <code>A^T A</code> to find <code>V</code>, the columns of
+ * <code>A V</code> are sorted by length, and Givens rotations reduce them to
+ * upper triangular form to find <code>U</code> and <code>S</code>.
+ *
+ * Unlike the paper, which uses a fixed number of approximate rotations to
+ * suit SIMD hardware, the Jacobi rotations are exact and in double precision,
+ * sharing {@link Eigen3f}'s solver, and stop when converged or after a bounded
+ * number of sweeps. Taking <code>U</code> from the triangular reduction
+ * rather than by dividing by the singular values keeps it orthonormal for
+ * singular matrices.
+ *
+ * The singular values are in descending order of magnitude. Because both
+ * rotations are proper, the last singular value takes the sign of the
+ * determinant, so an inverted element in a simulation shows up as a negative
+ * value rather than a reflection in <code>U</code> or <code>V</code>.
+ *
+ * @author Brad Davis
+ */
+public final class Svd3f {
+  /** The number of floats {@link #decompose(float[], int, float[], int)} writes. */
+  public static final int RESULT_SIZE = 21;
+
+  private static final int CHUNK_SIZE = 1024;
+
+  private final Matrix3f u;
+  private final Vector3f s;
+  private final Matrix3f v;
+
+  private Svd3f(float[] result) {
+    u = new Matrix3f(result[0], result[1], result[2], result[3], result[4], result[5], result[6], result[7],
+        result[8]);
+    s = new Vector3f(result[9], result[10], result[11]);
+    v = new Matrix3f(result[12], result[13], result[14], result[15], result[16], result[17], result[18],
+        result[19], result[20]);
+  }
+
+  public static Svd3f decompose(Matrix3f m) {
+    float[] a = new float[9];
+    m.get(a, true);
+    float[] result = new float[RESULT_SIZE];
+    decompose(a, 0, result, 0);
+    return new Svd3f(result);
+  }
+
+  public Matrix3f getU() {
+    return u;
+  }
+
+  /**
+   * @return the singular values, in descending order of magnitude. Only the
+   *         last can be negative.
+   */
+  public Vector3f getSingularValues() {
+    return s;
+  }
+
+  public Matrix3f getV() {
+    return v;
+  }
+
+  /**
+   * <code>decompose</code> computes the singular value decomposition of a
+   * matrix, without creating any objects for the result.
+   *
+   * @param a
+   *          the matrix, as 9 floats in row major order, from
+   *          <code>offset</code>.
+   * @param result
+   *          receives, from <code>resultOffset</code>, <code>U</code> as 9
+   *          floats in row major order, then the 3 singular values, then
+   *          <code>V</code> as 9 floats in row major order.
+   */
+  public static void decompose(float[] a, int offset, float[] result, int resultOffset) {
+    double[] m = new double[9];
+    for (int i = 0; i < 9; ++i) {
+      m[i] = a[offset + i];
+    }
+    double[] u = new double[9];
+    double[] v = new double[9];
+    decompose(m, u, v);
+    for (int i = 0; i < 9; ++i) {
+      result[resultOffset + i] = (float) u[i];
+      result[resultOffset + 12 + i] = (float) v[i];
+    }
+    result[resultOffset + 9] = (float) m[0];
+    result[resultOffset + 10] = (float) m[4];
+    result[resultOffset + 11] = (float) m[8];
+  }
+
+  /**
+   * Decomposes <code>a</code>, leaving the singular values on its diagonal
+   * and the rotations in <code>u</code> and <code>v</code>, all row major.
+   */
+  static void decompose(double[] a, double[] u, double[] v) {
+    // V diagonalizes A^T A
+    double[] ata = new double[9];
+    for (int r = 0; r < 3; ++r) {
+      for (int c = r; c < 3; ++c) {
+        ata[r * 3 + c] = ata[c * 3 + r] = a[r] * a[c] + a[3 + r] * a[3 + c] + a[6 + r] * a[6 + c];
+      }
+    }
+    Eigen3f.jacobi(ata, v);
+
+    // B = A V, whose columns are U scaled by the singular values
+    double[] b = new double[9];
+    for (int r = 0; r < 3; ++r) {
+      for (int c = 0; c < 3; ++c) {
+        b[r * 3 + c] = a[r * 3] * v[c] + a[r * 3 + 1] * v[3 + c] + a[r * 3 + 2] * v[6 + c];
+      }
+    }
+
+    // sort the columns by length, negating one of each swapped pair so that V
+    // stays a rotation
+    double l0 = columnLengthSquared(b, 0), l1 = columnLengthSquared(b, 1), l2 = columnLengthSquared(b, 2);
+    if (l0 < l1) {
+      swapColumns(b, v, 0, 1);
+      double t = l0;
+      l0 = l1;
+      l1 = t;
+    }
+    if (l0 < l2) {
+      swapColumns(b, v, 0, 2);
+      double t = l0;
+      l0 = l2;
+      l2 = t;
+    }
+    if (l1 < l2) {
+      swapColumns(b, v, 1, 2);
+    }
+
+    // QR factorization of B by Givens rotations, accumulating Q in U
+    u[0] = u[4] = u[8] = 1;
+    u[1] = u[2] = u[3] = u[5] = u[6] = u[7] = 0;
+    givens(b, u, 0, 1, 0);
+    givens(b, u, 0, 2, 0);
+    givens(b, u, 1, 2, 1);
+    a[0] = b[0];
+    a[4] = b[4];
+    a[8] = b[8];
+    a[1] = a[2] = a[3] = a[5] = a[6] = a[7] = 0;
+  }
+
+  private static double columnLengthSquared(double[] b, int c) {
+    return b[c] * b[c] + b[3 + c] * b[3 + c] + b[6 + c] * b[6 + c];
+  }
+
+  private static void swapColumns(double[] b, double[] v, int i, int j) {
+    for (int r = 0; r < 9; r += 3) {
+      double t = b[r + i];
+      b[r + i] = b[r + j];
+      b[r + j] = -t;
+      t = v[r + i];
+      v[r + i] = v[r + j];
+      v[r + j] = -t;
+    }
+  }
+
+  // zeroes b[q][column] by rotating rows p and q, and applies the transposed
+  // rotation to the columns p and q of u, so that u b is unchanged
+  private static void givens(double[] b, double[] u, int p, int q, int column) {
+    double x = b[p * 3 + column], y = b[q * 3 + column];
+    double r = Math.sqrt(x * x + y * y);
+    if (!(r > 0)) {
+      return;
+    }
+    double c = x / r, s = y / r;
+    for (int k = 0; k < 3; ++k) {
+      double bp = b[p * 3 + k], bq = b[q * 3 + k];
+      b[p * 3 + k] = c * bp + s * bq;
+      b[q * 3 + k] = c * bq - s * bp;
+      double up = u[k * 3 + p], uq = u[k * 3 + q];
+      u[k * 3 + p] = c * up + s * uq;
+      u[k * 3 + q] = c * uq - s * up;
+    }
+  }
+
+  /**
+   * <code>decompose</code> computes the singular value decompositions of
+   * many matrices, in parallel.
+   *
+   * @param matrices
+   *          9 floats per matrix, in row major order.
+   * @param count
+   *          the number of matrices.
+   * @param result
+   *          receives {@link #RESULT_SIZE} floats per matrix, laid out as by
+   *          {@link #decompose(float[], int, float[], int)}.
+   */
+  public static void decompose(final float[] matrices, int count, final float[] result) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> decompose(matrices, i * 9, result, i * RESULT_SIZE));
+  }
+}
@@ -0,0 +1,378 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>SweepAndPrune</code> is a broadphase that tracks which pairs of axis
+ * aligned boxes overlap from one step to the next.
+ *
+ * The box end points are kept sorted along one or three axes and re-sorted
+ * with an insertion sort each step. When motion is coherent the order barely
+ * changes and the sort is close to linear. With three axes the set of
+ * overlapping pairs is maintained incrementally from the swaps made by the
+ * sort: a minimum passing a maximum may start an overlap and a maximum
+ * passing a minimum ends one. With a single axis the sorted axis is swept
+ * every step, testing the other two axes directly, and the result is compared
+ * with the previous step.
+ *
+ * Bodies are identified by dense non-negative integer ids below 2^30. Bounds may be
+ * changed at any time but only take effect at the next {@link #step}.
+ * Touching boxes are considered to overlap.
+ *
+ * @author Brad Davis
+ */
+public final class SweepAndPrune {
+  private final int axisCount;
+  private final float[][] values;
+  private final int[][] tags;
+  private int endpointCount;
+
+  private float[] bounds = new float[0];
+  private byte[] state = new byte[0];
+  private int bodyCount;
+
+  private static final byte ABSENT = 0, ADDED = 1, PRESENT = 2, REMOVED = 3;
+
+  private LongPairSet pairs = new LongPairSet();
+  private LongPairSet previous = new LongPairSet();
+
+  // the set of bodies whose minimum has been passed but not their maximum
+  private int[] active = new int[0];
+  private int[] activeSlot = new int[0];
+  private long[] keys = new long[0];
+
+  private LongPairSet added, removed;
+
+  /**
+   * @param axes
+   *          the number of axes to keep sorted, 1 or 3.
+   */
+  public SweepAndPrune(int axes) {
+    if (axes != 1 && axes != 3) {
+      throw new IllegalArgumentException("axes must be either 1 or 3");
+    }
+    this.axisCount = axes;
+    this.values = new float[axes][0];
+    this.tags = new int[axes][0];
+  }
+
+  /**
+   * @return the number of bodies, including any added but not yet stepped.
+   */
+  public int size() {
+    return bodyCount;
+  }
+
+  /**
+   * <code>setBounds</code> adds a body, or updates the bounds of an existing
+   * one.
+   */
+  public void setBounds(int id, Vector3f min, Vector3f max) {
+    setBounds(id, min.x, min.y, min.z, max.x, max.y, max.z);
+  }
+
+  /**
+   * <code>setBounds</code> adds a body, or updates the bounds of an existing
+   * one. The bounds must be finite.
+   */
+  public void setBounds(int id, float minX, float minY, float minZ,
+      float maxX, float maxY, float maxZ) {
+    if (id < 0 || id >= 1 << 30) {
+      throw new IllegalArgumentException("Invalid id. " + id);
+    }
+    if (id >= state.length) {
+      int capacity = Math.max(id + 1, Math.max(16, state.length * 2));
+      state = Arrays.copyOf(state, capacity);
+      bounds = Arrays.copyOf(bounds, capacity * 6);
+    }
+    int b = id * 6;
+    bounds[b] = minX;
+    bounds[b + 1] = minY;
+    bounds[b + 2] = minZ;
+    bounds[b + 3] = maxX;
+    bounds[b + 4] = maxY;
+    bounds[b + 5] = maxZ;
+    switch (state[id]) {
+    case ABSENT:
+      state[id] = ADDED;
+      ++bodyCount;
+      break;
+    case REMOVED:
+      state[id] = PRESENT;
+      ++bodyCount;
+      break;
+    }
+  }
+
+  /**
+   * <code>remove</code> removes a body. Any pairs it was part of are reported
+   * as removed by the next step.
+   *
+   * @return true if the body was present.
+   */
+  public boolean remove(int id) {
+    if (id < 0 || id >= state.length) {
+      return false;
+    }
+    switch (state[id]) {
+    case ADDED:
+      state[id] = ABSENT;
+      --bodyCount;
+      return true;
+    case PRESENT:
+      // removed bodies are moved out past the end of every axis
+      Arrays.fill(bounds, id * 6, id * 6 + 6, Float.POSITIVE_INFINITY);
+      state[id] = REMOVED;
+      --bodyCount;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the set of currently overlapping pairs, as of the last step. The
+   *         set must not be modified.
+   */
+  public LongPairSet getPairs() {
+    return pairs;
+  }
+
+  /**
+   * <code>step</code> applies every bounds change, addition and removal made
+   * since the last step, and reports the resulting changes to the set of
+   * overlapping pairs. A pair that starts and stops overlapping within a
+   * single step is not reported.
+   *
+   * @param added
+   *          receives the pairs that started overlapping. It is not cleared
+   *          first.
+   * @param removed
+   *          receives the pairs that stopped overlapping. It is not cleared
+   *          first.
+   */
+  public void step(LongPairSet added, LongPairSet removed) {
+    this.added = added;
+    this.removed = removed;
+    try {
+      // Each added or removed body travels the length of every axis, so
+      // beyond a handful of them a full sort and sweep is cheaper.
+      int changes = appendAddedBodies();
+      boolean rebuild = changes > Integer.SIZE - Integer.numberOfLeadingZeros(endpointCount);
+      for (int axis = 0; axis < axisCount; ++axis) {
+        if (rebuild) {
+          fullSort(axis);
+        } else {
+          sort(axis);
+        }
+      }
+      dropRemovedBodies();
+      if (rebuild || axisCount == 1) {
+        sweep();
+      }
+    } finally {
+      this.added = null;
+      this.removed = null;
+    }
+  }
+
+  private int appendAddedBodies() {
+    int needed = endpointCount, removals = 0;
+    for (int id = 0; id < state.length; ++id) {
+      if (state[id] == ADDED) {
+        needed += 2;
+      } else if (state[id] == REMOVED) {
+        ++removals;
+      }
+    }
+    int additions = (needed - endpointCount) / 2;
+    if (additions == 0) {
+      return removals;
+    }
+    for (int axis = 0; axis < axisCount; ++axis) {
+      if (values[axis].length < needed) {
+        int capacity = Math.max(needed, values[axis].length * 2);
+        values[axis] = Arrays.copyOf(values[axis], capacity);
+        tags[axis] = Arrays.copyOf(tags[axis], capacity);
+      }
+    }
+    for (int id = 0; id < state.length; ++id) {
+      if (state[id] == ADDED) {
+        // new end points start at the far end of each axis, as if moving in
+        // from infinity, so the sort introduces them like any other motion
+        for (int axis = 0; axis < axisCount; ++axis) {
+          values[axis][endpointCount] = Float.POSITIVE_INFINITY;
+          tags[axis][endpointCount] = id << 1;
+          values[axis][endpointCount + 1] = Float.POSITIVE_INFINITY;
+          tags[axis][endpointCount + 1] = (id << 1) | 1;
+        }
+        endpointCount += 2;
+        state[id] = PRESENT;
+      }
+    }
+    return additions + removals;
+  }
+
+  private float endpoint(int axis, int tag) {
+    return bounds[(tag >>> 1) * 6 + axis + (tag & 1) * 3];
+  }
+
+  private boolean sortsAfter(float value, int tag, float otherValue, int otherTag) {
+    return value > otherValue
+        || (value == otherValue && tieRank(tag) > tieRank(otherTag));
+  }
+
+  private void fullSort(int axis) {
+    float[] v = values[axis];
+    int[] t = tags[axis];
+    if (keys.length < endpointCount) {
+      keys = new long[v.length];
+    }
+    for (int i = 0; i < endpointCount; ++i) {
+      v[i] = endpoint(axis, t[i]);
+      // adding zero turns -0 into 0, which the insertion sort treats as equal
+      int bits = Float.floatToIntBits(v[i] + 0.0f);
+      bits ^= (bits >> 31) & 0x7FFFFFFF;
+      keys[i] = ((long) bits << 32) | ((long) tieRank(t[i]) << 31) | t[i];
+    }
+    Arrays.sort(keys, 0, endpointCount);
+    for (int i = 0; i < endpointCount; ++i) {
+      t[i] = (int) keys[i] & 0x7FFFFFFF;
+      v[i] = endpoint(axis, t[i]);
+    }
+  }
+
+  private void sort(int axis) {
+    float[] v = values[axis];
+    int[] t = tags[axis];
+    boolean incremental = axisCount == 3;
+    // the values are refreshed from the bounds as the sort reaches them
+    for (int i = 0; i < endpointCount; ++i) {
+      int tag = t[i];
+      float value = endpoint(axis, tag);
+      int j = i - 1;
+      while (j >= 0 && sortsAfter(v[j], t[j], value, tag)) {
+        if (incremental) {
+          int other = t[j];
+          if ((tag & 1) == 0 && (other & 1) == 1) {
+            // our minimum is now below their maximum
+            begin(tag >>> 1, other >>> 1);
+          } else if ((tag & 1) == 1 && (other & 1) == 0) {
+            // our maximum is now below their minimum
+            end(tag >>> 1, other >>> 1);
+          }
+        }
+        v[j + 1] = v[j];
+        t[j + 1] = t[j];
+        --j;
+      }
+      v[j + 1] = value;
+      t[j + 1] = tag;
+    }
+  }
+
+  // At equal values minimums sort before maximums, so that touching boxes
+  // overlap. Removed bodies all end up at infinity, where the order is
+  // reversed so that they separate from each other as well.
+  private int tieRank(int tag) {
+    return state[tag >>> 1] == REMOVED ? ~tag & 1 : tag & 1;
+  }
+
+  private void begin(int a, int b) {
+    if (a == b || state[a] == REMOVED || state[b] == REMOVED || !overlaps(a, b)) {
+      return;
+    }
+    long key = LongPairSet.key(a, b);
+    if (pairs.addKey(key)) {
+      reportAdded(key);
+    }
+  }
+
+  private void end(int a, int b) {
+    if (a == b) {
+      return;
+    }
+    long key = LongPairSet.key(a, b);
+    if (pairs.removeKey(key)) {
+      reportRemoved(key);
+    }
+  }
+
+  // a change that undoes one already reported cancels it out instead
+  private void reportAdded(long key) {
+    if (!removed.removeKey(key)) {
+      added.addKey(key);
+    }
+  }
+
+  private void reportRemoved(long key) {
+    if (!added.removeKey(key)) {
+      removed.addKey(key);
+    }
+  }
+
+  private boolean overlaps(int a, int b) {
+    float[] bb = bounds;
+    int i = a * 6, j = b * 6;
+    return bb[i] <= bb[j + 3] && bb[j] <= bb[i + 3] //
+        && bb[i + 1] <= bb[j + 4] && bb[j + 1] <= bb[i + 4] //
+        && bb[i + 2] <= bb[j + 5] && bb[j + 2] <= bb[i + 5];
+  }
+
+  private void dropRemovedBodies() {
+    int live = endpointCount;
+    for (int i = 0; i < endpointCount; ++i) {
+      if (state[tags[0][i] >>> 1] == REMOVED) {
+        --live;
+      }
+    }
+    if (live == endpointCount) {
+      return;
+    }
+    // every removed end point was sorted to the end of each axis
+    endpointCount = live;
+    for (int id = 0; id < state.length; ++id) {
+      if (state[id] == REMOVED) {
+        state[id] = ABSENT;
+      }
+    }
+  }
+
+  private void sweep() {
+    LongPairSet swap = previous;
+    previous = pairs;
+    pairs = swap;
+    pairs.clear();
+    if (active.length < state.length) {
+      active = new int[state.length];
+      activeSlot = new int[state.length];
+    }
+    int activeCount = 0;
+    int[] t = tags[0];
+    for (int i = 0; i < endpointCount; ++i) {
+      int tag = t[i];
+      int id = tag >>> 1;
+      if ((tag & 1) == 0) {
+        for (int k = 0; k < activeCount; ++k) {
+          int other = active[k];
+          if (overlaps(id, other)) {
+            long key = LongPairSet.key(id, other);
+            pairs.addKey(key);
+            if (!previous.removeKey(key)) {
+              reportAdded(key);
+            }
+          }
+        }
+        activeSlot[id] = activeCount;
+        active[activeCount++] = id;
+      } else {
+        int slot = activeSlot[id];
+        int last = active[--activeCount];
+        active[slot] = last;
+        activeSlot[last] = slot;
+      }
+    }
+    // whatever is left of the previous set no longer overlaps
+    previous.forEach((a, b) -> reportRemoved(LongPairSet.key(a, b)));
+    previous.clear();
+  }
+}
@@ -0,0 +1,268 @@
+package org.saintandreas.math;
+
+/**
+ * <code>SwingTwistLimit</code> limits a joint rotation, as for a ragdoll,
+ * look-at or IK joint, by splitting it into a twist about an axis and a swing
+ * which turns the axis, with {@link Quaternion#swingTwist(Vector3f, float[])},
+ * and clamping each part.
+ *
+ * The twist is limited to a range of angles. The swing is limited to an
+ * ellipse, with separate limits for swinging about two axes perpendicular to
+ * the twist axis, <code>u</code> and <code>v = axis x u</code>. Equal limits
+ * give a cone. A swing outside the ellipse is moved to the nearest point on
+ * it, treating the swing as an angle times an axis, so a limit of zero about
+ * one axis makes a hinge about the other.
+ *
+ * Clamping works in place on flat arrays of quaternions and allocates
+ * nothing, and the batch form clamps many joints in parallel.
+ *
+ * @author Brad Davis
+ */
+public final class SwingTwistLimit {
+  private static final int CHUNK_SIZE = 1024;
+  private static final int MAX_ITERATIONS = 48;
+  private static final float EPSILON = 1e-6f;
+
+  private final float ax, ay, az;
+  private final float ux, uy, uz;
+  private final float vx, vy, vz;
+  private final float swingU, swingV;
+  private final float minTwist, maxTwist;
+
+  /**
+   * @param axis
+   *          the twist axis.
+   * @param u
+   *          the first swing axis. Only its part perpendicular to the twist
+   *          axis is used.
+   * @param swingU
+   *          the greatest swing about <code>u</code>, from 0 to PI.
+   * @param swingV
+   *          the greatest swing about <code>v</code>, from 0 to PI.
+   * @param minTwist
+   *          the least twist, from -PI.
+   * @param maxTwist
+   *          the greatest twist, up to PI.
+   */
+  public SwingTwistLimit(Vector3f axis, Vector3f u, float swingU, float swingV, float minTwist,
+      float maxTwist) {
+    float length = axis.length();
+    if (!(length > EPSILON)) {
+      throw new IllegalArgumentException("Invalid twist axis. " + axis);
+    }
+    if (!(swingU >= 0 && swingU <= FastMath.PI)) {
+      throw new IllegalArgumentException("Invalid swing limit. " + swingU);
+    }
+    if (!(swingV >= 0 && swingV <= FastMath.PI)) {
+      throw new IllegalArgumentException("Invalid swing limit. " + swingV);
+    }
+    if (!(minTwist >= -FastMath.PI && minTwist <= maxTwist && maxTwist <= FastMath.PI)) {
+      throw new IllegalArgumentException("Invalid twist limits. " + minTwist + ", " + maxTwist);
+    }
+    ax = axis.x / length;
+    ay = axis.y / length;
+    az = axis.z / length;
+    float d = u.x * ax + u.y * ay + u.z * az;
+    float px = u.x - ax * d, py = u.y - ay * d, pz = u.z - az * d;
+    length = (float) Math.sqrt(px * px + py * py + pz * pz);
+    if (!(length > EPSILON)) {
+      throw new IllegalArgumentException("Invalid swing axis. " + u);
+    }
+    ux = px / length;
+    uy = py / length;
+    uz = pz / length;
+    vx = ay * uz - az * uy;
+    vy = az * ux - ax * uz;
+    vz = ax * uy - ay * ux;
+    this.swingU = swingU;
+    this.swingV = swingV;
+    this.minTwist = minTwist;
+    this.maxTwist = maxTwist;
+  }
+
+  /**
+   * <code>cone</code> creates a limit with the same swing limit in every
+   * direction.
+   */
+  public static SwingTwistLimit cone(Vector3f axis, float swing, float minTwist, float maxTwist) {
+    Vector3f u = Math.abs(axis.x) < Math.abs(axis.z) ? new Vector3f(0, -axis.z, axis.y)
+        : new Vector3f(-axis.y, axis.x, 0);
+    return new SwingTwistLimit(axis, u, swing, swing, minTwist, maxTwist);
+  }
+
+  public Vector3f getAxis() {
+    return new Vector3f(ax, ay, az);
+  }
+
+  public Vector3f getU() {
+    return new Vector3f(ux, uy, uz);
+  }
+
+  public Vector3f getV() {
+    return new Vector3f(vx, vy, vz);
+  }
+
+  public float getSwingU() {
+    return swingU;
+  }
+
+  public float getSwingV() {
+    return swingV;
+  }
+
+  /**
+   * @return the greatest swing in any direction.
+   */
+  public float getMaxSwing() {
+    return Math.max(swingU, swingV);
+  }
+
+  public float getMinTwist() {
+    return minTwist;
+  }
+
+  public float getMaxTwist() {
+    return maxTwist;
+  }
+
+  /**
+   * @return the nearest rotation to <code>q</code> within the limits.
+   */
+  public Quaternion clamp(Quaternion q) {
+    float[] result = { q.x, q.y, q.z, q.w };
+    clamp(result, 0);
+    return new Quaternion(result[0], result[1], result[2], result[3]);
+  }
+
+  /**
+   * <code>clamp</code> limits the unit quaternion at <code>offset</code>, x,
+   * y, z, w, in place.
+   */
+  public void clamp(float[] q, int offset) {
+    float x = q[offset], y = q[offset + 1], z = q[offset + 2], w = q[offset + 3];
+    if (w < 0) {
+      x = -x;
+      y = -y;
+      z = -z;
+      w = -w;
+    }
+    // split into swing and twist as Quaternion.swingTwist does, but in locals
+    float p = x * ax + y * ay + z * az;
+    float n = (float) Math.sqrt(p * p + w * w);
+    float tx = 0, ty = 0, tz = 0, tw = 1, twist = 0;
+    if (n > EPSILON) {
+      tx = ax * p / n;
+      ty = ay * p / n;
+      tz = az * p / n;
+      tw = w / n;
+      twist = 2 * FastMath.atan2(p, w);
+    }
+    float sx = x * tw - w * tx - y * tz + z * ty;
+    float sy = y * tw - w * ty - z * tx + x * tz;
+    float sz = z * tw - w * tz - x * ty + y * tx;
+    float sw = w * tw + x * tx + y * ty + z * tz;
+
+    boolean clamped = false;
+    if (twist < minTwist || twist > maxTwist) {
+      float half = 0.5f * FastMath.clamp(twist, minTwist, maxTwist);
+      float sin = FastMath.sin(half);
+      tx = ax * sin;
+      ty = ay * sin;
+      tz = az * sin;
+      tw = FastMath.cos(half);
+      clamped = true;
+    }
+
+    float length = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    if (length > EPSILON) {
+      // the swing as an angle times an axis, about u and v
+      float angle = 2 * FastMath.atan2(length, sw);
+      float su = angle * (sx * ux + sy * uy + sz * uz) / length;
+      float sv = angle * (sx * vx + sy * vy + sz * vz) / length;
+      boolean swingClamped = false;
+      if (swingU == swingV) {
+        if (angle > swingU) {
+          su *= swingU / angle;
+          sv *= swingU / angle;
+          swingClamped = true;
+        }
+      } else if (outside(su, swingU) + outside(sv, swingV) > 1) {
+        float t = nearest(su, sv, swingU, swingV);
+        su *= scale(t, swingU);
+        sv *= scale(t, swingV);
+        swingClamped = true;
+      }
+      if (swingClamped) {
+        clamped = true;
+        angle = (float) Math.sqrt(su * su + sv * sv);
+        if (angle > EPSILON) {
+          float s = FastMath.sin(0.5f * angle) / angle;
+          sx = (ux * su + vx * sv) * s;
+          sy = (uy * su + vy * sv) * s;
+          sz = (uz * su + vz * sv) * s;
+          sw = FastMath.cos(0.5f * angle);
+        } else {
+          sx = sy = sz = 0;
+          sw = 1;
+        }
+      }
+    }
+
+    if (clamped) {
+      q[offset] = sx * tw + sw * tx + sy * tz - sz * ty;
+      q[offset + 1] = sy * tw + sw * ty + sz * tx - sx * tz;
+      q[offset + 2] = sz * tw + sw * tz + sx * ty - sy * tx;
+      q[offset + 3] = sw * tw - sx * tx - sy * ty - sz * tz;
+    }
+  }
+
+  // the square of a swing relative to its limit
+  private static float outside(float swing, float limit) {
+    if (limit == 0) {
+      return swing == 0 ? 0 : Float.POSITIVE_INFINITY;
+    }
+    swing /= limit;
+    return swing * swing;
+  }
+
+  private static float scale(float t, float limit) {
+    return limit == 0 ? 0 : limit * limit / (t + limit * limit);
+  }
+
+  // the nearest point on the ellipse to (su, sv), outside it, is su eu^2 / (t
+  // + eu^2), sv ev^2 / (t + ev^2) for the t > 0 that puts it on the ellipse,
+  // which is found by bisection, following Eberly, "Distance from a Point to
+  // an Ellipse, an Ellipsoid, or a Hyperellipsoid"
+  private static float nearest(float su, float sv, float eu, float ev) {
+    double a = (double) eu * su, b = (double) ev * sv;
+    double eu2 = (double) eu * eu, ev2 = (double) ev * ev;
+    double lo = 0, hi = Math.sqrt(a * a + b * b);
+    for (int i = 0; i < MAX_ITERATIONS; ++i) {
+      double t = 0.5 * (lo + hi);
+      double ru = a / (t + eu2), rv = b / (t + ev2);
+      if (ru * ru + rv * rv > 1) {
+        lo = t;
+      } else {
+        hi = t;
+      }
+    }
+    return (float) hi;
+  }
+
+  /**
+   * <code>clamp</code> limits many joint rotations in place, in parallel.
+   *
+   * @param limits
+   *          the limit for each rotation, which may be null for none. The same
+   *          limit can be used for many rotations.
+   * @param rotations
+   *          the rotations, x, y, z, w each.
+   */
+  public static void clamp(final SwingTwistLimit[] limits, final float[] rotations, int count) {
+    Parallel.forEach(count, CHUNK_SIZE, i -> {
+      if (limits[i] != null) {
+        limits[i].clamp(rotations, i * 4);
+      }
+    });
+  }
+}
@@ -0,0 +1,157 @@
+package org.saintandreas.math;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <code>TransformStreamDecoder</code> reads the frames written by a
+ * {@link TransformStreamEncoder}, which must have been created with the same
+ * object count, position step, keyframe interval and prediction. Rotations
+ * are normalized as they are decoded, which undoes their quantization scale
+ * whatever the encoder's rotation bits.
+ *
+ * Frames are read in order from the buffer's position when the decoder was
+ * created. {@link #seek(int, int[])} jumps to any frame using the keyframe
+ * offsets from the encoder, decoding at most a keyframe interval of frames to
+ * get there.
+ *
+ * @author Brad Davis
+ */
+public final class TransformStreamDecoder {
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int objectCount;
+  private final double positionStep;
+  private final int keyframeInterval;
+  private final boolean linear;
+  private long[] current;
+  private long[] previous;
+  private long[] older;
+  private int frame;
+
+  /**
+   * @see TransformStreamEncoder#TransformStreamEncoder(ByteBuffer, int,
+   *      float, int, int, boolean)
+   */
+  public TransformStreamDecoder(ByteBuffer buffer, int objectCount, float positionStep, int keyframeInterval,
+      boolean linear) {
+    if (objectCount < 0) {
+      throw new IllegalArgumentException("Invalid object count. " + objectCount);
+    }
+    if (!(positionStep > 0) || Float.isInfinite(positionStep)) {
+      throw new IllegalArgumentException("Invalid position step. " + positionStep);
+    }
+    if (keyframeInterval < 1) {
+      throw new IllegalArgumentException("Invalid keyframe interval. " + keyframeInterval);
+    }
+    this.buffer = buffer;
+    this.start = buffer.position();
+    this.objectCount = objectCount;
+    this.positionStep = positionStep;
+    this.keyframeInterval = keyframeInterval;
+    this.linear = linear;
+    this.current = new long[objectCount * 7];
+    this.previous = new long[objectCount * 7];
+    this.older = new long[objectCount * 7];
+  }
+
+  /**
+   * @return the index of the next frame to be read.
+   */
+  public int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Moves to the given frame, so that it is the next one read.
+   *
+   * @param keyframeOffsets
+   *          the offsets from {@link TransformStreamEncoder#getKeyframeOffsets()}.
+   */
+  public void seek(int target, int[] keyframeOffsets) {
+    int keyframe = target / keyframeInterval;
+    if (target < 0 || keyframe >= keyframeOffsets.length) {
+      throw new IllegalArgumentException("Invalid frame. " + target);
+    }
+    // continue from where we are if that is no further than the keyframe
+    if (target < frame || frame < keyframe * keyframeInterval) {
+      buffer.position(start + keyframeOffsets[keyframe]);
+      frame = keyframe * keyframeInterval;
+    }
+    while (frame < target) {
+      decode();
+    }
+  }
+
+  /**
+   * Reads the next frame.
+   *
+   * @param positions
+   *          receives x, y, z for each object.
+   * @param rotations
+   *          receives x, y, z, w for each object.
+   */
+  public void read(float[] positions, float[] rotations) {
+    decode();
+    long[] values = previous;
+    for (int i = 0, p = 0, r = 0, s = 0; i < objectCount; ++i, p += 3, r += 4, s += 7) {
+      positions[p] = (float) (values[s] * positionStep);
+      positions[p + 1] = (float) (values[s + 1] * positionStep);
+      positions[p + 2] = (float) (values[s + 2] * positionStep);
+      double x = values[s + 3], y = values[s + 4], z = values[s + 5], w = values[s + 6];
+      double length = Math.sqrt(x * x + y * y + z * z + w * w);
+      double inverse = length > 0 ? 1 / length : 0;
+      rotations[r] = (float) (x * inverse);
+      rotations[r + 1] = (float) (y * inverse);
+      rotations[r + 2] = (float) (z * inverse);
+      // a zero quaternion can only come from a zero input, so decode the
+      // identity instead
+      rotations[r + 3] = length > 0 ? (float) (w * inverse) : 1;
+    }
+  }
+
+  /**
+   * Reads the next frame of a decoder for a single object.
+   *
+   * @param position
+   *          receives the position, as x, y, z.
+   * @return the rotation.
+   */
+  public Quaternion read(float[] position) {
+    if (objectCount != 1) {
+      throw new IllegalStateException("Invalid object count. " + objectCount);
+    }
+    float[] rotation = new float[4];
+    read(position, rotation);
+    return new Quaternion(rotation[0], rotation[1], rotation[2], rotation[3]);
+  }
+
+  // decodes the next frame's quantized values into previous
+  private void decode() {
+    int phase = frame % keyframeInterval;
+    boolean keyframe = phase == 0;
+    boolean extrapolate = linear && phase > 1;
+    for (int j = 0; j < current.length; ++j) {
+      long prediction = keyframe ? 0 : extrapolate ? 2 * previous[j] - older[j] : previous[j];
+      current[j] = prediction + getVarLong(buffer);
+    }
+    long[] recycled = older;
+    older = previous;
+    previous = current;
+    current = recycled;
+    ++frame;
+  }
+
+  private static long getVarLong(ByteBuffer buffer) {
+    long zigzag = 0;
+    for (int shift = 0;; shift += 7) {
+      if (shift > 63) {
+        throw new IllegalArgumentException("Invalid varint");
+      }
+      byte b = buffer.get();
+      zigzag |= (b & 0x7FL) << shift;
+      if (b >= 0) {
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package org.saintandreas.math;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <code>TransformStreamEncoder</code> compresses a stream of frames, each
+ * holding a position and rotation for a fixed number of objects, for
+ * recording replays and telemetry. {@link TransformStreamDecoder} reads the
+ * stream back.
+ *
+ * Positions are quantized to multiples of a fixed step, and rotations to
+ * signed integers of a given number of bits per component, with the sign of
+ * each rotation chosen to be closest to the previous one. Each quantized
+ * value is then predicted from earlier frames, either as the previous value
+ * or by linear extrapolation from the previous two, and the difference from
+ * the prediction is written as a zigzag varint. For smooth motion most
+ * differences fit in a single byte. Since prediction works on the quantized
+ * integers, the decoder reproduces the encoder's state exactly and errors do
+ * not accumulate.
+ *
+ * Every <code>keyframeInterval</code> frames the prediction is reset, so that
+ * the frame is written against zero and decoding can start there. The byte
+ * offsets of the keyframes, relative to the buffer's position when the
+ * encoder was created, are available from {@link #getKeyframeOffsets()} for
+ * random access. Apart from those offsets the encoder keeps three quantized
+ * frames of state, whatever the length of the stream.
+ *
+ * @author Brad Davis
+ */
+public final class TransformStreamEncoder {
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int objectCount;
+  private final double positionScale;
+  private final float rotationScale;
+  private final int keyframeInterval;
+  private final boolean linear;
+  // the quantized current and previous two frames, 7 values per object
+  private long[] current;
+  private long[] previous;
+  private long[] older;
+  private int[] keyframeOffsets = new int[16];
+  private int frameCount;
+
+  /**
+   * @param buffer
+   *          the buffer to write to, starting at its position.
+   * @param objectCount
+   *          the number of transforms in each frame.
+   * @param positionStep
+   *          the quantization step for positions, such as 0.001 for
+   *          millimeters.
+   * @param rotationBits
+   *          the bits per rotation component, including sign, from 2 to 31.
+   * @param keyframeInterval
+   *          the number of frames from one keyframe to the next.
+   * @param linear
+   *          true to predict by linear extrapolation, false to predict the
+   *          previous value.
+   */
+  public TransformStreamEncoder(ByteBuffer buffer, int objectCount, float positionStep, int rotationBits,
+      int keyframeInterval, boolean linear) {
+    if (objectCount < 0) {
+      throw new IllegalArgumentException("Invalid object count. " + objectCount);
+    }
+    if (!(positionStep > 0) || Float.isInfinite(positionStep)) {
+      throw new IllegalArgumentException("Invalid position step. " + positionStep);
+    }
+    if (rotationBits < 2 || rotationBits > 31) {
+      throw new IllegalArgumentException("Invalid bit count. " + rotationBits);
+    }
+    if (keyframeInterval < 1) {
+      throw new IllegalArgumentException("Invalid keyframe interval. " + keyframeInterval);
+    }
+    this.buffer = buffer;
+    this.start = buffer.position();
+    this.objectCount = objectCount;
+    this.positionScale = 1.0 / positionStep;
+    this.rotationScale = (1 << (rotationBits - 1)) - 1;
+    this.keyframeInterval = keyframeInterval;
+    this.linear = linear;
+    this.current = new long[objectCount * 7];
+    this.previous = new long[objectCount * 7];
+    this.older = new long[objectCount * 7];
+  }
+
+  /**
+   * Writes a frame.
+   *
+   * @param positions
+   *          x, y, z for each object.
+   * @param rotations
+   *          x, y, z, w for each object.
+   */
+  public void write(float[] positions, float[] rotations) {
+    boolean keyframe = frameCount % keyframeInterval == 0;
+    if (keyframe) {
+      int index = frameCount / keyframeInterval;
+      if (index == keyframeOffsets.length) {
+        keyframeOffsets = Arrays.copyOf(keyframeOffsets, index * 2);
+      }
+      keyframeOffsets[index] = buffer.position() - start;
+    }
+    // linear prediction needs two frames since the keyframe
+    boolean extrapolate = linear && frameCount % keyframeInterval > 1;
+    for (int i = 0, p = 0, r = 0, s = 0; i < objectCount; ++i, p += 3, r += 4, s += 7) {
+      current[s] = Math.round(positions[p] * positionScale);
+      current[s + 1] = Math.round(positions[p + 1] * positionScale);
+      current[s + 2] = Math.round(positions[p + 2] * positionScale);
+      float x = rotations[r], y = rotations[r + 1], z = rotations[r + 2], w = rotations[r + 3];
+      // q and -q are the same rotation, so keep whichever is closer to the
+      // last one to keep the differences small
+      float sign = x * previous[s + 3] + y * previous[s + 4] + z * previous[s + 5] + w * previous[s + 6] < 0
+          ? -rotationScale : rotationScale;
+      current[s + 3] = Math.round(x * sign);
+      current[s + 4] = Math.round(y * sign);
+      current[s + 5] = Math.round(z * sign);
+      current[s + 6] = Math.round(w * sign);
+      for (int j = s; j < s + 7; ++j) {
+        long prediction = keyframe ? 0 : extrapolate ? 2 * previous[j] - older[j] : previous[j];
+        putVarLong(buffer, current[j] - prediction);
+      }
+    }
+    long[] recycled = older;
+    older = previous;
+    previous = current;
+    current = recycled;
+    ++frameCount;
+  }
+
+  /**
+   * Writes a frame for an encoder of a single object.
+   */
+  public void write(Vector3f position, Quaternion rotation) {
+    if (objectCount != 1) {
+      throw new IllegalStateException("Invalid object count. " + objectCount);
+    }
+    write(new float[] { position.x, position.y, position.z },
+        new float[] { rotation.x, rotation.y, rotation.z, rotation.w });
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * @return the byte offset of each keyframe from the start of the stream,
+   *         keyframe <code>k</code> being frame
+   *         <code>k * keyframeInterval</code>.
+   */
+  public int[] getKeyframeOffsets() {
+    return Arrays.copyOf(keyframeOffsets, (frameCount + keyframeInterval - 1) / keyframeInterval);
+  }
+
+  private static void putVarLong(ByteBuffer buffer, long value) {
+    long zigzag = (value << 1) ^ (value >> 63);
+    while ((zigzag & ~0x7FL) != 0) {
+      buffer.put((byte) (zigzag | 0x80));
+      zigzag >>>= 7;
+    }
+    buffer.put((byte) zigzag);
+  }
+}
@@ -0,0 +1,136 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * <code>TriangleBatch</code> stores the vertices of a set of triangles in
+ * structure-of-arrays form, so that batch kernels such as those in
+ * {@link RayTriangle} can stream through them without touching any objects.
+ *
+ * @author Brad Davis
+ */
+public final class TriangleBatch {
+  final float[] x0, y0, z0;
+  final float[] x1, y1, z1;
+  final float[] x2, y2, z2;
+  private int size;
+
+  /**
+   * Creates an empty batch able to hold <code>capacity</code> triangles.
+   */
+  public TriangleBatch(int capacity) {
+    x0 = new float[capacity];
+    y0 = new float[capacity];
+    z0 = new float[capacity];
+    x1 = new float[capacity];
+    y1 = new float[capacity];
+    z1 = new float[capacity];
+    x2 = new float[capacity];
+    y2 = new float[capacity];
+    z2 = new float[capacity];
+  }
+
+  /**
+   * Creates a batch from an indexed triangle list.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param indices
+   *          three vertex indices per triangle.
+   */
+  public static TriangleBatch fromIndexed(FloatBuffer positions,
+      IntBuffer indices) {
+    int count = indices.remaining() / 3;
+    int pBase = positions.position();
+    int iBase = indices.position();
+    TriangleBatch result = new TriangleBatch(count);
+    for (int i = 0; i < count; ++i) {
+      int a = pBase + indices.get(iBase + i * 3) * 3;
+      int b = pBase + indices.get(iBase + i * 3 + 1) * 3;
+      int c = pBase + indices.get(iBase + i * 3 + 2) * 3;
+      result.add(positions.get(a), positions.get(a + 1), positions.get(a + 2),
+          positions.get(b), positions.get(b + 1), positions.get(b + 2),
+          positions.get(c), positions.get(c + 1), positions.get(c + 2));
+    }
+    return result;
+  }
+
+  /**
+   * Creates a batch from an indexed triangle list.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param indices
+   *          three vertex indices per triangle.
+   */
+  public static TriangleBatch fromIndexed(float[] positions, int[] indices) {
+    return fromIndexed(FloatBuffer.wrap(positions), IntBuffer.wrap(indices));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return x0.length;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends a triangle to the batch.
+   *
+   * @return the index of the new triangle.
+   */
+  public int add(Vector3f v0, Vector3f v1, Vector3f v2) {
+    return add(v0.x, v0.y, v0.z, v1.x, v1.y, v1.z, v2.x, v2.y, v2.z);
+  }
+
+  /**
+   * Appends a triangle to the batch.
+   *
+   * @return the index of the new triangle.
+   */
+  public int add(float ax, float ay, float az, float bx, float by, float bz,
+      float cx, float cy, float cz) {
+    if (size == x0.length) {
+      throw new IllegalStateException("Batch is full");
+    }
+    int i = size++;
+    x0[i] = ax;
+    y0[i] = ay;
+    z0[i] = az;
+    x1[i] = bx;
+    y1[i] = by;
+    z1[i] = bz;
+    x2[i] = cx;
+    y2[i] = cy;
+    z2[i] = cz;
+    return i;
+  }
+
+  /**
+   * @param triangle
+   *          the triangle index.
+   * @param vertex
+   *          the vertex index, 0, 1 or 2.
+   * @return the requested vertex.
+   */
+  public Vector3f getVertex(int triangle, int vertex) {
+    if (triangle < 0 || triangle >= size) {
+      throw new IndexOutOfBoundsException("Invalid triangle index. " + triangle);
+    }
+    switch (vertex) {
+    case 0:
+      return new Vector3f(x0[triangle], y0[triangle], z0[triangle]);
+    case 1:
+      return new Vector3f(x1[triangle], y1[triangle], z1[triangle]);
+    case 2:
+      return new Vector3f(x2[triangle], y2[triangle], z2[triangle]);
+    }
+    throw new IllegalArgumentException("vertex must be either 0, 1 or 2");
+  }
+}
@@ -0,0 +1,988 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>Triangulator</code> triangulates simple 2D polygons, optionally with
+ * holes, given as flat arrays of x, y pairs. The outer ring comes first and
+ * each hole starts at the vertex given in <code>holeStarts</code>. Rings may
+ * wind either way. The result holds three vertex indices per triangle, every
+ * triangle wound counter clockwise.
+ *
+ * Two algorithms are provided. {@link #earClip} is an ear clipper that keeps
+ * the reflex vertices in a uniform grid, so that testing a candidate ear only
+ * looks at the reflex vertices near it, and joins holes to the outer ring
+ * with bridges in the manner of earcut. {@link #monotone} sweeps the polygon
+ * to split it into y-monotone pieces, following de Berg et al., and
+ * triangulates each piece in linear time, so it stays O(n log n) for very
+ * large polygons where ear clipping degrades. {@link #triangulate} picks
+ * between them by size.
+ *
+ * No objects are created per vertex; both work on index arrays.
+ *
+ * @author Brad Davis
+ */
+public final class Triangulator {
+  /**
+   * Polygons with more vertices than this, holes included, are triangulated
+   * by {@link #triangulate} with the monotone decomposition.
+   */
+  public static final int MONOTONE_THRESHOLD = 2048;
+
+  private static final int[] NO_HOLES = new int[0];
+
+  private Triangulator() {
+  }
+
+  /**
+   * <code>triangulate</code> triangulates a polygon without holes.
+   */
+  public static int[] triangulate(float[] vertices) {
+    return triangulate(vertices, NO_HOLES);
+  }
+
+  /**
+   * <code>triangulate</code> triangulates a polygon with holes, using the
+   * ear clipper for small polygons and the monotone decomposition for large
+   * ones.
+   */
+  public static int[] triangulate(float[] vertices, int[] holeStarts) {
+    if (vertices.length / 2 > MONOTONE_THRESHOLD) {
+      return monotone(vertices, holeStarts);
+    }
+    return earClip(vertices, holeStarts);
+  }
+
+  private static double orient(float[] v, int a, int b, int c) {
+    double ax = v[a * 2], ay = v[a * 2 + 1];
+    return (v[b * 2] - ax) * (v[c * 2 + 1] - ay) - (v[b * 2 + 1] - ay) * (v[c * 2] - ax);
+  }
+
+  private static double signedArea(float[] v, int start, int end) {
+    double area = 0;
+    for (int i = start, j = end - 1; i < end; j = i++) {
+      area += (double) v[j * 2] * v[i * 2 + 1] - (double) v[i * 2] * v[j * 2 + 1];
+    }
+    return area;
+  }
+
+  private static int ringEnd(float[] vertices, int[] holeStarts, int ring) {
+    return ring < holeStarts.length ? holeStarts[ring] : vertices.length / 2;
+  }
+
+  private static void checkRings(float[] vertices, int[] holeStarts) {
+    for (int r = 0, start = 0; r <= holeStarts.length; ++r) {
+      int end = ringEnd(vertices, holeStarts, r);
+      if (end - start < 3 || end > vertices.length / 2) {
+        throw new IllegalArgumentException("Invalid ring " + r + ". " + start + " to " + end);
+      }
+      start = end;
+    }
+  }
+
+  private static void emit(float[] v, int[] triangles, int t, int a, int b, int c) {
+    triangles[t] = a;
+    if (orient(v, a, b, c) < 0) {
+      triangles[t + 1] = c;
+      triangles[t + 2] = b;
+    } else {
+      triangles[t + 1] = b;
+      triangles[t + 2] = c;
+    }
+  }
+
+  /**
+   * <code>earClip</code> triangulates a polygon without holes by ear
+   * clipping.
+   */
+  public static int[] earClip(float[] vertices) {
+    return earClip(vertices, NO_HOLES);
+  }
+
+  /**
+   * <code>earClip</code> triangulates a polygon with holes by ear clipping.
+   * Self intersecting input still produces triangles, though they may not
+   * exactly cover the polygon.
+   *
+   * @param vertices
+   *          the vertices, as x, y pairs.
+   * @param holeStarts
+   *          the first vertex of each hole.
+   * @return three vertex indices per triangle.
+   */
+  public static int[] earClip(float[] vertices, int[] holeStarts) {
+    checkRings(vertices, holeStarts);
+    return new EarClipper(vertices, holeStarts).run();
+  }
+
+  /**
+   * The polygon as a circular doubly linked list of nodes, each referring to
+   * a vertex. Bridging a hole duplicates two vertices, so there may be more
+   * nodes than vertices.
+   */
+  private static final class EarClipper {
+    private final float[] v;
+    private final int[] vertex, next, prev;
+    private int nodeCount;
+
+    // reflex nodes, bucketed by position in intrusive per cell lists
+    private float gridX, gridY, gridScaleX, gridScaleY;
+    private int gridColumns, gridRows;
+    private int[] cellHead, cellOf, gridNext, gridPrev;
+
+    private int[] triangles;
+    private int triangleCount;
+
+    EarClipper(float[] vertices, int[] holeStarts) {
+      this.v = vertices;
+      int capacity = vertices.length / 2 + holeStarts.length * 2;
+      vertex = new int[capacity];
+      next = new int[capacity];
+      prev = new int[capacity];
+      int outer = link(0, ringEnd(vertices, holeStarts, 0), true);
+      if (holeStarts.length > 0) {
+        eliminateHoles(holeStarts, outer);
+      }
+      triangles = new int[Math.max(0, nodeCount - 2) * 3];
+    }
+
+    private float x(int node) {
+      return v[vertex[node] * 2];
+    }
+
+    private float y(int node) {
+      return v[vertex[node] * 2 + 1];
+    }
+
+    private double orientNodes(int a, int b, int c) {
+      return orient(v, vertex[a], vertex[b], vertex[c]);
+    }
+
+    private boolean equalNodes(int a, int b) {
+      return x(a) == x(b) && y(a) == y(b);
+    }
+
+    // links a ring, counter clockwise for the outer ring and clockwise for
+    // holes, and returns one of its nodes
+    private int link(int start, int end, boolean counterClockwise) {
+      boolean reverse = signedArea(v, start, end) > 0 != counterClockwise;
+      int first = nodeCount, last = -1;
+      for (int k = 0; k < end - start; ++k) {
+        int node = nodeCount++;
+        vertex[node] = reverse ? end - 1 - k : start + k;
+        if (last >= 0) {
+          next[last] = node;
+          prev[node] = last;
+        }
+        last = node;
+      }
+      next[last] = first;
+      prev[first] = last;
+      return first;
+    }
+
+    private void eliminateHoles(int[] holeStarts, int outer) {
+      // bridge holes from left to right, so that whatever lies to the left of
+      // a hole has already been joined to the outer ring
+      long[] order = new long[holeStarts.length];
+      for (int h = 0; h < holeStarts.length; ++h) {
+        int node = link(holeStarts[h], ringEnd(v, holeStarts, h + 1), false);
+        int leftmost = node;
+        for (int p = next[node]; p != node; p = next[p]) {
+          if (x(p) < x(leftmost) || (x(p) == x(leftmost) && y(p) < y(leftmost))) {
+            leftmost = p;
+          }
+        }
+        order[h] = ((long) sortable(x(leftmost)) << 32) | leftmost;
+      }
+      Arrays.sort(order);
+      for (long key : order) {
+        int hole = (int) key;
+        int bridge = findHoleBridge(hole, outer);
+        if (bridge >= 0) {
+          split(bridge, hole);
+        }
+      }
+    }
+
+    // Finds a vertex of the outer ring visible from the leftmost vertex of a
+    // hole, by casting a ray to the left and then checking the reflex
+    // vertices inside the triangle between the hole, the hit and the hit
+    // edge's right end point for one making a smaller angle with the ray.
+    private int findHoleBridge(int hole, int outer) {
+      float hx = x(hole), hy = y(hole);
+      float qx = Float.NEGATIVE_INFINITY;
+      int m = -1;
+      int p = outer;
+      do {
+        int n = next[p];
+        if (hy <= y(p) && hy >= y(n) && y(n) != y(p)) {
+          float ix = x(p) + (hy - y(p)) * (x(n) - x(p)) / (y(n) - y(p));
+          if (ix <= hx && ix > qx) {
+            qx = ix;
+            m = x(p) < x(n) ? p : n;
+            if (ix == hx) {
+              // the hole touches the outer ring
+              return m;
+            }
+          }
+        }
+        p = n;
+      } while (p != outer);
+      if (m < 0) {
+        return -1;
+      }
+
+      int stop = m;
+      float mx = x(m), my = y(m);
+      double tanMin = Double.POSITIVE_INFINITY;
+      p = m;
+      do {
+        float px = x(p), py = y(p);
+        if (hx >= px && px >= mx && hx != px
+            && pointInTriangle(hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy, px, py)) {
+          double tan = Math.abs(hy - py) / (double) (hx - px);
+          if (locallyInside(p, hole) && (tan < tanMin || (tan == tanMin
+              && (px > x(m) || (px == x(m) && sectorContainsSector(m, p)))))) {
+            m = p;
+            tanMin = tan;
+          }
+        }
+        p = next[p];
+      } while (p != stop);
+      return m;
+    }
+
+    private static boolean pointInTriangle(float ax, float ay, float bx, float by,
+        float cx, float cy, float px, float py) {
+      return (cx - px) * (double) (ay - py) >= (ax - px) * (double) (cy - py)
+          && (ax - px) * (double) (by - py) >= (bx - px) * (double) (ay - py)
+          && (bx - px) * (double) (cy - py) >= (cx - px) * (double) (by - py);
+    }
+
+    // whether the diagonal from a to b starts into the polygon's interior
+    private boolean locallyInside(int a, int b) {
+      if (orientNodes(prev[a], a, next[a]) > 0) {
+        return orientNodes(a, b, next[a]) <= 0 && orientNodes(a, prev[a], b) <= 0;
+      }
+      return orientNodes(a, b, prev[a]) > 0 || orientNodes(a, next[a], b) > 0;
+    }
+
+    private boolean sectorContainsSector(int m, int p) {
+      return orientNodes(prev[m], m, prev[p]) > 0 && orientNodes(next[p], m, next[m]) > 0;
+    }
+
+    // joins the ring of b into the ring of a with a pair of coincident edges
+    private void split(int a, int b) {
+      int a2 = nodeCount++, b2 = nodeCount++;
+      vertex[a2] = vertex[a];
+      vertex[b2] = vertex[b];
+      int an = next[a], bp = prev[b];
+      next[a] = b;
+      prev[b] = a;
+      next[a2] = an;
+      prev[an] = a2;
+      next[b2] = a2;
+      prev[a2] = b2;
+      next[bp] = b2;
+      prev[b2] = bp;
+    }
+
+    private void buildGrid(int start) {
+      float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+      float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+      int reflex = 0, p = start;
+      do {
+        x0 = Math.min(x0, x(p));
+        y0 = Math.min(y0, y(p));
+        x1 = Math.max(x1, x(p));
+        y1 = Math.max(y1, y(p));
+        if (orientNodes(prev[p], p, next[p]) <= 0) {
+          ++reflex;
+        }
+        p = next[p];
+      } while (p != start);
+      int divisions = Math.max(1, Math.min(1024, (int) Math.sqrt(reflex)));
+      gridColumns = gridRows = divisions;
+      gridX = x0;
+      gridY = y0;
+      gridScaleX = x1 > x0 ? divisions / (x1 - x0) : 0;
+      gridScaleY = y1 > y0 ? divisions / (y1 - y0) : 0;
+      cellHead = new int[divisions * divisions];
+      Arrays.fill(cellHead, -1);
+      cellOf = new int[nodeCount];
+      Arrays.fill(cellOf, -1);
+      gridNext = new int[nodeCount];
+      gridPrev = new int[nodeCount];
+      p = start;
+      do {
+        updateReflex(p);
+        p = next[p];
+      } while (p != start);
+    }
+
+    private int column(float x) {
+      return Math.max(0, Math.min(gridColumns - 1, (int) ((x - gridX) * gridScaleX)));
+    }
+
+    private int row(float y) {
+      return Math.max(0, Math.min(gridRows - 1, (int) ((y - gridY) * gridScaleY)));
+    }
+
+    // adds a node to, or removes it from, the grid as it becomes reflex or
+    // convex; collinear nodes count as reflex, as they can block an ear
+    private void updateReflex(int node) {
+      boolean reflex = orientNodes(prev[node], node, next[node]) <= 0;
+      if (reflex && cellOf[node] < 0) {
+        int cell = row(y(node)) * gridColumns + column(x(node));
+        cellOf[node] = cell;
+        gridPrev[node] = -1;
+        gridNext[node] = cellHead[cell];
+        if (cellHead[cell] >= 0) {
+          gridPrev[cellHead[cell]] = node;
+        }
+        cellHead[cell] = node;
+      } else if (!reflex && cellOf[node] >= 0) {
+        removeFromGrid(node);
+      }
+    }
+
+    private void removeFromGrid(int node) {
+      int cell = cellOf[node];
+      if (cell < 0) {
+        return;
+      }
+      if (gridPrev[node] >= 0) {
+        gridNext[gridPrev[node]] = gridNext[node];
+      } else {
+        cellHead[cell] = gridNext[node];
+      }
+      if (gridNext[node] >= 0) {
+        gridPrev[gridNext[node]] = gridPrev[node];
+      }
+      cellOf[node] = -1;
+    }
+
+    private boolean isEar(int b) {
+      int a = prev[b], c = next[b];
+      if (orientNodes(a, b, c) <= 0) {
+        return false;
+      }
+      float ax = x(a), ay = y(a), bx = x(b), by = y(b), cx = x(c), cy = y(c);
+      int c0 = column(Math.min(ax, Math.min(bx, cx))), c1 = column(Math.max(ax, Math.max(bx, cx)));
+      int r0 = row(Math.min(ay, Math.min(by, cy))), r1 = row(Math.max(ay, Math.max(by, cy)));
+      for (int r = r0; r <= r1; ++r) {
+        for (int col = c0; col <= c1; ++col) {
+          for (int p = cellHead[r * gridColumns + col]; p >= 0; p = gridNext[p]) {
+            if (p == a || p == b || p == c) {
+              continue;
+            }
+            float px = x(p), py = y(p);
+            if ((px == ax && py == ay) || (px == bx && py == by) || (px == cx && py == cy)) {
+              continue;
+            }
+            // the ear is counter clockwise, so inside is left of every edge
+            if ((bx - ax) * (double) (py - ay) - (by - ay) * (double) (px - ax) >= 0
+                && (cx - bx) * (double) (py - by) - (cy - by) * (double) (px - bx) >= 0
+                && (ax - cx) * (double) (py - cy) - (ay - cy) * (double) (px - cx) >= 0) {
+              return false;
+            }
+          }
+        }
+      }
+      return true;
+    }
+
+    private void remove(int node) {
+      removeFromGrid(node);
+      next[prev[node]] = next[node];
+      prev[next[node]] = prev[node];
+    }
+
+    private void clip(int ear) {
+      int a = prev[ear], c = next[ear];
+      emit(v, triangles, triangleCount, vertex[a], vertex[ear], vertex[c]);
+      triangleCount += 3;
+      remove(ear);
+      updateReflex(a);
+      updateReflex(c);
+    }
+
+    // drops duplicate and collinear nodes, returning a remaining node, or -1
+    // if nothing was dropped
+    private int filter(int start) {
+      boolean dropped = false;
+      int p = start, stop = start;
+      do {
+        if (next[p] == prev[p]) {
+          break;
+        }
+        if (equalNodes(p, next[p]) || orientNodes(prev[p], p, next[p]) == 0) {
+          int n = next[p];
+          remove(p);
+          updateReflex(prev[n]);
+          updateReflex(n);
+          dropped = true;
+          p = stop = n;
+        } else {
+          p = next[p];
+        }
+      } while (p != stop);
+      return dropped ? p : -1;
+    }
+
+    int[] run() {
+      if (nodeCount < 3) {
+        return new int[0];
+      }
+      int ear = 0;
+      buildGrid(ear);
+      int stop = ear;
+      int pass = 0;
+      while (prev[ear] != next[ear]) {
+        if (isEar(ear)) {
+          int n = next[ear];
+          clip(ear);
+          // skipping ahead avoids fanning many slivers from one vertex
+          ear = stop = next[n];
+          pass = 0;
+          continue;
+        }
+        ear = next[ear];
+        if (ear != stop) {
+          continue;
+        }
+        // a whole lap without an ear means degenerate or self intersecting
+        // input; first drop degenerate nodes, then clip regardless
+        if (pass == 0) {
+          int filtered = filter(ear);
+          pass = 1;
+          if (filtered >= 0) {
+            ear = stop = filtered;
+            continue;
+          }
+        }
+        int n = next[ear];
+        if (orientNodes(prev[ear], ear, n) > 0) {
+          clip(ear);
+        } else {
+          int a = prev[ear];
+          remove(ear);
+          updateReflex(a);
+          updateReflex(n);
+        }
+        ear = stop = n;
+        pass = 0;
+      }
+      return triangleCount == triangles.length ? triangles : Arrays.copyOf(triangles, triangleCount);
+    }
+  }
+
+  /**
+   * <code>monotone</code> triangulates a polygon without holes by monotone
+   * decomposition.
+   */
+  public static int[] monotone(float[] vertices) {
+    return monotone(vertices, NO_HOLES);
+  }
+
+  /**
+   * <code>monotone</code> triangulates a polygon with holes by splitting it
+   * into y-monotone pieces with a plane sweep and then triangulating each
+   * piece. The input must be simple: rings may not cross or touch.
+   *
+   * @param vertices
+   *          the vertices, as x, y pairs.
+   * @param holeStarts
+   *          the first vertex of each hole.
+   * @return three vertex indices per triangle.
+   */
+  public static int[] monotone(float[] vertices, int[] holeStarts) {
+    checkRings(vertices, holeStarts);
+    return new MonotoneDecomposition(vertices, holeStarts).run();
+  }
+
+  private static int sortable(float f) {
+    // adding zero turns -0 into 0, so they sort as the equal values they are
+    int bits = Float.floatToIntBits(f + 0.0f);
+    return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+  }
+
+  private static final class MonotoneDecomposition {
+    private static final byte START = 0, END = 1, SPLIT = 2, MERGE = 3, REGULAR = 4;
+
+    private final float[] v;
+    private final int n;
+    // ring neighbors, with the outer ring counter clockwise and holes
+    // clockwise, so the interior is always left of the edge from a vertex to
+    // its next; that edge shares the vertex's index
+    private final int[] ringNext, ringPrev;
+    private final byte[] type;
+
+    // the edges crossing the sweep line, as a treap ordered left to right
+    private final int[] left, right, parent, priority;
+    private final boolean[] inStatus;
+    private int root = -1;
+    private int seed = 0x2545F491;
+    private final int[] helper;
+
+    private int[] diagonals = new int[16];
+    private int diagonalCount;
+
+    MonotoneDecomposition(float[] vertices, int[] holeStarts) {
+      v = vertices;
+      n = vertices.length / 2;
+      ringNext = new int[n];
+      ringPrev = new int[n];
+      for (int r = 0, start = 0; r <= holeStarts.length; ++r) {
+        int end = ringEnd(vertices, holeStarts, r);
+        boolean reverse = signedArea(vertices, start, end) > 0 != (r == 0);
+        for (int i = start; i < end; ++i) {
+          int after = i + 1 < end ? i + 1 : start;
+          int before = i > start ? i - 1 : end - 1;
+          ringNext[i] = reverse ? before : after;
+          ringPrev[i] = reverse ? after : before;
+        }
+        start = end;
+      }
+      type = new byte[n];
+      helper = new int[n];
+      left = new int[n];
+      right = new int[n];
+      parent = new int[n];
+      priority = new int[n];
+      inStatus = new boolean[n];
+    }
+
+    private float x(int i) {
+      return v[i * 2];
+    }
+
+    private float y(int i) {
+      return v[i * 2 + 1];
+    }
+
+    // the sweep order: higher first, then left to right
+    private boolean above(int a, int b) {
+      float ya = y(a), yb = y(b);
+      if (ya != yb) {
+        return ya > yb;
+      }
+      float xa = x(a), xb = x(b);
+      return xa != xb ? xa < xb : a < b;
+    }
+
+    private int[] sweepOrder() {
+      long[] keys = new long[n];
+      for (int i = 0; i < n; ++i) {
+        keys[i] = ((long) ~sortable(y(i)) << 32) | i;
+      }
+      Arrays.sort(keys);
+      int[] order = new int[n];
+      for (int i = 0; i < n;) {
+        // order runs of equal height from left to right
+        int j = i + 1;
+        while (j < n && (keys[j] >>> 32) == (keys[i] >>> 32)) {
+          ++j;
+        }
+        if (j - i > 1) {
+          for (int k = i; k < j; ++k) {
+            int vertex = (int) keys[k];
+            keys[k] = ((long) sortable(x(vertex)) << 32) | vertex;
+          }
+          Arrays.sort(keys, i, j);
+        }
+        for (int k = i; k < j; ++k) {
+          order[k] = (int) keys[k];
+        }
+        i = j;
+      }
+      return order;
+    }
+
+    // the x coordinate of an edge at the height of the sweep line
+    private double xAt(int edge, float sweepY) {
+      int b = ringNext[edge];
+      float ax = x(edge), ay = y(edge), bx = x(b), by = y(b);
+      if (ay == by) {
+        return Math.max(ax, bx);
+      }
+      if (sweepY == ay) {
+        return ax;
+      }
+      if (sweepY == by) {
+        return bx;
+      }
+      return ax + (sweepY - ay) * ((double) bx - ax) / ((double) by - ay);
+    }
+
+    // Inserts an edge into the status at the height of its upper vertex,
+    // ordered by where it crosses the sweep line, then rotates it up into
+    // heap order of its random priority.
+    private void insert(int edge, int vertex) {
+      float vx = x(vertex), vy = y(vertex);
+      left[edge] = right[edge] = -1;
+      seed ^= seed << 13;
+      seed ^= seed >>> 17;
+      seed ^= seed << 5;
+      priority[edge] = seed;
+      inStatus[edge] = true;
+      helper[edge] = vertex;
+      if (root < 0) {
+        root = edge;
+        parent[edge] = -1;
+        return;
+      }
+      int node = root;
+      while (true) {
+        if (xAt(node, vy) < vx) {
+          if (right[node] < 0) {
+            right[node] = edge;
+            break;
+          }
+          node = right[node];
+        } else {
+          if (left[node] < 0) {
+            left[node] = edge;
+            break;
+          }
+          node = left[node];
+        }
+      }
+      parent[edge] = node;
+      while (parent[edge] >= 0 && priority[edge] > priority[parent[edge]]) {
+        rotateUp(edge);
+      }
+    }
+
+    // Removes an edge by rotating it down to a leaf, which needs no search
+    // and so is unaffected by the several edges that meet at a vertex.
+    private void delete(int edge) {
+      if (!inStatus[edge]) {
+        return;
+      }
+      inStatus[edge] = false;
+      while (left[edge] >= 0 || right[edge] >= 0) {
+        int l = left[edge], r = right[edge];
+        rotateUp(l < 0 ? r : r < 0 ? l : priority[l] > priority[r] ? l : r);
+      }
+      int p = parent[edge];
+      if (p < 0) {
+        root = -1;
+      } else if (left[p] == edge) {
+        left[p] = -1;
+      } else {
+        right[p] = -1;
+      }
+    }
+
+    private void rotateUp(int node) {
+      int p = parent[node], g = parent[p];
+      if (left[p] == node) {
+        left[p] = right[node];
+        if (right[node] >= 0) {
+          parent[right[node]] = p;
+        }
+        right[node] = p;
+      } else {
+        right[p] = left[node];
+        if (left[node] >= 0) {
+          parent[left[node]] = p;
+        }
+        left[node] = p;
+      }
+      parent[p] = node;
+      parent[node] = g;
+      if (g < 0) {
+        root = node;
+      } else if (left[g] == p) {
+        left[g] = node;
+      } else {
+        right[g] = node;
+      }
+    }
+
+    // the status edge immediately left of a vertex, or -1
+    private int leftOf(int vertex) {
+      float vx = x(vertex), vy = y(vertex);
+      int best = -1;
+      for (int node = root; node >= 0;) {
+        if (xAt(node, vy) < vx) {
+          best = node;
+          node = right[node];
+        } else {
+          node = left[node];
+        }
+      }
+      return best;
+    }
+
+    private void diagonal(int a, int b) {
+      if (diagonalCount * 2 == diagonals.length) {
+        diagonals = Arrays.copyOf(diagonals, diagonals.length * 2);
+      }
+      diagonals[diagonalCount * 2] = a;
+      diagonals[diagonalCount * 2 + 1] = b;
+      ++diagonalCount;
+    }
+
+    private void connectIfMerge(int vertex, int edge) {
+      if (edge >= 0 && type[helper[edge]] == MERGE) {
+        diagonal(vertex, helper[edge]);
+      }
+    }
+
+    int[] run() {
+      for (int i = 0; i < n; ++i) {
+        boolean prevAbove = above(ringPrev[i], i), nextAbove = above(ringNext[i], i);
+        boolean convex = orient(v, ringPrev[i], i, ringNext[i]) > 0;
+        if (!prevAbove && !nextAbove) {
+          type[i] = convex ? START : SPLIT;
+        } else if (prevAbove && nextAbove) {
+          type[i] = convex ? END : MERGE;
+        } else {
+          type[i] = REGULAR;
+        }
+      }
+
+      for (int i : sweepOrder()) {
+        int previousEdge = ringPrev[i];
+        switch (type[i]) {
+        case START:
+          insert(i, i);
+          break;
+        case END:
+          connectIfMerge(i, previousEdge);
+          delete(previousEdge);
+          break;
+        case SPLIT: {
+          int left = leftOf(i);
+          if (left >= 0) {
+            diagonal(i, helper[left]);
+            helper[left] = i;
+          }
+          insert(i, i);
+          break;
+        }
+        case MERGE: {
+          connectIfMerge(i, previousEdge);
+          delete(previousEdge);
+          int left = leftOf(i);
+          connectIfMerge(i, left);
+          if (left >= 0) {
+            helper[left] = i;
+          }
+          break;
+        }
+        default:
+          if (above(ringPrev[i], i)) {
+            // on a left boundary, with the interior to the right
+            connectIfMerge(i, previousEdge);
+            delete(previousEdge);
+            insert(i, i);
+          } else {
+            int left = leftOf(i);
+            connectIfMerge(i, left);
+            if (left >= 0) {
+              helper[left] = i;
+            }
+          }
+        }
+      }
+      return triangulateFaces();
+    }
+
+    // Walks the faces left by the diagonals as half edges: 0 to n-1 are the
+    // ring edges, and each diagonal adds a pair in both directions. Leaving a
+    // vertex, a face continues along the first edge clockwise from the one it
+    // arrived by, which keeps the face on its left.
+    private int[] triangulateFaces() {
+      int halfEdges = n + diagonalCount * 2;
+      int[] firstOut = new int[n];
+      Arrays.fill(firstOut, -1);
+      int[] nextOut = new int[diagonalCount * 2];
+      for (int h = 0; h < diagonalCount * 2; ++h) {
+        int origin = origin(h + n);
+        nextOut[h] = firstOut[origin];
+        firstOut[origin] = h;
+      }
+
+      // a face of s edges makes s - 2 triangles
+      int[] triangles = new int[halfEdges * 3];
+      int triangleCount = 0;
+      boolean[] visited = new boolean[halfEdges];
+      int[] face = new int[n];
+      MonotonePiece piece = new MonotonePiece(v, n);
+      for (int start = 0; start < halfEdges; ++start) {
+        if (visited[start]) {
+          continue;
+        }
+        int size = 0;
+        int h = start;
+        do {
+          visited[h] = true;
+          if (size == face.length) {
+            face = Arrays.copyOf(face, size * 2);
+          }
+          face[size++] = origin(h);
+          h = nextHalfEdge(h, firstOut, nextOut);
+        } while (h != start && !visited[h]);
+        triangleCount = piece.triangulate(face, size, triangles, triangleCount);
+      }
+      return Arrays.copyOf(triangles, triangleCount);
+    }
+
+    private int origin(int h) {
+      return h < n ? h : diagonals[h - n];
+    }
+
+    private int destination(int h) {
+      return h < n ? ringNext[h] : diagonals[(h - n) ^ 1];
+    }
+
+    private int nextHalfEdge(int h, int[] firstOut, int[] nextOut) {
+      int at = destination(h);
+      if (firstOut[at] < 0) {
+        return at;
+      }
+      double back = pseudoAngle(at, origin(h));
+      int best = at;
+      double bestAngle = clockwise(back, pseudoAngle(at, ringNext[at]));
+      for (int k = firstOut[at]; k >= 0; k = nextOut[k]) {
+        double angle = clockwise(back, pseudoAngle(at, destination(k + n)));
+        if (angle < bestAngle) {
+          bestAngle = angle;
+          best = k + n;
+        }
+      }
+      return best;
+    }
+
+    // a value in [0, 4) that increases monotonically with the angle of the
+    // direction from a to b, which is all the face walk needs and is much
+    // cheaper than atan2
+    private double pseudoAngle(int a, int b) {
+      double dx = x(b) - x(a), dy = y(b) - y(a);
+      double p = dy / (Math.abs(dx) + Math.abs(dy));
+      return dx < 0 ? 2 - p : dy < 0 ? 4 + p : p;
+    }
+
+    // the clockwise turn, in (0, 4], from one pseudo angle to another
+    private static double clockwise(double from, double to) {
+      double turn = from - to;
+      return turn <= 0 ? turn + 4 : turn;
+    }
+  }
+
+  /**
+   * Triangulates y-monotone polygons with the stack based algorithm, reusing
+   * its work arrays from one piece to the next.
+   */
+  private static final class MonotonePiece {
+    private final float[] v;
+    private int[] sorted, stack;
+    private boolean[] left;
+
+    MonotonePiece(float[] vertices, int capacity) {
+      v = vertices;
+      sorted = new int[capacity];
+      stack = new int[capacity];
+      left = new boolean[capacity];
+    }
+
+    private boolean above(int a, int b) {
+      float ya = v[a * 2 + 1], yb = v[b * 2 + 1];
+      if (ya != yb) {
+        return ya > yb;
+      }
+      float xa = v[a * 2], xb = v[b * 2];
+      return xa != xb ? xa < xb : a < b;
+    }
+
+    /**
+     * @param face
+     *          the vertices of the piece, counter clockwise.
+     * @return the new triangle count.
+     */
+    int triangulate(int[] face, int size, int[] triangles, int count) {
+      if (size < 3) {
+        return count;
+      }
+      if (size == 3) {
+        emit(v, triangles, count, face[0], face[1], face[2]);
+        return count + 3;
+      }
+      if (sorted.length < size) {
+        sorted = new int[size];
+        stack = new int[size];
+        left = new boolean[size];
+      }
+      int top = 0, bottom = 0;
+      for (int i = 1; i < size; ++i) {
+        if (above(face[i], face[top])) {
+          top = i;
+        }
+        if (above(face[bottom], face[i])) {
+          bottom = i;
+        }
+      }
+      // counter clockwise from the top runs down the left chain, clockwise
+      // down the right; merge the two into sweep order
+      int l = (top + 1) % size, r = (top + size - 1) % size;
+      sorted[0] = face[top];
+      left[0] = true;
+      for (int k = 1; k < size; ++k) {
+        boolean takeLeft = l != bottom && (r == bottom || above(face[l], face[r]));
+        if (r == bottom && l == bottom) {
+          takeLeft = true;
+        }
+        if (takeLeft) {
+          sorted[k] = face[l];
+          left[k] = l != bottom;
+          l = (l + 1) % size;
+        } else {
+          sorted[k] = face[r];
+          left[k] = false;
+          r = (r + size - 1) % size;
+        }
+      }
+
+      stack[0] = 0;
+      stack[1] = 1;
+      int sp = 2;
+      for (int j = 2; j < size - 1; ++j) {
+        if (left[j] != left[stack[sp - 1]]) {
+          // fan to everything on the stack, which is the other chain
+          for (int k = 0; k < sp - 1; ++k) {
+            emit(v, triangles, count, sorted[j], sorted[stack[k]], sorted[stack[k + 1]]);
+            count += 3;
+          }
+          stack[0] = j - 1;
+          stack[1] = j;
+          sp = 2;
+        } else {
+          int last = stack[--sp];
+          while (sp > 0 && convex(sorted[j], sorted[last], sorted[stack[sp - 1]], left[j])) {
+            emit(v, triangles, count, sorted[j], sorted[last], sorted[stack[sp - 1]]);
+            count += 3;
+            last = stack[--sp];
+          }
+          stack[sp++] = last;
+          stack[sp++] = j;
+        }
+      }
+      for (int k = 0; k < sp - 1; ++k) {
+        emit(v, triangles, count, sorted[size - 1], sorted[stack[k]], sorted[stack[k + 1]]);
+        count += 3;
+      }
+      return count;
+    }
+
+    // whether the chain turns towards the interior at the middle vertex, so
+    // that the diagonal from the current vertex to the higher one is inside
+    private boolean convex(int current, int middle, int higher, boolean leftChain) {
+      return leftChain ? orient(v, higher, middle, current) > 0
+          : orient(v, current, middle, higher) > 0;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Vector2i</code> is an integer vector, for tile and grid cell
+ * coordinates, the two dimensional counterpart of {@link Vector3i}.
+ *
+ * @author Brad Davis
+ */
+public final class Vector2i implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  public static final Vector2i ZERO = new Vector2i(0, 0);
+  public static final Vector2i UNIT_X = new Vector2i(1, 0);
+  public static final Vector2i UNIT_Y = new Vector2i(0, 1);
+  public static final Vector2i UNIT_XY = new Vector2i(1, 1);
+
+  public final int x;
+  public final int y;
+
+  public Vector2i() {
+    this(0, 0);
+  }
+
+  public Vector2i(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  /**
+   * @return the cell of a grid holding a position, rounding each coordinate
+   *         down, so that cell (0, 0) runs from <code>origin</code> to
+   *         <code>origin + cellSize</code>.
+   */
+  public static Vector2i cell(Vector2f v, Vector2f origin, float cellSize) {
+    float inverse = 1 / cellSize;
+    return new Vector2i((int) Math.floor((v.x - origin.x) * inverse),
+        (int) Math.floor((v.y - origin.y) * inverse));
+  }
+
+  /**
+   * <code>cells</code> converts packed float positions to the grid cells
+   * holding them, as by {@link #cell(Vector2f, Vector2f, float)}, without
+   * creating a vector per point.
+   *
+   * @param xy
+   *          packed x, y positions.
+   * @param count
+   *          the number of positions.
+   * @param origin
+   *          the corner of cell (0, 0).
+   * @param cellSize
+   *          the edge length of a cell.
+   * @param cells
+   *          receives packed x, y cell coordinates.
+   */
+  public static void cells(float[] xy, int count, Vector2f origin, float cellSize, int[] cells) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Invalid cell size. " + cellSize);
+    }
+    float inverse = 1 / cellSize;
+    float ox = origin.x, oy = origin.y;
+    for (int i = 0; i < count * 2; i += 2) {
+      cells[i] = (int) Math.floor((xy[i] - ox) * inverse);
+      cells[i + 1] = (int) Math.floor((xy[i + 1] - oy) * inverse);
+    }
+  }
+
+  public static Vector2i fromMorton(long code) {
+    return new Vector2i(Morton.decodeX(code), Morton.decodeY(code));
+  }
+
+  public static Vector2i fromHilbert(long distance, int order) {
+    return Hilbert.decode(distance, order);
+  }
+
+  public int getX() {
+    return x;
+  }
+
+  public int getY() {
+    return y;
+  }
+
+  /**
+   * @param index
+   *          0 or 1
+   * @return x for index 0 and y for 1
+   * @throws IllegalArgumentException
+   *           if the index is not one of 0 or 1
+   */
+  public int get(int index) {
+    switch (index) {
+    case 0:
+      return x;
+    case 1:
+      return y;
+    }
+    throw new IllegalArgumentException("index must be either 0 or 1");
+  }
+
+  public int[] toArray() {
+    return new int[] { x, y };
+  }
+
+  public Vector2i add(Vector2i v) {
+    return new Vector2i(x + v.x, y + v.y);
+  }
+
+  public Vector2i add(int x, int y) {
+    return new Vector2i(this.x + x, this.y + y);
+  }
+
+  public Vector2i subtract(Vector2i v) {
+    return new Vector2i(x - v.x, y - v.y);
+  }
+
+  public Vector2i mult(int scalar) {
+    return new Vector2i(x * scalar, y * scalar);
+  }
+
+  public Vector2i mult(Vector2i v) {
+    return new Vector2i(x * v.x, y * v.y);
+  }
+
+  /**
+   * <code>floorDiv</code> divides each coordinate, rounding down, which for a
+   * power of two size gives the coordinates of the chunk holding a tile.
+   */
+  public Vector2i floorDiv(int divisor) {
+    return new Vector2i(Math.floorDiv(x, divisor), Math.floorDiv(y, divisor));
+  }
+
+  /**
+   * <code>floorMod</code> gives the remainders of {@link #floorDiv(int)},
+   * which are never negative for a positive divisor.
+   */
+  public Vector2i floorMod(int divisor) {
+    return new Vector2i(Math.floorMod(x, divisor), Math.floorMod(y, divisor));
+  }
+
+  public Vector2i negate() {
+    return new Vector2i(-x, -y);
+  }
+
+  public long dot(Vector2i v) {
+    return (long) x * v.x + (long) y * v.y;
+  }
+
+  /**
+   * @return the z component of the cross product of the two vectors, as
+   *         extended with z = 0.
+   */
+  public long determinant(Vector2i v) {
+    return (long) x * v.y - (long) y * v.x;
+  }
+
+  public long lengthSquared() {
+    return dot(this);
+  }
+
+  public long distanceSquared(Vector2i v) {
+    long dx = x - v.x, dy = y - v.y;
+    return dx * dx + dy * dy;
+  }
+
+  public long manhattanDistance(Vector2i v) {
+    return Math.abs((long) x - v.x) + Math.abs((long) y - v.y);
+  }
+
+  public Vector2i minimum(Vector2i v) {
+    return new Vector2i(Math.min(x, v.x), Math.min(y, v.y));
+  }
+
+  public Vector2i maximum(Vector2i v) {
+    return new Vector2i(Math.max(x, v.x), Math.max(y, v.y));
+  }
+
+  public Vector2f toVector2f() {
+    return new Vector2f(x, y);
+  }
+
+  public long morton() {
+    return Morton.encode(x, y);
+  }
+
+  /**
+   * @return the distance along a Hilbert curve of the given order, which
+   *         covers cells from 0 to <code>2^order - 1</code> on each axis.
+   */
+  public long hilbert(int order) {
+    return Hilbert.encode(x, y, order);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = x * 73856093 ^ y * 19349663;
+    return hash ^ (hash >>> 16);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Vector2i)) {
+      return false;
+    }
+    Vector2i comp = (Vector2i) o;
+    return x == comp.x && y == comp.y;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + x + ", " + y + ")";
+  }
+}
@@ -0,0 +1,294 @@
+package org.saintandreas.math;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * <code>Vector3d</code> is the double precision counterpart of
+ * {@link Vector3f}, for positions in worlds too large for a float to hold to
+ * better than a millimeter, which happens a little past 10 km from the origin.
+ *
+ * Rendering stays in float: positions are kept in double and rebased against
+ * an origin near the camera, with {@link #subtract(Vector3d)} followed by
+ * {@link #toVector3f()}, or {@link #toVector3f(Vector3d)} in one step, or
+ * {@link #rebase} over a whole buffer of positions. The difference is taken in
+ * double, so the float result is as precise as it would be near the origin.
+ *
+ * Each method works on the fields directly, and allocates nothing but its
+ * result.
+ *
+ * @author Brad Davis
+ */
+public final class Vector3d implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  public final static Vector3d ZERO = new Vector3d(0, 0, 0);
+  public final static Vector3d NAN = new Vector3d(Double.NaN, Double.NaN, Double.NaN);
+  public final static Vector3d UNIT_X = new Vector3d(1, 0, 0);
+  public final static Vector3d UNIT_Y = new Vector3d(0, 1, 0);
+  public final static Vector3d UNIT_Z = new Vector3d(0, 0, 1);
+  public final static Vector3d UNIT_XYZ = new Vector3d(1, 1, 1);
+
+  public final double x;
+  public final double y;
+  public final double z;
+
+  public Vector3d() {
+    this(0, 0, 0);
+  }
+
+  public Vector3d(double x, double y, double z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+  }
+
+  public Vector3d(Vector3f v) {
+    this(v.x, v.y, v.z);
+  }
+
+  public Vector3d(double[] v) {
+    this(v[0], v[1], v[2]);
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  public double getZ() {
+    return z;
+  }
+
+  /**
+   * @param index
+   *          0, 1, or 2
+   * @return x for index 0, y for 1, and z for 2
+   * @throws IllegalArgumentException
+   *           if the index is not one of 0, 1, or 2
+   */
+  public double get(int index) {
+    switch (index) {
+    case 0:
+      return x;
+    case 1:
+      return y;
+    case 2:
+      return z;
+    }
+    throw new IllegalArgumentException("index must be either 0, 1 or 2");
+  }
+
+  public double[] toArray() {
+    return new double[] { x, y, z };
+  }
+
+  public Vector3d add(Vector3d v) {
+    return new Vector3d(x + v.x, y + v.y, z + v.z);
+  }
+
+  public Vector3d add(double x, double y, double z) {
+    return new Vector3d(this.x + x, this.y + y, this.z + z);
+  }
+
+  public Vector3d subtract(Vector3d v) {
+    return new Vector3d(x - v.x, y - v.y, z - v.z);
+  }
+
+  public Vector3d mult(double scalar) {
+    return new Vector3d(x * scalar, y * scalar, z * scalar);
+  }
+
+  public Vector3d mult(Vector3d v) {
+    return new Vector3d(x * v.x, y * v.y, z * v.z);
+  }
+
+  public Vector3d divide(double scalar) {
+    return mult(1.0 / scalar);
+  }
+
+  public Vector3d negate() {
+    return new Vector3d(-x, -y, -z);
+  }
+
+  /**
+   * <code>scaleAdd</code> multiplies this vector by a scalar and then adds
+   * the given vector.
+   */
+  public Vector3d scaleAdd(double scalar, Vector3d add) {
+    return new Vector3d(x * scalar + add.x, y * scalar + add.y, z * scalar + add.z);
+  }
+
+  public double dot(Vector3d v) {
+    return x * v.x + y * v.y + z * v.z;
+  }
+
+  public Vector3d cross(Vector3d v) {
+    return new Vector3d(y * v.z - z * v.y, z * v.x - x * v.z, x * v.y - y * v.x);
+  }
+
+  public double lengthSquared() {
+    return x * x + y * y + z * z;
+  }
+
+  public double length() {
+    return Math.sqrt(lengthSquared());
+  }
+
+  public double distanceSquared(Vector3d v) {
+    double dx = x - v.x;
+    double dy = y - v.y;
+    double dz = z - v.z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  public double distance(Vector3d v) {
+    return Math.sqrt(distanceSquared(v));
+  }
+
+  /**
+   * <code>normalize</code> returns the unit vector of this vector, or this
+   * vector if its length is zero.
+   */
+  public Vector3d normalize() {
+    double length = lengthSquared();
+    if (length != 1.0 && length != 0.0) {
+      return mult(1.0 / Math.sqrt(length));
+    }
+    return this;
+  }
+
+  public boolean isUnitVector() {
+    double length = length();
+    return 0.99 < length && length < 1.01;
+  }
+
+  public Vector3d interpolate(Vector3d finalVec, double changeAmount) {
+    return new Vector3d(x + (finalVec.x - x) * changeAmount, y + (finalVec.y - y) * changeAmount,
+        z + (finalVec.z - z) * changeAmount);
+  }
+
+  public Vector3d minimum(Vector3d v) {
+    return new Vector3d(Math.min(x, v.x), Math.min(y, v.y), Math.min(z, v.z));
+  }
+
+  public Vector3d maximum(Vector3d v) {
+    return new Vector3d(Math.max(x, v.x), Math.max(y, v.y), Math.max(z, v.z));
+  }
+
+  public double angleBetween(Vector3d otherVector) {
+    return Math.atan2(cross(otherVector).length(), dot(otherVector));
+  }
+
+  public boolean isValid() {
+    return !Double.isNaN(x) && !Double.isNaN(y) && !Double.isNaN(z) && !Double.isInfinite(x)
+        && !Double.isInfinite(y) && !Double.isInfinite(z);
+  }
+
+  /**
+   * @return this vector rounded to single precision. Use
+   *         {@link #toVector3f(Vector3d)} for positions far from the origin.
+   */
+  public Vector3f toVector3f() {
+    return new Vector3f((float) x, (float) y, (float) z);
+  }
+
+  /**
+   * <code>toVector3f</code> returns this position relative to an origin, in
+   * single precision. The subtraction is done in double precision, so the
+   * result keeps full float precision however far both are from the world
+   * origin.
+   *
+   * @param origin
+   *          the origin of the float coordinate space, usually near the camera
+   */
+  public Vector3f toVector3f(Vector3d origin) {
+    return new Vector3f((float) (x - origin.x), (float) (y - origin.y), (float) (z - origin.z));
+  }
+
+  /**
+   * <code>rebase</code> converts packed x, y, z double positions to single
+   * precision positions relative to an origin, the bulk form of
+   * {@link #toVector3f(Vector3d)}.
+   *
+   * @param positions
+   *          the double positions, three per point, from
+   *          <code>positionsOffset</code>
+   * @param origin
+   *          the origin of the float coordinate space
+   * @param result
+   *          receives three floats per point, from <code>resultOffset</code>
+   * @param count
+   *          the number of points
+   */
+  public static void rebase(double[] positions, int positionsOffset, Vector3d origin, float[] result,
+      int resultOffset, int count) {
+    double ox = origin.x, oy = origin.y, oz = origin.z;
+    for (int i = 0; i < count; ++i) {
+      int p = positionsOffset + i * 3;
+      int r = resultOffset + i * 3;
+      result[r] = (float) (positions[p] - ox);
+      result[r + 1] = (float) (positions[p + 1] - oy);
+      result[r + 2] = (float) (positions[p + 2] - oz);
+    }
+  }
+
+  /**
+   * <code>rebase</code> converts packed x, y, z double positions to single
+   * precision positions relative to an origin, reading from the position of
+   * one buffer and writing from the position of the other. Neither buffer's
+   * position is changed, so a vertex buffer can be rebased in place each time
+   * the origin moves.
+   *
+   * @param positions
+   *          the double positions, three per point
+   * @param origin
+   *          the origin of the float coordinate space
+   * @param result
+   *          receives three floats per point
+   * @param count
+   *          the number of points
+   */
+  public static void rebase(DoubleBuffer positions, Vector3d origin, FloatBuffer result, int count) {
+    if (positions.remaining() < count * 3 || result.remaining() < count * 3) {
+      throw new IllegalArgumentException("Buffer too small for " + count + " positions");
+    }
+    double ox = origin.x, oy = origin.y, oz = origin.z;
+    int p = positions.position();
+    int r = result.position();
+    for (int i = 0; i < count * 3; i += 3) {
+      result.put(r + i, (float) (positions.get(p + i) - ox));
+      result.put(r + i + 1, (float) (positions.get(p + i + 1) - oy));
+      result.put(r + i + 2, (float) (positions.get(p + i + 2) - oz));
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 37;
+    hash += 37 * hash + Double.doubleToLongBits(x);
+    hash += 37 * hash + Double.doubleToLongBits(y);
+    hash += 37 * hash + Double.doubleToLongBits(z);
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Vector3d)) {
+      return false;
+    }
+    if (this == o) {
+      return true;
+    }
+    Vector3d comp = (Vector3d) o;
+    return Double.compare(x, comp.x) == 0 && Double.compare(y, comp.y) == 0 && Double.compare(z, comp.z) == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + x + ", " + y + ", " + z + ")";
+  }
+}
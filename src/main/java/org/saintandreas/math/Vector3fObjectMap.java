@@ -0,0 +1,231 @@
+package org.saintandreas.math;
+
+import java.util.Arrays;
+
+/**
+ * <code>Vector3fObjectMap</code> maps 3D float coordinates to objects,
+ * without creating any objects per entry. Keys are stored inline as the bits of their
+ * x, y and z values in an open addressing hash table with linear probing, and
+ * removal shifts later entries back rather than leaving tombstones.
+ *
+ * Keys are equal exactly when {@link Vector3f#equals(Object)} would consider
+ * them equal: components are compared as by {@link Float#compare}, so 0.0 and
+ * -0.0 are different keys and all NaNs are the same key.
+ *
+ * Null values may be stored, in which case {@link #containsKey} tells them
+ * apart from absent keys.
+ *
+ * @author Brad Davis
+ */
+public final class Vector3fObjectMap<V> {
+  /**
+   * Receives the entries of a {@link Vector3fObjectMap}.
+   */
+  public interface EntryVisitor<V> {
+    void visit(float x, float y, float z, V value);
+  }
+
+  private int[] keys;
+  private Object[] values;
+  private boolean[] used;
+  private int mask;
+  private int size;
+
+  public Vector3fObjectMap() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize
+   *          the number of entries the map should hold without resizing.
+   */
+  public Vector3fObjectMap(int expectedSize) {
+    allocate(Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(float x, float y, float z) {
+    return find(bits(x), bits(y), bits(z)) >= 0;
+  }
+
+  public boolean containsKey(Vector3f key) {
+    return containsKey(key.x, key.y, key.z);
+  }
+
+  /**
+   * @return the value for the key, or null if it is absent.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(float x, float y, float z) {
+    int i = find(bits(x), bits(y), bits(z));
+    return i < 0 ? null : (V) values[i];
+  }
+
+  public V get(Vector3f key) {
+    return get(key.x, key.y, key.z);
+  }
+
+  /**
+   * @return the previous value for the key, or null if it was absent.
+   */
+  @SuppressWarnings("unchecked")
+  public V put(float x, float y, float z, V value) {
+    int i = insert(bits(x), bits(y), bits(z));
+    if (i < 0) {
+      values[~i] = value;
+      grow();
+      return null;
+    }
+    V previous = (V) values[i];
+    values[i] = value;
+    return previous;
+  }
+
+  public V put(Vector3f key, V value) {
+    return put(key.x, key.y, key.z, value);
+  }
+
+  /**
+   * Adds the key with the given value only if it is absent.
+   *
+   * @return the existing value for the key, or null if the key was added.
+   */
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(float x, float y, float z, V value) {
+    int i = insert(bits(x), bits(y), bits(z));
+    if (i < 0) {
+      values[~i] = value;
+      grow();
+      return null;
+    }
+    return (V) values[i];
+  }
+
+  public V putIfAbsent(Vector3f key, V value) {
+    return putIfAbsent(key.x, key.y, key.z, value);
+  }
+
+  /**
+   * @return the value that was removed, or null if the key was absent.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(float x, float y, float z) {
+    int i = find(bits(x), bits(y), bits(z));
+    if (i < 0) {
+      return null;
+    }
+    V removed = (V) values[i];
+    // shift back any following entries that would no longer be reachable
+    for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+      int home = slot(keys[j * 3], keys[j * 3 + 1], keys[j * 3 + 2]);
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        System.arraycopy(keys, j * 3, keys, i * 3, 3);
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    used[i] = false;
+    values[i] = null;
+    --size;
+    return removed;
+  }
+
+  public V remove(Vector3f key) {
+    return remove(key.x, key.y, key.z);
+  }
+
+  public void clear() {
+    if (size != 0) {
+      Arrays.fill(used, false);
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  /**
+   * Calls the visitor for every entry. The map must not be modified while
+   * doing so.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(EntryVisitor<? super V> visitor) {
+    for (int i = 0; i < used.length; ++i) {
+      if (used[i]) {
+        visitor.visit(Float.intBitsToFloat(keys[i * 3]), Float.intBitsToFloat(keys[i * 3 + 1]),
+            Float.intBitsToFloat(keys[i * 3 + 2]), (V) values[i]);
+      }
+    }
+  }
+
+  // floatToIntBits, unlike the raw bits, folds all NaNs into one, which is
+  // what Float.compare does
+  private static int bits(float f) {
+    return Float.floatToIntBits(f);
+  }
+
+  private int slot(int x, int y, int z) {
+    long h = (((long) x << 32) ^ (y & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L + z * 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private int find(int x, int y, int z) {
+    for (int i = slot(x, y, z);; i = (i + 1) & mask) {
+      if (!used[i]) {
+        return -1;
+      }
+      if (keys[i * 3] == x && keys[i * 3 + 1] == y && keys[i * 3 + 2] == z) {
+        return i;
+      }
+    }
+  }
+
+  // the slot holding the key, or the complement of the slot it was added to
+  private int insert(int x, int y, int z) {
+    int i = slot(x, y, z);
+    for (; used[i]; i = (i + 1) & mask) {
+      if (keys[i * 3] == x && keys[i * 3 + 1] == y && keys[i * 3 + 2] == z) {
+        return i;
+      }
+    }
+    keys[i * 3] = x;
+    keys[i * 3 + 1] = y;
+    keys[i * 3 + 2] = z;
+    used[i] = true;
+    ++size;
+    return ~i;
+  }
+
+  private void grow() {
+    if (size * 2 <= used.length) {
+      return;
+    }
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(used.length * 2);
+    for (int j = 0; j < oldUsed.length; ++j) {
+      if (oldUsed[j]) {
+        int i = slot(oldKeys[j * 3], oldKeys[j * 3 + 1], oldKeys[j * 3 + 2]);
+        while (used[i]) {
+          i = (i + 1) & mask;
+        }
+        System.arraycopy(oldKeys, j * 3, keys, i * 3, 3);
+        values[i] = oldValues[j];
+        used[i] = true;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity * 3];
+    values = new Object[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+  }
+}
@@ -0,0 +1,236 @@
+package org.saintandreas.math;
+
+/**
+ * <code>Vector3i</code> is an integer vector, for voxel and grid cell
+ * coordinates, which are exact where a {@link Vector3f} loses the low bits of
+ * large coordinates. Its hash code mixes the three coordinates so that
+ * neighboring cells spread across a hash table.
+ *
+ * {@link #morton()} and {@link #hilbert(int)} give the cell's position along a
+ * space filling curve, for sorting cells so that neighbors are close in
+ * memory, and {@link #cells} converts a whole array of float positions to
+ * cell coordinates.
+ *
+ * @author Brad Davis
+ */
+public final class Vector3i implements java.io.Serializable {
+  static final long serialVersionUID = 1;
+
+  public static final Vector3i ZERO = new Vector3i(0, 0, 0);
+  public static final Vector3i UNIT_X = new Vector3i(1, 0, 0);
+  public static final Vector3i UNIT_Y = new Vector3i(0, 1, 0);
+  public static final Vector3i UNIT_Z = new Vector3i(0, 0, 1);
+  public static final Vector3i UNIT_XYZ = new Vector3i(1, 1, 1);
+
+  public final int x;
+  public final int y;
+  public final int z;
+
+  public Vector3i() {
+    this(0, 0, 0);
+  }
+
+  public Vector3i(int x, int y, int z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+  }
+
+  /**
+   * @return the cell of a grid holding a position, rounding each coordinate
+   *         down, so that cell (0, 0, 0) runs from <code>origin</code> to
+   *         <code>origin + cellSize</code>.
+   */
+  public static Vector3i cell(Vector3f v, Vector3f origin, float cellSize) {
+    float inverse = 1 / cellSize;
+    return new Vector3i((int) Math.floor((v.x - origin.x) * inverse),
+        (int) Math.floor((v.y - origin.y) * inverse), (int) Math.floor((v.z - origin.z) * inverse));
+  }
+
+  /**
+   * <code>cells</code> converts packed float positions to the grid cells
+   * holding them, as by {@link #cell(Vector3f, Vector3f, float)}, without
+   * creating a vector per point.
+   *
+   * @param xyz
+   *          packed x, y, z positions.
+   * @param count
+   *          the number of positions.
+   * @param origin
+   *          the corner of cell (0, 0, 0).
+   * @param cellSize
+   *          the edge length of a cell.
+   * @param cells
+   *          receives packed x, y, z cell coordinates.
+   */
+  public static void cells(float[] xyz, int count, Vector3f origin, float cellSize, int[] cells) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Invalid cell size. " + cellSize);
+    }
+    float inverse = 1 / cellSize;
+    float ox = origin.x, oy = origin.y, oz = origin.z;
+    for (int i = 0; i < count * 3; i += 3) {
+      cells[i] = (int) Math.floor((xyz[i] - ox) * inverse);
+      cells[i + 1] = (int) Math.floor((xyz[i + 1] - oy) * inverse);
+      cells[i + 2] = (int) Math.floor((xyz[i + 2] - oz) * inverse);
+    }
+  }
+
+  public static Vector3i fromMorton(long code) {
+    return new Vector3i(Morton.decodeX3(code), Morton.decodeY3(code), Morton.decodeZ3(code));
+  }
+
+  public static Vector3i fromHilbert(long distance, int order) {
+    return Hilbert.decode3(distance, order);
+  }
+
+  public int getX() {
+    return x;
+  }
+
+  public int getY() {
+    return y;
+  }
+
+  public int getZ() {
+    return z;
+  }
+
+  /**
+   * @param index
+   *          0, 1, or 2
+   * @return x for index 0, y for 1, and z for 2
+   * @throws IllegalArgumentException
+   *           if the index is not one of 0, 1, or 2
+   */
+  public int get(int index) {
+    switch (index) {
+    case 0:
+      return x;
+    case 1:
+      return y;
+    case 2:
+      return z;
+    }
+    throw new IllegalArgumentException("index must be either 0, 1 or 2");
+  }
+
+  public int[] toArray() {
+    return new int[] { x, y, z };
+  }
+
+  public Vector3i add(Vector3i v) {
+    return new Vector3i(x + v.x, y + v.y, z + v.z);
+  }
+
+  public Vector3i add(int x, int y, int z) {
+    return new Vector3i(this.x + x, this.y + y, this.z + z);
+  }
+
+  public Vector3i subtract(Vector3i v) {
+    return new Vector3i(x - v.x, y - v.y, z - v.z);
+  }
+
+  public Vector3i mult(int scalar) {
+    return new Vector3i(x * scalar, y * scalar, z * scalar);
+  }
+
+  public Vector3i mult(Vector3i v) {
+    return new Vector3i(x * v.x, y * v.y, z * v.z);
+  }
+
+  /**
+   * <code>floorDiv</code> divides each coordinate, rounding down, which for a
+   * power of two size gives the coordinates of the chunk holding a voxel.
+   */
+  public Vector3i floorDiv(int divisor) {
+    return new Vector3i(Math.floorDiv(x, divisor), Math.floorDiv(y, divisor), Math.floorDiv(z, divisor));
+  }
+
+  /**
+   * <code>floorMod</code> gives the remainders of {@link #floorDiv(int)},
+   * which are never negative for a positive divisor.
+   */
+  public Vector3i floorMod(int divisor) {
+    return new Vector3i(Math.floorMod(x, divisor), Math.floorMod(y, divisor), Math.floorMod(z, divisor));
+  }
+
+  public Vector3i negate() {
+    return new Vector3i(-x, -y, -z);
+  }
+
+  public long dot(Vector3i v) {
+    return (long) x * v.x + (long) y * v.y + (long) z * v.z;
+  }
+
+  public Vector3i cross(Vector3i v) {
+    return new Vector3i(y * v.z - z * v.y, z * v.x - x * v.z, x * v.y - y * v.x);
+  }
+
+  public long lengthSquared() {
+    return dot(this);
+  }
+
+  public long distanceSquared(Vector3i v) {
+    long dx = x - v.x, dy = y - v.y, dz = z - v.z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * @return the sum of the absolute differences of the coordinates, the
+   *         number of face steps between two cells.
+   */
+  public long manhattanDistance(Vector3i v) {
+    return Math.abs((long) x - v.x) + Math.abs((long) y - v.y) + Math.abs((long) z - v.z);
+  }
+
+  public Vector3i minimum(Vector3i v) {
+    return new Vector3i(Math.min(x, v.x), Math.min(y, v.y), Math.min(z, v.z));
+  }
+
+  public Vector3i maximum(Vector3i v) {
+    return new Vector3i(Math.max(x, v.x), Math.max(y, v.y), Math.max(z, v.z));
+  }
+
+  public Vector3f toVector3f() {
+    return new Vector3f(x, y, z);
+  }
+
+  /**
+   * @return the Morton code of this cell, which must lie within
+   *         [{@link Morton#MIN_3D}, {@link Morton#MAX_3D}] on each axis.
+   */
+  public long morton() {
+    return Morton.encode(x, y, z);
+  }
+
+  /**
+   * @return the distance along a Hilbert curve of the given order, which
+   *         covers cells from 0 to <code>2^order - 1</code> on each axis.
+   */
+  public long hilbert(int order) {
+    return Hilbert.encode(x, y, z, order);
+  }
+
+  @Override
+  public int hashCode() {
+    // the primes of Teschner et al, "Optimized Spatial Hashing for Collision
+    // Detection of Deformable Objects", followed by a final mix
+    int hash = x * 73856093 ^ y * 19349663 ^ z * 83492791;
+    return hash ^ (hash >>> 16);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Vector3i)) {
+      return false;
+    }
+    Vector3i comp = (Vector3i) o;
+    return x == comp.x && y == comp.y && z == comp.z;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + x + ", " + y + ", " + z + ")";
+  }
+}
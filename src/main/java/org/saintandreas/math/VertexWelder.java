@@ -0,0 +1,350 @@
+package org.saintandreas.math;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * <code>VertexWelder</code> merges vertices that are equal to within a
+ * tolerance, with the same meaning as {@link Vector#equalsEpsilon}: every
+ * component of the position, and optionally of the normal and texture
+ * coordinates, may differ by at most the epsilon given for it.
+ *
+ * Vertices are visited in order, and each is merged into the first kept
+ * vertex that matches it or, if there is none, is kept itself. Kept vertices
+ * are bucketed by their positions on a grid of cells eight times the position
+ * epsilon across, held in an open addressing hash table in a single primitive
+ * array. Only the cells within epsilon of a position can hold a match, which
+ * for most positions is just their own.
+ *
+ * The result is a remap table giving, for each input vertex, the index of the
+ * vertex it became in the welded mesh, where the kept vertices are numbered
+ * in the order they were first seen. {@link #compact} and
+ * {@link #remapIndices} apply it to vertex attributes and index buffers.
+ *
+ * Buffers are read and written from their positions without changing them.
+ *
+ * @author Brad Davis
+ */
+public final class VertexWelder {
+  // cells are this many epsilons across, so that most points are far enough
+  // from the sides of their cell to need only one lookup
+  private static final int CELL_EPSILONS = 8;
+  private static final int INITIAL_CELLS = 1 << 10;
+
+  private final FloatBuffer positions;
+  private final int positionBase;
+  private final float positionEpsilon;
+  private final FloatBuffer normals;
+  private final int normalBase;
+  private final float normalEpsilon;
+  private final FloatBuffer texCoords;
+  private final int texCoordBase;
+  private final float texCoordEpsilon;
+  // zero when welding exactly, in which case cells are the float bits
+  private final double inverseCellSize;
+
+  // the kept vertices, their source vertices and the next in their cell
+  private float[] kept;
+  private int[] keptSource;
+  private int[] keptNext;
+  private int keptCount;
+
+  // the cells holding kept vertices, as x, y, z and the most recently kept
+  // vertex in the cell, or -1 for an empty slot
+  private int[] cells;
+  private int cellCount;
+  private int mask;
+
+  private VertexWelder(FloatBuffer positions, float positionEpsilon,
+      FloatBuffer normals, float normalEpsilon, FloatBuffer texCoords,
+      float texCoordEpsilon) {
+    if (!(positionEpsilon >= 0) || !(normalEpsilon >= 0) || !(texCoordEpsilon >= 0)) {
+      throw new IllegalArgumentException("Invalid epsilon");
+    }
+    this.positions = positions;
+    this.positionBase = positions.position();
+    this.positionEpsilon = positionEpsilon;
+    this.normals = normals;
+    this.normalBase = normals == null ? 0 : normals.position();
+    this.normalEpsilon = normalEpsilon;
+    this.texCoords = texCoords;
+    this.texCoordBase = texCoords == null ? 0 : texCoords.position();
+    this.texCoordEpsilon = texCoordEpsilon;
+    this.inverseCellSize = positionEpsilon == 0 ? 0 : 1.0 / (CELL_EPSILONS * (double) positionEpsilon);
+  }
+
+  /**
+   * <code>weld</code> merges vertices whose positions are equal to within
+   * <code>epsilon</code>.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param remap
+   *          receives the welded index of each vertex. Must hold at least one
+   *          entry per vertex.
+   * @return the number of vertices after welding.
+   */
+  public static int weld(FloatBuffer positions, float epsilon, int[] remap) {
+    return weld(positions, epsilon, null, 0, null, 0, remap);
+  }
+
+  /**
+   * <code>weld</code> merges vertices whose positions, normals and texture
+   * coordinates are all equal to within their epsilons.
+   *
+   * @param positions
+   *          vertex positions as packed x, y, z triples.
+   * @param normals
+   *          vertex normals as packed x, y, z triples, or null to ignore
+   *          normals.
+   * @param texCoords
+   *          vertex texture coordinates as packed u, v pairs, or null to
+   *          ignore texture coordinates.
+   * @param remap
+   *          receives the welded index of each vertex. Must hold at least one
+   *          entry per vertex.
+   * @return the number of vertices after welding.
+   */
+  public static int weld(FloatBuffer positions, float positionEpsilon,
+      FloatBuffer normals, float normalEpsilon, FloatBuffer texCoords,
+      float texCoordEpsilon, int[] remap) {
+    int count = positions.remaining() / 3;
+    if (remap.length < count) {
+      throw new IllegalArgumentException("Invalid remap length. " + remap.length);
+    }
+    if (normals != null && normals.remaining() < count * 3) {
+      throw new IllegalArgumentException("Invalid normal count. " + normals.remaining() / 3);
+    }
+    if (texCoords != null && texCoords.remaining() < count * 2) {
+      throw new IllegalArgumentException("Invalid texture coordinate count. "
+          + texCoords.remaining() / 2);
+    }
+    return new VertexWelder(positions, positionEpsilon, normals, normalEpsilon,
+        texCoords, texCoordEpsilon).weld(count, remap);
+  }
+
+  /**
+   * Welds an array of positions.
+   *
+   * @see #weld(FloatBuffer, float, int[])
+   */
+  public static int weld(float[] positions, float epsilon, int[] remap) {
+    return weld(FloatBuffer.wrap(positions), epsilon, remap);
+  }
+
+  /**
+   * <code>compact</code> gathers the attributes of the kept vertices into a
+   * new array, in welded order.
+   *
+   * @param attributes
+   *          per vertex attributes of <code>components</code> floats each.
+   * @param remap
+   *          the remap table filled in by <code>weld</code>.
+   * @param weldedCount
+   *          the count returned by <code>weld</code>.
+   */
+  public static float[] compact(FloatBuffer attributes, int components,
+      int[] remap, int weldedCount) {
+    int count = attributes.remaining() / components;
+    int base = attributes.position();
+    float[] result = new float[weldedCount * components];
+    // every welded vertex takes the attributes of the first vertex mapped to
+    // it, which is the one that was kept
+    int next = 0;
+    for (int i = 0; i < count && next < weldedCount; ++i) {
+      if (remap[i] == next) {
+        for (int k = 0; k < components; ++k) {
+          result[next * components + k] = attributes.get(base + i * components + k);
+        }
+        ++next;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gathers the attributes of the kept vertices from an array.
+   *
+   * @see #compact(FloatBuffer, int, int[], int)
+   */
+  public static float[] compact(float[] attributes, int components,
+      int[] remap, int weldedCount) {
+    return compact(FloatBuffer.wrap(attributes), components, remap, weldedCount);
+  }
+
+  /**
+   * <code>remapIndices</code> replaces each index in the buffer with the
+   * welded index of the vertex it refers to.
+   */
+  public static void remapIndices(IntBuffer indices, int[] remap) {
+    for (int i = indices.position(), end = indices.limit(); i < end; ++i) {
+      indices.put(i, remap[indices.get(i)]);
+    }
+  }
+
+  private int weld(int count, int[] remap) {
+    kept = new float[Math.max(count, 1) * 3];
+    keptSource = new int[Math.max(count, 1)];
+    keptNext = new int[Math.max(count, 1)];
+    cells = new int[INITIAL_CELLS * 4];
+    mask = INITIAL_CELLS - 1;
+    for (int c = 3; c < cells.length; c += 4) {
+      cells[c] = -1;
+    }
+
+    for (int i = 0; i < count; ++i) {
+      float x = positions.get(positionBase + i * 3) + 0.0f;
+      float y = positions.get(positionBase + i * 3 + 1) + 0.0f;
+      float z = positions.get(positionBase + i * 3 + 2) + 0.0f;
+      int match = inverseCellSize == 0 ? findExact(i, x, y, z) : findNear(i, x, y, z);
+      if (match < 0) {
+        match = keep(i, x, y, z);
+      }
+      remap[i] = match;
+    }
+    return keptCount;
+  }
+
+  private int findExact(int i, float x, float y, float z) {
+    int slot = find(Float.floatToIntBits(x), Float.floatToIntBits(y), Float.floatToIntBits(z));
+    int best = slot < 0 ? Integer.MAX_VALUE : scan(cells[slot + 3], i, x, y, z, Integer.MAX_VALUE);
+    return best == Integer.MAX_VALUE ? -1 : best;
+  }
+
+  private int findNear(int i, float x, float y, float z) {
+    // the cells overlapping the box of half width epsilon around the point,
+    // with a little slack so rounding cannot leave one out
+    double sx = x * inverseCellSize, sy = y * inverseCellSize, sz = z * inverseCellSize;
+    double reach = 1.0 / CELL_EPSILONS + 1e-4;
+    int x0 = (int) Math.floor(sx - reach), x1 = (int) Math.floor(sx + reach);
+    int y0 = (int) Math.floor(sy - reach), y1 = (int) Math.floor(sy + reach);
+    int z0 = (int) Math.floor(sz - reach), z1 = (int) Math.floor(sz + reach);
+    int best = Integer.MAX_VALUE;
+    // counted by offset, so that cells saturated at the integer limits by
+    // infinite coordinates do not wrap
+    for (int cx = x0; cx - x0 <= x1 - x0; ++cx) {
+      for (int cy = y0; cy - y0 <= y1 - y0; ++cy) {
+        for (int cz = z0; cz - z0 <= z1 - z0; ++cz) {
+          int slot = find(cx, cy, cz);
+          if (slot >= 0) {
+            best = scan(cells[slot + 3], i, x, y, z, best);
+          }
+        }
+      }
+    }
+    return best == Integer.MAX_VALUE ? -1 : best;
+  }
+
+  // the first kept vertex in a cell list that matches vertex i and comes
+  // before best, or best if there is none
+  private int scan(int k, int i, float x, float y, float z, int best) {
+    // lists run from the most recently kept vertex back
+    int result = best;
+    for (; k >= 0; k = keptNext[k]) {
+      if (k < result && Math.abs(kept[k * 3] - x) <= positionEpsilon
+          && Math.abs(kept[k * 3 + 1] - y) <= positionEpsilon
+          && Math.abs(kept[k * 3 + 2] - z) <= positionEpsilon
+          && attributesMatch(keptSource[k], i)) {
+        result = k;
+      }
+    }
+    return result;
+  }
+
+  private boolean attributesMatch(int a, int b) {
+    if (normals != null) {
+      for (int k = 0; k < 3; ++k) {
+        if (!(Math.abs(normals.get(normalBase + a * 3 + k)
+            - normals.get(normalBase + b * 3 + k)) <= normalEpsilon)) {
+          return false;
+        }
+      }
+    }
+    if (texCoords != null) {
+      for (int k = 0; k < 2; ++k) {
+        if (!(Math.abs(texCoords.get(texCoordBase + a * 2 + k)
+            - texCoords.get(texCoordBase + b * 2 + k)) <= texCoordEpsilon)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private int keep(int i, float x, float y, float z) {
+    int k = keptCount++;
+    kept[k * 3] = x;
+    kept[k * 3 + 1] = y;
+    kept[k * 3 + 2] = z;
+    keptSource[k] = i;
+    int cx, cy, cz;
+    if (inverseCellSize == 0) {
+      cx = Float.floatToIntBits(x);
+      cy = Float.floatToIntBits(y);
+      cz = Float.floatToIntBits(z);
+    } else {
+      cx = (int) Math.floor(x * inverseCellSize);
+      cy = (int) Math.floor(y * inverseCellSize);
+      cz = (int) Math.floor(z * inverseCellSize);
+    }
+    int slot = insert(cx, cy, cz);
+    keptNext[k] = cells[slot + 3];
+    cells[slot + 3] = k;
+    return k;
+  }
+
+  // the offset of a cell's entry in the table, or -1 if it has none
+  private int find(int cx, int cy, int cz) {
+    for (int slot = hash(cx, cy, cz) & mask;; slot = (slot + 1) & mask) {
+      int c = slot * 4;
+      if (cells[c + 3] < 0) {
+        return -1;
+      } else if (cells[c] == cx && cells[c + 1] == cy && cells[c + 2] == cz) {
+        return c;
+      }
+    }
+  }
+
+  // the offset of a cell's entry in the table, adding one if needed
+  private int insert(int cx, int cy, int cz) {
+    for (int slot = hash(cx, cy, cz) & mask;; slot = (slot + 1) & mask) {
+      int c = slot * 4;
+      if (cells[c + 3] < 0) {
+        if ((cellCount + 1) * 2 > mask + 1) {
+          grow();
+          return insert(cx, cy, cz);
+        }
+        ++cellCount;
+        cells[c] = cx;
+        cells[c + 1] = cy;
+        cells[c + 2] = cz;
+        return c;
+      } else if (cells[c] == cx && cells[c + 1] == cy && cells[c + 2] == cz) {
+        return c;
+      }
+    }
+  }
+
+  private void grow() {
+    int[] old = cells;
+    cells = new int[old.length * 2];
+    mask = cells.length / 4 - 1;
+    for (int c = 3; c < cells.length; c += 4) {
+      cells[c] = -1;
+    }
+    for (int c = 0; c < old.length; c += 4) {
+      if (old[c + 3] >= 0) {
+        int slot = hash(old[c], old[c + 1], old[c + 2]) & mask;
+        while (cells[slot * 4 + 3] >= 0) {
+          slot = (slot + 1) & mask;
+        }
+        System.arraycopy(old, c, cells, slot * 4, 4);
+      }
+    }
+  }
+
+  private static int hash(int x, int y, int z) {
+    int h = x * 0x8da6b343 + y * 0xd8163841 + z * 0xcb1ab31f;
+    return h ^ (h >>> 16);
+  }
+}
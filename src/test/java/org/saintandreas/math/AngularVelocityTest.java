@@ -0,0 +1,102 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+import static org.saintandreas.math.TestRotations.randomRotation;
+import static org.saintandreas.math.TestRotations.assertRotationEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AngularVelocityTest {
+  private static Vector3f randomVector(Random random, float scale) {
+    return new Vector3f((float) random.nextGaussian(), (float) random.nextGaussian(),
+        (float) random.nextGaussian()).mult(scale);
+  }
+
+  @Test
+  public void testIntegrate() {
+    Random random = new Random(50);
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      // small steps take the series, large ones the exact exponential
+      Vector3f omega = randomVector(random, i % 2 == 0 ? 2 : 40);
+      float dt = 1 / 60f;
+      float angle = omega.length() * dt;
+      Quaternion expected = Quaternion.fromAngleAxis(angle, omega).mult(q);
+      Quaternion actual = q.integrate(omega, dt);
+      assertRotationEquals(expected, actual, 1e-6f);
+      assertEquals(1, actual.norm(), 1e-6f);
+    }
+    Quaternion q = randomRotation(random);
+    assertEquals(q, q.integrate(Vector3f.ZERO, 1));
+  }
+
+  @Test
+  public void testNoDrift() {
+    Random random = new Random(51);
+    Quaternion q = randomRotation(random);
+    Vector3f omega = new Vector3f(1, 2, 3);
+    Quaternion start = q;
+    float dt = 1e-3f;
+    for (int i = 0; i < 100000; ++i) {
+      q = q.integrate(omega, dt);
+    }
+    // 100 units of time at a constant velocity
+    assertEquals(1, q.norm(), 1e-5f);
+    Quaternion expected = Quaternion.fromAngleAxis(omega.length() * 100, omega).mult(start);
+    assertRotationEquals(expected, q, 1e-3f);
+  }
+
+  @Test
+  public void testAngularVelocity() {
+    Random random = new Random(52);
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q0 = randomRotation(random);
+      Quaternion q1 = randomRotation(random);
+      float dt = 0.5f;
+      Vector3f omega = Quaternion.angularVelocity(q0, q1, dt);
+      // the shorter way round
+      assertTrue(omega.length() * dt <= FastMath.PI + 1e-5f);
+      assertRotationEquals(q1, q0.integrate(omega, dt), 1e-5f);
+      assertEquals(omega, Quaternion.angularVelocity(q0, q1.negate(), dt));
+
+      // recovered exactly while a step turns less than half a revolution
+      omega = randomVector(random, 1);
+      assertEquals(0, omega.distance(Quaternion.angularVelocity(q0, q0.integrate(omega, dt), dt)), 1e-3f);
+    }
+    Quaternion q = randomRotation(random);
+    assertEquals(Vector3f.ZERO, Quaternion.angularVelocity(q, q, 1));
+  }
+
+  @Test
+  public void testBatch() {
+    Random random = new Random(53);
+    int count = 100000;
+    float dt = 1 / 120f;
+    float[] x = new float[count], y = new float[count], z = new float[count], w = new float[count];
+    float[] wx = new float[count], wy = new float[count], wz = new float[count];
+    Quaternion[] rotations = new Quaternion[count];
+    for (int i = 0; i < count; ++i) {
+      Quaternion q = randomRotation(random);
+      Vector3f omega = randomVector(random, 5);
+      rotations[i] = q;
+      x[i] = q.x;
+      y[i] = q.y;
+      z[i] = q.z;
+      w[i] = q.w;
+      wx[i] = omega.x;
+      wy[i] = omega.y;
+      wz[i] = omega.z;
+    }
+    float[] x1 = x.clone(), y1 = y.clone(), z1 = z.clone(), w1 = w.clone();
+    Quaternion.integrate(x1, y1, z1, w1, wx, wy, wz, count, dt);
+    float[] vx = new float[count], vy = new float[count], vz = new float[count];
+    Quaternion.angularVelocity(x, y, z, w, x1, y1, z1, w1, count, dt, vx, vy, vz);
+    for (int i = 0; i < count; ++i) {
+      Quaternion q = rotations[i].integrate(new Vector3f(wx[i], wy[i], wz[i]), dt);
+      assertEquals(q, new Quaternion(x1[i], y1[i], z1[i], w1[i]));
+      assertEquals(Quaternion.angularVelocity(rotations[i], q, dt), new Vector3f(vx[i], vy[i], vz[i]));
+    }
+  }
+}
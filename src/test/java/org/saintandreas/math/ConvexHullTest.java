@@ -0,0 +1,110 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConvexHullTest {
+  @Test
+  public void testHull2f() {
+    Random r = new Random(5);
+    int count = 2000;
+    float[] points = new float[count * 2];
+    for (int i = 0; i < points.length; ++i) {
+      // a coarse grid gives repeated and collinear points
+      points[i] = r.nextInt(41) - 20;
+    }
+    int[] hull = ConvexHull2f.compute(points);
+    assertTrue(hull.length >= 3);
+    for (int h = 0; h < hull.length; ++h) {
+      int a = hull[h], b = hull[(h + 1) % hull.length], c = hull[(h + 2) % hull.length];
+      // strictly convex, counter clockwise corners
+      assertTrue(cross(points, a, b, c) > 0);
+      for (int i = 0; i < count; ++i) {
+        assertTrue(cross(points, a, b, i) >= 0);
+      }
+    }
+    assertArrayEquals(new int[] { 0 }, ConvexHull2f.compute(new float[] { 1, 1, 1, 1 }));
+    assertArrayEquals(new int[] { 0, 2 }, ConvexHull2f.compute(new float[] { 0, 0, 1, 1, 2, 2 }));
+  }
+
+  private static float cross(float[] p, int o, int a, int b) {
+    return (p[a * 2] - p[o * 2]) * (p[b * 2 + 1] - p[o * 2 + 1])
+        - (p[a * 2 + 1] - p[o * 2 + 1]) * (p[b * 2] - p[o * 2]);
+  }
+
+  private static void check(ConvexHull3f hull, float[] xyz, int count) {
+    int faceCount = hull.getFaceCount();
+    int[] faces = hull.getFaces();
+    int[] twins = hull.getTwins();
+    float[] planes = hull.getPlanes();
+    int[] vertices = hull.getVertices();
+    // a closed triangulated sphere
+    assertEquals(2, vertices.length - faceCount * 3 / 2 + faceCount);
+    for (int e = 0; e < twins.length; ++e) {
+      int t = twins[e];
+      assertEquals(e, twins[t]);
+      assertEquals(faces[e], faces[t % 3 == 2 ? t - 2 : t + 1]);
+      assertEquals(faces[t], faces[e % 3 == 2 ? e - 2 : e + 1]);
+    }
+    float tolerance = hull.getTolerance() * 2;
+    for (int f = 0; f < faceCount; ++f) {
+      for (int k = 0; k < 3; ++k) {
+        int v = faces[f * 3 + k];
+        float d = planes[f * 4] * xyz[v * 3] + planes[f * 4 + 1] * xyz[v * 3 + 1]
+            + planes[f * 4 + 2] * xyz[v * 3 + 2] - planes[f * 4 + 3];
+        assertEquals(0, d, tolerance);
+      }
+    }
+    for (int i = 0; i < count; ++i) {
+      assertTrue(hull.contains(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]));
+    }
+  }
+
+  @Test
+  public void testHull3f() {
+    Random r = new Random(7);
+    int count = 20000;
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      Vector3f v = new Vector3f(r.nextFloat() - 0.5f, r.nextFloat() - 0.5f, r.nextFloat() - 0.5f);
+      v = v.normalize().mult(r.nextFloat() < 0.1f ? 1 : r.nextFloat());
+      xyz[i * 3] = v.x;
+      xyz[i * 3 + 1] = v.y;
+      xyz[i * 3 + 2] = v.z;
+    }
+    ConvexHull3f hull = ConvexHull3f.build(FloatBuffer.wrap(xyz));
+    check(hull, xyz, count);
+    assertFalse(hull.contains(0, 0, 1.01f));
+    assertTrue(hull.contains(0, 0, 0.9f));
+  }
+
+  @Test
+  public void testCube() {
+    // a grid of points, many of them on the faces and edges of the cube
+    int side = 6, count = side * side * side;
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      xyz[i * 3] = i % side;
+      xyz[i * 3 + 1] = i / side % side;
+      xyz[i * 3 + 2] = i / side / side;
+    }
+    ConvexHull3f hull = ConvexHull3f.build(xyz, count);
+    check(hull, xyz, count);
+    assertEquals(8, hull.getVertices().length);
+    assertEquals(12, hull.getFaceCount());
+  }
+
+  @Test
+  public void testCoplanar() {
+    try {
+      ConvexHull3f.build(new Vector3f[] { new Vector3f(0, 0, 0), new Vector3f(1, 0, 0),
+          new Vector3f(0, 1, 0), new Vector3f(1, 1, 0), new Vector3f(0.5f, 0.5f, 0) });
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+import static org.saintandreas.math.TestRotations.randomRotation;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DecompositionTest {
+  private static Matrix3f randomMatrix(Random random) {
+    float[] a = new float[9];
+    for (int i = 0; i < 9; ++i) {
+      a[i] = (float) random.nextGaussian();
+    }
+    return new Matrix3f(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8]);
+  }
+
+  private static void assertMatrixEquals(Matrix3f expected, Matrix3f actual, float tolerance) {
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        assertEquals(expected + " " + actual, expected.get(i, j), actual.get(i, j), tolerance);
+      }
+    }
+  }
+
+  private static void assertRotation(Matrix3f m) {
+    assertEquals(1, m.determinant(), 1e-5f);
+    assertMatrixEquals(Matrix3f.IDENTITY, m.mult(m.transpose()), 1e-5f);
+  }
+
+  private static void checkSvd(Matrix3f m) {
+    Svd3f svd = m.svd();
+    Vector3f s = svd.getSingularValues();
+    assertRotation(svd.getU());
+    assertRotation(svd.getV());
+    assertTrue(s.toString(), s.x >= s.y && s.y >= Math.abs(s.z));
+    assertMatrixEquals(m, svd.getU().scale(s).mult(svd.getV().transpose()), 1e-4f);
+    assertEquals(m.determinant(), s.x * s.y * s.z, 1e-4f);
+  }
+
+  @Test
+  public void testSvd() {
+    Random random = new Random(46);
+    for (int i = 0; i < 1000; ++i) {
+      checkSvd(randomMatrix(random));
+    }
+  }
+
+  @Test
+  public void testSvdDegenerate() {
+    checkSvd(Matrix3f.ZERO);
+    checkSvd(Matrix3f.IDENTITY);
+    // reflection
+    checkSvd(new Matrix3f(1, 0, 0, 0, 1, 0, 0, 0, -1));
+    assertEquals(-1, new Matrix3f(-1, 0, 0, 0, -1, 0, 0, 0, -1).svd().getSingularValues().z, 1e-6f);
+    // rank one and rank two
+    checkSvd(new Matrix3f(1, 2, 3, 2, 4, 6, 3, 6, 9));
+    checkSvd(new Matrix3f(1, 2, 3, 4, 5, 6, 7, 8, 9));
+    checkSvd(new Matrix3f(0, 0, 0, 0, 0, 0, 0, 0, 5));
+    // repeated singular values
+    Matrix3f r = randomRotation(new Random(1)).toRotationMatrix();
+    checkSvd(r.scale(new Vector3f(2, 2, 2)));
+    checkSvd(r.scale(new Vector3f(3, 1, 1)));
+  }
+
+  @Test
+  public void testPolar() {
+    Random random = new Random(47);
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      Matrix3f rotation = q.toRotationMatrix();
+      // a symmetric positive definite stretch, with shear
+      Matrix3f basis = randomRotation(random).toRotationMatrix();
+      Vector3f scale = new Vector3f(0.2f + random.nextFloat() * 3, 0.2f + random.nextFloat() * 3,
+          0.2f + random.nextFloat() * 3);
+      Matrix3f stretch = basis.scale(scale).mult(basis.transpose());
+      Matrix3f m = rotation.mult(stretch);
+
+      Polar3f polar = m.polarDecomposition();
+      assertRotation(polar.getRotation());
+      assertMatrixEquals(rotation, polar.getRotation(), 1e-4f);
+      assertMatrixEquals(stretch, polar.getStretch(), 1e-4f);
+      assertMatrixEquals(m, polar.getRotation().mult(polar.getStretch()), 1e-4f);
+      assertEquals(1, Math.abs(q.dot(polar.getRotationQuat())), 1e-4f);
+    }
+  }
+
+  @Test
+  public void testPolarSheared() {
+    Quaternion q = Quaternion.fromAngleAxis(0.7f, new Vector3f(1, 2, 3).normalize());
+    Matrix3f shear = new Matrix3f(1, 0.8f, 0, 0.8f, 1.5f, 0, 0, 0, 0.5f);
+    Matrix3f a = q.toRotationMatrix().mult(shear);
+    Matrix4f m = new Matrix4f(a.get(0, 0), a.get(0, 1), a.get(0, 2), 5, //
+        a.get(1, 0), a.get(1, 1), a.get(1, 2), 6, //
+        a.get(2, 0), a.get(2, 1), a.get(2, 2), 7, //
+        0, 0, 0, 1);
+    // converting the matrix directly picks up the shear
+    assertTrue(Math.abs(q.dot(m.toRotationQuat().normalize())) < 0.999f);
+    assertEquals(1, Math.abs(q.dot(m.polarDecomposition().getRotationQuat())), 1e-5f);
+    assertEquals(0.5f * (1.5f - 0.64f), m.svd().getSingularValues().x * m.svd().getSingularValues().y
+        * m.svd().getSingularValues().z, 1e-4f);
+  }
+
+  @Test
+  public void testPolarInverted() {
+    // an inverted element keeps a proper rotation, and the stretch takes the
+    // reflection
+    Matrix3f m = new Matrix3f(2, 0, 0, 0, 1, 0, 0, 0, -0.5f);
+    Polar3f polar = m.polarDecomposition();
+    assertRotation(polar.getRotation());
+    assertMatrixEquals(m, polar.getRotation().mult(polar.getStretch()), 1e-5f);
+    assertMatrixEquals(polar.getStretch(), polar.getStretch().transpose(), 1e-6f);
+  }
+
+  @Test
+  public void testBatch() {
+    Random random = new Random(48);
+    int count = 3000;
+    float[] matrices = new float[count * 9];
+    for (int i = 0; i < matrices.length; ++i) {
+      matrices[i] = (float) random.nextGaussian();
+    }
+    float[] svd = new float[count * Svd3f.RESULT_SIZE];
+    Svd3f.decompose(matrices, count, svd);
+    float[] rotations = new float[count * 9];
+    float[] stretches = new float[count * 9];
+    Polar3f.decompose(matrices, count, rotations, stretches);
+    float[] inPlace = matrices.clone();
+    Polar3f.rotations(inPlace, count, inPlace);
+
+    float[] single = new float[Svd3f.RESULT_SIZE];
+    float[] r = new float[9];
+    float[] p = new float[9];
+    for (int i = 0; i < count; ++i) {
+      Svd3f.decompose(matrices, i * 9, single, 0);
+      Polar3f.decompose(matrices, i * 9, r, 0, p, 0);
+      for (int j = 0; j < Svd3f.RESULT_SIZE; ++j) {
+        assertEquals(single[j], svd[i * Svd3f.RESULT_SIZE + j], 0);
+      }
+      for (int j = 0; j < 9; ++j) {
+        assertEquals(r[j], rotations[i * 9 + j], 0);
+        assertEquals(r[j], inPlace[i * 9 + j], 0);
+        assertEquals(p[j], stretches[i * 9 + j], 0);
+      }
+    }
+  }
+}
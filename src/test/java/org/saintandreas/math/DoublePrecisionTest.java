@@ -0,0 +1,153 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DoublePrecisionTest {
+  // about the radius of the earth
+  private static final Vector3d FAR = new Vector3d(6371000.25, -1234567.125, 4000000.0625);
+
+  private static void assertMatrix(Matrix4d expected, Matrix4f actual, double delta) {
+    double[] e = new double[16];
+    expected.get(e, 0);
+    float[] a = new float[16];
+    actual.get(a, true);
+    for (int i = 0; i < 16; ++i) {
+      assertEquals("element " + i, e[i], a[i], delta);
+    }
+  }
+
+  @Test
+  public void testVector() {
+    Vector3d a = new Vector3d(1, 2, 3);
+    Vector3d b = new Vector3d(new Vector3f(-4, 5, 0.5f));
+    assertEquals(new Vector3f(1, 2, 3).cross(new Vector3f(-4, 5, 0.5f)), a.cross(b).toVector3f());
+    assertEquals(new Vector3f(1, 2, 3).dot(new Vector3f(-4, 5, 0.5f)), a.dot(b), 0);
+    assertEquals(1, a.normalize().length(), 1e-15);
+    assertEquals(a, new Vector3d(a.toArray()));
+    assertEquals(a.hashCode(), new Vector3d(1, 2, 3).hashCode());
+    assertEquals(new Vector3d(-1.5, 3.5, 1.75), a.interpolate(b, 0.5));
+
+    // a centimeter away from a point far from the origin
+    Vector3d near = FAR.add(0.01, -0.02, 0.03);
+    assertEquals(new Vector3f(0.01f, -0.02f, 0.03f), near.toVector3f(FAR));
+    Vector3f lost = near.toVector3f().subtract(FAR.toVector3f());
+    assertTrue(Math.abs(lost.x - 0.01f) > 0.001f);
+  }
+
+  @Test
+  public void testQuaternion() {
+    Random random = new Random(43);
+    for (int i = 0; i < 100; ++i) {
+      Vector3f axis = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+          random.nextFloat() - 0.5f);
+      float angle = random.nextFloat() * 6;
+      Quaternion qf = Quaternion.fromAngleAxis(angle, axis);
+      Quaterniond q = Quaterniond.fromAngleAxis(angle, new Vector3d(axis));
+      assertEquals(0, 1 - Math.abs(q.dot(new Quaterniond(qf))), 1e-6);
+      Vector3f v = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+      Vector3d rotated = q.mult(new Vector3d(v));
+      assertTrue(qf.mult(v).distance(rotated.toVector3f()) < 1e-5f);
+      assertTrue(q.toRotationMatrix4d().multNormal(new Vector3d(v)).distance(rotated) < 1e-12);
+      assertEquals(0, 1 - Math.abs(q.dot(q.toRotationMatrix4d().toRotationQuat())), 1e-12);
+      assertEquals(1, q.mult(q.inverse()).w, 1e-15);
+
+      Quaterniond r = Quaterniond.fromAngleAxis(random.nextFloat() * 6, new Vector3d(random.nextGaussian(),
+          random.nextGaussian(), random.nextGaussian()));
+      Quaterniond half = q.slerp(r, 0.5);
+      assertEquals(1, half.norm(), 1e-12);
+      assertEquals(Math.abs(q.dot(half)), Math.abs(r.dot(half)), 1e-12);
+      assertEquals(0, 1 - Math.abs(q.nlerp(r, 0.5).dot(half)), 1e-12);
+    }
+  }
+
+  @Test
+  public void testMatrix() {
+    Matrix4d m = Matrix4d.translation(FAR).rotate(0.7, new Vector3d(1, 2, 3)).scale(new Vector3d(2, 3, 4));
+    Matrix4d inverse = m.invert();
+    double[] product = new double[16];
+    m.mult(inverse).get(product, 0);
+    double[] identity = new double[16];
+    Matrix4d.IDENTITY.get(identity, 0);
+    for (int i = 0; i < 16; ++i) {
+      assertEquals(identity[i], product[i], 1e-9);
+    }
+    assertEquals(24, m.determinant(), 1e-9);
+    Vector3d point = new Vector3d(0.25, 0.5, -0.125);
+    assertTrue(inverse.mult(m.mult(point)).distance(point) < 1e-9);
+    assertEquals(m, m.transpose().transpose());
+
+    // model and view matrices converted against the eye compose to the same
+    // model view matrix as in double, without the far translation
+    Vector3d eye = FAR.add(10, 20, 30);
+    Matrix4d view = Matrix4d.lookat(eye, FAR, Vector3d.UNIT_Y);
+    Matrix4f viewf = view.toViewMatrix4f(eye);
+    assertEquals(0, viewf.m03, 1e-6);
+    assertEquals(0, viewf.m13, 1e-6);
+    assertEquals(0, viewf.m23, 1e-6);
+    Matrix4d modelView = view.mult(m);
+    Matrix4f relative = m.toMatrix4f(eye);
+    assertMatrix(modelView, viewf.mult(relative), 1e-5);
+    // compared with converting straight to float
+    Matrix4f direct = view.toMatrix4f().mult(m.toMatrix4f());
+    assertTrue(Math.abs(direct.m23 - modelView.m23) > 1e-2);
+
+    // the bulk form matches the single one
+    double[] matrices = new double[48];
+    m.get(matrices, 0);
+    view.get(matrices, 16);
+    modelView.get(matrices, 32);
+    FloatBuffer result = FloatBuffer.allocate(50);
+    result.position(2);
+    Matrix4d.rebase(matrices, 0, eye, result, 3, false);
+    assertEquals(2, result.position());
+    assertMatrix(new Matrix4d(m.toMatrix4f(eye)), new Matrix4f(copy(result, 2), true), 0);
+    Matrix4d.rebase(matrices, 16, eye, result, 2, true);
+    assertMatrix(new Matrix4d(modelView.toMatrix4f(eye)), new Matrix4f(copy(result, 18), false), 0);
+  }
+
+  private static float[] copy(FloatBuffer buffer, int offset) {
+    float[] values = new float[16];
+    for (int i = 0; i < 16; ++i) {
+      values[i] = buffer.get(offset + i);
+    }
+    return values;
+  }
+
+  @Test
+  public void testRebase() {
+    Random random = new Random(7);
+    int count = 1000;
+    double[] positions = new double[count * 3];
+    for (int i = 0; i < positions.length; ++i) {
+      positions[i] = FAR.get(i % 3) + random.nextGaussian() * 100;
+    }
+    float[] result = new float[count * 3 + 1];
+    Vector3d.rebase(positions, 0, FAR, result, 1, count);
+    FloatBuffer buffer = FloatBuffer.allocate(count * 3 + 4);
+    buffer.position(4);
+    DoubleBuffer source = DoubleBuffer.wrap(positions);
+    Vector3d.rebase(source, FAR, buffer, count);
+    assertEquals(4, buffer.position());
+    for (int i = 0; i < count; ++i) {
+      Vector3d p = new Vector3d(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+      Vector3f expected = p.toVector3f(FAR);
+      for (int c = 0; c < 3; ++c) {
+        assertEquals(expected.get(c), result[1 + i * 3 + c], 0);
+        assertEquals(expected.get(c), buffer.get(4 + i * 3 + c), 0);
+        // within a float ulp of the exact offset
+        assertEquals(positions[i * 3 + c] - FAR.get(c), result[1 + i * 3 + c], Math.ulp(expected.get(c)));
+      }
+    }
+    try {
+      Vector3d.rebase(source, FAR, FloatBuffer.allocate(3), 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
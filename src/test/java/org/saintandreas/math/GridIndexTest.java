@@ -0,0 +1,172 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GridIndexTest {
+  // interleaves bit by bit, as the oracle for the shift and mask versions
+  private static long interleave(long[] values, int bits) {
+    long code = 0;
+    for (int b = 0; b < bits; ++b) {
+      for (int i = 0; i < values.length; ++i) {
+        code |= ((values[i] >>> b) & 1) << (b * values.length + i);
+      }
+    }
+    return code;
+  }
+
+  @Test
+  public void testMorton() {
+    Random random = new Random(44);
+    for (int i = 0; i < 10000; ++i) {
+      int x = random.nextInt(), y = random.nextInt();
+      long code = Morton.encode(x, y);
+      long ux = (x ^ Integer.MIN_VALUE) & 0xFFFFFFFFL, uy = (y ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+      assertEquals(interleave(new long[] { ux, uy }, 32), code);
+      assertEquals(new Vector2i(x, y), Vector2i.fromMorton(code));
+
+      int a = random.nextInt(1 << 21) + Morton.MIN_3D, b = random.nextInt(1 << 21) + Morton.MIN_3D,
+          c = random.nextInt(1 << 21) + Morton.MIN_3D;
+      code = new Vector3i(a, b, c).morton();
+      long ua = a - Morton.MIN_3D, ub = b - Morton.MIN_3D, uc = c - Morton.MIN_3D;
+      assertEquals(interleave(new long[] { ua, ub, uc }, 21), code);
+      assertEquals(new Vector3i(a, b, c), Vector3i.fromMorton(code));
+    }
+    // the order is continuous across zero
+    assertTrue(Morton.encode(-1, -1, -1) < Morton.encode(0, 0, 0));
+    assertEquals((1L << 60) - 1, Morton.encode(-1, -1, -1));
+    assertTrue(Morton.encode(-1, 5) < Morton.encode(0, 5));
+  }
+
+  private static void checkHilbert2(int order) {
+    int size = 1 << order;
+    Vector2i previous = null;
+    Set<Vector2i> seen = new HashSet<>();
+    for (long d = 0; d < (long) size * size; ++d) {
+      Vector2i v = Vector2i.fromHilbert(d, order);
+      assertTrue(v.x >= 0 && v.x < size && v.y >= 0 && v.y < size);
+      assertEquals(d, v.hilbert(order));
+      assertTrue(seen.add(v));
+      if (previous != null) {
+        assertEquals(1, previous.manhattanDistance(v));
+      }
+      previous = v;
+    }
+  }
+
+  private static void checkHilbert3(int order) {
+    int size = 1 << order;
+    Vector3i previous = null;
+    Set<Vector3i> seen = new HashSet<>();
+    for (long d = 0; d < (long) size * size * size; ++d) {
+      Vector3i v = Vector3i.fromHilbert(d, order);
+      assertTrue(v.x >= 0 && v.x < size && v.y >= 0 && v.y < size && v.z >= 0 && v.z < size);
+      assertEquals(d, v.hilbert(order));
+      assertTrue(seen.add(v));
+      if (previous != null) {
+        assertEquals(1, previous.manhattanDistance(v));
+      }
+      previous = v;
+    }
+  }
+
+  @Test
+  public void testHilbert() {
+    for (int order = 1; order <= 6; ++order) {
+      checkHilbert2(order);
+    }
+    for (int order = 1; order <= 4; ++order) {
+      checkHilbert3(order);
+    }
+    // round trips at the largest orders
+    Random random = new Random(3);
+    for (int i = 0; i < 10000; ++i) {
+      Vector2i v = new Vector2i(random.nextInt() >>> 1, random.nextInt() >>> 1);
+      assertEquals(v, Vector2i.fromHilbert(v.hilbert(31), 31));
+      Vector3i w = new Vector3i(random.nextInt(1 << 21), random.nextInt(1 << 21), random.nextInt(1 << 21));
+      long d = w.hilbert(21);
+      assertTrue(d >= 0);
+      assertEquals(w, Vector3i.fromHilbert(d, 21));
+    }
+    try {
+      Hilbert.encode(0, 0, 0, 22);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testVectors() {
+    Vector3i a = new Vector3i(-7, 3, 12);
+    assertEquals(new Vector3i(-1, 0, 1), a.floorDiv(8));
+    assertEquals(new Vector3i(1, 3, 4), a.floorMod(8));
+    assertEquals(a, a.floorDiv(8).mult(8).add(a.floorMod(8)));
+    assertEquals(new Vector3i(3, -4, 0).cross(new Vector3i(1, 2, 5)).toVector3f(),
+        new Vector3f(3, -4, 0).cross(new Vector3f(1, 2, 5)));
+    assertEquals(3L * Integer.MAX_VALUE * Integer.MAX_VALUE,
+        Vector3i.UNIT_XYZ.mult(Integer.MAX_VALUE).lengthSquared());
+    assertEquals(-9, new Vector2i(1, 2).determinant(new Vector2i(5, 1)));
+
+    // neighboring cells hash apart
+    Set<Integer> hashes = new HashSet<>();
+    for (int x = 0; x < 16; ++x) {
+      for (int y = 0; y < 16; ++y) {
+        for (int z = 0; z < 16; ++z) {
+          hashes.add(new Vector3i(x, y, z).hashCode() & 4095);
+        }
+      }
+    }
+    assertTrue(hashes.size() > 2000);
+  }
+
+  @Test
+  public void testCells() {
+    Random random = new Random(9);
+    int count = 5000;
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < xyz.length; ++i) {
+      xyz[i] = (random.nextFloat() - 0.5f) * 1000;
+    }
+    Vector3f origin = new Vector3f(1.5f, -2, 0.25f);
+    int[] cells = new int[count * 3];
+    Vector3i.cells(xyz, count, origin, 2.5f, cells);
+    long[] codes = new long[count];
+    Morton.encode(xyz, count, origin, 2.5f, codes);
+    for (int i = 0; i < count; ++i) {
+      Vector3i cell = Vector3i.cell(new Vector3f(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]), origin, 2.5f);
+      assertEquals(cell, new Vector3i(cells[i * 3], cells[i * 3 + 1], cells[i * 3 + 2]));
+      assertEquals(cell.morton(), codes[i]);
+      for (int c = 0; c < 3; ++c) {
+        float low = origin.get(c) + cell.get(c) * 2.5f;
+        assertTrue(xyz[i * 3 + c] >= low - 1e-3f && xyz[i * 3 + c] < low + 2.5f + 1e-3f);
+      }
+    }
+    float[] xy = { -0.5f, 0.5f, 3.99f, -4 };
+    int[] cells2 = new int[4];
+    Vector2i.cells(xy, 2, Vector2f.ZERO, 2, cells2);
+    assertArrayEquals(new int[] { -1, 0, 1, -2 }, cells2);
+
+    // far points clamp to the edge of the code
+    Morton.encode(new float[] { 1e30f, -1e30f, Float.NaN }, 1, Vector3f.ZERO, 1, codes);
+    assertEquals(new Vector3i(Morton.MAX_3D, Morton.MIN_3D, 0), Vector3i.fromMorton(codes[0]));
+    Morton.encode(xyz, count, origin, 2.5f, codes);
+
+    int[] order = new int[count];
+    Morton.sort(codes, count, order);
+    Set<Integer> seen = new HashSet<>();
+    for (int i = 0; i < count; ++i) {
+      assertTrue(seen.add(order[i]));
+      if (i > 0) {
+        assertTrue(Long.compareUnsigned(codes[order[i - 1]], codes[order[i]]) <= 0);
+        if (codes[order[i - 1]] == codes[order[i]]) {
+          assertTrue(order[i - 1] < order[i]);
+        }
+      }
+    }
+  }
+}
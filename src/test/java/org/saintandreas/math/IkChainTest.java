@@ -0,0 +1,192 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IkChainTest {
+  private static final Vector3f BONE = new Vector3f(0, 1, 0);
+
+  private static IkChain chain(int bones) {
+    Vector3f[] offsets = new Vector3f[bones];
+    for (int i = 0; i < bones; ++i) {
+      offsets[i] = BONE;
+    }
+    return new IkChain(offsets);
+  }
+
+  private static Vector3f randomTarget(Random random, float radius) {
+    Vector3f v = new Vector3f((float) random.nextGaussian(), (float) random.nextGaussian(),
+        (float) random.nextGaussian()).normalize();
+    return v.mult(radius * random.nextFloat());
+  }
+
+  private static void assertLengths(IkChain chain) {
+    for (int i = 0; i < chain.getBoneCount(); ++i) {
+      float length = chain.getPosition(i + 1).subtract(chain.getPosition(i)).length();
+      assertEquals(chain.getLength(i), length, 1e-4f);
+    }
+  }
+
+  // the swing of the bone from its rest direction, and the twist about it
+  private static float swingAngle(Quaternion q, Vector3f axis) {
+    return FastMath.acos(FastMath.clamp(q.mult(axis).dot(axis), -1, 1));
+  }
+
+  private static float twistAngle(Quaternion q, Vector3f axis) {
+    if (q.w < 0) {
+      q = q.negate();
+    }
+    return 2 * FastMath.atan2(q.x * axis.x + q.y * axis.y + q.z * axis.z, q.w);
+  }
+
+  @Test
+  public void testTwoBone() {
+    Random random = new Random(47);
+    IkChain chain = new IkChain(new Vector3f(0, 2, 0), new Vector3f(0, 1.5f, 0));
+    for (int i = 0; i < 200; ++i) {
+      Vector3f target = randomTarget(random, 3.4f);
+      if (target.length() < 0.6f) {
+        continue;
+      }
+      Vector3f pole = new Vector3f(0, 0, 5);
+      assertEquals(0, chain.solveTwoBone(target, pole), 1e-4f);
+      assertEquals(0, chain.getEffector().distance(target), 1e-4f);
+      assertLengths(chain);
+      // the middle joint bends towards the pole, in the plane of the target
+      Vector3f normal = target.cross(pole).normalize();
+      assertEquals(0, chain.getPosition(1).dot(normal), 1e-4f);
+      Vector3f d = target.normalize();
+      Vector3f side = pole.subtract(d.mult(pole.dot(d)));
+      assertTrue(chain.getPosition(1).dot(side) >= -1e-4f);
+    }
+
+    // out of reach, the chain points straight at the target
+    Vector3f target = new Vector3f(10, 0, 0);
+    assertEquals(6.5f, chain.solveTwoBone(target, null), 1e-4f);
+    assertEquals(3.5f, chain.getEffector().x, 1e-4f);
+    assertEquals(2, chain.getPosition(1).x, 1e-4f);
+
+    try {
+      chain(1).solveTwoBone(target, null);
+      fail();
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testIterative() {
+    Random random = new Random(48);
+    for (int i = 0; i < 100; ++i) {
+      Vector3f target = randomTarget(random, 4.5f);
+      IkChain ccd = chain(5);
+      IkChain fabrik = chain(5);
+      ccd.setRoot(Vector3f.ZERO, Quaternion.IDENTITY);
+      float ccdDistance = ccd.solveCcd(target, 100, 1e-3f);
+      float fabrikDistance = fabrik.solveFabrik(target, 100, 1e-3f);
+      assertEquals(ccdDistance, ccd.getEffector().distance(target), 1e-5f);
+      assertEquals(fabrikDistance, fabrik.getEffector().distance(target), 1e-5f);
+      assertTrue(target + " " + ccdDistance, ccdDistance <= 1e-3f);
+      assertTrue(target + " " + fabrikDistance, fabrikDistance <= 1e-3f);
+      assertLengths(ccd);
+      assertLengths(fabrik);
+      assertEquals(Vector3f.ZERO, fabrik.getPosition(0));
+    }
+  }
+
+  @Test
+  public void testUnreachable() {
+    Vector3f root = new Vector3f(1, 2, 3);
+    Vector3f target = new Vector3f(20, 2, 3);
+    IkChain ccd = chain(4);
+    IkChain fabrik = chain(4);
+    ccd.setRoot(root, Quaternion.IDENTITY);
+    fabrik.setRoot(root, Quaternion.IDENTITY);
+    // the solvers stop once they stop making progress
+    assertEquals(15, ccd.solveCcd(target, 1000, 1e-3f), 1e-3f);
+    assertEquals(15, fabrik.solveFabrik(target, 1000, 1e-3f), 1e-3f);
+    assertEquals(root, fabrik.getPosition(0));
+    assertLengths(fabrik);
+  }
+
+  @Test
+  public void testLimits() {
+    Random random = new Random(49);
+    float swing = 0.4f, minTwist = -0.1f, maxTwist = 0.2f;
+    for (int i = 0; i < 100; ++i) {
+      Vector3f target = randomTarget(random, 5);
+      IkChain ccd = chain(5);
+      IkChain fabrik = chain(5);
+      for (int j = 0; j < 5; ++j) {
+        ccd.setLimits(j, swing, minTwist, maxTwist);
+        fabrik.setLimits(j, swing, minTwist, maxTwist);
+      }
+      ccd.solveCcd(target, 50, 1e-3f);
+      fabrik.solveFabrik(target, 50, 1e-3f);
+      for (IkChain chain : new IkChain[] { ccd, fabrik }) {
+        assertLengths(chain);
+        for (int j = 0; j < 5; ++j) {
+          Quaternion q = chain.getRotation(j);
+          assertEquals(1, q.norm(), 1e-4f);
+          assertTrue(q.toString(), swingAngle(q, BONE) <= swing + 1e-3f);
+          float twist = twistAngle(q, BONE);
+          assertTrue(q.toString(), twist >= minTwist - 1e-3f && twist <= maxTwist + 1e-3f);
+        }
+      }
+    }
+
+    // a target the limits allow is still reached
+    IkChain chain = chain(5);
+    for (int j = 0; j < 5; ++j) {
+      chain.setLimits(j, swing, minTwist, maxTwist);
+    }
+    assertTrue(chain.solveFabrik(new Vector3f(1, 4.5f, 0), 50, 1e-3f) <= 1e-3f);
+
+    try {
+      chain.setLimits(0, -1, 0, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      chain.setLimits(0, 1, 0.5f, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testBatch() {
+    Random random = new Random(50);
+    int count = 100;
+    IkChain[] ccd = new IkChain[count];
+    IkChain[] fabrik = new IkChain[count];
+    IkChain[] twoBone = new IkChain[count];
+    float[] targets = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      ccd[i] = chain(4);
+      fabrik[i] = chain(4);
+      twoBone[i] = chain(2);
+      Vector3f target = randomTarget(random, 4);
+      targets[i * 3] = target.x;
+      targets[i * 3 + 1] = target.y;
+      targets[i * 3 + 2] = target.z;
+    }
+    IkChain.solveCcd(ccd, targets, count, 20, 1e-3f);
+    IkChain.solveFabrik(fabrik, targets, count, 20, 1e-3f);
+    IkChain.solveTwoBone(twoBone, targets, null, count);
+    for (int i = 0; i < count; ++i) {
+      Vector3f target = new Vector3f(targets[i * 3], targets[i * 3 + 1], targets[i * 3 + 2]);
+      IkChain single = chain(4);
+      single.solveCcd(target, 20, 1e-3f);
+      assertEquals(single.getEffector(), ccd[i].getEffector());
+      single = chain(4);
+      single.solveFabrik(target, 20, 1e-3f);
+      assertEquals(single.getEffector(), fabrik[i].getEffector());
+      single = chain(2);
+      single.solveTwoBone(target, null);
+      assertEquals(single.getEffector(), twoBone[i].getEffector());
+    }
+  }
+}
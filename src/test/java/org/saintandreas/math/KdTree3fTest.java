@@ -0,0 +1,112 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class KdTree3fTest {
+
+  private static Vector3f[] randomPoints(Random r, int count) {
+    Vector3f[] result = new Vector3f[count];
+    for (int i = 0; i < count; ++i) {
+      // quantized so that there are plenty of duplicate coordinates
+      result[i] = new Vector3f(r.nextInt(64), r.nextInt(64), r.nextInt(64)).mult(1f / 16f);
+    }
+    return result;
+  }
+
+  @Test
+  public void testNearestMatchesBruteForce() {
+    Random r = new Random(3);
+    Vector3f[] points = randomPoints(r, 40000);
+    KdTree3f tree = KdTree3f.build(points);
+    assertEquals(points.length, tree.size());
+    int[] knn = new int[8];
+    float[] knnDistances = new float[8];
+    float[] expected = new float[points.length];
+    for (int q = 0; q < 50; ++q) {
+      Vector3f query = new Vector3f(r.nextFloat() * 4, r.nextFloat() * 4, r.nextFloat() * 4);
+      for (int i = 0; i < points.length; ++i) {
+        expected[i] = points[i].distanceSquared(query);
+      }
+      float[] sorted = expected.clone();
+      Arrays.sort(sorted);
+      assertEquals(sorted[0], expected[tree.nearest(query)], 0);
+      assertEquals(knn.length, tree.nearest(query, knn, knnDistances));
+      for (int i = 0; i < knn.length; ++i) {
+        assertEquals(sorted[i], knnDistances[i], 0);
+        assertEquals(sorted[i], expected[knn[i]], 0);
+      }
+    }
+  }
+
+  @Test
+  public void testRadiusAndBox() {
+    Random r = new Random(5);
+    Vector3f[] points = randomPoints(r, 20000);
+    KdTree3f tree = KdTree3f.build(points);
+    int[] result = new int[points.length];
+    for (int q = 0; q < 20; ++q) {
+      Vector3f query = new Vector3f(r.nextFloat() * 4, r.nextFloat() * 4, r.nextFloat() * 4);
+      float radius = r.nextFloat();
+      int expected = 0;
+      for (Vector3f p : points) {
+        if (p.distanceSquared(query) <= radius * radius) {
+          ++expected;
+        }
+      }
+      int count = tree.withinRadius(query, radius, result);
+      assertEquals(expected, count);
+      for (int i = 0; i < count; ++i) {
+        assertTrue(points[result[i]].distanceSquared(query) <= radius * radius);
+      }
+
+      Vector3f min = query.subtract(radius), max = query.add(radius);
+      expected = 0;
+      for (Vector3f p : points) {
+        if (p.x >= min.x && p.y >= min.y && p.z >= min.z && p.x <= max.x
+            && p.y <= max.y && p.z <= max.z) {
+          ++expected;
+        }
+      }
+      assertEquals(expected, tree.withinBox(min, max, result));
+      // overflowing results are counted but not stored
+      assertEquals(expected, tree.withinBox(min, max, new int[1]));
+    }
+  }
+
+  @Test
+  public void testSmallTrees() {
+    KdTree3f empty = KdTree3f.build(new float[0]);
+    assertEquals(-1, empty.nearest(0, 0, 0));
+    assertEquals(0, empty.nearest(0, 0, 0, new int[4], new float[4]));
+
+    KdTree3f two = KdTree3f.build(new float[] { 0, 0, 0, 1, 1, 1 });
+    int[] result = new int[4];
+    assertEquals(2, two.nearest(0.9f, 0.9f, 0.9f, result, new float[4]));
+    assertEquals(1, result[0]);
+    assertEquals(0, result[1]);
+  }
+
+  @Test
+  public void testInvalid() {
+    try {
+      KdTree3f.build(new float[4]);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    FloatBuffer buffer = FloatBuffer.wrap(new float[7]);
+    try {
+      KdTree3f.build(buffer);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    buffer.position(1);
+    assertEquals(2, KdTree3f.build(buffer).size());
+    assertEquals(1, buffer.position());
+  }
+}
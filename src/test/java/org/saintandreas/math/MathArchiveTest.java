@@ -0,0 +1,119 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MathArchiveTest {
+  private static Vector3f[] positions(int count) {
+    Vector3f[] result = new Vector3f[count];
+    for (int i = 0; i < count; ++i) {
+      result[i] = new Vector3f(i, -i, i * 0.5f);
+    }
+    return result;
+  }
+
+  private static Path write(int count) throws IOException {
+    Path path = Files.createTempFile("archive", ".bin");
+    try (MathArchiveWriter writer = new MathArchiveWriter(path)) {
+      writer.add("positions", positions(count));
+      writer.add("rotations", new Quaternion[] { Quaternion.fromAngleAxis(0.5f, Vector3f.UNIT_X) });
+      writer.add("poses", new Matrix4f[] { Matrix4f.IDENTITY,
+          new Matrix4f(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16) });
+      FloatBuffer weights = FloatBuffer.wrap(new float[] { 9, 1, 2, 3 });
+      weights.position(1);
+      writer.add("weights", 1, weights);
+      assertEquals(1, weights.position());
+      writer.add("empty", 9, new float[0]);
+    }
+    return path;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path path = write(100);
+    try (MathArchive archive = new MathArchive(path)) {
+      assertEquals(Arrays.asList("positions", "rotations", "poses", "weights", "empty"),
+          Arrays.asList(archive.getNames().toArray()));
+      assertNull(archive.get("missing"));
+      MappedFloatArray positions = archive.get("positions");
+      assertEquals(100, positions.size());
+      assertEquals(3, positions.getComponents());
+      assertEquals(new Vector3f(42, -42, 21), positions.getVector3f(42));
+      assertEquals(Quaternion.fromAngleAxis(0.5f, Vector3f.UNIT_X), archive.get("rotations").getQuaternion(0));
+      MappedFloatArray poses = archive.get("poses");
+      assertEquals(Matrix4f.IDENTITY, poses.getMatrix4f(0));
+      assertEquals(7, poses.getMatrix4f(1).m12, 0);
+      assertEquals(2, archive.get("weights").getFloat(1, 0), 0);
+      assertEquals(0, archive.get("empty").size());
+      assertEquals(0, archive.get("empty").getFloats(0, 0).remaining());
+      FloatBuffer slice = positions.getFloats(10, 2);
+      assertEquals(6, slice.remaining());
+      assertEquals(-11, slice.get(4), 0);
+      try {
+        positions.getMatrix4f(0);
+        fail();
+      } catch (IllegalStateException e) {
+      }
+      try {
+        positions.getVector3f(100);
+        fail();
+      } catch (IndexOutOfBoundsException e) {
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testChunks() throws IOException {
+    // a whole number of chunks
+    Path path = write(1008);
+    try (MathArchive archive = new MathArchive(path, 256)) {
+      MappedFloatArray positions = archive.get("positions");
+      assertEquals(16, positions.getChunkSize());
+      Vector3f[] expected = positions(1000);
+      for (int i = 0; i < 1000; ++i) {
+        assertEquals(expected[i], positions.getVector3f(i));
+      }
+      float[] floats = new float[3 * 100];
+      positions.get(7, floats, 0, 100);
+      for (int i = 0; i < 100; ++i) {
+        assertEquals(i + 7, floats[i * 3], 0);
+      }
+      assertEquals(16 * 3, positions.getFloats(32, 16).remaining());
+      assertEquals(16 * 3, positions.getFloats(992, 16).remaining());
+      assertEquals(0, positions.getFloats(1008, 0).remaining());
+      try {
+        positions.getFloats(30, 4);
+        fail();
+      } catch (IllegalArgumentException e) {
+      }
+      assertEquals(4, archive.get("poses").getChunkSize());
+      assertEquals(Matrix4f.IDENTITY, archive.get("poses").getMatrix4f(0));
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testInvalid() throws IOException {
+    Path path = Files.createTempFile("archive", ".bin");
+    try {
+      Files.write(path, new byte[] { 'N', 'O', 'P', 'E', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+      try {
+        new MathArchive(path).close();
+        fail();
+      } catch (IOException e) {
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MathCodecTest {
+  private static void roundTrip(ByteOrder order) {
+    ByteBuffer buffer = ByteBuffer.allocate(1024).order(order);
+    Vector2f v2 = new Vector2f(1.5f, -2);
+    Vector3f v3 = new Vector3f(Float.NaN, -0.0f, Float.MIN_VALUE);
+    Vector4f v4 = new Vector4f(1, 2, 3, 4);
+    Quaternion q = Quaternion.fromAngleAxis(0.7f, Vector3f.UNIT_Y);
+    Matrix3f m3 = new Matrix3f(1, 2, 3, 4, 5, 6, 7, 8, 9);
+    Matrix4f m4 = new Matrix4f(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16);
+    Vector3f[] array = { Vector3f.UNIT_X, v3, Vector3f.ZERO };
+    MathCodec.put(buffer, v2);
+    MathCodec.put(buffer, v3);
+    MathCodec.put(buffer, v4);
+    MathCodec.put(buffer, q);
+    MathCodec.put(buffer, m3);
+    MathCodec.put(buffer, m4);
+    MathCodec.put(buffer, array);
+    MathCodec.put(buffer, new Matrix4f[] { m4, Matrix4f.IDENTITY });
+    MathCodec.put(buffer, new Quaternion[] { q });
+    MathCodec.put(buffer, new Matrix3f[] { m3 });
+    MathCodec.put(buffer, new Vector2f[] { v2 });
+    MathCodec.put(buffer, new Vector4f[0]);
+    assertEquals(8 + 12 + 16 + 16 + 36 + 64 + 4 + 36 + 4 + 128 + 4 + 16 + 4 + 36 + 4 + 8 + 4,
+        buffer.position());
+    buffer.flip();
+    assertEquals(v2, MathCodec.getVector2f(buffer));
+    assertEquals(v3, MathCodec.getVector3f(buffer));
+    assertEquals(v4, MathCodec.getVector4f(buffer));
+    assertEquals(q, MathCodec.getQuaternion(buffer));
+    assertEquals(m3, MathCodec.getMatrix3f(buffer));
+    assertEquals(m4, MathCodec.getMatrix4f(buffer));
+    assertArrayEquals(array, MathCodec.getVector3fArray(buffer));
+    assertArrayEquals(new Matrix4f[] { m4, Matrix4f.IDENTITY }, MathCodec.getMatrix4fArray(buffer));
+    assertArrayEquals(new Quaternion[] { q }, MathCodec.getQuaternionArray(buffer));
+    assertArrayEquals(new Matrix3f[] { m3 }, MathCodec.getMatrix3fArray(buffer));
+    assertArrayEquals(new Vector2f[] { v2 }, MathCodec.getVector2fArray(buffer));
+    assertEquals(0, MathCodec.getVector4fArray(buffer).length);
+    assertFalse(buffer.hasRemaining());
+    assertEquals(order, buffer.order());
+  }
+
+  @Test
+  public void testRoundTrip() {
+    roundTrip(ByteOrder.LITTLE_ENDIAN);
+    roundTrip(ByteOrder.BIG_ENDIAN);
+  }
+
+  @Test
+  public void testLayout() {
+    // the same little endian bytes whatever the order of the buffer
+    byte[] expected = { 0, 0, (byte) 0x80, 0x3f, 0, 0, 0, 0x40, 0, 0, 0x40, 0x40 };
+    for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+      ByteBuffer buffer = ByteBuffer.allocate(12).order(order);
+      MathCodec.put(buffer, new Vector3f(1, 2, 3));
+      assertArrayEquals(expected, buffer.array());
+      buffer = ByteBuffer.allocate(16).order(order);
+      MathCodec.put(buffer, new Vector3f[] { new Vector3f(1, 2, 3) });
+      assertEquals(1, buffer.array()[0]);
+      assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 4, 16));
+    }
+  }
+
+  @Test
+  public void testFloats() {
+    float[] values = { 1, 2, 3, 4, 5 };
+    ByteBuffer buffer = ByteBuffer.allocateDirect(20);
+    MathCodec.putFloats(buffer, values, 1, 3);
+    assertEquals(12, buffer.position());
+    buffer.flip();
+    float[] result = new float[4];
+    MathCodec.getFloats(buffer, result, 1, 3);
+    assertArrayEquals(new float[] { 0, 2, 3, 4 }, result, 0);
+    try {
+      // a count of two, with room for only one element
+      ByteBuffer truncated = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 2);
+      MathCodec.getVector3fArray(truncated);
+      fail();
+    } catch (BufferUnderflowException e) {
+    }
+  }
+
+  @Test
+  public void testOverflow() {
+    // room for the count and one of two elements, so nothing is written
+    ByteBuffer buffer = ByteBuffer.allocate(20);
+    buffer.put(0, (byte) 7);
+    try {
+      MathCodec.put(buffer, new Vector3f[] { Vector3f.UNIT_X, Vector3f.UNIT_Y });
+      fail();
+    } catch (BufferOverflowException e) {
+    }
+    assertEquals(0, buffer.position());
+    assertEquals(7, buffer.get(0));
+    try {
+      MathCodec.put(buffer, new Matrix4f[] { Matrix4f.IDENTITY });
+      fail();
+    } catch (BufferOverflowException e) {
+    }
+    assertEquals(0, buffer.position());
+    MathCodec.put(buffer, new Quaternion[] { Quaternion.IDENTITY });
+    assertEquals(20, buffer.position());
+
+    // single values, one float short of fitting
+    Object[] values = { Vector2f.UNIT_X, Vector3f.UNIT_X, new Vector4f(1, 2, 3, 4), Quaternion.IDENTITY,
+        Matrix3f.IDENTITY, Matrix4f.IDENTITY };
+    int[] sizes = { MathCodec.VECTOR2F_BYTES, MathCodec.VECTOR3F_BYTES, MathCodec.VECTOR4F_BYTES,
+        MathCodec.QUATERNION_BYTES, MathCodec.MATRIX3F_BYTES, MathCodec.MATRIX4F_BYTES };
+    for (int i = 0; i < values.length; ++i) {
+      buffer = ByteBuffer.allocate(sizes[i] - 4);
+      try {
+        put(buffer, values[i]);
+        fail();
+      } catch (BufferOverflowException e) {
+      }
+      assertEquals(0, buffer.position());
+      assertEquals(0, buffer.get(0));
+      buffer = ByteBuffer.allocate(sizes[i]);
+      put(buffer, values[i]);
+      assertEquals(sizes[i], buffer.position());
+    }
+  }
+
+  private static void put(ByteBuffer buffer, Object value) {
+    if (value instanceof Vector2f) {
+      MathCodec.put(buffer, (Vector2f) value);
+    } else if (value instanceof Vector3f) {
+      MathCodec.put(buffer, (Vector3f) value);
+    } else if (value instanceof Vector4f) {
+      MathCodec.put(buffer, (Vector4f) value);
+    } else if (value instanceof Quaternion) {
+      MathCodec.put(buffer, (Quaternion) value);
+    } else if (value instanceof Matrix3f) {
+      MathCodec.put(buffer, (Matrix3f) value);
+    } else {
+      MathCodec.put(buffer, (Matrix4f) value);
+    }
+  }
+}
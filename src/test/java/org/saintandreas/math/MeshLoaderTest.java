@@ -0,0 +1,232 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MeshLoaderTest {
+  private static ByteBuffer ascii(String text) {
+    return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testParseFloat() {
+    Random random = new Random(6);
+    StringBuilder text = new StringBuilder();
+    float[] expected = new float[2000];
+    for (int i = 0; i < expected.length; ++i) {
+      String token;
+      switch (i % 5) {
+      case 0:
+        token = Float.toString((float) random.nextGaussian() * 1000);
+        break;
+      case 1:
+        token = String.format("%.6f", random.nextDouble() * 2 - 1);
+        break;
+      case 2:
+        token = String.format("%.8e", random.nextGaussian() * Math.pow(10, random.nextInt(60) - 30));
+        break;
+      case 3:
+        token = Double.toString(random.nextDouble());
+        break;
+      default:
+        token = "+" + random.nextInt(1000) + ".";
+        break;
+      }
+      expected[i] = Float.parseFloat(token);
+      text.append(token).append(i % 7 == 0 ? "\t" : " ");
+    }
+    ByteBuffer buffer = ascii(text.toString());
+    AsciiScanner scanner = new AsciiScanner(buffer, 0, buffer.limit());
+    for (int i = 0; i < expected.length; ++i) {
+      float value = scanner.parseFloat();
+      assertTrue(i + ": " + expected[i] + " " + value, expected[i] == value
+          || Math.abs(expected[i] - value) <= Math.ulp(expected[i]));
+    }
+    scanner = new AsciiScanner(ascii("-0 1e400 NaN 12x"), 0, 16);
+    assertEquals(Float.floatToIntBits(-0f), Float.floatToIntBits(scanner.parseFloat()));
+    assertEquals(Float.POSITIVE_INFINITY, scanner.parseFloat(), 0);
+    assertTrue(Float.isNaN(scanner.parseFloat()));
+    try {
+      scanner.parseFloat();
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testObj() throws IOException {
+    String text = "# a textured square and a triangle\n" + "mtllib none.mtl\n" + "o square\n"
+        + "v 0 0 0\n" + "v 1 0 0\n" + "v 1 1 0\r\n" + "v 0 1 0 1.0\n" + "vt 0 0\n" + "vt 1 0\n" + "vt 1 1\n"
+        + "vt 0 1\n" + "vn 0 0 1\n" + "g square\n" + "usemtl red\n" + "f 1/1/1 2/2/1 3/3/1 4/4/1\n"
+        + "\n" + "v 5 5 -2\n" + "f -5/-4/-1 -4/-3/-1 -1/-1/-1 # shares two vertices\n";
+    MeshData mesh = ObjLoader.load(ascii(text), false);
+    assertEquals(5, mesh.getVertexCount());
+    assertEquals(3, mesh.getTriangleCount());
+    assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3, 0, 1, 4 }, mesh.getIndices());
+    assertArrayEquals(new float[] { 5, 5, -2 }, Arrays.copyOfRange(mesh.getPositions(), 12, 15), 0);
+    assertArrayEquals(new float[] { 0, 1 }, Arrays.copyOfRange(mesh.getTexCoords(), 6, 8), 0);
+    assertEquals(new Vector3f(0, 0, -2), mesh.getMin());
+    assertEquals(new Vector3f(5, 5, 0), mesh.getMax());
+    assertEquals(1, mesh.getNormals()[14], 0);
+
+    // positions only, with computed normals
+    mesh = ObjLoader.load(ascii("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 9 9 9\nf 1 2 3\n"), true);
+    assertEquals(4, mesh.getVertexCount());
+    assertNull(mesh.getTexCoords());
+    assertArrayEquals(new float[] { 0, 0, 1 }, Arrays.copyOf(mesh.getNormals(), 3), 1e-6f);
+
+    // a point cloud
+    mesh = ObjLoader.load(ascii("v 1 2 3\nvn 0 1 0\nv 4 5 6\nvn 1 0 0"), false);
+    assertEquals(0, mesh.getTriangleCount());
+    assertArrayEquals(new float[] { 0, 1, 0, 1, 0, 0 }, mesh.getNormals(), 0);
+
+    for (String invalid : new String[] { "v 1 2\n", "v 0 0 0\nf 1 2 3\n", "v 0 0 0\nf 0 1 1\n", "v a b c\n" }) {
+      try {
+        ObjLoader.load(ascii(invalid), false);
+        fail(invalid);
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  private static final int GRID = 320;
+
+  private static float height(int x, int y) {
+    return (float) Math.sin(x * 0.1) * (float) Math.cos(y * 0.07);
+  }
+
+  private static void checkGrid(MeshData mesh) {
+    assertEquals(GRID * GRID, mesh.getVertexCount());
+    assertEquals((GRID - 1) * (GRID - 1) * 2, mesh.getTriangleCount());
+    float[] positions = mesh.getPositions();
+    for (int y = 0; y < GRID; ++y) {
+      for (int x = 0; x < GRID; ++x) {
+        int i = (y * GRID + x) * 3;
+        assertEquals(x, positions[i], 0);
+        assertEquals(y, positions[i + 1], 0);
+        assertEquals(height(x, y), positions[i + 2], 1e-5f);
+      }
+    }
+    int[] indices = mesh.getIndices();
+    for (int q = 0; q < (GRID - 1) * (GRID - 1); ++q) {
+      int a = q / (GRID - 1) * GRID + q % (GRID - 1);
+      assertArrayEquals(new int[] { a, a + 1, a + GRID + 1, a, a + GRID + 1, a + GRID },
+          Arrays.copyOfRange(indices, q * 6, q * 6 + 6));
+    }
+    assertEquals(0, mesh.getMin().x, 0);
+    assertEquals(GRID - 1, mesh.getMax().y, 0);
+    assertEquals(GRID * GRID * 3, mesh.getNormals().length);
+  }
+
+  @Test
+  public void testLargeObj() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int y = 0; y < GRID; ++y) {
+      for (int x = 0; x < GRID; ++x) {
+        text.append("v ").append(x).append(' ').append(y).append(' ').append(height(x, y)).append('\n');
+      }
+    }
+    for (int y = 0; y < GRID - 1; ++y) {
+      for (int x = 0; x < GRID - 1; ++x) {
+        int a = y * GRID + x + 1;
+        text.append("f ").append(a).append(' ').append(a + 1).append(' ').append(a + GRID + 1).append(' ')
+            .append(a + GRID).append('\n');
+      }
+    }
+    assertTrue(text.length() > 2 << 20);
+    checkGrid(ObjLoader.load(ascii(text.toString()), true));
+  }
+
+  private static String plyHeader(String format) {
+    return "ply\nformat " + format + " 1.0\ncomment made by hand\nelement vertex " + GRID * GRID + "\n"
+        + "property float x\nproperty float y\nproperty double z\nproperty uchar red\n"
+        + "element face " + (GRID - 1) * (GRID - 1) + "\nproperty uchar flags\n"
+        + "property list uchar int vertex_indices\n" + "element edge 1\nproperty int vertex1\n"
+        + "property int vertex2\nend_header\n";
+  }
+
+  @Test
+  public void testAsciiPly() throws IOException {
+    StringBuilder text = new StringBuilder(plyHeader("ascii"));
+    for (int y = 0; y < GRID; ++y) {
+      for (int x = 0; x < GRID; ++x) {
+        text.append(x).append(' ').append(y).append(' ').append(height(x, y)).append(" 255\n");
+      }
+    }
+    for (int y = 0; y < GRID - 1; ++y) {
+      for (int x = 0; x < GRID - 1; ++x) {
+        int a = y * GRID + x;
+        text.append("7 4 ").append(a).append(' ').append(a + 1).append(' ').append(a + GRID + 1).append(' ')
+            .append(a + GRID).append('\n');
+      }
+    }
+    text.append("0 1\n");
+    checkGrid(PlyLoader.load(ascii(text.toString()), true));
+  }
+
+  @Test
+  public void testAsciiPlySkipsLargeElement() throws IOException {
+    // an unused element spanning several parsing chunks, ahead of the mesh
+    int edges = 200000;
+    StringBuilder text = new StringBuilder("ply\nformat ascii 1.0\nelement edge " + edges + "\n"
+        + "property int vertex1\nproperty int vertex2\nelement vertex 3\nproperty float x\n"
+        + "property float y\nproperty float z\nelement face 1\nproperty list uchar int vertex_indices\n"
+        + "end_header\n");
+    for (int i = 0; i < edges; ++i) {
+      text.append(i).append(' ').append(i + 1).append('\n');
+    }
+    assertTrue(text.length() > 2 << 20);
+    text.append("0 0 0\n1 0 0\n0 1 0\n3 0 1 2\n");
+    MeshData mesh = PlyLoader.load(ascii(text.toString()), false);
+    assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, mesh.getPositions(), 0);
+    assertArrayEquals(new int[] { 0, 1, 2 }, mesh.getIndices());
+  }
+
+  private static void binaryPly(ByteOrder order) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] header = plyHeader(order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian" : "binary_big_endian")
+        .getBytes(StandardCharsets.US_ASCII);
+    bytes.write(header, 0, header.length);
+    ByteBuffer data = ByteBuffer.allocate(GRID * GRID * 17 + (GRID - 1) * (GRID - 1) * 18 + 8).order(order);
+    for (int y = 0; y < GRID; ++y) {
+      for (int x = 0; x < GRID; ++x) {
+        data.putFloat(x).putFloat(y).putDouble(height(x, y)).put((byte) 255);
+      }
+    }
+    for (int y = 0; y < GRID - 1; ++y) {
+      for (int x = 0; x < GRID - 1; ++x) {
+        int a = y * GRID + x;
+        data.put((byte) 7).put((byte) 4).putInt(a).putInt(a + 1).putInt(a + GRID + 1).putInt(a + GRID);
+      }
+    }
+    data.putInt(0).putInt(1);
+    bytes.write(data.array(), 0, data.position());
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.size() + 3);
+    buffer.position(3);
+    buffer.put(bytes.toByteArray());
+    buffer.position(3);
+    checkGrid(PlyLoader.load(buffer, true));
+    assertEquals(3, buffer.position());
+  }
+
+  @Test
+  public void testBinaryPly() throws IOException {
+    binaryPly(ByteOrder.LITTLE_ENDIAN);
+    binaryPly(ByteOrder.BIG_ENDIAN);
+    try {
+      PlyLoader.load(ascii("ply\nformat ascii 1.0\nelement vertex 2\nproperty float x\nend_header\n1\n2\n"),
+          false);
+      fail();
+    } catch (IOException e) {
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MeshNormalsTest {
+  // a latitude and longitude sphere, with u running around the equator
+  private static final int RINGS = 40, SEGMENTS = 80;
+
+  private static float[] spherePositions() {
+    float[] result = new float[(RINGS + 1) * (SEGMENTS + 1) * 3];
+    for (int r = 0, i = 0; r <= RINGS; ++r) {
+      double polar = Math.PI * r / RINGS;
+      for (int s = 0; s <= SEGMENTS; ++s, i += 3) {
+        double azimuth = 2 * Math.PI * s / SEGMENTS;
+        result[i] = (float) (Math.sin(polar) * Math.cos(azimuth));
+        result[i + 1] = (float) (Math.sin(polar) * Math.sin(azimuth));
+        result[i + 2] = (float) Math.cos(polar);
+      }
+    }
+    return result;
+  }
+
+  private static int[] sphereIndices() {
+    int[] result = new int[RINGS * SEGMENTS * 6];
+    for (int r = 0, i = 0; r < RINGS; ++r) {
+      for (int s = 0; s < SEGMENTS; ++s, i += 6) {
+        int a = r * (SEGMENTS + 1) + s, b = a + SEGMENTS + 1;
+        result[i] = a;
+        result[i + 1] = b;
+        result[i + 2] = a + 1;
+        result[i + 3] = a + 1;
+        result[i + 4] = b;
+        result[i + 5] = b + 1;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testSphereNormals() {
+    float[] positions = spherePositions();
+    int[] indices = sphereIndices();
+    float[] normals = MeshNormals.computeNormals(positions, indices);
+    // away from the poles and the seam, which are not welded, the smooth
+    // normal of a sphere is its position
+    for (int r = 1; r < RINGS; ++r) {
+      for (int s = 1; s < SEGMENTS; ++s) {
+        int v = (r * (SEGMENTS + 1) + s) * 3;
+        for (int k = 0; k < 3; ++k) {
+          assertEquals(positions[v + k], normals[v + k], 1e-3);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFlatTriangle() {
+    Vector3f a = new Vector3f(0, 0, 0), b = new Vector3f(2, 0, 1), c = new Vector3f(0, 3, 1);
+    float[] positions = { a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z };
+    float[] normals = new float[9];
+    MeshNormals.computeNormals(FloatBuffer.wrap(positions), IntBuffer.wrap(new int[] { 0, 1, 2 }),
+        FloatBuffer.wrap(normals), false);
+    Vector3f expected = FastMath.computeNormal(a, b, c);
+    for (int v = 0; v < 3; ++v) {
+      assertEquals(expected.x, normals[v * 3], 1e-6);
+      assertEquals(expected.y, normals[v * 3 + 1], 1e-6);
+      assertEquals(expected.z, normals[v * 3 + 2], 1e-6);
+    }
+  }
+
+  @Test
+  public void testTangents() {
+    // a quad in the xy plane, mapped once directly and once mirrored in u
+    float[] positions = { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 };
+    float[] normals = { 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1 };
+    int[] indices = { 0, 1, 2, 0, 2, 3 };
+    float[] direct = { 0, 0, 1, 0, 1, 1, 0, 1 };
+    float[] mirrored = { 1, 0, 0, 0, 0, 1, 1, 1 };
+    float[] tangents = MeshNormals.computeTangents(positions, normals, direct, indices);
+    for (int v = 0; v < 4; ++v) {
+      assertArrayEquals(new float[] { 1, 0, 0, 1 },
+          Arrays.copyOfRange(tangents, v * 4, v * 4 + 4), 1e-6f);
+    }
+    tangents = MeshNormals.computeTangents(positions, normals, mirrored, indices);
+    for (int v = 0; v < 4; ++v) {
+      assertArrayEquals(new float[] { -1, 0, 0, -1 },
+          Arrays.copyOfRange(tangents, v * 4, v * 4 + 4), 1e-6f);
+    }
+  }
+
+  @Test
+  public void testSphereTangents() {
+    float[] positions = spherePositions();
+    int[] indices = sphereIndices();
+    float[] normals = MeshNormals.computeNormals(positions, indices);
+    float[] texCoords = new float[positions.length / 3 * 2];
+    for (int r = 0, i = 0; r <= RINGS; ++r) {
+      for (int s = 0; s <= SEGMENTS; ++s, i += 2) {
+        texCoords[i] = (float) s / SEGMENTS;
+        texCoords[i + 1] = (float) r / RINGS;
+      }
+    }
+    float[] tangents = MeshNormals.computeTangents(positions, normals, texCoords, indices);
+    for (int r = 1; r < RINGS; ++r) {
+      for (int s = 1; s < SEGMENTS; ++s) {
+        int v = r * (SEGMENTS + 1) + s;
+        double azimuth = 2 * Math.PI * s / SEGMENTS;
+        // u increases eastward, and v southward, which is a left handed frame
+        // about the outward normal
+        assertEquals(-Math.sin(azimuth), tangents[v * 4], 1e-2);
+        assertEquals(Math.cos(azimuth), tangents[v * 4 + 1], 1e-2);
+        assertEquals(0, tangents[v * 4 + 2], 1e-2);
+        assertEquals(-1, tangents[v * 4 + 3], 0);
+        float d = tangents[v * 4] * normals[v * 3] + tangents[v * 4 + 1] * normals[v * 3 + 1]
+            + tangents[v * 4 + 2] * normals[v * 3 + 2];
+        assertEquals(0, d, 1e-5);
+      }
+    }
+  }
+}
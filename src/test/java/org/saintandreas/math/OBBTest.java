@@ -0,0 +1,260 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+import static org.saintandreas.math.TestRotations.randomRotation;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OBBTest {
+  private static final Vector3f UNIT = new Vector3f(1, 1, 1);
+
+  private static void checkEigen(Matrix3f m, float tolerance) {
+    Eigen3f eigen = m.eigenSymmetric();
+    Vector3f values = eigen.getValues();
+    assertTrue(values.x >= values.y && values.y >= values.z);
+    assertEquals(1, eigen.getVectors().determinant(), 1e-5f);
+    for (int i = 0; i < 3; ++i) {
+      Vector3f v = eigen.getVector(i);
+      assertEquals(1, v.length(), 1e-5f);
+      Vector3f error = m.mult(v).subtract(v.mult(values.get(i)));
+      assertTrue(m + " " + i + " " + error, error.length() <= tolerance);
+      for (int j = 0; j < i; ++j) {
+        assertEquals(0, v.dot(eigen.getVector(j)), 1e-5f);
+      }
+    }
+  }
+
+  @Test
+  public void testEigen() {
+    Random random = new Random(45);
+    for (int i = 0; i < 1000; ++i) {
+      // a rotated diagonal matrix, sometimes with repeated values
+      Matrix3f r = randomRotation(random).toRotationMatrix();
+      float a = (float) random.nextGaussian() * 10, b = i % 3 == 0 ? a : (float) random.nextGaussian() * 10;
+      float c = i % 5 == 0 ? b : (float) random.nextGaussian() * 10;
+      Matrix3f m = r.mult(new Matrix3f(a, 0, 0, 0, b, 0, 0, 0, c)).mult(r.transpose());
+      m = new Matrix3f(m.get(0, 0), m.get(0, 1), m.get(0, 2), m.get(0, 1), m.get(1, 1), m.get(1, 2),
+          m.get(0, 2), m.get(1, 2), m.get(2, 2));
+      checkEigen(m, 1e-4f * (Math.abs(a) + Math.abs(b) + Math.abs(c)));
+      float[] sorted = { a, b, c };
+      java.util.Arrays.sort(sorted);
+      assertEquals(sorted[2], m.eigenSymmetric().getValues().x, 1e-4f * Math.abs(sorted[2]) + 1e-4f);
+      assertEquals(sorted[0], m.eigenSymmetric().getValues().z, 1e-4f * Math.abs(sorted[0]) + 1e-4f);
+    }
+    checkEigen(Matrix3f.IDENTITY, 0);
+    checkEigen(Matrix3f.ZERO, 0);
+    checkEigen(new Matrix3f(0, 1, 0, 1, 0, 0, 0, 0, 0), 1e-6f);
+  }
+
+  @Test
+  public void testCovariance() {
+    Random random = new Random(11);
+    int count = 10000;
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      // far from the origin, where summing squares naively would cancel
+      xyz[i * 3] = 1e5f + (float) random.nextGaussian() * 3;
+      xyz[i * 3 + 1] = -2e5f + (float) random.nextGaussian() + xyz[i * 3] * 0.5f;
+      xyz[i * 3 + 2] = (float) random.nextGaussian() * 0.1f;
+    }
+    double[] mean = new double[3];
+    for (int i = 0; i < count * 3; ++i) {
+      mean[i % 3] += xyz[i] / (double) count;
+    }
+    double[] expected = new double[9];
+    for (int i = 0; i < count; ++i) {
+      for (int r = 0; r < 3; ++r) {
+        for (int c = 0; c < 3; ++c) {
+          expected[r * 3 + c] += (xyz[i * 3 + r] - mean[r]) * (xyz[i * 3 + c] - mean[c]) / count;
+        }
+      }
+    }
+
+    Covariance3f single = new Covariance3f();
+    for (int i = 0; i < count; ++i) {
+      single.add(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]);
+    }
+    Covariance3f bulk = new Covariance3f();
+    bulk.add(xyz, 0, 3000);
+    FloatBuffer buffer = FloatBuffer.wrap(xyz);
+    buffer.position(9000);
+    Covariance3f rest = new Covariance3f();
+    rest.add(buffer, count - 3000);
+    assertEquals(9000, buffer.position());
+    bulk.add(rest);
+    assertEquals(count, bulk.getCount());
+    for (Covariance3f covariance : new Covariance3f[] { single, bulk }) {
+      for (int r = 0; r < 3; ++r) {
+        assertEquals(mean[r], covariance.getMean().get(r), 0.02);
+        for (int c = 0; c < 3; ++c) {
+          assertEquals(expected[r * 3 + c], covariance.getCovariance().get(r, c), 1e-4);
+        }
+      }
+    }
+    assertEquals(Matrix3f.ZERO, new Covariance3f().getCovariance());
+  }
+
+  private static float[] boxPoints(Random random, int count, Vector3f center, Quaternion rotation,
+      Vector3f extents) {
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      Vector3f local = new Vector3f((random.nextFloat() * 2 - 1) * extents.x,
+          (random.nextFloat() * 2 - 1) * extents.y, (random.nextFloat() * 2 - 1) * extents.z);
+      Vector3f p = rotation.mult(local).add(center);
+      xyz[i * 3] = p.x;
+      xyz[i * 3 + 1] = p.y;
+      xyz[i * 3 + 2] = p.z;
+    }
+    return xyz;
+  }
+
+  @Test
+  public void testFit() {
+    Random random = new Random(5);
+    int parts = 200, perPart = 500;
+    float[] xyz = new float[parts * perPart * 3];
+    int[] starts = new int[parts + 1];
+    Quaternion[] rotations = new Quaternion[parts];
+    for (int p = 0; p < parts; ++p) {
+      rotations[p] = randomRotation(random);
+      Vector3f center = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mult(100);
+      float[] points = boxPoints(random, perPart, center, rotations[p], new Vector3f(8, 3, 1));
+      System.arraycopy(points, 0, xyz, p * perPart * 3, points.length);
+      starts[p + 1] = (p + 1) * perPart;
+    }
+    OBB[] boxes = OBB.fit(xyz, starts, parts);
+    for (int p = 0; p < parts; ++p) {
+      OBB box = boxes[p];
+      FloatBuffer buffer = FloatBuffer.wrap(xyz, p * perPart * 3, perPart * 3).slice();
+      assertEquals(box.toString(), OBB.fit(buffer, perPart).toString());
+      Vector3f margin = new Vector3f(1e-3f, 1e-3f, 1e-3f);
+      OBB grown = new OBB(box.getCenter(), box.getAxes(), box.getExtents().add(margin));
+      for (int i = p * perPart; i < (p + 1) * perPart; ++i) {
+        Vector3f point = new Vector3f(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]);
+        assertTrue(grown.contains(point));
+      }
+      // the axes are close to those of the box sampled, though sampling noise
+      // tilts the smaller ones enough to add several percent to the volume
+      assertEquals(1, Math.abs(box.getAxis(0).dot(rotations[p].mult(Vector3f.UNIT_X))), 2e-3f);
+      assertEquals(1, Math.abs(box.getAxis(2).dot(rotations[p].mult(Vector3f.UNIT_Z))), 2e-3f);
+      assertTrue(box.getVolume() > 16 * 6 * 2 * 0.95f && box.getVolume() < 16 * 6 * 2 * 1.25f);
+    }
+    try {
+      OBB.fit(xyz, 0, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  private static Vector3f[] corners(OBB box) {
+    Vector3f[] corners = new Vector3f[8];
+    for (int i = 0; i < 8; ++i) {
+      Vector3f e = box.getExtents();
+      corners[i] = box.getCenter().add(box.getAxis(0).mult((i & 1) == 0 ? -e.x : e.x))
+          .add(box.getAxis(1).mult((i & 2) == 0 ? -e.y : e.y))
+          .add(box.getAxis(2).mult((i & 4) == 0 ? -e.z : e.z));
+    }
+    return corners;
+  }
+
+  // separating axis test over projected corners, as the oracle
+  private static boolean overlaps(OBB a, OBB b) {
+    Vector3f[] ca = corners(a), cb = corners(b);
+    Vector3f[] axes = new Vector3f[15];
+    for (int i = 0; i < 3; ++i) {
+      axes[i] = a.getAxis(i);
+      axes[3 + i] = b.getAxis(i);
+      for (int j = 0; j < 3; ++j) {
+        axes[6 + i * 3 + j] = a.getAxis(i).cross(b.getAxis(j));
+      }
+    }
+    for (Vector3f axis : axes) {
+      if (axis.lengthSquared() < 1e-6f) {
+        continue;
+      }
+      float minA = Float.MAX_VALUE, maxA = -Float.MAX_VALUE, minB = Float.MAX_VALUE, maxB = -Float.MAX_VALUE;
+      for (int i = 0; i < 8; ++i) {
+        minA = Math.min(minA, ca[i].dot(axis));
+        maxA = Math.max(maxA, ca[i].dot(axis));
+        minB = Math.min(minB, cb[i].dot(axis));
+        maxB = Math.max(maxB, cb[i].dot(axis));
+      }
+      if (maxA < minB || maxB < minA) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static OBB randomBox(Random random, float spread) {
+    return new OBB(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mult(spread),
+        randomRotation(random).toRotationMatrix(),
+        new Vector3f(random.nextFloat() * 3, random.nextFloat() * 2, random.nextFloat()).add(UNIT.mult(0.1f)));
+  }
+
+  @Test
+  public void testIntersects() {
+    Random random = new Random(8);
+    int hits = 0, mismatches = 0;
+    for (int i = 0; i < 20000; ++i) {
+      OBB a = randomBox(random, 8), b = randomBox(random, 8);
+      boolean expected = overlaps(a, b);
+      boolean actual = a.intersects(b);
+      assertEquals(actual, b.intersects(a));
+      // the two only disagree at the margin
+      if (expected != actual) {
+        ++mismatches;
+      }
+      hits += actual ? 1 : 0;
+    }
+    assertTrue(hits > 2000 && hits < 18000);
+    assertTrue("" + mismatches, mismatches < 5);
+
+    // aligned boxes, including parallel edges
+    OBB unit = new OBB(Vector3f.ZERO, Matrix3f.IDENTITY, UNIT);
+    assertTrue(unit.intersects(new OBB(new Vector3f(1.99f, 0, 0), Matrix3f.IDENTITY, UNIT)));
+    assertFalse(unit.intersects(new OBB(new Vector3f(2.01f, 0, 0), Matrix3f.IDENTITY, UNIT)));
+    // a box turned 45 degrees about z reaches out sqrt(2) along x
+    Matrix3f turned = new Matrix3f(FastMath.QUARTER_PI, Vector3f.UNIT_Z);
+    assertFalse(unit.intersects(new OBB(new Vector3f(2.5f, 0, 0), turned, UNIT)));
+    assertTrue(unit.intersects(new OBB(new Vector3f(2.3f, 0, 0), turned, UNIT)));
+  }
+
+  @Test
+  public void testFrustum() {
+    Random random = new Random(13);
+    Matrix4f viewProjection = Matrix4f.perspective(60, 1.5f, 1, 50)
+        .mult(Matrix4f.lookat(new Vector3f(0, 0, 20), Vector3f.ZERO, Vector3f.UNIT_Y));
+    int count = 5000;
+    OBB[] boxes = new OBB[count];
+    int expected = 0;
+    for (int i = 0; i < count; ++i) {
+      Vector3f center = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).subtract(0.5f)
+          .mult(100);
+      boxes[i] = new OBB(center, randomRotation(random).toRotationMatrix(), new Vector3f(3, 1, 0.5f));
+      // any corner inside is enough to be visible
+      boolean inside = false;
+      for (Vector3f corner : corners(boxes[i])) {
+        Vector4f clip = viewProjection.mult(new Vector4f(corner, 1));
+        inside |= Math.abs(clip.x) <= clip.w && Math.abs(clip.y) <= clip.w && Math.abs(clip.z) <= clip.w;
+      }
+      if (inside) {
+        assertTrue(boxes[i].intersects(viewProjection));
+        ++expected;
+      }
+    }
+    int[] visible = new int[count];
+    int found = OBB.cull(boxes, count, viewProjection, visible);
+    assertTrue(found >= expected && found < expected * 1.3 + 10);
+    for (int i = 0, v = 0; i < count; ++i) {
+      boolean listed = v < found && visible[v] == i;
+      assertEquals(boxes[i].intersects(viewProjection), listed);
+      v += listed ? 1 : 0;
+    }
+    // behind the camera
+    assertFalse(new OBB(new Vector3f(0, 0, 30), Matrix3f.IDENTITY, UNIT).intersects(viewProjection));
+  }
+}
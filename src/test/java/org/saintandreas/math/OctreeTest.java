@@ -0,0 +1,120 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OctreeTest {
+  private static final int COUNT = 2000;
+
+  private static boolean boxesOverlap(Vector3f c, Vector3f e, Vector3f min, Vector3f max) {
+    return c.x - e.x <= max.x && c.x + e.x >= min.x && c.y - e.y <= max.y
+        && c.y + e.y >= min.y && c.z - e.z <= max.z && c.z + e.z >= min.z;
+  }
+
+  private static int[] sorted(int[] a, int count) {
+    int[] result = Arrays.copyOf(a, count);
+    Arrays.sort(result);
+    return result;
+  }
+
+  @Test
+  public void testMovingObjects() {
+    Random r = new Random(17);
+    Octree tree = new Octree(Vector3f.ZERO, 64, 6);
+    Vector3f[] centers = new Vector3f[COUNT];
+    Vector3f[] extents = new Vector3f[COUNT];
+    int[] result = new int[COUNT];
+    int[] expected = new int[COUNT];
+    for (int step = 0; step < 5; ++step) {
+      for (int i = 0; i < COUNT; ++i) {
+        if (centers[i] == null || r.nextInt(4) == 0) {
+          // a few objects deliberately wander outside the root cell
+          centers[i] = new Vector3f(r.nextFloat() * 140 - 70,
+              r.nextFloat() * 140 - 70, r.nextFloat() * 140 - 70);
+          extents[i] = new Vector3f(r.nextFloat() * 4, r.nextFloat() * 4, r.nextFloat() * 4);
+        } else {
+          centers[i] = centers[i].add(new Vector3f(0.1f, -0.05f, 0.02f));
+        }
+        tree.update(i, centers[i], extents[i]);
+      }
+      assertEquals(COUNT, tree.size());
+
+      Vector3f min = new Vector3f(-20, -10, -30), max = new Vector3f(15, 25, 5);
+      int n = 0;
+      for (int i = 0; i < COUNT; ++i) {
+        if (boxesOverlap(centers[i], extents[i], min, max)) {
+          expected[n++] = i;
+        }
+      }
+      int count = tree.queryBox(min, max, result);
+      assertArrayEquals(sorted(expected, n), sorted(result, count));
+
+      Vector3f center = new Vector3f(5, 5, 5);
+      n = 0;
+      for (int i = 0; i < COUNT; ++i) {
+        Vector3f c = centers[i], e = extents[i];
+        Vector3f closest = new Vector3f(
+            FastMath.clamp(center.x, c.x - e.x, c.x + e.x),
+            FastMath.clamp(center.y, c.y - e.y, c.y + e.y),
+            FastMath.clamp(center.z, c.z - e.z, c.z + e.z));
+        if (closest.distanceSquared(center) <= 400) {
+          expected[n++] = i;
+        }
+      }
+      count = tree.querySphere(center, 20, result);
+      assertArrayEquals(sorted(expected, n), sorted(result, count));
+    }
+
+    for (int i = 0; i < COUNT; i += 2) {
+      assertTrue(tree.remove(i));
+      assertFalse(tree.remove(i));
+    }
+    assertEquals(COUNT / 2, tree.size());
+    assertEquals(COUNT / 2, tree.queryBox(new Vector3f(-1000), new Vector3f(1000), result));
+  }
+
+  @Test
+  public void testFrustumAndRay() {
+    Octree tree = new Octree(Vector3f.ZERO, 100, 5);
+    Vector3f unit = new Vector3f(0.5f);
+    tree.update(0, new Vector3f(0, 0, -10), unit); // ahead of the camera
+    tree.update(1, new Vector3f(0, 0, 10), unit); // behind
+    tree.update(2, new Vector3f(50, 0, -10), unit); // off to the side
+    tree.update(3, new Vector3f(0, 0, -500), unit); // beyond the far plane
+
+    Matrix4f viewProjection = Matrix4f.perspective(90, 1, 0.1f, 100).mult(
+        Matrix4f.lookat(Vector3f.ZERO, new Vector3f(0, 0, -1), Vector3f.UNIT_Y));
+    int[] result = new int[4];
+    assertEquals(1, tree.queryFrustum(viewProjection, result));
+    assertEquals(0, result[0]);
+
+    Ray ray = new Ray(Vector3f.ZERO, new Vector3f(0, 0, -1));
+    assertEquals(2, tree.queryRay(ray, 1000, result));
+    assertArrayEquals(new int[] { 0, 3 }, sorted(result, 2));
+    assertEquals(1, tree.queryRay(ray, 100, result));
+    assertEquals(0, result[0]);
+  }
+
+  @Test
+  public void testAxisAlignedRayOnFace() {
+    Octree tree = new Octree(Vector3f.ZERO, 64, 5);
+    // a flat floor tile, and a box whose bottom face is the floor
+    tree.update(0, new Vector3f(10, 0, 0), new Vector3f(2, 0, 2));
+    tree.update(1, new Vector3f(10, 1, 0), new Vector3f(2, 1, 2));
+    int[] result = new int[4];
+    Ray ray = new Ray(Vector3f.ZERO, Vector3f.UNIT_X);
+    assertEquals(2, tree.queryRay(ray, 100, result));
+    assertArrayEquals(new int[] { 0, 1 }, sorted(result, 2));
+    ray = new Ray(new Vector3f(0, 0.5f, 0), Vector3f.UNIT_X);
+    assertEquals(1, tree.queryRay(ray, 100, result));
+    assertEquals(1, result[0]);
+    // running along the top face, and just above it
+    assertEquals(1, tree.queryRay(new Ray(new Vector3f(0, 2, 2), Vector3f.UNIT_X), 100, result));
+    assertEquals(0, tree.queryRay(new Ray(new Vector3f(0, 2.01f, 0), Vector3f.UNIT_X), 100, result));
+    assertEquals(0, tree.queryRay(ray, 7, result));
+  }
+}
@@ -0,0 +1,141 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PointInPolygonTest {
+  private static float[] star(Random r, int n, float cx, float cy, boolean clockwise) {
+    float[] result = new float[n * 2];
+    for (int i = 0; i < n; ++i) {
+      double angle = (clockwise ? -2 : 2) * Math.PI * i / n;
+      float radius = 10 + r.nextFloat() * 10;
+      result[i * 2] = cx + (float) (Math.cos(angle) * radius);
+      result[i * 2 + 1] = cy + (float) (Math.sin(angle) * radius);
+    }
+    return result;
+  }
+
+  @Test
+  public void testTriangles() {
+    Random r = new Random(3);
+    int count = 1000;
+    float[] points = new float[count * 2];
+    for (int i = 0; i < points.length; ++i) {
+      // integer coordinates put plenty of points exactly on the edges
+      points[i] = r.nextInt(11) - 5;
+    }
+    long[] bits = new long[(count + 63) / 64];
+    for (int t = 0; t < 20; ++t) {
+      float[] v = new float[6];
+      for (int k = 0; k < 6; ++k) {
+        v[k] = r.nextInt(11) - 5;
+      }
+      if ((v[2] - v[0]) * (v[5] - v[1]) - (v[3] - v[1]) * (v[4] - v[0]) == 0) {
+        continue;
+      }
+      int inside = PointInPolygon.insideTriangle(v[0], v[1], v[2], v[3], v[4], v[5],
+          points, count, bits);
+      BitSet set = BitSet.valueOf(bits);
+      assertEquals(inside, set.cardinality());
+      for (int i = 0; i < count; ++i) {
+        Vector2f p = new Vector2f(points[i * 2], points[i * 2 + 1]);
+        boolean expected = FastMath.pointInsideTriangle(new Vector2f(v[0], v[1]),
+            new Vector2f(v[2], v[3]), new Vector2f(v[4], v[5]), p) != 0;
+        assertEquals(expected, set.get(i));
+        assertEquals(expected, PointInPolygon.insideTriangle(v[0], v[1], v[2], v[3],
+            v[4], v[5], p.x, p.y));
+      }
+    }
+  }
+
+  @Test
+  public void testPolygonWithHole() {
+    Random r = new Random(11);
+    float[] outer = star(r, 500, 0, 0, false);
+    float[] hole = star(r, 50, 2, 0, true);
+    float[] polygon = new float[outer.length + hole.length];
+    System.arraycopy(outer, 0, polygon, 0, outer.length);
+    System.arraycopy(hole, 0, polygon, outer.length, hole.length);
+    // scale the hole down so it sits inside the outer ring
+    for (int i = outer.length; i < polygon.length; ++i) {
+      polygon[i] *= 0.3f;
+    }
+    int[] rings = { outer.length / 2, polygon.length / 2 };
+    PolygonIndex index = new PolygonIndex(polygon, rings);
+    assertEquals(550, index.getEdgeCount());
+
+    int count = 20000;
+    float[] points = new float[count * 2];
+    for (int i = 0; i < points.length; ++i) {
+      points[i] = r.nextFloat() * 50 - 25;
+    }
+    int[] winding = new int[count];
+    index.windingNumbers(points, count, winding);
+    for (int i = 0; i < count; ++i) {
+      int expected = PointInPolygon.windingNumber(polygon, rings, points[i * 2], points[i * 2 + 1]);
+      assertEquals(expected, winding[i]);
+    }
+    assertEquals(0, index.windingNumber(0.5f, 0));
+    assertEquals(1, index.windingNumber(9, 0));
+
+    long[] expected = new long[(count + 63) / 64];
+    long[] actual = new long[expected.length];
+    int inside = PointInPolygon.inside(polygon, rings, points, count, expected);
+    assertEquals(inside, index.contains(points, count, actual));
+    assertArrayEquals(expected, actual);
+  }
+
+  // every integer and half integer point over the polygon's bounds and a
+  // little beyond, including the many which lie on its edges and vertices
+  private static void assertIndexMatches(float[] polygon) {
+    PolygonIndex index = new PolygonIndex(polygon);
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < polygon.length; i += 2) {
+      minX = Math.min(minX, polygon[i]);
+      maxX = Math.max(maxX, polygon[i]);
+      minY = Math.min(minY, polygon[i + 1]);
+      maxY = Math.max(maxY, polygon[i + 1]);
+    }
+    for (float y = minY - 1; y <= maxY + 1; y += 0.5f) {
+      for (float x = minX - 1; x <= maxX + 1; x += 0.5f) {
+        assertEquals(x + ", " + y, PointInPolygon.windingNumber(polygon, x, y), index.windingNumber(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testIndexIntegerPolygons() {
+    // the center (-6.125, -3.5) of the cell holding (-9, -9) lies on the edge
+    // from (-6, -3) to (-9, -15)
+    float[] polygon = { 27, 0, 11, 6, 2, 3, 0, 24, -6, 10, -26, 15, -3, 0, -6, -3, -9, -15, 0, -31, 5, -8,
+        18, -11 };
+    assertEquals(0, new PolygonIndex(polygon).windingNumber(-9, -9));
+    assertIndexMatches(polygon);
+
+    Random r = new Random(31);
+    for (int t = 0; t < 300; ++t) {
+      int n = 3 + r.nextInt(30);
+      polygon = new float[n * 2];
+      if (t % 3 == 2) {
+        // self intersecting, with repeated vertices
+        for (int i = 0; i < polygon.length; ++i) {
+          polygon[i] = r.nextInt(13) - 6;
+        }
+      } else {
+        // simple, star shaped about the origin
+        for (int i = 0; i < n; ++i) {
+          double angle = 2 * Math.PI * (i + 0.8 * r.nextDouble()) / n;
+          double radius = 4 + r.nextInt(28);
+          polygon[i * 2] = Math.round(Math.cos(angle) * radius);
+          polygon[i * 2 + 1] = Math.round(Math.sin(angle) * radius);
+        }
+      }
+      assertIndexMatches(polygon);
+    }
+  }
+}
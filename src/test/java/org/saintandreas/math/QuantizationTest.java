@@ -0,0 +1,107 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantizationTest {
+  @Test
+  public void testBitStream() {
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    BitWriter writer = new BitWriter(buffer);
+    Random random = new Random(1);
+    long[] values = new long[100];
+    int[] widths = new int[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      widths[i] = i % 3 == 0 ? new int[] { 0, 1, 32, 64 }[i % 4] : random.nextInt(65);
+      values[i] = widths[i] == 0 ? 0 : random.nextLong() >>> (64 - widths[i]);
+      writer.write(values[i], widths[i]);
+    }
+    writer.writeBoolean(true);
+    writer.flush();
+    writer.write(0xAB, 8);
+    assertEquals(buffer.position() * 8L, writer.getBitsWritten());
+    buffer.flip();
+    BitReader reader = new BitReader(buffer);
+    for (int i = 0; i < values.length; ++i) {
+      assertEquals(values[i], reader.readLong(widths[i]));
+    }
+    assertTrue(reader.readBoolean());
+    reader.align();
+    assertEquals(0xAB, reader.read(8));
+    assertFalse(buffer.hasRemaining());
+    try {
+      writer.write(0, 33);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testQuaternion() {
+    Random random = new Random(2);
+    for (int bits = 9; bits <= 15; ++bits) {
+      QuaternionQuantizer quantizer = new QuaternionQuantizer(bits);
+      // each component is off by at most half a step before renormalizing
+      float tolerance = 2.5f * FastMath.sqrt(2) / ((1 << bits) - 1);
+      for (int i = 0; i < 1000; ++i) {
+        float x = (float) random.nextGaussian(), y = (float) random.nextGaussian();
+        float z = (float) random.nextGaussian(), w = (float) random.nextGaussian();
+        float length = FastMath.sqrt(x * x + y * y + z * z + w * w);
+        long packed = quantizer.pack(x, y, z, w);
+        assertEquals(0, packed >>> quantizer.getBits());
+        assertEquals(packed, quantizer.pack(-x, -y, -z, -w));
+        Quaternion q = quantizer.unpack(packed);
+        float dot = (q.x * x + q.y * y + q.z * z + q.w * w) / length;
+        assertEquals(1, Math.abs(dot), tolerance * tolerance + 1e-6);
+        assertEquals(1, q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w, 1e-5);
+      }
+    }
+    QuaternionQuantizer quantizer = new QuaternionQuantizer(10);
+    assertEquals(32, quantizer.getBits());
+    Quaternion identity = quantizer.unpack(quantizer.pack(new Quaternion(0, 0, 0, 1)));
+    assertEquals(1, identity.w, 1e-6);
+    try {
+      new QuaternionQuantizer(21);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testPosition() {
+    PositionQuantizer quantizer = new PositionQuantizer(new Vector3f(-100, -10, 0), new Vector3f(100, 10, 1),
+        16, 12, 32);
+    assertEquals(60, quantizer.getBits());
+    Vector3f step = quantizer.getStep();
+    Random random = new Random(3);
+    float[] xyz = new float[300];
+    for (int i = 0; i < xyz.length; i += 3) {
+      xyz[i] = random.nextFloat() * 200 - 100;
+      xyz[i + 1] = random.nextFloat() * 20 - 10;
+      xyz[i + 2] = random.nextFloat();
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    BitWriter writer = new BitWriter(buffer);
+    quantizer.write(writer, xyz, 0, 100);
+    quantizer.write(writer, new Vector3f(1000, -1000, Float.NaN));
+    writer.flush();
+    assertEquals((101 * 60 + 7) / 8, buffer.position());
+    buffer.flip();
+    BitReader reader = new BitReader(buffer);
+    float[] result = new float[300];
+    quantizer.read(reader, result, 0, 100);
+    for (int i = 0; i < xyz.length; i += 3) {
+      assertEquals(xyz[i], result[i], step.x * 0.5f + 1e-5f);
+      assertEquals(xyz[i + 1], result[i + 1], step.y * 0.5f + 1e-5f);
+      assertEquals(xyz[i + 2], result[i + 2], 1e-6f);
+    }
+    Vector3f clamped = quantizer.read(reader);
+    assertEquals(100, clamped.x, 0);
+    assertEquals(-10, clamped.y, 0);
+    assertEquals(0, clamped.z, 0);
+  }
+}
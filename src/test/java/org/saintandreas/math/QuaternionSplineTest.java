@@ -0,0 +1,193 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+import static org.saintandreas.math.TestRotations.randomRotation;
+import static org.saintandreas.math.TestRotations.assertRotationEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuaternionSplineTest {
+  private static final float H = 1e-3f;
+
+  // keys a moderate turn apart, as in an animation
+  private static Quaternion[] keys(Random random, int count) {
+    Quaternion[] keys = new Quaternion[count];
+    keys[0] = randomRotation(random);
+    for (int i = 1; i < count; ++i) {
+      Vector3f axis = new Vector3f((float) random.nextGaussian(), (float) random.nextGaussian(),
+          (float) random.nextGaussian());
+      keys[i] = keys[i - 1].mult(Quaternion.fromAngleAxis(0.3f + random.nextFloat(), axis));
+    }
+    return keys;
+  }
+
+  // slerp by its definition, since Quaternion.slerp falls back to an
+  // unnormalized lerp for nearby rotations
+  private static Quaternion slerp(Quaternion a, Quaternion b, float t) {
+    if (a.dot(b) < 0) {
+      b = b.negate();
+    }
+    return a.mult(a.inverse().mult(b).log().mult(t).exp());
+  }
+
+  // the body angular velocity, from the rotation over a short step
+  private static Vector3f velocity(Quaternion a, Quaternion b) {
+    Quaternion d = a.inverse().mult(b).log();
+    return new Vector3f(d.x, d.y, d.z).mult(2 / H);
+  }
+
+  private static float velocityJump(QuaternionSpline spline, float time) {
+    Vector3f before = velocity(spline.evaluate(time - H), spline.evaluate(time));
+    Vector3f after = velocity(spline.evaluate(time), spline.evaluate(time + H));
+    return before.distance(after) / Math.max(before.length(), after.length());
+  }
+
+  @Test
+  public void testLogExp() {
+    Random random = new Random(49);
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      if (q.w < 0) {
+        q = q.negate();
+      }
+      Quaternion log = q.log();
+      assertEquals(0, log.w, 0);
+      assertEquals(q.toRotationMatrix().determinant(), 1, 1e-5f);
+      assertRotationEquals(q, log.exp(), 1e-6f);
+      // the length of the logarithm is half the angle of the rotation
+      assertEquals(FastMath.acos(q.w), new Vector3f(log.x, log.y, log.z).length(), 1e-3f);
+    }
+    assertEquals(Quaternion.IDENTITY, Quaternion.IDENTITY.log().exp());
+    Quaternion small = Quaternion.fromAngleAxis(1e-3f, Vector3f.UNIT_Z);
+    assertEquals(small.z, small.log().exp().z, 1e-9f);
+    assertEquals(5e-4f, small.log().z, 1e-9f);
+  }
+
+  @Test
+  public void testInterpolatesKeys() {
+    Random random = new Random(50);
+    Quaternion[] keys = keys(random, 8);
+    float[] times = { 0, 0.5f, 1.2f, 1.5f, 3, 3.1f, 4, 5 };
+    for (QuaternionSpline spline : new QuaternionSpline[] { QuaternionSpline.squad(times, keys),
+        QuaternionSpline.hermite(times, keys) }) {
+      assertEquals(8, spline.getKeyCount());
+      assertEquals(0, spline.getStartTime(), 0);
+      assertEquals(5, spline.getEndTime(), 0);
+      for (int i = 0; i < keys.length; ++i) {
+        assertRotationEquals(keys[i], spline.evaluate(times[i]), 1e-5f);
+      }
+      assertRotationEquals(keys[0], spline.evaluate(-1), 1e-6f);
+      assertRotationEquals(keys[7], spline.evaluate(6), 1e-6f);
+      for (float t = 0; t < 5; t += 0.01f) {
+        assertEquals(1, spline.evaluate(t).norm(), 1e-4f);
+      }
+    }
+  }
+
+  @Test
+  public void testTwoKeysIsSlerp() {
+    Random random = new Random(51);
+    for (int i = 0; i < 100; ++i) {
+      Quaternion a = randomRotation(random), b = randomRotation(random);
+      float[] times = { 1, 3 };
+      QuaternionSpline squad = QuaternionSpline.squad(times, new Quaternion[] { a, b });
+      QuaternionSpline hermite = QuaternionSpline.hermite(times, new Quaternion[] { a, b });
+      for (float t = 0; t <= 1; t += 0.125f) {
+        Quaternion slerp = slerp(a, b, t);
+        assertRotationEquals(slerp, squad.evaluate(1 + 2 * t), 1e-5f);
+        assertRotationEquals(slerp, hermite.evaluate(1 + 2 * t), 1e-5f);
+      }
+    }
+  }
+
+  @Test
+  public void testContinuousVelocity() {
+    Random random = new Random(52);
+    Quaternion[] keys = keys(random, 6);
+    float[] even = { 0, 1, 2, 3, 4, 5 };
+    float[] uneven = { 0, 0.4f, 2, 2.5f, 4, 5 };
+    QuaternionSpline squad = QuaternionSpline.squad(even, keys);
+    QuaternionSpline hermite = QuaternionSpline.hermite(uneven, keys);
+    float slerpJump = 0;
+    for (int i = 1; i < 5; ++i) {
+      assertTrue(velocityJump(squad, even[i]) < 0.02f);
+      assertTrue(velocityJump(hermite, uneven[i]) < 0.02f);
+      // slerp between the same keys jumps
+      Vector3f before = velocity(slerp(keys[i - 1], keys[i], 1 - H), keys[i]);
+      Vector3f after = velocity(keys[i], slerp(keys[i], keys[i + 1], H));
+      slerpJump = Math.max(slerpJump, before.distance(after) / Math.max(before.length(), after.length()));
+    }
+    assertTrue(slerpJump > 0.5f);
+  }
+
+  @Test
+  public void testSquad() {
+    Random random = new Random(53);
+    Quaternion[] keys = keys(random, 4);
+    float[] times = { 0, 1, 2, 3 };
+    QuaternionSpline spline = QuaternionSpline.squad(times, keys);
+    // the control rotations by their definition
+    Quaternion[] controls = new Quaternion[4];
+    controls[0] = keys[0];
+    controls[3] = keys[3];
+    for (int i = 1; i < 3; ++i) {
+      Quaternion inverse = keys[i].inverse();
+      Quaternion next = inverse.mult(keys[i + 1]).log(), previous = inverse.mult(keys[i - 1]).log();
+      controls[i] = keys[i].mult(next.add(previous).mult(-0.25f).exp());
+    }
+    for (float t = 0; t < 1; t += 0.1f) {
+      assertRotationEquals(Quaternion.squad(keys[1], keys[2], controls[1], controls[2], t), spline
+          .evaluate(1 + t), 1e-5f);
+    }
+  }
+
+  @Test
+  public void testBatch() {
+    Random random = new Random(54);
+    float[] times = { 0, 1, 2.5f, 3 };
+    QuaternionSpline[] tracks = new QuaternionSpline[2000];
+    for (int i = 0; i < tracks.length; ++i) {
+      Quaternion[] keys = keys(random, 4);
+      tracks[i] = i % 2 == 0 ? QuaternionSpline.squad(times, keys) : QuaternionSpline.hermite(times, keys);
+    }
+    float[] pose = new float[tracks.length * 4];
+    QuaternionSpline.evaluate(tracks, tracks.length, 1.7f, pose);
+    float[] single = new float[4];
+    for (int i = 0; i < tracks.length; ++i) {
+      tracks[i].evaluate(1.7f, single, 0);
+      for (int j = 0; j < 4; ++j) {
+        assertEquals(single[j], pose[i * 4 + j], 0);
+      }
+    }
+
+    float[] samples = new float[3000];
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = random.nextFloat() * 4 - 0.5f;
+    }
+    float[] result = new float[samples.length * 4];
+    tracks[1].evaluate(samples, samples.length, result);
+    for (int i = 0; i < samples.length; ++i) {
+      tracks[1].evaluate(samples[i], single, 0);
+      for (int j = 0; j < 4; ++j) {
+        assertEquals(single[j], result[i * 4 + j], 0);
+      }
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    Quaternion[] keys = { Quaternion.IDENTITY, Quaternion.IDENTITY };
+    try {
+      QuaternionSpline.squad(new float[] { 1, 1 }, keys);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      QuaternionSpline.hermite(new float[0], new Quaternion[0]);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RayTriangleTest {
+  private static final Vector3f V0 = new Vector3f(0, 0, 0);
+  private static final Vector3f V1 = new Vector3f(1, 0, 0);
+  private static final Vector3f V2 = new Vector3f(0, 1, 0);
+
+  @Test
+  public void testFrontAndBack() {
+    Ray front = new Ray(new Vector3f(0.25f, 0.25f, 1), new Vector3f(0, 0, -1));
+    Ray back = new Ray(new Vector3f(0.25f, 0.25f, -1), new Vector3f(0, 0, 1));
+    for (int flags : new int[] { 0, RayTriangle.WATERTIGHT }) {
+      assertEquals(1f, front.intersect(V0, V1, V2, flags), 1e-6f);
+      assertEquals(1f, back.intersect(V0, V1, V2, flags), 1e-6f);
+      assertEquals(1f, front.intersect(V0, V1, V2, flags | RayTriangle.CULL_BACKFACE), 1e-6f);
+      assertEquals(Float.POSITIVE_INFINITY,
+          back.intersect(V0, V1, V2, flags | RayTriangle.CULL_BACKFACE), 0);
+    }
+  }
+
+  @Test
+  public void testMiss() {
+    Ray ray = new Ray(new Vector3f(0.75f, 0.75f, 1), new Vector3f(0, 0, -1));
+    assertEquals(Float.POSITIVE_INFINITY, ray.intersect(V0, V1, V2), 0);
+    assertEquals(Float.POSITIVE_INFINITY, ray.intersect(V0, V1, V2, RayTriangle.WATERTIGHT), 0);
+    Ray away = new Ray(new Vector3f(0.25f, 0.25f, 1), new Vector3f(0, 0, 1));
+    assertEquals(Float.POSITIVE_INFINITY, away.intersect(V0, V1, V2), 0);
+    assertEquals(Float.POSITIVE_INFINITY, away.intersect(V0, V1, V2, RayTriangle.WATERTIGHT), 0);
+  }
+
+  @Test
+  public void testSmallTriangle() {
+    // a tenth of a millimetre across, in metres
+    float s = 1e-4f;
+    Vector3f a = V0.mult(s), b = V1.mult(s), c = V2.mult(s);
+    for (float length : new float[] { 1, 1e-3f, 1e3f }) {
+      Ray ray = new Ray(new Vector3f(0.25f * s, 0.25f * s, 1), new Vector3f(0, 0, -length));
+      for (int flags : new int[] { 0, RayTriangle.WATERTIGHT, RayTriangle.CULL_BACKFACE }) {
+        assertEquals(1 / length, ray.intersect(a, b, c, flags), 1e-6f / length);
+      }
+      Ray miss = new Ray(new Vector3f(0.75f * s, 0.75f * s, 1), new Vector3f(0, 0, -length));
+      assertEquals(Float.POSITIVE_INFINITY, miss.intersect(a, b, c), 0);
+    }
+    // a ray in the plane of the triangle still misses
+    Ray parallel = new Ray(new Vector3f(-1, 0.25f, 0), new Vector3f(1, 0, 0));
+    assertEquals(Float.POSITIVE_INFINITY, parallel.intersect(V0, V1, V2), 0);
+  }
+
+  @Test
+  public void testWatertightSharedEdge() {
+    // two triangles sharing the diagonal of the unit square
+    TriangleBatch tris = new TriangleBatch(2);
+    tris.add(0, 0, 0, 1, 0, 0, 1, 1, 0);
+    tris.add(0, 0, 0, 1, 1, 0, 0, 1, 0);
+    float[] t = new float[2];
+    Random r = new Random(7);
+    for (int i = 0; i < 1000; ++i) {
+      float s = r.nextFloat();
+      Ray ray = new Ray(new Vector3f(s, s, 1), new Vector3f(
+          (r.nextFloat() - 0.5f) * 1e-3f, (r.nextFloat() - 0.5f) * 1e-3f, -1));
+      assertTrue(RayTriangle.intersect(ray, tris, 0, 2, Float.POSITIVE_INFINITY,
+          RayTriangle.WATERTIGHT, t) > 0);
+    }
+  }
+
+  @Test
+  public void testBatchesMatchScalar() {
+    Random r = new Random(11);
+    int count = 256;
+    TriangleBatch tris = new TriangleBatch(count);
+    for (int i = 0; i < count; ++i) {
+      tris.add(r.nextFloat(), r.nextFloat(), r.nextFloat(), r.nextFloat(),
+          r.nextFloat(), r.nextFloat(), r.nextFloat(), r.nextFloat(),
+          r.nextFloat());
+    }
+    RayPacket rays = new RayPacket(64);
+    for (int i = 0; i < 64; ++i) {
+      rays.add(0.5f, 0.5f, -2, r.nextFloat() - 0.5f, r.nextFloat() - 0.5f, 1);
+    }
+    float[] t = new float[count];
+    float[] uv = new float[count * 2];
+    float[] hit = new float[3];
+    float[] packetT = new float[64];
+    for (int flags = 0; flags < 4; ++flags) {
+      for (int j = 0; j < rays.size(); ++j) {
+        Ray ray = rays.get(j);
+        RayTriangle.intersect(ray, tris, 0, count, Float.POSITIVE_INFINITY, flags, t, uv);
+        float best = Float.POSITIVE_INFINITY;
+        int bestIndex = -1;
+        for (int i = 0; i < count; ++i) {
+          float expected = ray.intersect(tris.getVertex(i, 0),
+              tris.getVertex(i, 1), tris.getVertex(i, 2), flags);
+          assertEquals(expected, t[i], 1e-4f);
+          if (expected < best) {
+            best = expected;
+            bestIndex = i;
+          }
+        }
+        assertEquals(bestIndex, RayTriangle.closest(ray, tris, 0, count,
+            Float.POSITIVE_INFINITY, flags, hit));
+        if (bestIndex >= 0) {
+          assertEquals(best, hit[0], 1e-4f);
+          assertEquals(uv[bestIndex * 2], hit[1], 1e-4f);
+          assertEquals(uv[bestIndex * 2 + 1], hit[2], 1e-4f);
+        }
+      }
+      for (int i = 0; i < count; ++i) {
+        Vector3f a = tris.getVertex(i, 0), b = tris.getVertex(i, 1), c = tris.getVertex(i, 2);
+        RayTriangle.intersect(rays, 0, rays.size(), a, b, c, Float.POSITIVE_INFINITY, flags, packetT);
+        for (int j = 0; j < rays.size(); ++j) {
+          assertEquals(rays.get(j).intersect(a, b, c, flags), packetT[j], 1e-4f);
+        }
+      }
+    }
+  }
+}
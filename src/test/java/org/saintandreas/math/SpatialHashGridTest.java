@@ -0,0 +1,202 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class SpatialHashGridTest {
+  private static float[] randomPoints(Random random, int count, float size) {
+    float[] xyz = new float[count * 3];
+    for (int i = 0; i < xyz.length; ++i) {
+      xyz[i] = (random.nextFloat() - 0.5f) * size;
+    }
+    return xyz;
+  }
+
+  private static float distanceSquared(float[] xyz, int i, int j) {
+    float dx = xyz[i * 3] - xyz[j * 3], dy = xyz[i * 3 + 1] - xyz[j * 3 + 1], dz = xyz[i * 3 + 2]
+        - xyz[j * 3 + 2];
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private static long pair(int i, int j, int count) {
+    return (long) Math.min(i, j) * count + Math.max(i, j);
+  }
+
+  private static Set<Long> bruteForcePairs(float[] xyz, int count, float radius) {
+    Set<Long> pairs = new HashSet<>();
+    for (int i = 0; i < count; ++i) {
+      for (int j = i + 1; j < count; ++j) {
+        if (distanceSquared(xyz, i, j) <= radius * radius) {
+          pairs.add(pair(i, j, count));
+        }
+      }
+    }
+    return pairs;
+  }
+
+  private static void assertPairs(SpatialHashGrid grid, float[] xyz, int count, float radius,
+      boolean parallel) {
+    final Set<Long> pairs = ConcurrentHashMap.newKeySet();
+    SpatialHashGrid.PairVisitor visitor = (i, j, d) -> {
+      assertTrue(i != j);
+      assertEquals(distanceSquared(xyz, i, j), d, 1e-5f);
+      // each pair exactly once
+      assertTrue(i + " " + j, pairs.add(pair(i, j, count)));
+    };
+    if (parallel) {
+      grid.forEachPairParallel(radius, visitor);
+    } else {
+      grid.forEachPair(radius, visitor);
+    }
+    assertEquals(bruteForcePairs(xyz, count, radius), pairs);
+  }
+
+  private static void assertNeighbors(SpatialHashGrid grid, float[] xyz, int count, float radius,
+      Random random) {
+    int[] result = new int[count];
+    for (int q = 0; q < 100; ++q) {
+      float x = (random.nextFloat() - 0.5f) * 12, y = (random.nextFloat() - 0.5f) * 12;
+      float z = (random.nextFloat() - 0.5f) * 12;
+      int found = grid.neighbors(x, y, z, radius, result);
+      int expected = 0;
+      int[] brute = new int[count];
+      for (int i = 0; i < count; ++i) {
+        float dx = xyz[i * 3] - x, dy = xyz[i * 3 + 1] - y, dz = xyz[i * 3 + 2] - z;
+        if (dx * dx + dy * dy + dz * dz <= radius * radius) {
+          brute[expected++] = i;
+        }
+      }
+      assertEquals(expected, found);
+      int[] sorted = Arrays.copyOf(result, found);
+      Arrays.sort(sorted);
+      assertArrayEquals(Arrays.copyOf(brute, expected), sorted);
+    }
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    Random random = new Random(29);
+    int count = 3000;
+    float[] xyz = randomPoints(random, count, 10);
+    SpatialHashGrid grid = new SpatialHashGrid(0.5f);
+    grid.build(xyz, count);
+    assertEquals(count, grid.size());
+    for (float radius : new float[] { 0.5f, 0.3f }) {
+      assertPairs(grid, xyz, count, radius, false);
+      assertPairs(grid, xyz, count, radius, true);
+      assertNeighbors(grid, xyz, count, radius, random);
+    }
+
+    // every index appears once in the sorted order
+    int[] sorted = new int[count];
+    assertEquals(count, grid.getSortedIndices(sorted));
+    Arrays.sort(sorted);
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, sorted[i]);
+    }
+  }
+
+  @Test
+  public void testRebuild() {
+    Random random = new Random(30);
+    int count = 2000;
+    float[] xyz = randomPoints(random, count, 8);
+    SpatialHashGrid grid = new SpatialHashGrid(0.6f);
+    grid.build(xyz, count);
+
+    // move some points a little, so that only some of them change cell
+    for (int i = 0; i < count; i += 3) {
+      for (int k = 0; k < 3; ++k) {
+        xyz[i * 3 + k] += (random.nextFloat() - 0.5f) * 0.2f;
+      }
+    }
+    grid.build(xyz, count);
+    assertPairs(grid, xyz, count, 0.6f, false);
+    assertNeighbors(grid, xyz, count, 0.6f, random);
+
+    // moves that keep every point in its cell only refresh the positions
+    for (int i = 0; i < xyz.length; ++i) {
+      float cell = (float) Math.floor(xyz[i] / 0.6f) * 0.6f;
+      xyz[i] = cell + 0.3f + (xyz[i] - cell - 0.3f) * 0.9f;
+    }
+    grid.build(xyz, count);
+    assertPairs(grid, xyz, count, 0.6f, false);
+
+    // fewer points
+    grid.build(xyz, count / 2);
+    assertEquals(count / 2, grid.size());
+    assertPairs(grid, xyz, count / 2, 0.6f, true);
+    assertNeighbors(grid, xyz, count / 2, 0.6f, random);
+  }
+
+  @Test
+  public void testParallelChunks() {
+    Random random = new Random(31);
+    // enough points for the sort and the pair search to split into chunks
+    int count = 40000;
+    float[] xyz = randomPoints(random, count, 60);
+    SpatialHashGrid grid = new SpatialHashGrid(1);
+    grid.build(xyz, count);
+    assertPairs(grid, xyz, count, 1, true);
+    for (int i = 0; i < count; i += 2) {
+      xyz[i * 3] += random.nextFloat() - 0.5f;
+    }
+    grid.build(xyz, count);
+    assertPairs(grid, xyz, count, 1, true);
+  }
+
+  private static void assertEmpty(SpatialHashGrid grid) {
+    assertEquals(0, grid.size());
+    assertEquals(0, grid.neighbors(0, 0, 0, 1, new int[1]));
+    assertEquals(0, grid.getSortedIndices(new int[1]));
+    SpatialHashGrid.PairVisitor visitor = (i, j, d) -> fail();
+    grid.forEachPair(1, visitor);
+    grid.forEachPairParallel(1, visitor);
+  }
+
+  @Test
+  public void testEmpty() {
+    SpatialHashGrid grid = new SpatialHashGrid(1);
+    assertEmpty(grid);
+    grid.build(new float[0], 0);
+    assertEmpty(grid);
+
+    float[] xyz = { 0, 0, 0, 0.5f, 0, 0 };
+    grid.build(xyz, 2);
+    assertEquals(2, grid.neighbors(0, 0, 0, 1, new int[2]));
+    grid.build(xyz, 0);
+    assertEmpty(grid);
+    grid.build(new Vector3f[0]);
+    assertEmpty(grid);
+    grid.build(xyz, 2);
+    assertPairs(grid, xyz, 2, 1, false);
+  }
+
+  @Test
+  public void testInvalid() {
+    try {
+      new SpatialHashGrid(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    SpatialHashGrid grid = new SpatialHashGrid(1);
+    grid.build(new float[6], 2);
+    try {
+      grid.neighbors(0, 0, 0, 2, new int[2]);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      grid.build(new float[5], 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
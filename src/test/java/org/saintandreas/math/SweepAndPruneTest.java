@@ -0,0 +1,142 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SweepAndPruneTest {
+  private static final int COUNT = 300;
+
+  private static boolean overlaps(float[] a, float[] b) {
+    return a[0] <= b[3] && b[0] <= a[3] && a[1] <= b[4] && b[1] <= a[4]
+        && a[2] <= b[5] && b[2] <= a[5];
+  }
+
+  // steps and checks the reported pairs against every pair of bodies
+  private static void step(SweepAndPrune sap, float[][] bounds, LongPairSet pairs) {
+    LongPairSet added = new LongPairSet(), removed = new LongPairSet();
+    sap.step(added, removed);
+    added.forEach((a, b) -> assertTrue(pairs.add(a, b)));
+    removed.forEach((a, b) -> assertTrue(pairs.remove(a, b)));
+
+    int expected = 0;
+    for (int i = 0; i < bounds.length; ++i) {
+      for (int j = i + 1; j < bounds.length; ++j) {
+        if (bounds[i] != null && bounds[j] != null && overlaps(bounds[i], bounds[j])) {
+          assertTrue(pairs.contains(i, j));
+          ++expected;
+        }
+      }
+    }
+    assertEquals(expected, pairs.size());
+    assertEquals(expected, sap.getPairs().size());
+  }
+
+  private static void setBounds(SweepAndPrune sap, float[][] bounds, int i, float x, float y, float z,
+      float size) {
+    bounds[i] = new float[] { x, y, z, x + size, y + size, z + size };
+    sap.setBounds(i, x, y, z, x + size, y + size, z + size);
+  }
+
+  private static void testMovingBodies(int axes) {
+    Random r = new Random(5);
+    SweepAndPrune sap = new SweepAndPrune(axes);
+    float[][] bounds = new float[COUNT][];
+    LongPairSet pairs = new LongPairSet();
+    for (int step = 0; step < 40; ++step) {
+      for (int i = 0; i < COUNT; ++i) {
+        int op = r.nextInt(10);
+        if (op == 0 && bounds[i] != null) {
+          assertTrue(sap.remove(i));
+          bounds[i] = null;
+        } else if (op < 5) {
+          float x = r.nextFloat() * 40, y = r.nextFloat() * 40, z = r.nextFloat() * 40;
+          if (bounds[i] != null && op < 3) {
+            // mostly small, coherent moves
+            x = bounds[i][0] + 0.25f;
+            y = bounds[i][1] - 0.25f;
+            z = bounds[i][2];
+          }
+          setBounds(sap, bounds, i, x, y, z, r.nextFloat() * 4);
+        }
+      }
+      step(sap, bounds, pairs);
+    }
+  }
+
+  // Only a few bodies move, a little, each step, and bodies come and go
+  // one at a time, so after the first step the changes stay under the
+  // rebuild threshold and every step takes the incremental sort. Positions
+  // are on a quarter unit lattice so that boxes often just touch.
+  private static void testFewChanges(int axes) {
+    Random r = new Random(6);
+    SweepAndPrune sap = new SweepAndPrune(axes);
+    float[][] bounds = new float[COUNT][];
+    LongPairSet pairs = new LongPairSet();
+    for (int i = 0; i < COUNT; ++i) {
+      setBounds(sap, bounds, i, r.nextInt(160) * 0.25f, r.nextInt(160) * 0.25f, r.nextInt(160) * 0.25f,
+          r.nextInt(16) * 0.25f);
+    }
+    step(sap, bounds, pairs);
+    for (int step = 0; step < 200; ++step) {
+      for (int k = 0; k < 8; ++k) {
+        int i = r.nextInt(COUNT);
+        if (bounds[i] != null) {
+          setBounds(sap, bounds, i, bounds[i][0] + (r.nextInt(5) - 2) * 0.25f,
+              bounds[i][1] + (r.nextInt(5) - 2) * 0.25f, bounds[i][2] + (r.nextInt(5) - 2) * 0.25f,
+              bounds[i][3] - bounds[i][0]);
+        }
+      }
+      if (step % 5 == 0) {
+        int i = r.nextInt(COUNT);
+        if (bounds[i] != null) {
+          assertTrue(sap.remove(i));
+          bounds[i] = null;
+        } else {
+          setBounds(sap, bounds, i, r.nextInt(160) * 0.25f, r.nextInt(160) * 0.25f,
+              r.nextInt(160) * 0.25f, r.nextInt(16) * 0.25f);
+        }
+      }
+      step(sap, bounds, pairs);
+    }
+  }
+
+  @Test
+  public void testThreeAxes() {
+    testMovingBodies(3);
+  }
+
+  @Test
+  public void testSingleAxis() {
+    testMovingBodies(1);
+  }
+
+  @Test
+  public void testFewChangesThreeAxes() {
+    testFewChanges(3);
+  }
+
+  @Test
+  public void testFewChangesSingleAxis() {
+    testFewChanges(1);
+  }
+
+  @Test
+  public void testLongPairSet() {
+    LongPairSet set = new LongPairSet(4);
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(set.add(i, i * 7 + 1));
+    }
+    assertFalse(set.add(15, 2));
+    assertTrue(set.contains(2, 15));
+    for (int i = 0; i < 1000; i += 2) {
+      assertTrue(set.remove(i * 7 + 1, i));
+    }
+    assertEquals(500, set.size());
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(i % 2 == 1, set.contains(i, i * 7 + 1));
+    }
+  }
+}
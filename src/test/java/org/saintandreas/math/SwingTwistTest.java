@@ -0,0 +1,212 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+import static org.saintandreas.math.TestRotations.randomRotation;
+import static org.saintandreas.math.TestRotations.assertRotationEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SwingTwistTest {
+  // the swing of a rotation about u and v, as an angle times an axis
+  private static float[] swing(Quaternion q, SwingTwistLimit limit) {
+    Quaternion s = q.getSwing(limit.getAxis());
+    Vector3f v = new Vector3f(s.x, s.y, s.z);
+    float length = v.length();
+    if (length == 0) {
+      return new float[2];
+    }
+    float angle = 2 * FastMath.atan2(length, s.w);
+    return new float[] { angle * v.dot(limit.getU()) / length, angle * v.dot(limit.getV()) / length };
+  }
+
+  @Test
+  public void testSwingTwist() {
+    Random random = new Random(48);
+    float[] result = new float[8];
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      Vector3f axis = new Vector3f((float) random.nextGaussian(), (float) random.nextGaussian(),
+          (float) random.nextGaussian()).normalize();
+      q.swingTwist(axis, result);
+      Quaternion swing = new Quaternion(result[0], result[1], result[2], result[3]);
+      Quaternion twist = new Quaternion(result[4], result[5], result[6], result[7]);
+      assertRotationEquals(q, swing.mult(twist), 1e-5f);
+      assertEquals(1, swing.norm(), 1e-5f);
+      assertEquals(1, twist.norm(), 1e-5f);
+      assertTrue(swing.w >= 0 && twist.w >= 0);
+      // the swing has no part about the axis, and the twist nothing else
+      assertEquals(0, new Vector3f(swing.x, swing.y, swing.z).dot(axis), 1e-5f);
+      assertEquals(0, new Vector3f(twist.x, twist.y, twist.z).cross(axis).length(), 1e-5f);
+      assertEquals(swing, q.getSwing(axis));
+      assertEquals(twist, q.getTwist(axis));
+    }
+
+    // a known swing and twist
+    Vector3f axis = Vector3f.UNIT_Y;
+    Quaternion swing = Quaternion.fromAngleAxis(0.5f, new Vector3f(1, 0, 1));
+    Quaternion twist = Quaternion.fromAngleAxis(-0.3f, axis);
+    Quaternion q = swing.mult(twist);
+    assertRotationEquals(swing, q.getSwing(axis), 1e-6f);
+    assertRotationEquals(twist, q.getTwist(axis), 1e-6f);
+    assertEquals(-0.3f, q.getTwistAngle(axis), 1e-5f);
+    assertEquals(-0.3f, q.negate().getTwistAngle(axis), 1e-5f);
+
+    // a half turn swing leaves the twist undefined
+    q = Quaternion.fromAngleAxis(FastMath.PI, Vector3f.UNIT_X);
+    assertEquals(Quaternion.IDENTITY, q.getTwist(axis));
+  }
+
+  @Test
+  public void testBatchSwingTwist() {
+    Random random = new Random(49);
+    int count = 3000;
+    float[] rotations = new float[count * 4];
+    for (int i = 0; i < count; ++i) {
+      Quaternion q = randomRotation(random);
+      rotations[i * 4] = q.x;
+      rotations[i * 4 + 1] = q.y;
+      rotations[i * 4 + 2] = q.z;
+      rotations[i * 4 + 3] = q.w;
+    }
+    Vector3f axis = new Vector3f(0.6f, 0, 0.8f);
+    float[] result = new float[count * 8];
+    Quaternion.swingTwist(rotations, count, axis, result);
+    float[] single = new float[8];
+    for (int i = 0; i < count; ++i) {
+      new Quaternion(rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3])
+          .swingTwist(axis, single);
+      for (int j = 0; j < 8; ++j) {
+        assertEquals(single[j], result[i * 8 + j], 0);
+      }
+    }
+  }
+
+  @Test
+  public void testCone() {
+    Random random = new Random(50);
+    SwingTwistLimit limit = SwingTwistLimit.cone(new Vector3f(0, 2, 0), 0.6f, -0.2f, 0.4f);
+    assertEquals(Vector3f.UNIT_Y, limit.getAxis());
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      Quaternion clamped = limit.clamp(q);
+      assertEquals(1, clamped.norm(), 1e-5f);
+      float swing = FastMath.acos(FastMath.clamp(clamped.mult(Vector3f.UNIT_Y).y, -1, 1));
+      assertTrue(swing <= 0.6f + 1e-4f);
+      float twist = clamped.getTwistAngle(Vector3f.UNIT_Y);
+      assertTrue(twist >= -0.2f - 1e-5f && twist <= 0.4f + 1e-5f);
+      // the swing keeps its direction
+      Vector3f before = q.mult(Vector3f.UNIT_Y), after = clamped.mult(Vector3f.UNIT_Y);
+      if (Math.abs(before.y) < 0.99f) {
+        assertEquals(0, before.cross(after).dot(Vector3f.UNIT_Y), 1e-4f);
+      }
+    }
+
+    // rotations within the limits are unchanged
+    Quaternion q = Quaternion.fromAngleAxis(0.5f, Vector3f.UNIT_X).mult(Quaternion.fromAngleAxis(0.3f,
+        Vector3f.UNIT_Y));
+    assertEquals(q, limit.clamp(q));
+    assertRotationEquals(Quaternion.fromAngleAxis(0.6f, Vector3f.UNIT_X), limit.clamp(Quaternion
+        .fromAngleAxis(1.5f, Vector3f.UNIT_X)), 1e-6f);
+    assertRotationEquals(Quaternion.fromAngleAxis(-0.2f, Vector3f.UNIT_Y), limit.clamp(Quaternion
+        .fromAngleAxis(-2, Vector3f.UNIT_Y)), 1e-6f);
+  }
+
+  @Test
+  public void testEllipse() {
+    Random random = new Random(51);
+    SwingTwistLimit limit = new SwingTwistLimit(Vector3f.UNIT_Z, Vector3f.UNIT_X, 1.2f, 0.3f, -0.5f, 0.5f);
+    assertEquals(Vector3f.UNIT_Y, limit.getV());
+    assertEquals(1.2f, limit.getMaxSwing(), 0);
+    for (int i = 0; i < 1000; ++i) {
+      Quaternion q = randomRotation(random);
+      Quaternion clamped = limit.clamp(q);
+      float[] before = swing(q, limit), after = swing(clamped, limit);
+      float u = after[0] / 1.2f, v = after[1] / 0.3f;
+      assertTrue(u * u + v * v <= 1 + 1e-3f);
+      if (FastMath.sqr(before[0] / 1.2f) + FastMath.sqr(before[1] / 0.3f) > 1 && before[0] * before[0]
+          + before[1] * before[1] < 2.5f * 2.5f) {
+        // on the boundary, and no further from the swing than any other point
+        // on it
+        assertEquals(1, u * u + v * v, 1e-3f);
+        float distance = FastMath.sqr(after[0] - before[0]) + FastMath.sqr(after[1] - before[1]);
+        for (int j = 0; j < 360; ++j) {
+          float a = j * FastMath.TWO_PI / 360;
+          float d = FastMath.sqr(1.2f * FastMath.cos(a) - before[0])
+              + FastMath.sqr(0.3f * FastMath.sin(a) - before[1]);
+          assertTrue(distance <= d + 1e-3f);
+        }
+      }
+      float twist = clamped.getTwistAngle(Vector3f.UNIT_Z);
+      assertTrue(twist >= -0.5f - 1e-5f && twist <= 0.5f + 1e-5f);
+    }
+  }
+
+  @Test
+  public void testHinge() {
+    // no swing about u, so the joint only bends about v
+    SwingTwistLimit limit = new SwingTwistLimit(Vector3f.UNIT_Y, Vector3f.UNIT_X, 0, 2, 0, 0);
+    Vector3f v = limit.getV();
+    Quaternion q = Quaternion.fromAngleAxis(0.4f, Vector3f.UNIT_X).mult(Quaternion.fromAngleAxis(0.7f, v))
+        .mult(Quaternion.fromAngleAxis(0.2f, Vector3f.UNIT_Y));
+    Quaternion clamped = limit.clamp(q);
+    float[] swing = swing(clamped, limit);
+    assertEquals(0, swing[0], 1e-6f);
+    assertTrue(swing[1] > 0.6f);
+    assertEquals(0, clamped.getTwistAngle(Vector3f.UNIT_Y), 1e-6f);
+    assertRotationEquals(Quaternion.IDENTITY, new SwingTwistLimit(Vector3f.UNIT_Y, Vector3f.UNIT_X, 0, 0, 0,
+        0).clamp(q), 1e-6f);
+  }
+
+  @Test
+  public void testBatchClamp() {
+    Random random = new Random(52);
+    int count = 3000;
+    SwingTwistLimit[] limits = new SwingTwistLimit[count];
+    SwingTwistLimit cone = SwingTwistLimit.cone(Vector3f.UNIT_Y, 0.5f, -0.1f, 0.1f);
+    SwingTwistLimit ellipse = new SwingTwistLimit(Vector3f.UNIT_X, Vector3f.UNIT_Z, 0.2f, 0.9f, -1, 0);
+    float[] rotations = new float[count * 4];
+    for (int i = 0; i < count; ++i) {
+      limits[i] = i % 3 == 0 ? cone : i % 3 == 1 ? ellipse : null;
+      Quaternion q = randomRotation(random);
+      rotations[i * 4] = q.x;
+      rotations[i * 4 + 1] = q.y;
+      rotations[i * 4 + 2] = q.z;
+      rotations[i * 4 + 3] = q.w;
+    }
+    float[] clamped = rotations.clone();
+    SwingTwistLimit.clamp(limits, clamped, count);
+    for (int i = 0; i < count; ++i) {
+      Quaternion q = new Quaternion(rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2],
+          rotations[i * 4 + 3]);
+      Quaternion expected = limits[i] == null ? q : limits[i].clamp(q);
+      assertEquals(expected, new Quaternion(clamped[i * 4], clamped[i * 4 + 1], clamped[i * 4 + 2],
+          clamped[i * 4 + 3]));
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    try {
+      new SwingTwistLimit(Vector3f.ZERO, Vector3f.UNIT_X, 1, 1, 0, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new SwingTwistLimit(Vector3f.UNIT_X, new Vector3f(2, 0, 0), 1, 1, 0, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      SwingTwistLimit.cone(Vector3f.UNIT_X, 4, 0, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      SwingTwistLimit.cone(Vector3f.UNIT_X, 1, 0.5f, 0.4f);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+// rotation fixtures shared by the rotation and decomposition tests
+final class TestRotations {
+  private TestRotations() {
+  }
+
+  // uniformly distributed over the rotations
+  static Quaternion randomRotation(Random random) {
+    return new Quaternion((float) random.nextGaussian(), (float) random.nextGaussian(),
+        (float) random.nextGaussian(), (float) random.nextGaussian()).normalize();
+  }
+
+  // equal as rotations, so either sign of the quaternion
+  static void assertRotationEquals(Quaternion expected, Quaternion actual, float tolerance) {
+    assertEquals(expected + " " + actual, 1, Math.abs(expected.dot(actual)), tolerance);
+  }
+}
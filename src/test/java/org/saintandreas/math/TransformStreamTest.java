@@ -0,0 +1,110 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TransformStreamTest {
+  private static final int OBJECTS = 20;
+  private static final int FRAMES = 200;
+  private static final float STEP = 0.001f;
+
+  // smooth motion, with rotations that pass through both signs of w
+  private static void sample(int frame, float[] positions, float[] rotations) {
+    for (int i = 0; i < OBJECTS; ++i) {
+      float t = frame / 60f + i;
+      positions[i * 3] = 100 * FastMath.sin(t * 0.3f) + i;
+      positions[i * 3 + 1] = -5 + t * 0.5f;
+      positions[i * 3 + 2] = 1000 * i;
+      Quaternion q = Quaternion.fromAngleAxis(t * 2, new Vector3f(1, i, 2).normalize());
+      float sign = i % 2 == 0 ? 1 : -1;
+      rotations[i * 4] = q.x * sign;
+      rotations[i * 4 + 1] = q.y * sign;
+      rotations[i * 4 + 2] = q.z * sign;
+      rotations[i * 4 + 3] = q.w * sign;
+    }
+  }
+
+  private static void roundTrip(boolean linear) {
+    ByteBuffer buffer = ByteBuffer.allocate(FRAMES * OBJECTS * 7 * 10);
+    buffer.position(5);
+    TransformStreamEncoder encoder = new TransformStreamEncoder(buffer, OBJECTS, STEP, 16, 30, linear);
+    float[] positions = new float[OBJECTS * 3], rotations = new float[OBJECTS * 4];
+    for (int frame = 0; frame < FRAMES; ++frame) {
+      sample(frame, positions, rotations);
+      encoder.write(positions, rotations);
+    }
+    assertEquals(FRAMES, encoder.getFrameCount());
+    int[] keyframes = encoder.getKeyframeOffsets();
+    assertEquals(7, keyframes.length);
+    assertEquals(0, keyframes[0]);
+    // much less than a byte per value between keyframes
+    assertTrue(buffer.position() - 5 < FRAMES * OBJECTS * 7 * 2);
+
+    buffer.flip();
+    buffer.position(5);
+    TransformStreamDecoder decoder = new TransformStreamDecoder(buffer, OBJECTS, STEP, 30, linear);
+    float[][] decodedPositions = new float[FRAMES][OBJECTS * 3];
+    float[][] decodedRotations = new float[FRAMES][OBJECTS * 4];
+    for (int frame = 0; frame < FRAMES; ++frame) {
+      decoder.read(decodedPositions[frame], decodedRotations[frame]);
+      sample(frame, positions, rotations);
+      for (int i = 0; i < OBJECTS; ++i) {
+        for (int k = 0; k < 3; ++k) {
+          assertEquals(positions[i * 3 + k], decodedPositions[frame][i * 3 + k], STEP * 0.5f + 1e-3f * i);
+        }
+        float dot = 0;
+        for (int k = 0; k < 4; ++k) {
+          dot += rotations[i * 4 + k] * decodedRotations[frame][i * 4 + k];
+        }
+        assertEquals(1, Math.abs(dot), 1e-6);
+      }
+    }
+    assertFalse(buffer.hasRemaining());
+
+    // seeking gives exactly the frames read in order
+    float[] p = new float[OBJECTS * 3], r = new float[OBJECTS * 4];
+    for (int target : new int[] { 199, 0, 45, 61, 60, 61, 175, 29, 30 }) {
+      decoder.seek(target, keyframes);
+      assertEquals(target, decoder.getFrame());
+      decoder.read(p, r);
+      assertArrayEquals(decodedPositions[target], p, 0);
+      assertArrayEquals(decodedRotations[target], r, 0);
+    }
+  }
+
+  @Test
+  public void testDelta() {
+    roundTrip(false);
+  }
+
+  @Test
+  public void testLinear() {
+    roundTrip(true);
+  }
+
+  @Test
+  public void testSingle() {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    TransformStreamEncoder encoder = new TransformStreamEncoder(buffer, 1, 0.01f, 12, 4, true);
+    Quaternion q = Quaternion.fromAngleAxis(1, Vector3f.UNIT_Z);
+    for (int i = 0; i < 10; ++i) {
+      encoder.write(new Vector3f(i, -i, 1e6f), q);
+    }
+    buffer.flip();
+    TransformStreamDecoder decoder = new TransformStreamDecoder(buffer, 1, 0.01f, 4, true);
+    float[] position = new float[3];
+    for (int i = 0; i < 10; ++i) {
+      Quaternion decoded = decoder.read(position);
+      assertArrayEquals(new float[] { i, -i, 1e6f }, position, 0.005f);
+      assertEquals(q.w, decoded.w, 1e-3);
+    }
+    try {
+      new TransformStreamEncoder(buffer, 1, 0, 12, 4, true);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TriangulatorTest {
+  private static double area(float[] v, int a, int b, int c) {
+    return ((v[b * 2] - v[a * 2]) * (double) (v[c * 2 + 1] - v[a * 2 + 1])
+        - (v[b * 2 + 1] - v[a * 2 + 1]) * (double) (v[c * 2] - v[a * 2])) / 2;
+  }
+
+  private static double ringArea(float[] v, int start, int end) {
+    double area = 0;
+    for (int i = start, j = end - 1; i < end; j = i++) {
+      area += (double) v[j * 2] * v[i * 2 + 1] - (double) v[i * 2] * v[j * 2 + 1];
+    }
+    return Math.abs(area) / 2;
+  }
+
+  // every triangle counter clockwise, as many as a simple polygon needs,
+  // and together covering exactly the area of the polygon
+  private static void check(float[] v, int[] holes, int[] triangles) {
+    int n = v.length / 2;
+    assertEquals((n + 2 * holes.length - 2) * 3, triangles.length);
+    double expected = ringArea(v, 0, holes.length > 0 ? holes[0] : n);
+    for (int h = 0; h < holes.length; ++h) {
+      expected -= ringArea(v, holes[h], h + 1 < holes.length ? holes[h + 1] : n);
+    }
+    double total = 0;
+    for (int t = 0; t < triangles.length; t += 3) {
+      double a = area(v, triangles[t], triangles[t + 1], triangles[t + 2]);
+      assertTrue(a >= 0);
+      total += a;
+    }
+    assertEquals(expected, total, expected * 1e-6);
+  }
+
+  private static float[] star(Random r, int n, float cx, float cy, float radius, boolean clockwise) {
+    float[] result = new float[n * 2];
+    for (int i = 0; i < n; ++i) {
+      double angle = (clockwise ? -2 : 2) * Math.PI * i / n;
+      float distance = radius * (0.5f + r.nextFloat() * 0.5f);
+      result[i * 2] = cx + (float) (Math.cos(angle) * distance);
+      result[i * 2 + 1] = cy + (float) (Math.sin(angle) * distance);
+    }
+    return result;
+  }
+
+  @Test
+  public void testStars() {
+    Random r = new Random(9);
+    for (int n : new int[] { 3, 4, 7, 100, 3000 }) {
+      float[] v = star(r, n, 0, 0, 100, n % 2 == 0);
+      check(v, new int[0], Triangulator.earClip(v));
+      check(v, new int[0], Triangulator.monotone(v));
+    }
+  }
+
+  @Test
+  public void testComb() {
+    // a rectilinear comb, full of vertices sharing a height
+    int teeth = 50;
+    float[] v = new float[(2 + teeth * 4) * 2];
+    int k = 0;
+    v[k++] = 0;
+    v[k++] = 0;
+    v[k++] = teeth * 2;
+    v[k++] = 0;
+    for (int t = teeth - 1; t >= 0; --t) {
+      float[] corners = { t * 2 + 2, 5, t * 2 + 1, 5, t * 2 + 1, 1, t * 2, 1 };
+      System.arraycopy(corners, 0, v, k, 8);
+      k += 8;
+    }
+    check(v, new int[0], Triangulator.earClip(v));
+    check(v, new int[0], Triangulator.monotone(v));
+  }
+
+  @Test
+  public void testHoles() {
+    Random r = new Random(13);
+    int side = 4;
+    float step = 100f / side;
+    float[] v = new float[8 + side * side * 20 * 2];
+    int[] holes = new int[side * side];
+    System.arraycopy(new float[] { 0, 0, 100, 0, 100, 100, 0, 100 }, 0, v, 0, 8);
+    int k = 8;
+    for (int i = 0; i < side * side; ++i) {
+      holes[i] = k / 2;
+      float[] hole = star(r, 20, (i % side + 0.5f) * step, (i / side + 0.5f) * step,
+          step * 0.4f, r.nextBoolean());
+      System.arraycopy(hole, 0, v, k, hole.length);
+      k += hole.length;
+    }
+    check(v, holes, Triangulator.earClip(v, holes));
+    check(v, holes, Triangulator.monotone(v, holes));
+    check(v, holes, Triangulator.triangulate(v, holes));
+  }
+}
@@ -0,0 +1,95 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VectorMapTest {
+  // a small set of components, so that keys collide and repeat often
+  private static final float[] COMPONENTS = { 0.0f, -0.0f, 1, -1, 0.5f, Float.NaN,
+      Float.intBitsToFloat(0x7fc00001), Float.POSITIVE_INFINITY };
+
+  private static float component(Random r) {
+    return COMPONENTS[r.nextInt(COMPONENTS.length)];
+  }
+
+  @Test
+  public void testIntMap() {
+    Random r = new Random(9);
+    Vector3fIntMap map = new Vector3fIntMap();
+    Map<Vector3f, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 20000; ++i) {
+      Vector3f key = new Vector3f(component(r), component(r), component(r));
+      Integer previous = expected.get(key);
+      int old = previous == null ? -1 : previous;
+      switch (r.nextInt(4)) {
+      case 0:
+        assertEquals(old, map.put(key, i));
+        expected.put(key, i);
+        break;
+      case 1:
+        assertEquals(old, map.putIfAbsent(key.x, key.y, key.z, i));
+        expected.putIfAbsent(key, i);
+        break;
+      case 2:
+        assertEquals(old, map.remove(key));
+        expected.remove(key);
+        break;
+      default:
+        assertEquals(old, map.get(key.x, key.y, key.z));
+        assertEquals(previous != null, map.containsKey(key));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    final Map<Vector3f, Integer> visited = new HashMap<>();
+    map.forEach((x, y, z, value) -> visited.put(new Vector3f(x, y, z), value));
+    assertEquals(expected, visited);
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.get(0, 0, 0));
+  }
+
+  @Test
+  public void testObjectMap() {
+    Random r = new Random(10);
+    Vector2fObjectMap<String> map = new Vector2fObjectMap<>(4);
+    Map<Vector2f, String> expected = new HashMap<>();
+    for (int i = 0; i < 20000; ++i) {
+      Vector2f key = new Vector2f(component(r), component(r));
+      String value = Integer.toString(i);
+      if (r.nextBoolean()) {
+        assertEquals(expected.put(key, value), map.put(key, value));
+      } else {
+        assertEquals(expected.remove(key), map.remove(key.x, key.y));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (Map.Entry<Vector2f, String> e : expected.entrySet()) {
+      assertEquals(e.getValue(), map.get(e.getKey()));
+    }
+  }
+
+  @Test
+  public void testGrowth() {
+    Vector3fObjectMap<Integer> objects = new Vector3fObjectMap<>();
+    Vector2fIntMap ints = new Vector2fIntMap(0, Integer.MIN_VALUE);
+    int count = 100000;
+    for (int i = 0; i < count; ++i) {
+      objects.put(i * 0.25f, -i, 1, i);
+      ints.put(i, i * 0.5f, i);
+    }
+    for (int i = 0; i < count; i += 2) {
+      assertEquals(i, objects.remove(i * 0.25f, -i, 1).intValue());
+      assertEquals(i, ints.remove(i, i * 0.5f));
+    }
+    assertEquals(count / 2, objects.size());
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), objects.get(i * 0.25f, -i, 1));
+      assertEquals(i % 2 == 0 ? Integer.MIN_VALUE : i, ints.get(i, i * 0.5f));
+    }
+  }
+}
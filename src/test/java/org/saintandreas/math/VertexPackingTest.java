@@ -0,0 +1,117 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VertexPackingTest {
+  private static FloatBuffer randomDirections(int count) {
+    Random random = new Random(4);
+    FloatBuffer result = FloatBuffer.allocate(count * 3);
+    for (int i = 0; i < count; ++i) {
+      float x = (float) random.nextGaussian(), y = (float) random.nextGaussian();
+      float z = (float) random.nextGaussian();
+      float length = FastMath.sqrt(x * x + y * y + z * z);
+      result.put(x / length).put(y / length).put(z / length);
+    }
+    // the axes, where the octahedron folds
+    result.put(0, 0).put(1, 0).put(2, -1);
+    result.put(3, 1).put(4, 0).put(5, 0);
+    result.put(6, 0).put(7, -1).put(8, 0);
+    result.flip();
+    return result;
+  }
+
+  @Test
+  public void testOctahedral() {
+    int count = 10000;
+    FloatBuffer directions = randomDirections(count);
+    FloatBuffer decoded = FloatBuffer.allocate(count * 3);
+    int[] bitCounts = { 16, 24, 32 };
+    double[] maxDegrees = { 0.7, 0.06, 0.01 };
+    for (int b = 0; b < bitCounts.length; ++b) {
+      ByteBuffer packed = ByteBuffer.allocate(count * 4 + 1).order(ByteOrder.LITTLE_ENDIAN);
+      packed.position(1);
+      VertexPacking.encodeOctahedral(directions, packed, count, bitCounts[b]);
+      assertEquals(1, packed.position());
+      VertexPacking.decodeOctahedral(packed, decoded, count, bitCounts[b]);
+      for (int i = 0; i < count * 3; i += 3) {
+        double cx = (double) directions.get(i + 1) * decoded.get(i + 2)
+            - (double) directions.get(i + 2) * decoded.get(i + 1);
+        double cy = (double) directions.get(i + 2) * decoded.get(i) - (double) directions.get(i) * decoded.get(i + 2);
+        double cz = (double) directions.get(i) * decoded.get(i + 1) - (double) directions.get(i + 1) * decoded.get(i);
+        double dot = directions.get(i) * decoded.get(i) + directions.get(i + 1) * decoded.get(i + 1)
+            + directions.get(i + 2) * decoded.get(i + 2);
+        assertTrue(dot > 0);
+        double degrees = Math.toDegrees(Math.asin(Math.sqrt(cx * cx + cy * cy + cz * cz)));
+        assertTrue(bitCounts[b] + " bits, " + degrees, degrees < maxDegrees[b]);
+      }
+    }
+    try {
+      VertexPacking.encodeOctahedral(directions, ByteBuffer.allocate(16), 1, 20);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testSnorm1010102() {
+    FloatBuffer tangents = FloatBuffer.wrap(new float[] { 1, -1, 0, 1, 0.5f, -0.25f, 2, -1, Float.NaN, 0, -3, 0.2f });
+    ByteBuffer packed = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+    VertexPacking.encodeSnorm1010102(tangents, 4, packed, 3);
+    assertEquals(511 | (-511 & 0x3FF) << 10 | 1 << 30, packed.getInt(0));
+    FloatBuffer decoded = FloatBuffer.allocate(12);
+    VertexPacking.decodeSnorm1010102(packed, decoded, 4, 3);
+    float[] expected = { 1, -1, 0, 1, 0.5f, -0.25f, 1, -1, 0, 0, -1, 0 };
+    assertArrayEquals(expected, decoded.array(), 1 / 1022f + 1e-6f);
+
+    FloatBuffer normal = FloatBuffer.allocate(3);
+    VertexPacking.encodeSnorm1010102(FloatBuffer.wrap(new float[] { 0, 0.6f, -0.8f }), 3, packed, 1);
+    VertexPacking.decodeSnorm1010102(packed, normal, 3, 1);
+    assertArrayEquals(new float[] { 0, 0.6f, -0.8f }, normal.array(), 1 / 1022f + 1e-6f);
+  }
+
+  @Test
+  public void testNormalized() {
+    int count = 1000;
+    Random random = new Random(5);
+    float[] values = new float[count];
+    for (int i = 0; i < count; ++i) {
+      values[i] = random.nextFloat() * 2.2f - 1.1f;
+    }
+    float[] unit = new float[count], signed = new float[count];
+    for (int i = 0; i < count; ++i) {
+      unit[i] = Math.max(0, Math.min(1, values[i]));
+      signed[i] = Math.max(-1, Math.min(1, values[i]));
+    }
+    FloatBuffer source = FloatBuffer.wrap(values);
+    FloatBuffer decoded = FloatBuffer.allocate(count);
+    ByteBuffer packed = ByteBuffer.allocate(count * 2).order(ByteOrder.nativeOrder());
+
+    VertexPacking.encodeUnorm8(source, packed, count);
+    VertexPacking.decodeUnorm8(packed, decoded, count);
+    assertArrayEquals(unit, decoded.array(), 1 / 510f + 1e-6f);
+    VertexPacking.encodeUnorm16(source, packed, count);
+    VertexPacking.decodeUnorm16(packed, decoded, count);
+    assertArrayEquals(unit, decoded.array(), 1 / 131070f + 1e-6f);
+    VertexPacking.encodeSnorm8(source, packed, count);
+    VertexPacking.decodeSnorm8(packed, decoded, count);
+    assertArrayEquals(signed, decoded.array(), 1 / 254f + 1e-6f);
+    VertexPacking.encodeSnorm16(source, packed, count);
+    VertexPacking.decodeSnorm16(packed, decoded, count);
+    assertArrayEquals(signed, decoded.array(), 1 / 65534f + 1e-6f);
+
+    // the extremes are exact
+    VertexPacking.encodeUnorm8(FloatBuffer.wrap(new float[] { 0, 1 }), packed, 2);
+    assertEquals(-1, packed.get(1));
+    VertexPacking.decodeSnorm8(ByteBuffer.wrap(new byte[] { -128, -127, 127 }), decoded, 3);
+    assertEquals(-1, decoded.get(0), 0);
+    assertEquals(-1, decoded.get(1), 0);
+    assertEquals(1, decoded.get(2), 0);
+  }
+}
@@ -0,0 +1,81 @@
+package org.saintandreas.math;
+
+import static org.junit.Assert.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VertexWelderTest {
+  private static boolean near(float[] p, int a, int b, float epsilon) {
+    return Math.abs(p[a * 3] - p[b * 3]) <= epsilon && Math.abs(p[a * 3 + 1] - p[b * 3 + 1]) <= epsilon
+        && Math.abs(p[a * 3 + 2] - p[b * 3 + 2]) <= epsilon;
+  }
+
+  @Test
+  public void testWeld() {
+    Random r = new Random(17);
+    int count = 5000;
+    float epsilon = 1e-3f;
+    float[] positions = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      if (i > 0 && r.nextInt(3) == 0) {
+        // a jittered copy of an earlier vertex
+        int source = r.nextInt(i);
+        for (int k = 0; k < 3; ++k) {
+          positions[i * 3 + k] = positions[source * 3 + k] + (r.nextFloat() - 0.5f) * epsilon;
+        }
+      } else {
+        for (int k = 0; k < 3; ++k) {
+          positions[i * 3 + k] = r.nextInt(200) * 0.01f;
+        }
+      }
+    }
+    int[] remap = new int[count];
+    int welded = VertexWelder.weld(positions, epsilon, remap);
+    float[] compacted = VertexWelder.compact(positions, 3, remap, welded);
+
+    // each vertex goes to the first kept vertex it matches
+    int[] kept = new int[welded];
+    for (int i = 0, next = 0; i < count; ++i) {
+      assertTrue(remap[i] <= next);
+      if (remap[i] == next) {
+        kept[next++] = i;
+      }
+    }
+    for (int i = 0; i < count; ++i) {
+      int expected = -1;
+      for (int k = 0; k < welded && kept[k] <= i; ++k) {
+        if (near(positions, kept[k], i, epsilon)) {
+          expected = k;
+          break;
+        }
+      }
+      assertEquals(expected, remap[i]);
+      assertEquals(positions[kept[remap[i]] * 3], compacted[remap[i] * 3], 0);
+    }
+
+    int[] indices = { 0, count - 1, count / 2 };
+    VertexWelder.remapIndices(IntBuffer.wrap(indices), remap);
+    assertArrayEquals(new int[] { remap[0], remap[count - 1], remap[count / 2] }, indices);
+  }
+
+  @Test
+  public void testAttributes() {
+    // one position with two texture coordinates, and one normal nudged
+    float[] positions = { 1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3 };
+    float[] normals = { 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0.001f, 1 };
+    float[] texCoords = { 0, 0, 0.5f, 0, 0, 0, 0, 0 };
+    int[] remap = new int[4];
+    int welded = VertexWelder.weld(FloatBuffer.wrap(positions), 0, FloatBuffer.wrap(normals), 0.01f,
+        FloatBuffer.wrap(texCoords), 0, remap);
+    assertEquals(2, welded);
+    assertArrayEquals(new int[] { 0, 1, 0, 0 }, remap);
+    welded = VertexWelder.weld(FloatBuffer.wrap(positions), 0, FloatBuffer.wrap(normals), 0,
+        null, 0, remap);
+    assertEquals(2, welded);
+    assertArrayEquals(new int[] { 0, 0, 0, 1 }, remap);
+  }
+}